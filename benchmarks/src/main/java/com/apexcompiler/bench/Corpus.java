@@ -0,0 +1,47 @@
+package com.apexcompiler.bench;
+
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.lexer.Token;
+import com.apexcompiler.lexer.TokenBuffer;
+import com.apexcompiler.parser.ApexParser;
+import com.apexcompiler.semantic.SemanticAnalyzer;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Shared benchmark input. Each phase benchmark starts from the output of the
+ * phases before it, which is prepared once per trial.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+    @Param({"10", "100"})
+    public int methods;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    public String source;
+    public List<Token> tokens;
+    public TokenBuffer tokenBuffer;
+    public ClassDeclaration ast;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = CorpusGenerator.generateClass("Bench", methods, depth);
+        tokens = new ApexLexer(source).tokenize();
+        tokenBuffer = LexerBenchmark.fill(new TokenBuffer(new ApexLexer(source)));
+        ast = new ApexParser(tokens).parseClass();
+
+        List<Diagnostic> errors = new SemanticAnalyzer().analyze(ast);
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Generated corpus does not analyze cleanly: " + errors);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.apexcompiler.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Builds deterministic synthetic Apex classes for the benchmarks. The class
+ * size grows with the number of methods and the control-flow nesting of each
+ * method body grows with the depth. The output parses and analyzes without
+ * errors so every phase does its full amount of work.
+ */
+public final class CorpusGenerator {
+    private static final String INDENT = "    ";
+
+    private CorpusGenerator() {
+    }
+
+    /**
+     * Writes a corpus to disk for end-to-end CLI timing:
+     * {@code CorpusGenerator <dir> <classes> <methods> <depth>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: CorpusGenerator <output-dir> <classes> <methods> <depth>");
+            System.exit(1);
+        }
+
+        Path dir = Paths.get(args[0]);
+        int classes = Integer.parseInt(args[1]);
+        int methods = Integer.parseInt(args[2]);
+        int depth = Integer.parseInt(args[3]);
+
+        Files.createDirectories(dir);
+        for (int c = 0; c < classes; c++) {
+            String className = "Generated" + c;
+            Files.writeString(dir.resolve(className + ".apex"), generateClass(className, methods, depth));
+        }
+        System.out.println("Wrote " + classes + " classes to " + dir);
+    }
+
+    public static String generateClass(String className, int methods, int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("/*\n * Synthetic benchmark class with ").append(methods)
+          .append(" methods nested ").append(depth).append(" levels deep.\n */\n");
+        sb.append("public class ").append(className).append(" {\n");
+        sb.append(INDENT).append("private Integer counter;\n");
+        sb.append(INDENT).append("private String label;\n");
+        sb.append(INDENT).append("private Map<Id, Account> accountsById;\n\n");
+
+        for (int m = 0; m < methods; m++) {
+            appendMethod(sb, m, depth);
+        }
+
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void appendMethod(StringBuilder sb, int index, int depth) {
+        sb.append(INDENT).append("// Method ").append(index).append('\n');
+        sb.append(INDENT).append("public Integer compute").append(index)
+          .append("(Integer a, Integer b) {\n");
+
+        String body = INDENT + INDENT;
+        sb.append(body).append("Integer total = a + b * 2 - ").append(index).append(";\n");
+        sb.append(body).append("String text = 'value ' + total + ' of ").append(index).append("';\n");
+        sb.append(body).append("counter = total;\n");
+        sb.append(body).append("label = text + ' done';\n");
+
+        appendNested(sb, body, 1, depth);
+
+        sb.append(body).append("for (Integer i = 0; i < b; i = i + 1) {\n");
+        sb.append(body).append(INDENT).append("total = total + i % 3;\n");
+        sb.append(body).append("}\n");
+
+        if (index > 0) {
+            sb.append(body).append("compute").append(index - 1).append("(total, b);\n");
+        }
+        sb.append(body).append("return total;\n");
+        sb.append(INDENT).append("}\n\n");
+    }
+
+    private static void appendNested(StringBuilder sb, String indent, int level, int depth) {
+        if (level > depth) {
+            return;
+        }
+        String inner = indent + INDENT;
+        String var = "v" + level;
+
+        sb.append(indent).append("if (total > ").append(level).append(" && b != 0) {\n");
+        sb.append(inner).append("Integer ").append(var).append(" = total - ").append(level).append(";\n");
+        sb.append(inner).append("while (").append(var).append(" > 0) {\n");
+        sb.append(inner).append(INDENT).append(var).append(" = ").append(var).append(" - 1;\n");
+        appendNested(sb, inner + INDENT, level + 1, depth);
+        sb.append(inner).append("}\n");
+        sb.append(indent).append("} else {\n");
+        sb.append(inner).append("total = total + ").append(level).append(";\n");
+        sb.append(indent).append("}\n");
+    }
+}
@@ -0,0 +1,42 @@
+package com.apexcompiler.bench;
+
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.lexer.Token;
+import com.apexcompiler.lexer.TokenBuffer;
+import com.apexcompiler.lexer.TokenType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LexerBenchmark {
+
+    @Benchmark
+    public List<Token> tokenize(Corpus corpus) {
+        return new ApexLexer(corpus.source).tokenize();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenizePacked(Corpus corpus) {
+        return fill(new TokenBuffer(new ApexLexer(corpus.source)));
+    }
+
+    static TokenBuffer fill(TokenBuffer buffer) {
+        int i = 0;
+        while (buffer.type(i) != TokenType.EOF) {
+            i++;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,37 @@
+package com.apexcompiler.bench;
+
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.parser.ApexParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParserBenchmark {
+
+    @Benchmark
+    public ClassDeclaration parseClass(Corpus corpus) {
+        return new ApexParser(corpus.tokens).parseClass();
+    }
+
+    @Benchmark
+    public ClassDeclaration parseClassPacked(Corpus corpus) {
+        return new ApexParser(corpus.tokenBuffer).parseClass();
+    }
+
+    @Benchmark
+    public ClassDeclaration lexAndParseStreaming(Corpus corpus) {
+        return new ApexParser(new ApexLexer(corpus.source)).parseClass();
+    }
+}
@@ -0,0 +1,33 @@
+package com.apexcompiler.bench;
+
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.semantic.ClassIndex;
+import com.apexcompiler.semantic.SemanticAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SemanticAnalyzerBenchmark {
+
+    @Benchmark
+    public List<Diagnostic> analyze(Corpus corpus) {
+        return new SemanticAnalyzer().analyze(corpus.ast);
+    }
+
+    @Benchmark
+    public ClassIndex buildIndex(Corpus corpus) {
+        return ClassIndex.build(List.of(corpus.ast));
+    }
+}
@@ -1,5 +1,23 @@
 package com.apexcompiler.ast;
 
 public abstract class ASTNode {
+    // Source span set by the parser; offsets are -1 for nodes built any other way.
+    private int startOffset = -1;
+    private int endOffset = -1;
+    private int line;
+    private int column;
+    
     public abstract <T> T accept(ASTVisitor<T> visitor);
+    
+    public void setPosition(int startOffset, int endOffset, int line, int column) {
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.line = line;
+        this.column = column;
+    }
+    
+    public int getStartOffset() { return startOffset; }
+    public int getEndOffset() { return endOffset; }
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
 }
\ No newline at end of file
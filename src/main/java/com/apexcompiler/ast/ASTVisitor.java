@@ -20,4 +20,5 @@ public interface ASTVisitor<T> {
     T visitAnnotation(Annotation node);
     T visitSoqlExpression(SoqlExpression node);
     T visitDmlStatement(DmlStatement node);
+    T visitErrorStatement(ErrorStatement node);
 }
\ No newline at end of file
@@ -1,8 +1,16 @@
 package com.apexcompiler.ast;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ClassDeclaration extends ASTNode {
+    public enum Kind {
+        CLASS,
+        INTERFACE,
+        ENUM
+    }
+    
+    private final Kind kind;
     private final String name;
     private final String superClass;
     private final List<String> interfaces;
@@ -10,10 +18,22 @@ public class ClassDeclaration extends ASTNode {
     private final List<MethodDeclaration> methods;
     private final List<VariableDeclaration> fields;
     private final List<Annotation> annotations;
+    private final List<String> enumConstants;
+    private final List<ClassDeclaration> innerClasses;
     
     public ClassDeclaration(String name, String superClass, List<String> interfaces, 
                           List<String> modifiers, List<MethodDeclaration> methods, 
                           List<VariableDeclaration> fields, List<Annotation> annotations) {
+        this(Kind.CLASS, name, superClass, interfaces, modifiers, methods, fields, annotations,
+             List.of(), List.of());
+    }
+    
+    // For interfaces, the interfaces list holds the interfaces it extends.
+    public ClassDeclaration(Kind kind, String name, String superClass, List<String> interfaces,
+                          List<String> modifiers, List<MethodDeclaration> methods,
+                          List<VariableDeclaration> fields, List<Annotation> annotations,
+                          List<String> enumConstants, List<ClassDeclaration> innerClasses) {
+        this.kind = kind;
         this.name = name;
         this.superClass = superClass;
         this.interfaces = interfaces;
@@ -21,8 +41,11 @@ public class ClassDeclaration extends ASTNode {
         this.methods = methods;
         this.fields = fields;
         this.annotations = annotations;
+        this.enumConstants = enumConstants;
+        this.innerClasses = innerClasses;
     }
     
+    public Kind getKind() { return kind; }
     public String getName() { return name; }
     public String getSuperClass() { return superClass; }
     public List<String> getInterfaces() { return interfaces; }
@@ -30,9 +53,33 @@ public class ClassDeclaration extends ASTNode {
     public List<MethodDeclaration> getMethods() { return methods; }
     public List<VariableDeclaration> getFields() { return fields; }
     public List<Annotation> getAnnotations() { return annotations; }
+    public List<String> getEnumConstants() { return enumConstants; }
+    public List<ClassDeclaration> getInnerClasses() { return innerClasses; }
+    
+    public boolean isInterface() {
+        return kind == Kind.INTERFACE;
+    }
+    
+    public boolean isEnum() {
+        return kind == Kind.ENUM;
+    }
+    
+    // This declaration followed by all of its nested declarations, depth first.
+    public List<ClassDeclaration> getAllDeclarations() {
+        List<ClassDeclaration> all = new ArrayList<>();
+        collect(all);
+        return all;
+    }
+    
+    private void collect(List<ClassDeclaration> all) {
+        all.add(this);
+        for (ClassDeclaration inner : innerClasses) {
+            inner.collect(all);
+        }
+    }
     
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visitClassDeclaration(this);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package com.apexcompiler.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything declared in one source file: its top-level classes, interfaces
+ * and enums, each of which may contain nested declarations.
+ */
+public class CompilationUnit {
+    private final List<ClassDeclaration> types;
+    
+    public CompilationUnit(List<ClassDeclaration> types) {
+        this.types = types;
+    }
+    
+    public List<ClassDeclaration> getTypes() { return types; }
+    
+    // Every declaration in the file, nested ones included, depth first.
+    public List<ClassDeclaration> getAllDeclarations() {
+        List<ClassDeclaration> all = new ArrayList<>();
+        for (ClassDeclaration type : types) {
+            all.addAll(type.getAllDeclarations());
+        }
+        return all;
+    }
+}
@@ -0,0 +1,17 @@
+package com.apexcompiler.ast;
+
+// Placeholder for a statement the parser could not parse and skipped over.
+public class ErrorStatement extends Statement {
+    private final String message;
+    
+    public ErrorStatement(String message) {
+        this.message = message;
+    }
+    
+    public String getMessage() { return message; }
+    
+    @Override
+    public <T> T accept(ASTVisitor<T> visitor) {
+        return visitor.visitErrorStatement(this);
+    }
+}
\ No newline at end of file
@@ -56,7 +56,7 @@ public class GenericType {
     private String apexToJavaType(String apexType) {
         switch (apexType) {
             case "Integer": return "Integer";
-            case "Decimal": return "Double";
+            case "Decimal": return "ApexDecimal";
             case "String": return "String";
             case "Boolean": return "Boolean";
             case "List": return "java.util.List";
@@ -12,6 +12,31 @@ public class LiteralExpression extends Expression {
     public Object getValue() { return value; }
     public String getType() { return type; }
     
+    // String literals keep their escapes in the AST, since the Java backend copies them into Java source.
+    public static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = text.charAt(++i);
+            switch (next) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                default: sb.append(next); break;
+            }
+        }
+        return sb.toString();
+    }
+    
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visitLiteralExpression(this);
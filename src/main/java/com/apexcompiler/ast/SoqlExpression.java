@@ -1,13 +1,24 @@
 package com.apexcompiler.ast;
 
+import com.apexcompiler.runtime.SoqlQuery;
+
+import java.util.List;
+
 public class SoqlExpression extends Expression {
     private final String query;
+    private final SoqlQuery parsedQuery;
+    private final List<Expression> binds;
     
-    public SoqlExpression(String query) {
+    // One bind expression for each of the parsed query's bind names, in the same order.
+    public SoqlExpression(String query, SoqlQuery parsedQuery, List<Expression> binds) {
         this.query = query;
+        this.parsedQuery = parsedQuery;
+        this.binds = binds;
     }
     
     public String getQuery() { return query; }
+    public SoqlQuery getParsedQuery() { return parsedQuery; }
+    public List<Expression> getBinds() { return binds; }
     
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
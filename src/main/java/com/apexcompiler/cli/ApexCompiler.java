@@ -1,21 +1,19 @@
 package com.apexcompiler.cli;
 
-import com.apexcompiler.ast.ClassDeclaration;
-import com.apexcompiler.codegen.JavaCodeGenerator;
-import com.apexcompiler.lexer.ApexLexer;
-import com.apexcompiler.lexer.Token;
-import com.apexcompiler.parser.ApexParser;
-import com.apexcompiler.semantic.SemanticAnalyzer;
+import com.apexcompiler.diagnostics.Diagnostic;
 import org.apache.commons.cli.*;
 
-import java.io.IOException;
-import java.nio.file.Files;
+import java.io.PrintStream;
+import java.net.ConnectException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class ApexCompiler {
-    private static final String VERSION = "1.0.0";
+    static final String VERSION = "1.0.0";
+    private static final String DEFAULT_CACHE_DIR = ".apex-cache";
     
     public static void main(String[] args) {
         Options options = createOptions();
@@ -34,6 +32,18 @@ public class ApexCompiler {
                 return;
             }
             
+            int jobs = parseJobs(cmd.getOptionValue("jobs"));
+            int port = parsePort(cmd.getOptionValue("port"));
+            
+            if (cmd.hasOption("daemon")) {
+                new CompileDaemon(port, jobs).run();
+                return;
+            }
+            
+            if (cmd.hasOption("stop-daemon")) {
+                System.exit(new DaemonClient(port).stop(System.out, System.err));
+            }
+            
             String[] files = cmd.getArgs();
             if (files.length == 0) {
                 System.err.println("Error: No input files specified");
@@ -41,12 +51,60 @@ public class ApexCompiler {
                 System.exit(1);
             }
             
-            String inputFile = files[0];
+            if (cmd.hasOption("test") || cmd.hasOption("run")) {
+                List<Path> inputFiles = BatchCompiler.collectInputFiles(files);
+                if (inputFiles.isEmpty()) {
+                    System.err.println("Error: No .apex files found in the given inputs");
+                    System.exit(1);
+                }
+                ScriptRunner runner = new ScriptRunner(System.out, System.err);
+                System.exit(cmd.hasOption("test") ? runner.runTests(inputFiles)
+                    : runner.run(inputFiles, cmd.getOptionValue("run")));
+            }
+            
             String outputDir = cmd.getOptionValue("output", ".");
             boolean verbose = cmd.hasOption("verbose");
             boolean checkOnly = cmd.hasOption("check");
+            boolean json = cmd.hasOption("json");
+            String jar = cmd.getOptionValue("jar");
+            String cacheDir = cacheDirectory(cmd, outputDir);
+            
+            boolean javac = cmd.hasOption("javac");
+            BatchCompiler.Backend backend = javac ? BatchCompiler.Backend.JAVAC
+                : jar != null ? BatchCompiler.Backend.BYTECODE : BatchCompiler.Backend.JAVA_SOURCE;
             
-            compileFile(inputFile, outputDir, verbose, checkOnly);
+            // The daemon only produces Java sources, so class files are always built in-process.
+            if (cmd.hasOption("client") && backend == BatchCompiler.Backend.JAVA_SOURCE) {
+                try {
+                    System.exit(new DaemonClient(port).compile(files, outputDir, cacheDir, checkOnly, verbose,
+                                                               json, System.out, System.err));
+                } catch (ConnectException e) {
+                    if (verbose) {
+                        System.out.println("No compile daemon on port " + port + ", compiling in-process");
+                    }
+                }
+            }
+            
+            List<Path> inputFiles = BatchCompiler.collectInputFiles(files);
+            if (inputFiles.isEmpty()) {
+                System.err.println("Error: No .apex files found in the given inputs");
+                System.exit(1);
+            }
+            
+            BuildCache buildCache = cacheDir != null ? new BuildCache(Paths.get(cacheDir), BuildCache.compilerBuild(VERSION)) : null;
+            BatchCompiler compiler = new BatchCompiler(Paths.get(outputDir), verbose, checkOnly, System.out,
+                                                       null, buildCache, backend, jar != null ? Paths.get(jar) : null);
+            ForkJoinPool pool = new ForkJoinPool(Math.min(jobs, inputFiles.size()));
+            List<CompilationResult> results;
+            try {
+                results = compiler.compile(inputFiles, pool, resultListener(json, System.out));
+            } finally {
+                pool.shutdown();
+            }
+            
+            if (!reportResults(results, checkOnly, json, System.out, System.err)) {
+                System.exit(1);
+            }
             
         } catch (ParseException e) {
             System.err.println("Error parsing command line: " + e.getMessage());
@@ -69,83 +127,114 @@ public class ApexCompiler {
         options.addOption("o", "output", true, "Output directory (default: current directory)");
         options.addOption("c", "check", false, "Check syntax and semantics only, don't generate code");
         options.addOption("verbose", false, "Enable verbose output");
+        options.addOption("j", "jobs", true, "Number of files to compile in parallel (default: number of CPU cores)");
+        options.addOption("i", "incremental", false, "Skip files whose source is unchanged since the last build");
+        options.addOption(null, "cache-dir", true, "Build cache directory for --incremental (default: <output>/.apex-cache)");
+        options.addOption(null, "daemon", false, "Run as a background compile server on the local loopback port");
+        options.addOption(null, "client", false, "Send the compilation to a running daemon (falls back to in-process)");
+        options.addOption(null, "stop-daemon", false, "Stop a running compile daemon");
+        options.addOption(null, "json", false, "Stream diagnostics to stdout as JSON lines");
+        options.addOption(null, "jar", true, "Compile straight to JVM bytecode and write the classes to this jar");
+        options.addOption(null, "javac", false, "Compile the generated Java in-process with javac and write only class files (to --jar if given)");
+        options.addOption(null, "test", false, "Run every static @isTest method with the interpreter instead of compiling");
+        options.addOption(null, "run", true, "Run the static method Class.method with the interpreter and print its result");
+        options.addOption(null, "port", true, "Daemon port (default: " + CompileDaemon.DEFAULT_PORT + ")");
         
         return options;
     }
     
     private static void printHelp(Options options) {
         HelpFormatter formatter = new HelpFormatter();
-        formatter.printHelp("apex-compiler [OPTIONS] <input-file>", 
+        formatter.printHelp("apex-compiler [OPTIONS] <input-file|directory>...", 
                           "Compile Apex source code to Java", options, 
                           "\nExample: apex-compiler -o build src/MyClass.apex");
     }
     
-    private static void compileFile(String inputFile, String outputDir, boolean verbose, boolean checkOnly) 
-            throws IOException {
-        
-        if (verbose) {
-            System.out.println("Compiling " + inputFile + "...");
+    private static String cacheDirectory(CommandLine cmd, String outputDir) {
+        if (cmd.hasOption("cache-dir")) {
+            return cmd.getOptionValue("cache-dir");
         }
-        
-        Path inputPath = Paths.get(inputFile);
-        if (!Files.exists(inputPath)) {
-            throw new RuntimeException("Input file not found: " + inputFile);
+        if (cmd.hasOption("incremental")) {
+            return Paths.get(outputDir, DEFAULT_CACHE_DIR).toString();
         }
-        
-        String sourceCode = Files.readString(inputPath);
-        
-        if (verbose) {
-            System.out.println("Lexical analysis...");
+        return null;
+    }
+    
+    private static int parseJobs(String value) {
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
         }
-        ApexLexer lexer = new ApexLexer(sourceCode);
-        List<Token> tokens = lexer.tokenize();
-        
-        if (verbose) {
-            System.out.println("Parsing...");
+        try {
+            int jobs = Integer.parseInt(value);
+            if (jobs < 1) {
+                throw new IllegalArgumentException("Number of jobs must be at least 1: " + value);
+            }
+            return jobs;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of jobs: " + value);
         }
-        ApexParser parser = new ApexParser(tokens);
-        ClassDeclaration ast = parser.parseClass();
-        
-        if (verbose) {
-            System.out.println("Semantic analysis...");
+    }
+    
+    private static int parsePort(String value) {
+        if (value == null) {
+            return CompileDaemon.DEFAULT_PORT;
         }
-        SemanticAnalyzer analyzer = new SemanticAnalyzer();
-        List<String> errors = analyzer.analyze(ast);
-        
-        if (!errors.isEmpty()) {
-            System.err.println("Semantic errors found:");
-            for (String error : errors) {
-                System.err.println("  " + error);
+        try {
+            int port = Integer.parseInt(value);
+            if (port < 1 || port > 65535) {
+                throw new IllegalArgumentException("Port out of range: " + value);
             }
-            throw new RuntimeException("Compilation failed due to semantic errors");
+            return port;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port: " + value);
         }
-        
-        if (checkOnly) {
-            System.out.println("Syntax and semantic analysis completed successfully");
-            return;
+    }
+    
+    // In JSON mode every diagnostic is written to out as soon as its file is finished.
+    static Consumer<CompilationResult> resultListener(boolean json, PrintStream out) {
+        if (!json) {
+            return result -> { };
         }
-        
-        if (verbose) {
-            System.out.println("Code generation...");
+        return result -> {
+            synchronized (out) {
+                for (Diagnostic diagnostic : result.getDiagnostics()) {
+                    out.println(diagnostic.toJson());
+                }
+                out.flush();
+            }
+        };
+    }
+    
+    // In JSON mode the diagnostics have already been streamed, so only the outcome is returned.
+    static boolean reportResults(List<CompilationResult> results, boolean checkOnly, boolean json,
+                                 PrintStream out, PrintStream err) {
+        if (json) {
+            return results.stream().allMatch(CompilationResult::isSuccess);
         }
-        JavaCodeGenerator generator = new JavaCodeGenerator();
-        String javaCode = generator.generate(ast);
-        
-        Path outputPath = Paths.get(outputDir);
-        if (!Files.exists(outputPath)) {
-            Files.createDirectories(outputPath);
+        int failed = 0;
+        for (CompilationResult result : results) {
+            if (result.isSuccess()) {
+                continue;
+            }
+            failed++;
+            err.println("Errors in " + result.getInputFile() + ":");
+            for (Diagnostic diagnostic : result.getDiagnostics()) {
+                err.println("  " + diagnostic);
+            }
         }
         
-        String fileName = inputPath.getFileName().toString();
-        String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
-        Path javaFile = outputPath.resolve(baseName + ".java");
-        
-        Files.writeString(javaFile, javaCode);
-        
-        if (verbose) {
-            System.out.println("Generated: " + javaFile);
+        if (failed > 0) {
+            err.println("Compilation failed: " + failed + " of " + results.size() + " file(s) had errors");
+            return false;
         }
         
-        System.out.println("Compilation successful");
+        String message = checkOnly
+            ? "Syntax and semantic analysis completed successfully"
+            : "Compilation successful";
+        if (results.size() > 1) {
+            message += " (" + results.size() + " files)";
+        }
+        out.println(message);
+        return true;
     }
 }
\ No newline at end of file
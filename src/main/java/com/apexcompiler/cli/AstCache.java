@@ -0,0 +1,96 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.ast.CompilationUnit;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed ASTs kept in memory between compilations, keyed by source path.
+ * An entry is only reused while the file content is unchanged. At most
+ * maxEntries files are kept; beyond that the least recently used is dropped,
+ * so a long-running daemon does not grow without bound.
+ */
+public class AstCache {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private final int maxEntries;
+    // In access order, so the first entry is the least recently used.
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public AstCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public AstCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("AST cache size must be at least 1: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    public CompilationUnit get(Path path, ByteBuffer source) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(path));
+        }
+        if (entry != null && MessageDigest.isEqual(entry.digest, digest(source))) {
+            return entry.ast;
+        }
+        return null;
+    }
+
+    public void put(Path path, ByteBuffer source, CompilationUnit ast) {
+        Entry entry = new Entry(digest(source), ast);
+        synchronized (entries) {
+            entries.put(key(path), entry);
+            if (entries.size() > maxEntries) {
+                Iterator<Path> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    // Entries hold a digest rather than the text, which may be a view over a mapped file.
+    private static byte[] digest(ByteBuffer source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    private static class Entry {
+        private final byte[] digest;
+        private final CompilationUnit ast;
+
+        Entry(byte[] digest, CompilationUnit ast) {
+            this.digest = digest;
+            this.ast = ast;
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.codegen.BytecodeGenerator;
+import com.apexcompiler.codegen.JavaCodeGenerator;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.lexer.SourceFile;
+import com.apexcompiler.optimizer.AstOptimizer;
+import com.apexcompiler.parser.ApexParser;
+import com.apexcompiler.semantic.ClassIndex;
+import com.apexcompiler.semantic.SemanticAnalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the lex/parse/analyze/codegen pipeline over many files at once.
+ * Each file is compiled independently on the supplied pool and its errors
+ * are collected into a {@link CompilationResult} instead of aborting the run.
+ */
+public class BatchCompiler {
+    private static final String SOURCE_EXTENSION = ".apex";
+    // The runtime that SOQL and DML call: bytecode output bundles its classes, and generated Java is compiled with its sources.
+    private static final String RUNTIME_PACKAGE = "com.apexcompiler.runtime";
+    private static final List<String> RUNTIME_TYPES = List.of("Decimals", "MockDataService", "SoqlQuery", "Table");
+    // Generated Java calls ApexDecimal unqualified, so its source is compiled along with it.
+    private static final String DECIMAL_SOURCE = "ApexDecimal.java";
+
+    /**
+     * What a compilation produces: Java sources in the output directory;
+     * class files compiled from those sources in-process by javac, without
+     * writing the sources; or class files emitted straight from the AST.
+     * Both class file backends write to the jar when one is given, and to
+     * the output directory otherwise.
+     */
+    public enum Backend {
+        JAVA_SOURCE,
+        JAVAC,
+        BYTECODE
+    }
+
+    private final Path outputDir;
+    private final boolean verbose;
+    private final boolean checkOnly;
+    private final PrintStream out;
+    private final AstCache astCache;
+    private final BuildCache buildCache;
+    private final Backend backend;
+    private final Path jarFile;
+
+    public BatchCompiler(Path outputDir, boolean verbose, boolean checkOnly, PrintStream out) {
+        this(outputDir, verbose, checkOnly, out, null, null);
+    }
+
+    public BatchCompiler(Path outputDir, boolean verbose, boolean checkOnly, PrintStream out,
+                         AstCache astCache, BuildCache buildCache) {
+        this(outputDir, verbose, checkOnly, out, astCache, buildCache, Backend.JAVA_SOURCE, null);
+    }
+
+    // Class files are only written, to the jar or the output directory, when every file compiles.
+    public BatchCompiler(Path outputDir, boolean verbose, boolean checkOnly, PrintStream out,
+                         AstCache astCache, BuildCache buildCache, Backend backend, Path jarFile) {
+        this.outputDir = outputDir;
+        this.verbose = verbose;
+        this.checkOnly = checkOnly;
+        this.out = out;
+        this.astCache = astCache;
+        this.buildCache = buildCache;
+        this.backend = backend;
+        this.jarFile = jarFile;
+    }
+
+    // Directories are expanded to the .apex files below them; duplicates are dropped.
+    public static List<Path> collectInputFiles(String[] args) throws IOException {
+        Map<Path, Path> files = new LinkedHashMap<>();
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    List<Path> sources = walk
+                        .filter(Files::isRegularFile)
+                        .filter(p -> p.getFileName().toString().endsWith(SOURCE_EXTENSION))
+                        .sorted()
+                        .collect(Collectors.toList());
+                    for (Path source : sources) {
+                        files.putIfAbsent(source.toAbsolutePath().normalize(), source);
+                    }
+                }
+            } else {
+                files.putIfAbsent(path.toAbsolutePath().normalize(), path);
+            }
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * Compiles the files as one project. Every file is parsed first, then a
+     * shared {@link ClassIndex} is built from all classes so each one can be
+     * analyzed and generated against the others. Each phase runs on the pool.
+     */
+    public List<CompilationResult> compile(List<Path> inputFiles, ForkJoinPool pool) {
+        return compile(inputFiles, pool, result -> { });
+    }
+
+    /**
+     * Like {@link #compile(List, ForkJoinPool)}, but also hands each file's
+     * result to {@code onResult} as soon as that file is finished, from the
+     * worker thread that finished it, so callers can stream diagnostics.
+     */
+    public List<CompilationResult> compile(List<Path> inputFiles, ForkJoinPool pool,
+                                           Consumer<CompilationResult> onResult) {
+        List<Unit> units = new ArrayList<>(inputFiles.size());
+        for (Path inputFile : inputFiles) {
+            units.add(new Unit(inputFile));
+        }
+
+        runAll(units, pool, this::parseUnit);
+
+        List<ClassDeclaration> classes = new ArrayList<>();
+        List<CompilationUnit> asts = new ArrayList<>();
+        for (Unit unit : units) {
+            if (unit.ast != null) {
+                classes.addAll(unit.ast.getAllDeclarations());
+                asts.add(unit.ast);
+            }
+        }
+        ClassIndex index = ClassIndex.build(classes, pool);
+        Map<String, String> binaryNames = backend == Backend.BYTECODE ? BytecodeGenerator.binaryNames(asts) : null;
+        // javac errors belong to the files they are in, so javac results are only final after the batch.
+        boolean batchJavac = backend == Backend.JAVAC && !checkOnly;
+        if (backend == Backend.JAVA_SOURCE && !checkOnly) {
+            claimOutputFiles(units);
+        }
+
+        runAll(units, pool, unit -> {
+            try {
+                if (unit.ast != null) {
+                    finishUnit(unit, index, binaryNames);
+                }
+            } catch (RuntimeException e) {
+                unit.fail(e.getMessage());
+            }
+            if (!batchJavac) {
+                unit.result = unit.toResult();
+                onResult.accept(unit.result);
+            }
+        });
+
+        if (batchJavac) {
+            if (units.stream().noneMatch(Unit::hasErrors)) {
+                compileJava(units);
+            }
+            for (Unit unit : units) {
+                unit.result = unit.toResult();
+                onResult.accept(unit.result);
+            }
+        }
+
+        List<CompilationResult> results = new ArrayList<>(units.size());
+        for (Unit unit : units) {
+            results.add(unit.result != null ? unit.result : unit.toResult());
+        }
+        if (backend == Backend.BYTECODE && !checkOnly && results.stream().allMatch(CompilationResult::isSuccess)) {
+            Map<String, byte[]> classFiles = new TreeMap<>();
+            for (Unit unit : units) {
+                if (unit.classFiles != null) {
+                    unit.classFiles.forEach(classFiles::putIfAbsent);
+                }
+            }
+            writeClasses(classFiles, true);
+        }
+        return results;
+    }
+
+    public CompilationResult compileFile(Path inputPath) {
+        return compile(List.of(inputPath), ForkJoinPool.commonPool()).get(0);
+    }
+
+    private void runAll(List<Unit> units, ForkJoinPool pool, Consumer<Unit> phase) {
+        List<Future<?>> futures = new ArrayList<>(units.size());
+        for (Unit unit : units) {
+            futures.add(pool.submit(() -> {
+                try {
+                    phase.accept(unit);
+                } catch (RuntimeException e) {
+                    unit.fail(e.getMessage());
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Compilation interrupted", e);
+            } catch (ExecutionException e) {
+                units.get(i).fail("Internal compiler error: " + e.getCause());
+            }
+        }
+    }
+
+    private void parseUnit(Unit unit) {
+        Path inputPath = unit.input;
+        if (verbose) {
+            out.println("Compiling " + inputPath + "...");
+        }
+
+        try {
+            if (!Files.exists(inputPath)) {
+                throw new RuntimeException("Input file not found: " + inputPath);
+            }
+            unit.source = SourceFile.read(inputPath);
+        } catch (IOException e) {
+            unit.fail("I/O error: " + e.getMessage());
+            return;
+        }
+
+        CompilationUnit ast = astCache != null ? astCache.get(inputPath, unit.source.bytes()) : null;
+        if (ast != null) {
+            if (verbose) {
+                out.println("[" + unit.label() + "] Reusing cached AST");
+            }
+            unit.ast = ast;
+            return;
+        }
+
+        if (verbose) {
+            out.println("[" + unit.label() + "] Lexical analysis and parsing...");
+        }
+        ApexParser parser = new ApexParser(new ApexLexer(unit.source.text()));
+        unit.ast = parser.parseCompilationUnit();
+        // Whatever parsed is still analyzed, so one run reports syntax and semantic errors together.
+        unit.diagnostics.addAll(parser.getErrors());
+        if (astCache != null && !unit.hasErrors()) {
+            astCache.put(inputPath, unit.source.bytes(), unit.ast);
+        }
+    }
+
+    private void finishUnit(Unit unit, ClassIndex index, Map<String, String> binaryNames) {
+        if (!unit.ast.getTypes().isEmpty()) {
+            unit.javaSourceName = unit.ast.getTypes().get(0).getName() + ".java";
+        }
+        try {
+            unit.javaFile = binaryNames != null
+                ? analyzeAndGenerateBytecode(unit, index, binaryNames)
+                : analyzeAndGenerate(unit, index);
+        } catch (IOException e) {
+            unit.fail("I/O error: " + e.getMessage());
+        } finally {
+            // The tree is no longer needed once generated; the AST cache keeps its own reference.
+            unit.ast = null;
+        }
+    }
+
+    private Path analyzeAndGenerate(Unit unit, ClassIndex index) throws IOException {
+        String label = unit.label();
+        Path javaFile = outputFileFor(unit.input);
+
+        // The key covers the signatures of the classes this file can reach, so a change to one of them
+        // can change this file's errors while a change to any other class leaves its entry valid.
+        String cacheKey = null;
+        if (buildCache != null && !unit.hasErrors()) {
+            cacheKey = buildCache.key(unit.source.bytes(), index.signatureHash(namesIn(unit.source.text())));
+            boolean upToDate;
+            if (checkOnly) {
+                upToDate = buildCache.contains(cacheKey);
+            } else if (backend == Backend.JAVAC) {
+                unit.javaSource = buildCache.load(cacheKey);
+                upToDate = unit.javaSource != null;
+            } else {
+                upToDate = buildCache.restore(cacheKey, javaFile);
+            }
+            if (upToDate) {
+                if (verbose) {
+                    out.println("[" + label + "] Unchanged, reusing cached output");
+                }
+                return checkOnly || backend == Backend.JAVAC ? null : javaFile;
+            }
+        }
+
+        if (verbose) {
+            out.println("[" + label + "] Semantic analysis...");
+        }
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(index);
+        unit.diagnostics.addAll(analyzer.analyze(unit.ast));
+
+        if (unit.hasErrors()) {
+            return null;
+        }
+
+        if (checkOnly) {
+            return null;
+        }
+
+        if (verbose) {
+            out.println("[" + label + "] Optimization...");
+        }
+        CompilationUnit optimized = new AstOptimizer(analyzer.getFacts()).optimize(unit.ast);
+
+        if (verbose) {
+            out.println("[" + label + "] Code generation...");
+        }
+        JavaCodeGenerator generator = new JavaCodeGenerator(analyzer.getFacts());
+        String javaCode = generator.generate(optimized);
+
+        if (backend == Backend.JAVAC) {
+            unit.javaSource = javaCode;
+            if (buildCache != null) {
+                buildCache.store(cacheKey, javaCode);
+            }
+            return null;
+        }
+
+        Files.createDirectories(outputDir);
+        Files.writeString(javaFile, javaCode);
+
+        if (buildCache != null) {
+            buildCache.store(cacheKey, javaCode);
+        }
+
+        if (verbose) {
+            out.println("Generated: " + javaFile);
+        }
+
+        return javaFile;
+    }
+
+    // The bytecode backend has no build cache: the output is one jar, so every file is compiled each time.
+    private Path analyzeAndGenerateBytecode(Unit unit, ClassIndex index, Map<String, String> binaryNames) {
+        if (verbose) {
+            out.println("[" + unit.label() + "] Semantic analysis...");
+        }
+        unit.diagnostics.addAll(new SemanticAnalyzer(index).analyze(unit.ast));
+        if (unit.hasErrors() || checkOnly) {
+            return null;
+        }
+
+        if (verbose) {
+            out.println("[" + unit.label() + "] Bytecode generation...");
+        }
+        BytecodeGenerator generator = new BytecodeGenerator(index, binaryNames);
+        unit.classFiles = generator.generate(unit.ast, unit.label());
+        unit.diagnostics.addAll(generator.getDiagnostics());
+        return unit.hasErrors() ? null : classOutput(unit);
+    }
+
+    // Output is named after the input file, so inputs with the same name in different directories would
+    // overwrite each other's Java; the first in input order keeps the file and the others are errors.
+    private void claimOutputFiles(List<Unit> units) {
+        Set<Path> claimed = new HashSet<>();
+        for (Unit unit : units) {
+            Path javaFile = outputFileFor(unit.input);
+            if (unit.ast != null && !claimed.add(javaFile)) {
+                unit.diagnostics.add(Diagnostic.error(DiagnosticCode.INPUT_ERROR,
+                    "Another file also generates " + javaFile.getFileName()));
+            }
+        }
+    }
+
+    // Every file's Java goes to javac in one batch; its errors are reported against the Apex file it came from.
+    private void compileJava(List<Unit> units) {
+        Map<String, String> sources = new LinkedHashMap<>();
+        Map<String, Unit> owners = new LinkedHashMap<>();
+        for (Unit unit : units) {
+            if (unit.javaSource != null && unit.javaSourceName != null) {
+                if (sources.putIfAbsent(unit.javaSourceName, unit.javaSource) == null) {
+                    owners.put(unit.javaSourceName, unit);
+                } else {
+                    unit.diagnostics.add(Diagnostic.error(DiagnosticCode.JAVAC_ERROR,
+                        "Another file also generates " + unit.javaSourceName));
+                }
+            }
+        }
+        if (sources.isEmpty()) {
+            return;
+        }
+        for (String type : RUNTIME_TYPES) {
+            String source = RUNTIME_PACKAGE.replace('.', '/') + "/" + type + ".java";
+            sources.putIfAbsent(source, readResource(source));
+        }
+        sources.putIfAbsent(DECIMAL_SOURCE, readResource(DECIMAL_SOURCE));
+
+        if (verbose) {
+            out.println("Compiling " + sources.size() + " Java source(s) with javac...");
+        }
+        InMemoryJavaCompiler.Output output = new InMemoryJavaCompiler().compile(sources);
+        Unit first = owners.values().iterator().next();
+        for (Map.Entry<String, List<String>> errors : output.getErrors().entrySet()) {
+            Unit owner = owners.getOrDefault(errors.getKey(), first);
+            for (String error : errors.getValue()) {
+                owner.diagnostics.add(Diagnostic.error(DiagnosticCode.JAVAC_ERROR, error));
+            }
+        }
+        if (!output.getErrors().isEmpty()) {
+            return;
+        }
+
+        writeClasses(output.getClasses(), false);
+        for (Unit unit : owners.values()) {
+            unit.javaFile = classOutput(unit);
+        }
+    }
+
+    private Path classOutput(Unit unit) {
+        if (jarFile != null) {
+            return jarFile;
+        }
+        String name = unit.javaSourceName != null ? unit.javaSourceName : unit.label();
+        return outputDir.resolve(name.substring(0, name.lastIndexOf('.')) + ".class");
+    }
+
+    private static String readResource(String name) {
+        try (InputStream in = BatchCompiler.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new RuntimeException(name + " not found on the class path");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    // The class files of the runtime types and of the types nested in them.
+    private static List<String> runtimeClasses() {
+        List<String> classFiles = new ArrayList<>();
+        for (String type : RUNTIME_TYPES) {
+            try {
+                for (Class<?> member : Class.forName(RUNTIME_PACKAGE + "." + type).getNestMembers()) {
+                    classFiles.add(member.getName().replace('.', '/') + ".class");
+                }
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("runtime class " + type + " not found on the class path", e);
+            }
+        }
+        return classFiles;
+    }
+
+    /**
+     * Writes class files, keyed by binary name, to the jar or below the
+     * output directory. Bytecode output also needs the runtime classes it calls.
+     */
+    private void writeClasses(Map<String, byte[]> classFiles, boolean withRuntime) {
+        Map<String, byte[]> entries = new TreeMap<>();
+        for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+            entries.put(classFile.getKey().replace('.', '/') + ".class", classFile.getValue());
+        }
+        try {
+            if (withRuntime) {
+                for (String runtimeClass : runtimeClasses()) {
+                    try (InputStream runtime = BatchCompiler.class.getClassLoader().getResourceAsStream(runtimeClass)) {
+                        if (runtime == null) {
+                            throw new IOException("runtime class " + runtimeClass + " not found on the class path");
+                        }
+                        entries.put(runtimeClass, runtime.readAllBytes());
+                    }
+                }
+            }
+            if (jarFile != null) {
+                writeJar(entries);
+            } else {
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    Path target = outputDir.resolve(entry.getKey());
+                    Files.createDirectories(target.getParent());
+                    Files.write(target, entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write class files: " + e.getMessage(), e);
+        }
+
+        if (verbose) {
+            out.println("Generated: " + (jarFile != null ? jarFile : outputDir) + " (" + entries.size() + " classes)");
+        }
+    }
+
+    // Entries are written in name order.
+    private void writeJar(Map<String, byte[]> entries) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Created-By"), "Apex Compiler " + ApexCompiler.VERSION);
+        Path parent = jarFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream file = Files.newOutputStream(jarFile);
+             JarOutputStream jar = new JarOutputStream(file, manifest)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey()));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+        }
+    }
+
+    private Path outputFileFor(Path inputPath) {
+        String fileName = inputPath.getFileName().toString();
+        String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
+        return outputDir.resolve(baseName + ".java");
+    }
+
+    // Every identifier-like word in the source. Words in comments and strings only make the set larger,
+    // which can cost a cache miss but never reuses a stale entry.
+    private static Set<String> namesIn(CharSequence text) {
+        Set<String> names = new HashSet<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            if (Character.isJavaIdentifierStart(text.charAt(i))) {
+                int start = i;
+                do {
+                    i++;
+                } while (i < length && Character.isJavaIdentifierPart(text.charAt(i)));
+                names.add(text.subSequence(start, i).toString());
+            } else {
+                i++;
+            }
+        }
+        return names;
+    }
+
+    // A file's state as it moves through the phases of a project compilation.
+    private static class Unit {
+        private final Path input;
+        private final List<Diagnostic> diagnostics = new ArrayList<>();
+        private SourceFile source;
+        private CompilationUnit ast;
+        private Path javaFile;
+        private Map<String, byte[]> classFiles;
+        // Generated Java held for the javac batch, named after the unit's first type.
+        private String javaSource;
+        private String javaSourceName;
+        private CompilationResult result;
+
+        Unit(Path input) {
+            this.input = input;
+        }
+
+        String label() {
+            return input.getFileName().toString();
+        }
+
+        boolean hasErrors() {
+            for (Diagnostic diagnostic : diagnostics) {
+                if (diagnostic.isError()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        CompilationResult toResult() {
+            String file = input.toString();
+            List<Diagnostic> located = new ArrayList<>(diagnostics.size());
+            for (Diagnostic diagnostic : diagnostics) {
+                located.add(diagnostic.withFile(file));
+            }
+            return new CompilationResult(input, javaFile, located);
+        }
+
+        void fail(String error) {
+            diagnostics.add(Diagnostic.error(DiagnosticCode.INPUT_ERROR, error));
+            ast = null;
+            javaFile = null;
+        }
+    }
+}
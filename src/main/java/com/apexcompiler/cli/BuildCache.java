@@ -0,0 +1,172 @@
+package com.apexcompiler.cli;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of generated Java keyed by a SHA-256 of the compiler build
+ * and the Apex source. A hit lets a file skip semantic analysis and code
+ * generation; it is still parsed, since every file's classes go into the
+ * project index that the other files are analyzed against.
+ *
+ * Only successful compilations are stored. Classes are analyzed against the
+ * whole project, so callers fold the project's class signatures into the key.
+ */
+public class BuildCache {
+    private static final String ENTRY_EXTENSION = ".java";
+
+    // The digest of the compiler's code, computed on first use.
+    private static String codeDigest;
+
+    private final Path directory;
+    private final byte[] versionSalt;
+
+    public BuildCache(Path directory, String compilerVersion) {
+        this.directory = directory;
+        this.versionSalt = ("apex-compiler " + compilerVersion + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The version followed by a digest of the compiler's own jar, or of its
+     * class directory when run from a build tree, so output cached by one
+     * build is never reused by another with the same version number.
+     */
+    public static synchronized String compilerBuild(String version) {
+        if (codeDigest == null) {
+            codeDigest = toHex(digestCodeSource(BuildCache.class));
+        }
+        return version + "+" + codeDigest;
+    }
+
+    private static byte[] digestCodeSource(Class<?> type) {
+        CodeSource source = type.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            throw new IllegalStateException("Cannot locate the code of " + type.getName());
+        }
+        try {
+            Path location = Paths.get(source.getLocation().toURI());
+            MessageDigest digest = newDigest();
+            if (Files.isDirectory(location)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(location)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Cannot locate the code of " + type.getName(), e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String key(byte[] source) {
+        return key(ByteBuffer.wrap(source));
+    }
+
+    public String key(ByteBuffer source) {
+        return key(source, "");
+    }
+
+    // Also covers what the output depends on besides its own source, e.g. other classes' signatures.
+    public String key(ByteBuffer source, String dependencies) {
+        MessageDigest digest = newDigest();
+        digest.update(versionSalt);
+        digest.update(dependencies.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source.duplicate());
+        return toHex(digest.digest());
+    }
+
+    public boolean contains(String key) {
+        return Files.isRegularFile(entryPath(key));
+    }
+
+    /**
+     * Copies the cached output for {@code key} to {@code target}. The target is
+     * left untouched when it already holds the same content so its timestamp
+     * does not trigger downstream rebuilds.
+     */
+    public boolean restore(String key, Path target) throws IOException {
+        Path entry = entryPath(key);
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+
+        if (Files.isRegularFile(target) && Files.size(target) == Files.size(entry)
+                && Arrays.equals(Files.readAllBytes(target), Files.readAllBytes(entry))) {
+            return true;
+        }
+
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Files.copy(entry, target, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    // The cached Java for the key, or null when there is none.
+    public String load(String key) throws IOException {
+        Path entry = entryPath(key);
+        return Files.isRegularFile(entry) ? Files.readString(entry) : null;
+    }
+
+    public void store(String key, String javaCode) throws IOException {
+        Path entry = entryPath(key);
+        Files.createDirectories(entry.getParent());
+
+        // Workers may store the same key concurrently; publish via rename so
+        // readers never observe a partially written entry.
+        Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+        try {
+            Files.writeString(temp, javaCode);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_EXTENSION);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.diagnostics.Diagnostic;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class CompilationResult {
+    private final Path inputFile;
+    private final Path outputFile;
+    private final List<Diagnostic> diagnostics;
+
+    public CompilationResult(Path inputFile, Path outputFile, List<Diagnostic> diagnostics) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.diagnostics = diagnostics;
+    }
+
+    public Path getInputFile() { return inputFile; }
+    public Path getOutputFile() { return outputFile; }
+    public List<Diagnostic> getDiagnostics() { return diagnostics; }
+
+    public boolean isSuccess() {
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.isError()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
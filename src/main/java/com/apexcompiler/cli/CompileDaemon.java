@@ -0,0 +1,232 @@
+package com.apexcompiler.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Long-running compiler process. Keeps the JIT, the worker pool and parsed
+ * ASTs warm between requests sent by {@link DaemonClient}. Only accepts
+ * connections on the loopback interface, and only requests that carry the
+ * random token it writes to a file only its owner can read.
+ */
+public class CompileDaemon {
+    public static final int DEFAULT_PORT = 7531;
+
+    static final int PROTOCOL_VERSION = 4;
+    static final int COMMAND_COMPILE = 1;
+    static final int COMMAND_STOP = 2;
+
+    private final int port;
+    private final Path tokenFile;
+    private final String token;
+    private final ForkJoinPool pool;
+    private final AstCache astCache = new AstCache();
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "apex-daemon-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = true;
+    private volatile ServerSocket serverSocket;
+
+    public CompileDaemon(int port, int jobs) {
+        this(port, jobs, tokenFile(port));
+    }
+
+    public CompileDaemon(int port, int jobs, Path tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+        this.token = newToken();
+        this.pool = new ForkJoinPool(jobs);
+    }
+
+    // Where the daemon on a port keeps the token its clients must send.
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".apex-compiler", "daemon-" + port + ".token");
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = server;
+            writeToken();
+            System.out.println("Apex compiler daemon listening on "
+                + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+
+            while (running) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    if (!running) {
+                        break;
+                    }
+                    throw e;
+                }
+                connections.execute(() -> handle(socket));
+            }
+        } finally {
+            connections.shutdown();
+            pool.shutdown();
+            Files.deleteIfExists(tokenFile);
+        }
+        System.out.println("Apex compiler daemon stopped");
+    }
+
+    public void stop() {
+        running = false;
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Already closing; nothing left to release.
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            int version = in.readInt();
+            if (version != PROTOCOL_VERSION) {
+                writeResponse(out, 1, "", "Daemon protocol version mismatch: expected "
+                    + PROTOCOL_VERSION + ", got " + version + "\n");
+                return;
+            }
+
+            if (!MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.UTF_8),
+                                       token.getBytes(StandardCharsets.UTF_8))) {
+                writeResponse(out, 1, "", "Daemon authentication failed: the request does not carry the token in "
+                    + tokenFile + "\n");
+                return;
+            }
+
+            int command = in.readInt();
+            if (command == COMMAND_STOP) {
+                writeResponse(out, 0, "Daemon stopping\n", "");
+                stop();
+                return;
+            }
+            if (command != COMMAND_COMPILE) {
+                writeResponse(out, 1, "", "Unknown daemon command: " + command + "\n");
+                return;
+            }
+
+            String outputDir = in.readUTF();
+            String cacheDir = in.readUTF();
+            boolean checkOnly = in.readBoolean();
+            boolean verbose = in.readBoolean();
+            boolean json = in.readBoolean();
+            String[] inputs = new String[in.readInt()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = in.readUTF();
+            }
+
+            ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+            ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+            int exitCode;
+            try (PrintStream requestOut = new PrintStream(outBytes, true, StandardCharsets.UTF_8);
+                 PrintStream requestErr = new PrintStream(errBytes, true, StandardCharsets.UTF_8)) {
+                exitCode = compile(inputs, outputDir, cacheDir, checkOnly, verbose, json, requestOut, requestErr);
+            }
+
+            writeResponse(out, exitCode, outBytes.toString(StandardCharsets.UTF_8),
+                errBytes.toString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Daemon request failed: " + e.getMessage());
+        }
+    }
+
+    private int compile(String[] inputs, String outputDir, String cacheDir, boolean checkOnly, boolean verbose,
+                        boolean json, PrintStream out, PrintStream err) {
+        try {
+            List<Path> inputFiles = BatchCompiler.collectInputFiles(inputs);
+            if (inputFiles.isEmpty()) {
+                err.println("Error: No .apex files found in the given inputs");
+                return 1;
+            }
+
+            BuildCache buildCache = cacheDir.isEmpty()
+                ? null
+                : new BuildCache(Paths.get(cacheDir), BuildCache.compilerBuild(ApexCompiler.VERSION));
+            BatchCompiler compiler = new BatchCompiler(Paths.get(outputDir), verbose, checkOnly, out,
+                                                       astCache, buildCache);
+            List<CompilationResult> results = compiler.compile(inputFiles, pool,
+                                                               ApexCompiler.resultListener(json, out));
+            return ApexCompiler.reportResults(results, checkOnly, json, out, err) ? 0 : 1;
+        } catch (IOException | RuntimeException e) {
+            err.println("Compilation failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // The token is written to a private temporary file first and renamed, so it is never readable by others.
+    private void writeToken() throws IOException {
+        Path directory = tokenFile.toAbsolutePath().getParent();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        FileAttribute<?>[] directoryAttributes = posix
+            ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))}
+            : new FileAttribute<?>[0];
+        FileAttribute<?>[] fileAttributes = posix
+            ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+            : new FileAttribute<?>[0];
+        Files.createDirectories(directory, directoryAttributes);
+        Path temp = Files.createTempFile(directory, "daemon", ".tmp", fileAttributes);
+        try {
+            Files.writeString(temp, token);
+            Files.move(temp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeResponse(DataOutputStream out, int exitCode, String stdout, String stderr)
+            throws IOException {
+        out.writeInt(exitCode);
+        writeBlock(out, stdout);
+        writeBlock(out, stderr);
+        out.flush();
+    }
+
+    private static void writeBlock(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,108 @@
+package com.apexcompiler.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Thin client that forwards a compile request to a running {@link CompileDaemon}
+ * and replays its output. Returns the exit code the daemon reported. Every
+ * request carries the token the daemon wrote for its owner.
+ */
+public class DaemonClient {
+    private final int port;
+    private final Path tokenFile;
+
+    public DaemonClient(int port) {
+        this(port, CompileDaemon.tokenFile(port));
+    }
+
+    public DaemonClient(int port, Path tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+    }
+
+    public int compile(String[] inputs, String outputDir, String cacheDir, boolean checkOnly, boolean verbose,
+                       boolean json, PrintStream out, PrintStream err) throws IOException {
+        String token = readToken();
+        try (Socket socket = connect();
+             DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+
+            request.writeInt(CompileDaemon.PROTOCOL_VERSION);
+            request.writeUTF(token);
+            request.writeInt(CompileDaemon.COMMAND_COMPILE);
+            // The daemon has its own working directory, so every path is sent absolute.
+            request.writeUTF(absolute(outputDir));
+            request.writeUTF(cacheDir != null ? absolute(cacheDir) : "");
+            request.writeBoolean(checkOnly);
+            request.writeBoolean(verbose);
+            request.writeBoolean(json);
+            request.writeInt(inputs.length);
+            for (String input : inputs) {
+                request.writeUTF(absolute(input));
+            }
+            request.flush();
+
+            return readResponse(response, out, err);
+        }
+    }
+
+    public int stop(PrintStream out, PrintStream err) throws IOException {
+        String token = readToken();
+        try (Socket socket = connect();
+             DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+
+            request.writeInt(CompileDaemon.PROTOCOL_VERSION);
+            request.writeUTF(token);
+            request.writeInt(CompileDaemon.COMMAND_STOP);
+            request.flush();
+
+            return readResponse(response, out, err);
+        }
+    }
+
+    // Without a token file no daemon is running for this port, which callers treat like a refused connection.
+    private String readToken() throws IOException {
+        try {
+            return Files.readString(tokenFile).trim();
+        } catch (NoSuchFileException e) {
+            throw new ConnectException("No compile daemon token in " + tokenFile);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static String absolute(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    private static int readResponse(DataInputStream response, PrintStream out, PrintStream err) throws IOException {
+        int exitCode = response.readInt();
+        out.print(readBlock(response));
+        err.print(readBlock(response));
+        out.flush();
+        err.flush();
+        return exitCode;
+    }
+
+    private static String readBlock(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package com.apexcompiler.cli;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles Java sources held in memory with the JDK's own compiler through
+ * javax.tools. All sources go to javac as one batch, so they can refer to each
+ * other, and the class files are kept in memory too: nothing is read from or
+ * written to disk apart from the JDK's classes.
+ */
+final class InMemoryJavaCompiler {
+    // javac stops reporting after 100 errors by default; every file's errors are wanted.
+    private static final List<String> OPTIONS = List.of("-proc:none", "-nowarn", "-g:source,lines", "--release", "11",
+                                                        "-Xmaxerrs", String.valueOf(Integer.MAX_VALUE));
+
+    private final JavaCompiler compiler;
+
+    InMemoryJavaCompiler() {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No Java compiler available; run the Apex compiler on a JDK to use --javac");
+        }
+    }
+
+    /**
+     * Compiles sources keyed by file name, e.g. {@code Calculator.java}. Class
+     * files are keyed by binary name and errors by the name of the source
+     * they are in, or by the empty string when javac gives no source.
+     */
+    Output compile(Map<String, String> sources) {
+        List<JavaFileObject> units = new ArrayList<>(sources.size());
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            units.add(new Source(source.getKey(), source.getValue()));
+        }
+
+        Map<String, byte[]> classes = new ConcurrentHashMap<>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, Locale.ROOT,
+                                                                           StandardCharsets.UTF_8);
+        try (JavaFileManager fileManager = new ClassOutput(standard, classes)) {
+            compiler.getTask(null, fileManager, diagnostics, OPTIONS, null, units).call();
+        } catch (IOException e) {
+            throw new RuntimeException("javac failed: " + e.getMessage(), e);
+        }
+
+        Map<String, List<String>> errors = new LinkedHashMap<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                continue;
+            }
+            String file = diagnostic.getSource() != null ? ((Source) diagnostic.getSource()).fileName : "";
+            String location = file.isEmpty() ? "" : file + ":" + diagnostic.getLineNumber() + ": ";
+            errors.computeIfAbsent(file, f -> new ArrayList<>())
+                // javac puts symbol and location details on lines of their own.
+                .add(location + diagnostic.getMessage(Locale.ROOT).replaceAll("\\s*\\R\\s*", ", "));
+        }
+        return new Output(errors.isEmpty() ? new TreeMap<>(classes) : Map.of(), errors);
+    }
+
+    static final class Output {
+        private final Map<String, byte[]> classes;
+        private final Map<String, List<String>> errors;
+
+        Output(Map<String, byte[]> classes, Map<String, List<String>> errors) {
+            this.classes = classes;
+            this.errors = errors;
+        }
+
+        // Empty when there were errors, so a failed batch never produces partial output.
+        Map<String, byte[]> getClasses() { return classes; }
+        Map<String, List<String>> getErrors() { return errors; }
+    }
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String fileName;
+        private final String text;
+
+        Source(String fileName, String text) {
+            super(URI.create("string:///" + fileName), Kind.SOURCE);
+            this.fileName = fileName;
+            this.text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return text;
+        }
+    }
+
+    // Sends every class file javac writes into the map instead of to disk.
+    private static final class ClassOutput extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes;
+
+        ClassOutput(StandardJavaFileManager fileManager, Map<String, byte[]> classes) {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() {
+                            classes.put(className, toByteArray());
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
\ No newline at end of file
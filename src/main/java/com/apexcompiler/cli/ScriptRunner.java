@@ -0,0 +1,158 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.ast.Annotation;
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.ast.MethodDeclaration;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.interpreter.Interpreter;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.lexer.SourceFile;
+import com.apexcompiler.parser.ApexParser;
+import com.apexcompiler.semantic.ClassIndex;
+import com.apexcompiler.semantic.SemanticAnalyzer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs Apex with the interpreter instead of compiling it: either every
+ * {@code @isTest} method, or one static method named on the command line.
+ * Sources are parsed and analyzed as for a compilation, and nothing runs if
+ * any of them has errors. An exception thrown by the Apex code is reported
+ * as a runtime error with the file and line it was thrown from.
+ */
+class ScriptRunner {
+    private final PrintStream out;
+    private final PrintStream err;
+    // Built by load from the classes it returns.
+    private ClassIndex index;
+    private final Map<String, Path> files = new HashMap<>();
+
+    ScriptRunner(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    // Each test gets a fresh interpreter, so statics set by one test are not seen by the next.
+    int runTests(List<Path> inputs) throws IOException {
+        List<ClassDeclaration> classes = load(inputs);
+        if (classes == null) {
+            return 1;
+        }
+        int passed = 0;
+        int failed = 0;
+        for (ClassDeclaration declaration : classes) {
+            for (MethodDeclaration method : declaration.getMethods()) {
+                if (!isTest(method)) {
+                    continue;
+                }
+                String name = declaration.getName() + "." + method.getName();
+                Interpreter interpreter = new Interpreter(index, out);
+                try {
+                    interpreter.invokeStatic(declaration.getName(), method.getName());
+                    out.println("PASS " + name);
+                    passed++;
+                } catch (AssertionError e) {
+                    out.println("FAIL " + name + ": " + e.getMessage() + location(interpreter, e));
+                    failed++;
+                } catch (RuntimeException e) {
+                    out.println("FAIL " + name + ": " + describe(interpreter, e));
+                    failed++;
+                }
+            }
+        }
+        out.println((passed + failed) + " test(s) run, " + passed + " passed, " + failed + " failed");
+        return failed > 0 ? 1 : 0;
+    }
+
+    // Runs a static method without arguments, given as Class.method, and prints what it returns.
+    int run(List<Path> inputs, String target) throws IOException {
+        int dot = target.lastIndexOf('.');
+        if (dot <= 0 || dot == target.length() - 1) {
+            err.println("Error: expected Class.method but got '" + target + "'");
+            return 1;
+        }
+        List<ClassDeclaration> classes = load(inputs);
+        if (classes == null) {
+            return 1;
+        }
+        Interpreter interpreter = new Interpreter(index, out);
+        Object result;
+        try {
+            result = interpreter.invokeStatic(target.substring(0, dot), target.substring(dot + 1));
+        } catch (RuntimeException | AssertionError e) {
+            err.println("Runtime error: " + describe(interpreter, e));
+            return 1;
+        }
+        if (result != null) {
+            out.println(result);
+        }
+        return 0;
+    }
+
+    private String describe(Interpreter interpreter, Throwable e) {
+        return e.getClass().getSimpleName() + ": " + e.getMessage() + location(interpreter, e);
+    }
+
+    // The file and line the exception was thrown from, or nothing if it did not come from a statement.
+    private String location(Interpreter interpreter, Throwable e) {
+        String className = interpreter.getFailureClass(e);
+        if (className == null) {
+            return "";
+        }
+        Path file = files.get(className);
+        return " (" + (file != null ? file : className) + ", line " + interpreter.getFailureLine(e) + ")";
+    }
+
+    private static boolean isTest(MethodDeclaration method) {
+        if (!method.getModifiers().contains("static") || !method.getParameters().isEmpty()) {
+            return false;
+        }
+        for (Annotation annotation : method.getAnnotations()) {
+            if (annotation.getName().equalsIgnoreCase("isTest")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Every class declared in the inputs, nested ones included, or null after reporting errors.
+    private List<ClassDeclaration> load(List<Path> inputs) throws IOException {
+        Map<Path, CompilationUnit> units = new LinkedHashMap<>();
+        Map<Path, List<Diagnostic>> errors = new LinkedHashMap<>();
+        List<ClassDeclaration> classes = new ArrayList<>();
+        for (Path input : inputs) {
+            ApexParser parser = new ApexParser(new ApexLexer(SourceFile.read(input).text()));
+            CompilationUnit unit = parser.parseCompilationUnit();
+            units.put(input, unit);
+            errors.put(input, new ArrayList<>(parser.getErrors()));
+            for (ClassDeclaration declaration : unit.getAllDeclarations()) {
+                classes.add(declaration);
+                files.put(declaration.getName(), input);
+            }
+        }
+        index = ClassIndex.build(classes);
+        boolean failed = false;
+        for (Map.Entry<Path, CompilationUnit> entry : units.entrySet()) {
+            List<Diagnostic> diagnostics = errors.get(entry.getKey());
+            diagnostics.addAll(new SemanticAnalyzer(index).analyze(entry.getValue()));
+            diagnostics.removeIf(d -> d.getSeverity() != Diagnostic.Severity.ERROR);
+            if (diagnostics.isEmpty()) {
+                continue;
+            }
+            failed = true;
+            err.println("Errors in " + entry.getKey() + ":");
+            for (Diagnostic diagnostic : diagnostics) {
+                err.println("  " + diagnostic);
+            }
+        }
+        return failed ? null : classes;
+    }
+}
\ No newline at end of file
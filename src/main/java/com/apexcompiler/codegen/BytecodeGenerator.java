@@ -0,0 +1,1727 @@
+package com.apexcompiler.codegen;
+
+import com.apexcompiler.ast.*;
+import com.apexcompiler.codegen.ClassFileWriter.Code;
+import com.apexcompiler.codegen.ClassFileWriter.Label;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+import com.apexcompiler.lexer.TokenType;
+import com.apexcompiler.semantic.ApexType;
+import com.apexcompiler.semantic.ClassIndex;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.apexcompiler.codegen.ClassFileWriter.*;
+
+/**
+ * Compiles analyzed Apex straight to JVM class files, one per declared type,
+ * with nested types named Outer$Inner. Every Apex value is held as an object
+ * (Integer as java.lang.Integer, Decimal as java.math.BigDecimal, SObjects
+ * as field maps) so that null stays legal everywhere, as it is in Apex;
+ * arithmetic unboxes, computes and boxes again, and Decimal arithmetic calls
+ * {@link com.apexcompiler.runtime.Decimals} for the results generated Java
+ * gets from ApexDecimal. Each SOQL query is parsed
+ * once, into a static field of its class set up by the class initializer.
+ * SOQL and DML call the
+ * {@link com.apexcompiler.runtime.MockDataService}, bundled into the jar
+ * with the rest of the runtime. Constructs the
+ * backend cannot compile are reported as diagnostics, and a class with any
+ * of them is left out.
+ */
+public class BytecodeGenerator implements ASTVisitor<ApexType> {
+    public static final String RUNTIME = "com/apexcompiler/runtime/MockDataService";
+    private static final String PLAN = "com/apexcompiler/runtime/SoqlQuery";
+    private static final String DECIMALS = "com/apexcompiler/runtime/Decimals";
+    private static final String BIG_DECIMAL = "java/math/BigDecimal";
+    private static final String DECIMAL_OPERATION = "(Ljava/math/BigDecimal;Ljava/math/BigDecimal;)Ljava/math/BigDecimal;";
+    
+    private static final ApexType LONG = ApexType.of("Long");
+    private static final ApexType SET = ApexType.of("Set");
+    
+    private final ClassIndex index;
+    private final Map<String, String> binaryNames;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private Map<String, byte[]> classes;
+    private String sourceFile;
+    
+    private ClassDeclaration currentClass;
+    private ClassFileWriter writer;
+    private boolean classFailed;
+    // The query text held by each soql$<n> field of the current class.
+    private List<String> plans = new ArrayList<>();
+    private boolean inStaticInitializer;
+    
+    private Code code;
+    private boolean staticContext;
+    private ApexType returnType;
+    private final Deque<Map<String, Local>> scopes = new ArrayDeque<>();
+    private final Deque<Integer> scopeStarts = new ArrayDeque<>();
+    private int nextLocal;
+    
+    /**
+     * Types and members of other classes are resolved through the project
+     * index; binary names come from {@link #binaryNames(List)} over the same
+     * units.
+     */
+    public BytecodeGenerator(ClassIndex index, Map<String, String> binaryNames) {
+        this.index = index;
+        this.binaryNames = binaryNames;
+    }
+    
+    // Binary class name of every declared type, nested ones as Outer$Inner. The first declaration of a name wins.
+    public static Map<String, String> binaryNames(List<CompilationUnit> units) {
+        Map<String, String> names = new HashMap<>();
+        for (CompilationUnit unit : units) {
+            for (ClassDeclaration type : unit.getTypes()) {
+                addBinaryNames(type, type.getName(), names);
+            }
+        }
+        return names;
+    }
+    
+    private static void addBinaryNames(ClassDeclaration type, String binaryName, Map<String, String> names) {
+        names.putIfAbsent(type.getName(), binaryName);
+        for (ClassDeclaration inner : type.getInnerClasses()) {
+            addBinaryNames(inner, binaryName + "$" + inner.getName(), names);
+        }
+    }
+    
+    // Class files keyed by binary name. Check getDiagnostics() for anything that could not be compiled.
+    public Map<String, byte[]> generate(CompilationUnit unit, String sourceFile) {
+        classes = new LinkedHashMap<>();
+        diagnostics.clear();
+        this.sourceFile = sourceFile;
+        for (ClassDeclaration type : unit.getTypes()) {
+            type.accept(this);
+        }
+        return classes;
+    }
+    
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+    
+    @Override
+    public ApexType visitClassDeclaration(ClassDeclaration node) {
+        for (ClassDeclaration inner : node.getInnerClasses()) {
+            inner.accept(this);
+        }
+        
+        ClassDeclaration outerClass = currentClass;
+        ClassFileWriter outerWriter = writer;
+        boolean outerFailed = classFailed;
+        List<String> outerPlans = plans;
+        currentClass = node;
+        classFailed = false;
+        plans = new ArrayList<>();
+        try {
+            writer = new ClassFileWriter(classAccess(node), internalName(node.getName()), superName(node),
+                                         interfaceNames(node));
+        } catch (UnsupportedConstruct e) {
+            report(e);
+            currentClass = outerClass;
+            writer = outerWriter;
+            classFailed = outerFailed;
+            plans = outerPlans;
+            return null;
+        }
+        if (sourceFile != null) {
+            writer.setSourceFile(sourceFile);
+        }
+        
+        List<VariableDeclaration> instanceFields = new ArrayList<>();
+        List<VariableDeclaration> staticFields = new ArrayList<>();
+        for (VariableDeclaration field : node.getFields()) {
+            boolean isStatic = field.getModifiers().contains("static");
+            writer.field(memberAccess(field.getModifiers()) | (isStatic ? ACC_STATIC : 0)
+                             | (field.getModifiers().contains("final") ? ACC_FINAL : 0),
+                         field.getName(), descriptor(ApexType.of(field.getType())));
+            if (field.getInitializer() != null) {
+                (isStatic ? staticFields : instanceFields).add(field);
+            }
+        }
+        
+        boolean hasConstructor = false;
+        for (MethodDeclaration method : node.getMethods()) {
+            hasConstructor |= isConstructor(method);
+            generateMethod(method, instanceFields);
+        }
+        
+        if (!hasConstructor && !node.isInterface() && !node.isEnum()) {
+            generateDefaultConstructor(node, instanceFields);
+        }
+        for (int i = 0; i < plans.size(); i++) {
+            writer.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, planField(i), "L" + PLAN + ";");
+        }
+        if (node.isEnum()) {
+            generateEnumMembers(node, staticFields);
+        } else if (!staticFields.isEmpty() || !plans.isEmpty()) {
+            generateStaticInitializer(node, staticFields, null);
+        }
+        
+        if (!classFailed) {
+            classes.put(binaryNames.getOrDefault(node.getName(), node.getName()), writer.toByteArray());
+        }
+        currentClass = outerClass;
+        writer = outerWriter;
+        classFailed = outerFailed;
+        plans = outerPlans;
+        return null;
+    }
+    
+    private int classAccess(ClassDeclaration node) {
+        int access = node.getModifiers().contains("public") || node.getModifiers().contains("global") ? ACC_PUBLIC : 0;
+        if (node.isInterface()) {
+            return access | ACC_INTERFACE | ACC_ABSTRACT;
+        }
+        if (node.isEnum()) {
+            return access | ACC_SUPER | ACC_FINAL | ACC_ENUM;
+        }
+        return access | ACC_SUPER | (node.getModifiers().contains("abstract") ? ACC_ABSTRACT : 0);
+    }
+    
+    private String superName(ClassDeclaration node) {
+        if (node.isEnum()) {
+            return "java/lang/Enum";
+        }
+        if (node.isInterface() || node.getSuperClass() == null) {
+            return "java/lang/Object";
+        }
+        return userClass(node, node.getSuperClass());
+    }
+    
+    private List<String> interfaceNames(ClassDeclaration node) {
+        List<String> names = new ArrayList<>();
+        for (String iface : node.getInterfaces()) {
+            names.add(userClass(node, iface));
+        }
+        return names;
+    }
+    
+    private String userClass(ASTNode node, String name) {
+        String binaryName = binaryNames.get(name);
+        if (binaryName == null) {
+            throw new UnsupportedConstruct(node, "Type '" + name + "' is not declared in this project");
+        }
+        return binaryName;
+    }
+    
+    private static int memberAccess(List<String> modifiers) {
+        if (modifiers.contains("public") || modifiers.contains("global")) return ACC_PUBLIC;
+        if (modifiers.contains("protected")) return ACC_PROTECTED;
+        if (modifiers.contains("private")) return ACC_PRIVATE;
+        return 0;
+    }
+    
+    private boolean isConstructor(MethodDeclaration method) {
+        return method.getName().equals(currentClass.getName());
+    }
+    
+    private void generateMethod(MethodDeclaration method, List<VariableDeclaration> instanceFields) {
+        boolean constructor = isConstructor(method);
+        boolean isStatic = method.getModifiers().contains("static");
+        int access = memberAccess(method.getModifiers()) | (isStatic ? ACC_STATIC : 0);
+        if (currentClass.isInterface()) {
+            access = ACC_PUBLIC | ACC_ABSTRACT;
+        } else if (method.getBody() == null || method.getModifiers().contains("abstract")) {
+            access |= ACC_ABSTRACT;
+        }
+        
+        try {
+            code = writer.method(access, constructor ? "<init>" : method.getName(), methodDescriptor(method));
+            if ((access & ACC_ABSTRACT) != 0) {
+                code.end();
+                return;
+            }
+            beginMethod(isStatic, constructor ? ApexType.VOID : ApexType.of(method.getReturnType()));
+            for (MethodDeclaration.Parameter parameter : method.getParameters()) {
+                define(parameter.getName(), ApexType.of(parameter.getType()));
+            }
+            code.line(method.getLine());
+            if (constructor) {
+                callSuperConstructor();
+                initializeFields(instanceFields);
+            }
+            method.getBody().accept(this);
+            if (code.isReachable()) {
+                if (returnType == ApexType.VOID) {
+                    code.op(RETURN, 0);
+                } else {
+                    throwError("java/lang/IllegalStateException",
+                               "Method '" + method.getName() + "' ended without returning a value");
+                }
+            }
+            code.end();
+        } catch (UnsupportedConstruct e) {
+            report(e);
+        } finally {
+            code = null;
+        }
+    }
+    
+    private void generateDefaultConstructor(ClassDeclaration node, List<VariableDeclaration> instanceFields) {
+        try {
+            code = writer.method(node.getModifiers().contains("public") ? ACC_PUBLIC : 0, "<init>", "()V");
+            beginMethod(false, ApexType.VOID);
+            callSuperConstructor();
+            initializeFields(instanceFields);
+            code.op(RETURN, 0);
+            code.end();
+        } catch (UnsupportedConstruct e) {
+            report(e);
+        } finally {
+            code = null;
+        }
+    }
+    
+    private void callSuperConstructor() {
+        code.load(0);
+        code.invoke(INVOKESPECIAL, superName(currentClass), "<init>", "()V");
+    }
+    
+    private void initializeFields(List<VariableDeclaration> fields) {
+        String owner = internalName(currentClass.getName());
+        for (VariableDeclaration field : fields) {
+            code.line(field.getLine());
+            code.load(0);
+            ApexType type = ApexType.of(field.getType());
+            emit(field.getInitializer(), type);
+            code.field(PUTFIELD, owner, field.getName(), descriptor(type));
+        }
+    }
+    
+    // Query plans and then the constants, each built with its name and ordinal, run first so static fields can use them.
+    private void generateStaticInitializer(ClassDeclaration node, List<VariableDeclaration> fields,
+                                           List<String> enumConstants) {
+        String owner = internalName(node.getName());
+        try {
+            code = writer.method(ACC_STATIC, "<clinit>", "()V");
+            beginMethod(true, ApexType.VOID);
+            for (int i = 0; i < plans.size(); i++) {
+                code.pushString(plans.get(i));
+                code.invoke(INVOKESTATIC, PLAN, "parse", "(Ljava/lang/String;)L" + PLAN + ";");
+                code.field(PUTSTATIC, owner, planField(i), "L" + PLAN + ";");
+            }
+            if (enumConstants != null) {
+                String self = descriptor(ApexType.of(node.getName()));
+                for (int i = 0; i < enumConstants.size(); i++) {
+                    code.type(NEW, owner);
+                    code.op(DUP, 1);
+                    code.pushString(enumConstants.get(i));
+                    code.pushInt(i);
+                    code.invoke(INVOKESPECIAL, owner, "<init>", "(Ljava/lang/String;I)V");
+                    code.field(PUTSTATIC, owner, enumConstants.get(i), self);
+                }
+                code.pushInt(enumConstants.size());
+                code.type(ANEWARRAY, owner);
+                for (int i = 0; i < enumConstants.size(); i++) {
+                    code.op(DUP, 1);
+                    code.pushInt(i);
+                    code.field(GETSTATIC, owner, enumConstants.get(i), self);
+                    code.op(AASTORE, -3);
+                }
+                code.field(PUTSTATIC, owner, "$VALUES", "[" + self);
+            }
+            inStaticInitializer = true;
+            for (VariableDeclaration field : fields) {
+                code.line(field.getLine());
+                ApexType type = ApexType.of(field.getType());
+                emit(field.getInitializer(), type);
+                code.field(PUTSTATIC, owner, field.getName(), descriptor(type));
+            }
+            code.op(RETURN, 0);
+            code.end();
+        } catch (UnsupportedConstruct e) {
+            report(e);
+        } finally {
+            code = null;
+            inStaticInitializer = false;
+        }
+    }
+    
+    // Apex values() returns a List, so it wraps the constants array rather than copying it as Java's does.
+    private void generateEnumMembers(ClassDeclaration node, List<VariableDeclaration> staticFields) {
+        String owner = internalName(node.getName());
+        String self = descriptor(ApexType.of(node.getName()));
+        for (String constant : node.getEnumConstants()) {
+            writer.field(ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_ENUM, constant, self);
+        }
+        writer.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "$VALUES", "[" + self);
+        
+        code = writer.method(ACC_PRIVATE, "<init>", "(Ljava/lang/String;I)V");
+        code.useLocals(3);
+        code.load(0);
+        code.load(1);
+        code.loadInt(2);
+        code.invoke(INVOKESPECIAL, "java/lang/Enum", "<init>", "(Ljava/lang/String;I)V");
+        code.op(RETURN, 0);
+        code.end();
+        
+        code = writer.method(ACC_PUBLIC | ACC_STATIC, "values", "()Ljava/util/List;");
+        code.field(GETSTATIC, owner, "$VALUES", "[" + self);
+        code.invoke(INVOKESTATIC, "java/util/Arrays", "asList", "([Ljava/lang/Object;)Ljava/util/List;");
+        code.op(ARETURN, -1);
+        code.end();
+        code = null;
+        
+        generateStaticInitializer(node, staticFields, node.getEnumConstants());
+    }
+    
+    private void beginMethod(boolean isStatic, ApexType returns) {
+        staticContext = isStatic;
+        returnType = returns;
+        scopes.clear();
+        scopeStarts.clear();
+        scopes.push(new HashMap<>());
+        nextLocal = isStatic ? 0 : 1;
+        code.useLocals(nextLocal);
+    }
+    
+    private String methodDescriptor(MethodDeclaration method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (MethodDeclaration.Parameter parameter : method.getParameters()) {
+            descriptor.append(descriptor(ApexType.of(parameter.getType())));
+        }
+        descriptor.append(')');
+        descriptor.append(isConstructor(method) ? "V" : descriptor(ApexType.of(method.getReturnType())));
+        return descriptor.toString();
+    }
+    
+    @Override
+    public ApexType visitMethodDeclaration(MethodDeclaration node) {
+        generateMethod(node, List.of());
+        return null;
+    }
+    
+    // Only reached for local variables; fields are declared by visitClassDeclaration.
+    @Override
+    public ApexType visitVariableDeclaration(VariableDeclaration node) {
+        ApexType type = ApexType.of(node.getType());
+        if (node.getInitializer() != null) {
+            emit(node.getInitializer(), type);
+        } else {
+            code.op(ACONST_NULL, 1);
+        }
+        code.store(define(node.getName(), type));
+        return null;
+    }
+    
+    @Override
+    public ApexType visitIfStatement(IfStatement node) {
+        Label otherwise = new Label();
+        branch(node.getCondition(), otherwise, false);
+        statement(node.getThenBranch());
+        if (node.getElseBranch() != null) {
+            Label end = new Label();
+            if (code.isReachable()) {
+                code.jump(GOTO, end);
+            }
+            code.mark(otherwise);
+            statement(node.getElseBranch());
+            code.mark(end);
+        } else {
+            code.mark(otherwise);
+        }
+        return null;
+    }
+    
+    @Override
+    public ApexType visitWhileStatement(WhileStatement node) {
+        Label top = new Label();
+        Label end = new Label();
+        code.mark(top);
+        branch(node.getCondition(), end, false);
+        statement(node.getBody());
+        code.jump(GOTO, top);
+        code.mark(end);
+        return null;
+    }
+    
+    @Override
+    public ApexType visitForStatement(ForStatement node) {
+        pushScope();
+        if (node.getInitializer() != null) {
+            statement(node.getInitializer());
+        }
+        Label top = new Label();
+        Label end = new Label();
+        code.mark(top);
+        if (node.getCondition() != null) {
+            branch(node.getCondition(), end, false);
+        }
+        statement(node.getBody());
+        if (node.getIncrement() != null) {
+            discard(node.getIncrement());
+        }
+        code.jump(GOTO, top);
+        code.mark(end);
+        popScope();
+        return null;
+    }
+    
+    @Override
+    public ApexType visitReturnStatement(ReturnStatement node) {
+        if (node.getValue() == null) {
+            code.op(RETURN, 0);
+        } else {
+            emit(node.getValue(), returnType);
+            code.op(ARETURN, -1);
+        }
+        return null;
+    }
+    
+    @Override
+    public ApexType visitExpressionStatement(ExpressionStatement node) {
+        discard(node.getExpression());
+        return null;
+    }
+    
+    @Override
+    public ApexType visitBlockStatement(BlockStatement node) {
+        pushScope();
+        for (Statement stmt : node.getStatements()) {
+            statement(stmt);
+        }
+        popScope();
+        return null;
+    }
+    
+    private void statement(Statement stmt) {
+        code.line(stmt.getLine());
+        stmt.accept(this);
+    }
+    
+    // Evaluates an expression for its side effects only.
+    private void discard(Expression expr) {
+        if (expr instanceof AssignmentExpression) {
+            assign((AssignmentExpression) expr, false);
+            return;
+        }
+        ApexType type = expr.accept(this);
+        if (type != ApexType.VOID) {
+            code.op(POP, -1);
+        }
+    }
+    
+    @Override
+    public ApexType visitBinaryExpression(BinaryExpression node) {
+        TokenType operator = node.getOperator();
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                return arithmetic(node, operator, node.getLeft(), node.getRight());
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_EQUAL:
+            case GREATER_THAN:
+            case GREATER_EQUAL:
+            case LOGICAL_AND:
+            case LOGICAL_OR:
+                return booleanValue(node);
+            default:
+                throw new UnsupportedConstruct(node, "Operator " + operator + " is not supported");
+        }
+    }
+    
+    private ApexType arithmetic(ASTNode node, TokenType operator, Expression left, Expression right) {
+        ApexType leftType = typeOf(left);
+        ApexType rightType = typeOf(right);
+        if (operator == TokenType.PLUS && (!leftType.isNumeric() || !rightType.isNumeric())) {
+            emitString(left, leftType);
+            emitString(right, rightType);
+            code.invoke(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+            return ApexType.STRING;
+        }
+        if (!leftType.isNumeric() || !rightType.isNumeric()) {
+            throw new UnsupportedConstruct(node, "Invalid operands for " + operator + ": " + leftType + ", " + rightType);
+        }
+        Numeric kind = Numeric.widest(Numeric.of(leftType), Numeric.of(rightType));
+        pushNumber(left, leftType, kind);
+        pushNumber(right, rightType, kind);
+        operate(operator, kind);
+        return box(kind);
+    }
+    
+    // Combines the two unboxed operands on the stack.
+    private void operate(TokenType operator, Numeric kind) {
+        if (kind == Numeric.DECIMAL) {
+            String method;
+            switch (operator) {
+                case PLUS: case PLUS_ASSIGN: method = "add"; break;
+                case MINUS: case MINUS_ASSIGN: method = "subtract"; break;
+                case MULTIPLY: case MULTIPLY_ASSIGN: method = "multiply"; break;
+                case DIVIDE: case DIVIDE_ASSIGN: method = "divide"; break;
+                default: method = "remainder"; break;
+            }
+            code.invoke(INVOKESTATIC, DECIMALS, method, DECIMAL_OPERATION);
+            return;
+        }
+        int base;
+        switch (operator) {
+            case PLUS: case PLUS_ASSIGN: base = IADD; break;
+            case MINUS: case MINUS_ASSIGN: base = ISUB; break;
+            case MULTIPLY: case MULTIPLY_ASSIGN: base = IMUL; break;
+            case DIVIDE: case DIVIDE_ASSIGN: base = IDIV; break;
+            default: base = IREM; break;
+        }
+        code.op(base + kind.offset, -kind.size);
+    }
+    
+    // Leaves the value on the stack as a String; null prints as "null", as in Apex. Only a literal is known non-null.
+    private void emitString(Expression expr, ApexType type) {
+        expr.accept(this);
+        if (!(expr instanceof LiteralExpression && type == ApexType.STRING)) {
+            toString(type);
+        }
+    }
+    
+    private void toString(ApexType type) {
+        if (type.isNumeric() && Numeric.of(type) == Numeric.DECIMAL) {
+            code.invoke(INVOKESTATIC, DECIMALS, "toString", "(Ljava/math/BigDecimal;)Ljava/lang/String;");
+        } else {
+            code.invoke(INVOKESTATIC, "java/lang/String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;");
+        }
+    }
+    
+    // Pushes the expression as an unboxed number of the given kind. Literals are pushed directly.
+    private void pushNumber(Expression expr, ApexType type, Numeric kind) {
+        if (expr instanceof LiteralExpression && ((LiteralExpression) expr).getValue() instanceof Number) {
+            Number value = (Number) ((LiteralExpression) expr).getValue();
+            switch (kind) {
+                case INT: code.pushInt(value.intValue()); break;
+                case LONG: code.pushLong(value.longValue()); break;
+                case DOUBLE: code.pushDouble(value.doubleValue()); break;
+                default: pushDecimal(value); break;
+            }
+            return;
+        }
+        expr.accept(this);
+        Numeric from = Numeric.of(type);
+        unbox(from);
+        convert(from, kind);
+    }
+    
+    // A literal keeps the digits and scale it was written with; Integer literals widen exactly.
+    private void pushDecimal(Number value) {
+        BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value : BigDecimal.valueOf(value.longValue());
+        if (decimal.unscaledValue().bitLength() < 64) {
+            code.pushLong(decimal.unscaledValue().longValue());
+            code.pushInt(decimal.scale());
+            code.invoke(INVOKESTATIC, BIG_DECIMAL, "valueOf", "(JI)Ljava/math/BigDecimal;");
+        } else {
+            code.pushString(decimal.toPlainString());
+            code.invoke(INVOKESTATIC, DECIMALS, "valueOf", "(Ljava/lang/String;)Ljava/math/BigDecimal;");
+        }
+    }
+    
+    // A BigDecimal is computed with as it is, so only the primitive kinds are unboxed and boxed.
+    private void unbox(Numeric kind) {
+        if (kind != Numeric.DECIMAL) {
+            code.invoke(INVOKEVIRTUAL, kind.box, kind.primitiveName + "Value", "()" + kind.descriptor);
+        }
+    }
+    
+    private ApexType box(Numeric kind) {
+        if (kind != Numeric.DECIMAL) {
+            code.invoke(INVOKESTATIC, kind.box, "valueOf", "(" + kind.descriptor + ")L" + kind.box + ";");
+        }
+        return kind.type;
+    }
+    
+    private void convert(Numeric from, Numeric to) {
+        if (from == to) {
+            return;
+        }
+        if (to == Numeric.DECIMAL) {
+            if (from == Numeric.INT) {
+                code.op(I2L, 1);
+            }
+            code.invoke(INVOKESTATIC, BIG_DECIMAL, "valueOf", from == Numeric.DOUBLE
+                ? "(D)Ljava/math/BigDecimal;" : "(J)Ljava/math/BigDecimal;");
+            return;
+        }
+        if (from == Numeric.DECIMAL) {
+            code.invoke(INVOKEVIRTUAL, BIG_DECIMAL, to.primitiveName + "Value", "()" + to.descriptor);
+            return;
+        }
+        switch (from) {
+            case INT: code.op(to == Numeric.LONG ? I2L : I2D, 1); break;
+            case LONG: code.op(to == Numeric.INT ? L2I : L2D, to == Numeric.INT ? -1 : 0); break;
+            default: code.op(to == Numeric.INT ? D2I : D2L, to == Numeric.INT ? -1 : 0); break;
+        }
+    }
+    
+    // Materializes a condition as Boolean.TRUE or Boolean.FALSE.
+    private ApexType booleanValue(Expression condition) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        branch(condition, isFalse, false);
+        code.field(GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+        code.jump(GOTO, end);
+        code.mark(isFalse);
+        code.field(GETSTATIC, "java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+        code.mark(end);
+        return ApexType.BOOLEAN;
+    }
+    
+    /**
+     * Jumps to the target when the condition evaluates to jumpWhen and falls
+     * through otherwise. Comparisons and logical operators compile to jumps
+     * directly instead of producing a Boolean first.
+     */
+    private void branch(Expression condition, Label target, boolean jumpWhen) {
+        if (condition instanceof LiteralExpression && ((LiteralExpression) condition).getValue() instanceof Boolean) {
+            if ((Boolean) ((LiteralExpression) condition).getValue() == jumpWhen) {
+                code.jump(GOTO, target);
+            }
+            return;
+        }
+        if (condition instanceof UnaryExpression
+                && ((UnaryExpression) condition).getOperator() == TokenType.LOGICAL_NOT) {
+            branch(((UnaryExpression) condition).getOperand(), target, !jumpWhen);
+            return;
+        }
+        if (condition instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) condition;
+            TokenType operator = binary.getOperator();
+            if (operator == TokenType.LOGICAL_AND || operator == TokenType.LOGICAL_OR) {
+                // For AND, a false left side decides; for OR, a true one does.
+                boolean decidesEarly = operator == TokenType.LOGICAL_OR;
+                if (jumpWhen == decidesEarly) {
+                    branch(binary.getLeft(), target, jumpWhen);
+                    branch(binary.getRight(), target, jumpWhen);
+                } else {
+                    Label skip = new Label();
+                    branch(binary.getLeft(), skip, decidesEarly);
+                    branch(binary.getRight(), target, jumpWhen);
+                    code.mark(skip);
+                }
+                return;
+            }
+            if (isComparison(operator)) {
+                compare(binary, target, jumpWhen);
+                return;
+            }
+        }
+        ApexType type = condition.accept(this);
+        if (type != ApexType.BOOLEAN) {
+            code.type(CHECKCAST, "java/lang/Boolean");
+        }
+        code.invoke(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+        code.jump(jumpWhen ? IFNE : IFEQ, target);
+    }
+    
+    private static boolean isComparison(TokenType operator) {
+        switch (operator) {
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_EQUAL:
+            case GREATER_THAN:
+            case GREATER_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private void compare(BinaryExpression node, Label target, boolean jumpWhen) {
+        TokenType operator = jumpWhen ? node.getOperator() : negate(node.getOperator());
+        boolean equality = operator == TokenType.EQUALS || operator == TokenType.NOT_EQUALS;
+        Expression left = node.getLeft();
+        Expression right = node.getRight();
+        
+        if (equality && (isNullLiteral(left) || isNullLiteral(right))) {
+            (isNullLiteral(left) ? right : left).accept(this);
+            code.jump(operator == TokenType.EQUALS ? IFNULL : IFNONNULL, target);
+            return;
+        }
+        
+        ApexType leftType = typeOf(left);
+        ApexType rightType = typeOf(right);
+        // Boxes of the same type compare by value with equals, which also handles null operands.
+        if (equality && (!leftType.isNumeric() || !rightType.isNumeric()
+                || Numeric.of(leftType) == Numeric.of(rightType) && Numeric.of(leftType) != Numeric.DECIMAL)) {
+            left.accept(this);
+            right.accept(this);
+            code.invoke(INVOKESTATIC, "java/util/Objects", "equals", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+            code.jump(operator == TokenType.EQUALS ? IFNE : IFEQ, target);
+            return;
+        }
+        if (!leftType.isNumeric() || !rightType.isNumeric()) {
+            throw new UnsupportedConstruct(node, "Cannot compare " + leftType + " with " + rightType);
+        }
+        
+        Numeric kind = Numeric.widest(Numeric.of(leftType), Numeric.of(rightType));
+        // Decimals compare by value, so 1.0 == 1.00; a null Decimal is equal only to null.
+        if (kind == Numeric.DECIMAL && equality) {
+            emit(left, ApexType.DECIMAL);
+            emit(right, ApexType.DECIMAL);
+            code.invoke(INVOKESTATIC, DECIMALS, "equal", "(Ljava/math/BigDecimal;Ljava/math/BigDecimal;)Z");
+            code.jump(operator == TokenType.EQUALS ? IFNE : IFEQ, target);
+            return;
+        }
+        pushNumber(left, leftType, kind);
+        pushNumber(right, rightType, kind);
+        int offset;
+        switch (operator) {
+            case EQUALS: offset = 0; break;
+            case NOT_EQUALS: offset = 1; break;
+            case LESS_THAN: offset = 2; break;
+            case GREATER_EQUAL: offset = 3; break;
+            case GREATER_THAN: offset = 4; break;
+            default: offset = 5; break;
+        }
+        if (kind == Numeric.INT) {
+            code.jump(IF_ICMPEQ + offset, target);
+            return;
+        }
+        if (kind == Numeric.LONG) {
+            code.op(LCMP, -3);
+        } else if (kind == Numeric.DECIMAL) {
+            code.invoke(INVOKESTATIC, DECIMALS, "compare", "(Ljava/math/BigDecimal;Ljava/math/BigDecimal;)I");
+        } else {
+            // NaN must make every comparison false, so it has to compare as "greater" for < and <=.
+            boolean less = operator == TokenType.LESS_THAN || operator == TokenType.LESS_EQUAL;
+            code.op(less ? DCMPG : DCMPL, -3);
+        }
+        code.jump(IFEQ + offset, target);
+    }
+    
+    private static TokenType negate(TokenType operator) {
+        switch (operator) {
+            case EQUALS: return TokenType.NOT_EQUALS;
+            case NOT_EQUALS: return TokenType.EQUALS;
+            case LESS_THAN: return TokenType.GREATER_EQUAL;
+            case GREATER_EQUAL: return TokenType.LESS_THAN;
+            case GREATER_THAN: return TokenType.LESS_EQUAL;
+            default: return TokenType.GREATER_THAN;
+        }
+    }
+    
+    private static boolean isNullLiteral(Expression expr) {
+        return expr instanceof LiteralExpression && ((LiteralExpression) expr).getValue() == null;
+    }
+    
+    @Override
+    public ApexType visitUnaryExpression(UnaryExpression node) {
+        switch (node.getOperator()) {
+            case LOGICAL_NOT:
+                return booleanValue(node);
+            case PLUS:
+                return node.getOperand().accept(this);
+            case MINUS:
+                ApexType type = typeOf(node.getOperand());
+                if (!type.isNumeric()) {
+                    throw new UnsupportedConstruct(node, "Cannot negate " + type);
+                }
+                Numeric kind = Numeric.of(type);
+                pushNumber(node.getOperand(), type, kind);
+                if (kind == Numeric.DECIMAL) {
+                    code.invoke(INVOKEVIRTUAL, BIG_DECIMAL, "negate", "()Ljava/math/BigDecimal;");
+                } else {
+                    code.op(INEG + kind.offset, 0);
+                }
+                return box(kind);
+            default:
+                throw new UnsupportedConstruct(node, "Operator " + node.getOperator() + " is not supported");
+        }
+    }
+    
+    @Override
+    public ApexType visitCallExpression(CallExpression node) {
+        Invocation call = resolveCall(node);
+        List<Expression> arguments = node.getArguments();
+        if (call.system) {
+            return systemCall(call.name, arguments);
+        }
+        if (call.receiver != null) {
+            call.receiver.accept(this);
+        } else if (call.opcode != INVOKESTATIC) {
+            if (staticContext) {
+                throw new UnsupportedConstruct(node, "Instance method '" + call.name + "' called from a static method");
+            }
+            code.load(0);
+        }
+        
+        if (call.parameters != null) {
+            for (int i = 0; i < arguments.size(); i++) {
+                emit(arguments.get(i), call.parameters.get(i));
+            }
+        } else {
+            int i = 0;
+            for (char parameter : parameterKinds(call.descriptor)) {
+                Expression argument = arguments.get(i++);
+                if (parameter == 'I') {
+                    pushNumber(argument, typeOf(argument), Numeric.INT);
+                } else if (parameter == 'S') {
+                    emitString(argument, typeOf(argument));
+                } else {
+                    argument.accept(this);
+                }
+            }
+        }
+        code.invoke(call.opcode, call.owner, call.name, call.descriptor);
+        
+        char returned = call.descriptor.charAt(call.descriptor.indexOf(')') + 1);
+        if (call.returnType == ApexType.VOID) {
+            if (returned != 'V') {
+                code.op(POP, -1);
+            }
+        } else if (returned == 'I') {
+            box(Numeric.INT);
+        } else if (returned == 'Z') {
+            code.invoke(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+        } else if (call.descriptor.endsWith(")Ljava/lang/Object;")) {
+            cast(call.returnType);
+        }
+        return call.returnType;
+    }
+    
+    // System.debug prints; the assertions throw an AssertionError, with the optional message, when they fail.
+    private ApexType systemCall(String name, List<Expression> arguments) {
+        if (name.equals("debug")) {
+            code.field(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            arguments.get(0).accept(this);
+            code.invoke(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/Object;)V");
+            return ApexType.VOID;
+        }
+        Label passed = new Label();
+        int messageAt;
+        if (name.equals("assert")) {
+            branch(arguments.get(0), passed, true);
+            messageAt = 1;
+        } else {
+            TokenType operator = name.equals("assertEquals") ? TokenType.EQUALS : TokenType.NOT_EQUALS;
+            branch(new BinaryExpression(arguments.get(0), operator, arguments.get(1)), passed, true);
+            messageAt = 2;
+        }
+        code.type(NEW, "java/lang/AssertionError");
+        code.op(DUP, 1);
+        if (arguments.size() > messageAt) {
+            arguments.get(messageAt).accept(this);
+        } else {
+            code.pushString("Assertion Failed");
+        }
+        code.invoke(INVOKESPECIAL, "java/lang/AssertionError", "<init>", "(Ljava/lang/Object;)V");
+        code.op(ATHROW, -1);
+        code.mark(passed);
+        return ApexType.VOID;
+    }
+    
+    private static boolean isSystemMethod(String name, int arity) {
+        switch (name) {
+            case "debug": return arity == 1;
+            case "assert": return arity == 1 || arity == 2;
+            case "assertEquals":
+            case "assertNotEquals": return arity == 2 || arity == 3;
+            default: return false;
+        }
+    }
+    
+    // One character per parameter: I for int, S for String or CharSequence, O for any other object.
+    private static List<Character> parameterKinds(String descriptor) {
+        List<Character> kinds = new ArrayList<>();
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                String type = descriptor.substring(i + 1, end);
+                kinds.add(type.equals("java/lang/String") || type.equals("java/lang/CharSequence") ? 'S' : 'O');
+                i = end;
+            } else {
+                kinds.add(descriptor.charAt(i));
+            }
+        }
+        return kinds;
+    }
+    
+    // Resolves what a call invokes without emitting anything, so typeOf can use it too.
+    private Invocation resolveCall(CallExpression node) {
+        Expression callee = node.getCallee();
+        int arity = node.getArguments().size();
+        
+        if (callee instanceof IdentifierExpression) {
+            String name = ((IdentifierExpression) callee).getName();
+            Invocation call = userMethod(node, currentClass.getName(), name, arity, null);
+            if (call == null) {
+                throw new UnsupportedConstruct(node, "Method '" + name + "' with " + arity
+                    + " argument(s) not found in class '" + currentClass.getName() + "'");
+            }
+            return call;
+        }
+        if (!(callee instanceof MemberExpression)) {
+            throw new UnsupportedConstruct(node, "Only named methods can be called");
+        }
+        
+        MemberExpression member = (MemberExpression) callee;
+        String name = member.getProperty();
+        Expression object = member.getObject();
+        if (object instanceof IdentifierExpression && isTypeName(((IdentifierExpression) object).getName())) {
+            String typeName = ((IdentifierExpression) object).getName();
+            if (typeName.equals("System") && isSystemMethod(name, arity)) {
+                Invocation call = new Invocation(INVOKESTATIC, "java/lang/System", name, "()V", ApexType.VOID);
+                call.system = true;
+                return call;
+            }
+            ClassDeclaration type = declaration(typeName);
+            if (type != null && type.isEnum() && name.equals("values") && arity == 0) {
+                return new Invocation(INVOKESTATIC, internalName(typeName), "values", "()Ljava/util/List;",
+                                      ApexType.listOf(ApexType.of(typeName)));
+            }
+            Invocation call = type != null ? userMethod(node, typeName, name, arity, null) : null;
+            if (call == null || call.opcode != INVOKESTATIC) {
+                throw new UnsupportedConstruct(node, "Static method '" + typeName + "." + name + "' with " + arity
+                    + " argument(s) not found");
+            }
+            return call;
+        }
+        
+        if (object instanceof IdentifierExpression && isUnresolved(((IdentifierExpression) object).getName())) {
+            throw new UnsupportedConstruct(node, "Method '" + ((IdentifierExpression) object).getName() + "." + name
+                + "' is not supported");
+        }
+        
+        ApexType receiverType = typeOf(object);
+        ClassDeclaration type = declaration(receiverType.getName());
+        if (type != null) {
+            if (type.isEnum() && arity == 0 && (name.equals("name") || name.equals("ordinal"))) {
+                Invocation call = name.equals("name")
+                    ? new Invocation(INVOKEVIRTUAL, "java/lang/Enum", "name", "()Ljava/lang/String;", ApexType.STRING)
+                    : new Invocation(INVOKEVIRTUAL, "java/lang/Enum", "ordinal", "()I", ApexType.INTEGER);
+                call.receiver = object;
+                return call;
+            }
+            Invocation call = userMethod(node, receiverType.getName(), name, arity, object);
+            if (call == null || call.opcode == INVOKESTATIC) {
+                throw new UnsupportedConstruct(node, "Method '" + name + "' with " + arity
+                    + " argument(s) not found in class '" + receiverType.getName() + "'");
+            }
+            return call;
+        }
+        
+        Invocation call = libraryMethod(receiverType, name, arity);
+        if (call == null) {
+            throw new UnsupportedConstruct(node, "Method '" + name + "' on " + receiverType + " is not supported");
+        }
+        call.receiver = object;
+        return call;
+    }
+    
+    // A method declared on the class or inherited from its superclasses or interfaces.
+    private Invocation userMethod(ASTNode node, String className, String name, int arity, Expression receiver) {
+        for (ClassDeclaration declaration : hierarchy(className)) {
+            for (MethodDeclaration method : declaration.getMethods()) {
+                if (!method.getName().equals(name) || method.getParameters().size() != arity
+                        || method.getName().equals(declaration.getName())) {
+                    continue;
+                }
+                int opcode;
+                if (method.getModifiers().contains("static")) {
+                    opcode = INVOKESTATIC;
+                } else if (declaration.isInterface()) {
+                    opcode = INVOKEINTERFACE;
+                } else if (method.getModifiers().contains("private")) {
+                    opcode = INVOKESPECIAL;
+                } else {
+                    opcode = INVOKEVIRTUAL;
+                }
+                Invocation call = new Invocation(opcode, userClass(node, declaration.getName()), name,
+                                                 methodDescriptorIn(declaration, method),
+                                                 ApexType.of(method.getReturnType()));
+                call.receiver = receiver;
+                call.parameters = new ArrayList<>();
+                for (MethodDeclaration.Parameter parameter : method.getParameters()) {
+                    call.parameters.add(ApexType.of(parameter.getType()));
+                }
+                return call;
+            }
+        }
+        return null;
+    }
+    
+    private String methodDescriptorIn(ClassDeclaration declaration, MethodDeclaration method) {
+        ClassDeclaration current = currentClass;
+        currentClass = declaration;
+        try {
+            return methodDescriptor(method);
+        } finally {
+            currentClass = current;
+        }
+    }
+    
+    /**
+     * Built-in String and collection methods that map onto a JDK method of
+     * the same meaning. Each entry is the Apex name, the JDK name and
+     * descriptor, and the Apex result: a type name, or E, K or V for the
+     * receiver's element, key or value type.
+     */
+    private static final Map<String, String[][]> LIBRARY = Map.of(
+        "String", new String[][] {
+            {"length", "length", "()I", "Integer"},
+            {"toUpperCase", "toUpperCase", "()Ljava/lang/String;", "String"},
+            {"toLowerCase", "toLowerCase", "()Ljava/lang/String;", "String"},
+            {"trim", "trim", "()Ljava/lang/String;", "String"},
+            {"contains", "contains", "(Ljava/lang/CharSequence;)Z", "Boolean"},
+            {"startsWith", "startsWith", "(Ljava/lang/String;)Z", "Boolean"},
+            {"endsWith", "endsWith", "(Ljava/lang/String;)Z", "Boolean"},
+            {"indexOf", "indexOf", "(Ljava/lang/String;)I", "Integer"},
+            {"substring", "substring", "(I)Ljava/lang/String;", "String"},
+            {"substring", "substring", "(II)Ljava/lang/String;", "String"},
+            {"equals", "equals", "(Ljava/lang/Object;)Z", "Boolean"},
+            {"equalsIgnoreCase", "equalsIgnoreCase", "(Ljava/lang/String;)Z", "Boolean"},
+            {"replace", "replace", "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;", "String"}
+        },
+        "List", new String[][] {
+            {"size", "size", "()I", "Integer"},
+            {"isEmpty", "isEmpty", "()Z", "Boolean"},
+            {"get", "get", "(I)Ljava/lang/Object;", "E"},
+            {"add", "add", "(Ljava/lang/Object;)Z", "void"},
+            {"add", "add", "(ILjava/lang/Object;)V", "void"},
+            {"set", "set", "(ILjava/lang/Object;)Ljava/lang/Object;", "void"},
+            {"remove", "remove", "(I)Ljava/lang/Object;", "E"},
+            {"contains", "contains", "(Ljava/lang/Object;)Z", "Boolean"},
+            {"indexOf", "indexOf", "(Ljava/lang/Object;)I", "Integer"},
+            {"clear", "clear", "()V", "void"}
+        },
+        "Set", new String[][] {
+            {"size", "size", "()I", "Integer"},
+            {"isEmpty", "isEmpty", "()Z", "Boolean"},
+            {"add", "add", "(Ljava/lang/Object;)Z", "Boolean"},
+            {"remove", "remove", "(Ljava/lang/Object;)Z", "Boolean"},
+            {"contains", "contains", "(Ljava/lang/Object;)Z", "Boolean"},
+            {"clear", "clear", "()V", "void"}
+        },
+        "Map", new String[][] {
+            {"size", "size", "()I", "Integer"},
+            {"isEmpty", "isEmpty", "()Z", "Boolean"},
+            {"get", "get", "(Ljava/lang/Object;)Ljava/lang/Object;", "V"},
+            {"put", "put", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", "V"},
+            {"remove", "remove", "(Ljava/lang/Object;)Ljava/lang/Object;", "V"},
+            {"containsKey", "containsKey", "(Ljava/lang/Object;)Z", "Boolean"},
+            {"keySet", "keySet", "()Ljava/util/Set;", "Set<K>"},
+            {"clear", "clear", "()V", "void"}
+        });
+    
+    private Invocation libraryMethod(ApexType receiverType, String name, int arity) {
+        String[][] methods = LIBRARY.get(receiverType.getErasure().getName());
+        if (methods == null) {
+            return null;
+        }
+        for (String[] method : methods) {
+            if (method[0].equals(name) && parameterKinds(method[2]).size() == arity) {
+                boolean isString = receiverType == ApexType.STRING;
+                String owner = isString ? "java/lang/String" : internalName(receiverType);
+                return new Invocation(isString ? INVOKEVIRTUAL : INVOKEINTERFACE, owner, method[1], method[2],
+                                      libraryResult(receiverType, method[3]));
+            }
+        }
+        return null;
+    }
+    
+    private static ApexType libraryResult(ApexType receiverType, String result) {
+        List<ApexType> arguments = receiverType.getTypeArguments();
+        switch (result) {
+            case "E":
+            case "K":
+                return arguments.isEmpty() ? ApexType.OBJECT : arguments.get(0);
+            case "V":
+                return arguments.size() < 2 ? ApexType.OBJECT : arguments.get(1);
+            case "Set<K>":
+                return arguments.isEmpty() ? SET : ApexType.of("Set", List.of(arguments.get(0)));
+            default:
+                return ApexType.of(result);
+        }
+    }
+    
+    @Override
+    public ApexType visitMemberExpression(MemberExpression node) {
+        Target target = target(node);
+        read(target);
+        return target.type;
+    }
+    
+    @Override
+    public ApexType visitLiteralExpression(LiteralExpression node) {
+        Object value = node.getValue();
+        if (value == null) {
+            code.op(ACONST_NULL, 1);
+            return ApexType.NULL;
+        }
+        if (value instanceof Boolean) {
+            code.field(GETSTATIC, "java/lang/Boolean", (Boolean) value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            return ApexType.BOOLEAN;
+        }
+        if (value instanceof String) {
+            code.pushString(LiteralExpression.unescape((String) value));
+            return ApexType.STRING;
+        }
+        Numeric kind = value instanceof Integer ? Numeric.INT : value instanceof Long ? Numeric.LONG : Numeric.DECIMAL;
+        pushNumber(node, kind.type, kind);
+        return box(kind);
+    }
+    
+    @Override
+    public ApexType visitIdentifierExpression(IdentifierExpression node) {
+        Target target = target(node);
+        read(target);
+        return target.type;
+    }
+    
+    @Override
+    public ApexType visitAssignmentExpression(AssignmentExpression node) {
+        return assign(node, true);
+    }
+    
+    private ApexType assign(AssignmentExpression node, boolean keepValue) {
+        Target target = target(node.getTarget());
+        TokenType operator = node.getOperator();
+        if (operator == TokenType.ASSIGN) {
+            emit(node.getValue(), target.type);
+        } else {
+            if (!target.type.isNumeric() && !(operator == TokenType.PLUS_ASSIGN && target.type == ApexType.STRING)) {
+                throw new UnsupportedConstruct(node, "Operator " + operator + " is not supported on " + target.type);
+            }
+            // The receiver is already on the stack, so the current value is read through a copy of it.
+            if (target.kind == Target.FIELD) {
+                code.op(DUP, 1);
+            } else if (target.kind == Target.RECORD) {
+                code.op(DUP2, 2);
+            }
+            read(target);
+            compound(node, operator, target.type, node.getValue());
+        }
+        write(target, keepValue);
+        return keepValue ? target.type : ApexType.VOID;
+    }
+    
+    // Combines the value already on the stack with the right-hand side and converts back to the target type.
+    private void compound(ASTNode node, TokenType operator, ApexType type, Expression value) {
+        if (type == ApexType.STRING) {
+            // String.concat would throw on a null receiver.
+            toString(type);
+            emitString(value, typeOf(value));
+            code.invoke(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+            return;
+        }
+        ApexType valueType = typeOf(value);
+        if (!valueType.isNumeric()) {
+            throw new UnsupportedConstruct(node, "Operator " + operator + " is not supported on " + valueType);
+        }
+        Numeric targetKind = Numeric.of(type);
+        Numeric kind = Numeric.widest(targetKind, Numeric.of(valueType));
+        unbox(targetKind);
+        convert(targetKind, kind);
+        pushNumber(value, valueType, kind);
+        operate(operator, kind);
+        convert(kind, targetKind);
+        box(targetKind);
+    }
+    
+    @Override
+    public ApexType visitAnnotation(Annotation node) {
+        return null;
+    }
+    
+    // A query in a static field initializer runs only once, so it is parsed where it stands.
+    @Override
+    public ApexType visitSoqlExpression(SoqlExpression node) {
+        if (inStaticInitializer) {
+            code.pushString(node.getQuery());
+            code.invoke(INVOKESTATIC, PLAN, "parse", "(Ljava/lang/String;)L" + PLAN + ";");
+        } else {
+            int plan = plans.indexOf(node.getQuery());
+            if (plan < 0) {
+                plan = plans.size();
+                plans.add(node.getQuery());
+            }
+            code.field(GETSTATIC, internalName(currentClass.getName()), planField(plan), "L" + PLAN + ";");
+        }
+        List<Expression> binds = node.getBinds();
+        code.pushInt(binds.size());
+        code.type(ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < binds.size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            emit(binds.get(i), ApexType.OBJECT);
+            code.op(AASTORE, -3);
+        }
+        code.invoke(INVOKEVIRTUAL, PLAN, "executeWith", "([Ljava/lang/Object;)Ljava/util/List;");
+        return ApexType.listOf(ApexType.SOBJECT);
+    }
+    
+    private static String planField(int plan) {
+        return "soql$" + (plan + 1);
+    }
+    
+    // A single record is wrapped in a one-element list, since the runtime takes lists only.
+    @Override
+    public ApexType visitDmlStatement(DmlStatement node) {
+        ApexType type = node.getTarget().accept(this);
+        if (type.getErasure().getName().equals("List")) {
+            // Already a list.
+        } else if (type.getKind() == ApexType.Kind.SOBJECT || type == ApexType.OBJECT) {
+            code.invoke(INVOKESTATIC, "java/util/Collections", "singletonList", "(Ljava/lang/Object;)Ljava/util/List;");
+        } else {
+            throw new UnsupportedConstruct(node, "Cannot " + node.getOperation() + " a value of type " + type);
+        }
+        String operation;
+        switch (node.getOperation()) {
+            case INSERT: operation = "insertRecords"; break;
+            case UPDATE: operation = "updateRecords"; break;
+            case DELETE: operation = "deleteRecords"; break;
+            default: operation = "upsertRecords"; break;
+        }
+        code.invoke(INVOKESTATIC, RUNTIME, operation, "(Ljava/util/List;)V");
+        return null;
+    }
+    
+    @Override
+    public ApexType visitErrorStatement(ErrorStatement node) {
+        throw new UnsupportedConstruct(node, "Cannot generate code for a statement with syntax errors");
+    }
+    
+    /**
+     * Something that can be read and assigned: a local, a static or instance
+     * field, or a field of an SObject record. Resolving it pushes the
+     * receiver, if any, so that a read or write only has to finish the access.
+     */
+    private static final class Target {
+        static final int LOCAL = 0;
+        static final int STATIC = 1;
+        static final int FIELD = 2;
+        static final int RECORD = 3;
+        
+        final int kind;
+        final ApexType type;
+        int slot;
+        String owner;
+        String name;
+        
+        Target(int kind, ApexType type) {
+            this.kind = kind;
+            this.type = type;
+        }
+    }
+    
+    private Target target(Expression expr) {
+        if (expr instanceof IdentifierExpression) {
+            String name = ((IdentifierExpression) expr).getName();
+            Local local = lookup(name);
+            if (local != null) {
+                Target target = new Target(Target.LOCAL, local.type);
+                target.slot = local.slot;
+                return target;
+            }
+            Target field = field(expr, currentClass.getName(), name);
+            if (field == null) {
+                throw new UnsupportedConstruct(expr, "Undefined variable '" + name + "'");
+            }
+            if (field.kind == Target.FIELD) {
+                if (staticContext) {
+                    throw new UnsupportedConstruct(expr, "Instance field '" + name + "' used in a static method");
+                }
+                code.load(0);
+            }
+            return field;
+        }
+        if (!(expr instanceof MemberExpression)) {
+            throw new UnsupportedConstruct(expr, "Expression cannot be assigned");
+        }
+        
+        MemberExpression member = (MemberExpression) expr;
+        Expression object = member.getObject();
+        String name = member.getProperty();
+        if (object instanceof IdentifierExpression && isTypeName(((IdentifierExpression) object).getName())) {
+            String typeName = ((IdentifierExpression) object).getName();
+            Target field = declaration(typeName) != null ? field(expr, typeName, name) : null;
+            if (field == null || field.kind != Target.STATIC) {
+                throw new UnsupportedConstruct(expr, "Static field '" + typeName + "." + name + "' not found");
+            }
+            return field;
+        }
+        
+        ApexType objectType = typeOf(object);
+        if (declaration(objectType.getName()) != null) {
+            Target field = field(expr, objectType.getName(), name);
+            if (field == null || field.kind != Target.FIELD) {
+                throw new UnsupportedConstruct(expr, "Field '" + name + "' not found in class '" + objectType + "'");
+            }
+            object.accept(this);
+            return field;
+        }
+        if (objectType.getKind() == ApexType.Kind.SOBJECT || objectType == ApexType.OBJECT) {
+            object.accept(this);
+            if (objectType == ApexType.OBJECT) {
+                code.type(CHECKCAST, "java/util/Map");
+            }
+            code.pushString(name);
+            Target target = new Target(Target.RECORD, ApexType.OBJECT);
+            target.name = name;
+            return target;
+        }
+        throw new UnsupportedConstruct(expr, "Cannot access '" + name + "' on " + objectType);
+    }
+    
+    // A field or enum constant declared on the class or a superclass, or null.
+    private Target field(ASTNode node, String className, String name) {
+        for (ClassDeclaration declaration : hierarchy(className)) {
+            if (declaration.getEnumConstants().contains(name)) {
+                return fieldTarget(node, Target.STATIC, ApexType.of(declaration.getName()), declaration, name);
+            }
+            for (VariableDeclaration field : declaration.getFields()) {
+                if (field.getName().equals(name)) {
+                    int kind = field.getModifiers().contains("static") ? Target.STATIC : Target.FIELD;
+                    return fieldTarget(node, kind, ApexType.of(field.getType()), declaration, name);
+                }
+            }
+        }
+        return null;
+    }
+    
+    private Target fieldTarget(ASTNode node, int kind, ApexType type, ClassDeclaration owner, String name) {
+        Target target = new Target(kind, type);
+        target.owner = userClass(node, owner.getName());
+        target.name = name;
+        return target;
+    }
+    
+    private void read(Target target) {
+        switch (target.kind) {
+            case Target.LOCAL:
+                code.load(target.slot);
+                break;
+            case Target.STATIC:
+                code.field(GETSTATIC, target.owner, target.name, descriptor(target.type));
+                break;
+            case Target.FIELD:
+                code.field(GETFIELD, target.owner, target.name, descriptor(target.type));
+                break;
+            default:
+                code.invoke(INVOKEINTERFACE, "java/util/Map", "get", "(Ljava/lang/Object;)Ljava/lang/Object;");
+                break;
+        }
+    }
+    
+    // Stores the value on top of the stack, leaving a copy of it behind when keepValue is set.
+    private void write(Target target, boolean keepValue) {
+        switch (target.kind) {
+            case Target.LOCAL:
+                if (keepValue) code.op(DUP, 1);
+                code.store(target.slot);
+                break;
+            case Target.STATIC:
+                if (keepValue) code.op(DUP, 1);
+                code.field(PUTSTATIC, target.owner, target.name, descriptor(target.type));
+                break;
+            case Target.FIELD:
+                if (keepValue) code.op(DUP_X1, 1);
+                code.field(PUTFIELD, target.owner, target.name, descriptor(target.type));
+                break;
+            default:
+                if (keepValue) code.op(DUP_X2, 1);
+                code.invoke(INVOKEINTERFACE, "java/util/Map", "put",
+                            "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+                code.op(POP, -1);
+                break;
+        }
+    }
+    
+    /**
+     * Static type of an expression, worked out without emitting code.
+     * Arithmetic needs both operand types before either operand is pushed.
+     */
+    private ApexType typeOf(Expression expr) {
+        if (expr instanceof LiteralExpression) {
+            return ApexType.of(((LiteralExpression) expr).getType());
+        }
+        if (expr instanceof IdentifierExpression) {
+            String name = ((IdentifierExpression) expr).getName();
+            Local local = lookup(name);
+            if (local != null) {
+                return local.type;
+            }
+            Target field = field(expr, currentClass.getName(), name);
+            if (field == null) {
+                throw new UnsupportedConstruct(expr, "Undefined variable '" + name + "'");
+            }
+            return field.type;
+        }
+        if (expr instanceof MemberExpression) {
+            MemberExpression member = (MemberExpression) expr;
+            Expression object = member.getObject();
+            String className = object instanceof IdentifierExpression
+                    && isTypeName(((IdentifierExpression) object).getName())
+                ? ((IdentifierExpression) object).getName()
+                : typeOf(object).getName();
+            Target field = declaration(className) != null ? field(expr, className, member.getProperty()) : null;
+            return field != null ? field.type : ApexType.OBJECT;
+        }
+        if (expr instanceof CallExpression) {
+            return resolveCall((CallExpression) expr).returnType;
+        }
+        if (expr instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expr;
+            switch (binary.getOperator()) {
+                case PLUS:
+                case MINUS:
+                case MULTIPLY:
+                case DIVIDE:
+                case MODULO:
+                    ApexType left = typeOf(binary.getLeft());
+                    ApexType right = typeOf(binary.getRight());
+                    if (left.isNumeric() && right.isNumeric()) {
+                        return Numeric.widest(Numeric.of(left), Numeric.of(right)).type;
+                    }
+                    return ApexType.STRING;
+                default:
+                    return ApexType.BOOLEAN;
+            }
+        }
+        if (expr instanceof UnaryExpression) {
+            UnaryExpression unary = (UnaryExpression) expr;
+            if (unary.getOperator() == TokenType.LOGICAL_NOT) {
+                return ApexType.BOOLEAN;
+            }
+            ApexType operand = typeOf(unary.getOperand());
+            return operand.isNumeric() ? Numeric.of(operand).type : operand;
+        }
+        if (expr instanceof AssignmentExpression) {
+            return typeOf(((AssignmentExpression) expr).getTarget());
+        }
+        if (expr instanceof SoqlExpression) {
+            return ApexType.listOf(ApexType.SOBJECT);
+        }
+        throw new UnsupportedConstruct(expr, "Unsupported expression");
+    }
+    
+    // Evaluates the expression and converts the result to the given type.
+    private void emit(Expression expr, ApexType type) {
+        coerce(expr.accept(this), type);
+    }
+    
+    private void coerce(ApexType from, ApexType to) {
+        if (from == to || from == ApexType.NULL || to == ApexType.VOID) {
+            return;
+        }
+        if (from.isNumeric() && to.isNumeric()) {
+            Numeric source = Numeric.of(from);
+            Numeric target = Numeric.of(to);
+            if (source != target) {
+                unbox(source);
+                convert(source, target);
+                box(target);
+            }
+            return;
+        }
+        if (to == ApexType.STRING && from != ApexType.OBJECT) {
+            toString(from);
+            return;
+        }
+        if (!internalName(from).equals(internalName(to))) {
+            cast(to);
+        }
+    }
+    
+    private void cast(ApexType type) {
+        String name = internalName(type);
+        if (!name.equals("java/lang/Object")) {
+            code.type(CHECKCAST, name);
+        }
+    }
+    
+    private void throwError(String exception, String message) {
+        code.type(NEW, exception);
+        code.op(DUP, 1);
+        code.pushString(message);
+        code.invoke(INVOKESPECIAL, exception, "<init>", "(Ljava/lang/String;)V");
+        code.op(ATHROW, -1);
+    }
+    
+    private String descriptor(ApexType type) {
+        return type == ApexType.VOID ? "V" : "L" + internalName(type) + ";";
+    }
+    
+    private String internalName(ApexType type) {
+        switch (type.getErasure().getName()) {
+            case "Integer": return "java/lang/Integer";
+            case "Long": return "java/lang/Long";
+            case "Decimal": return BIG_DECIMAL;
+            case "Double": return "java/lang/Double";
+            case "Boolean": return "java/lang/Boolean";
+            case "String":
+            case "Id": return "java/lang/String";
+            case "List": return "java/util/List";
+            case "Set": return "java/util/Set";
+            case "Map": return "java/util/Map";
+            default:
+                if (type.getKind() == ApexType.Kind.SOBJECT) {
+                    return "java/util/Map";
+                }
+                return binaryNames.getOrDefault(type.getName(), "java/lang/Object");
+        }
+    }
+    
+    private String internalName(String typeName) {
+        return internalName(ApexType.of(typeName));
+    }
+    
+    private boolean isTypeName(String name) {
+        return (name.equals("System") || binaryNames.containsKey(name)) && isUnresolved(name);
+    }
+    
+    // A name that is neither a variable nor a declared type, such as a system class like Math.
+    private boolean isUnresolved(String name) {
+        return lookup(name) == null && field(null, currentClass.getName(), name) == null;
+    }
+    
+    private ClassDeclaration declaration(String name) {
+        ClassIndex.ClassInfo info = index.getClass(name);
+        return info != null ? info.getDeclaration() : null;
+    }
+    
+    // The class, then its superclasses, then every interface any of them implements or extends.
+    private List<ClassDeclaration> hierarchy(String className) {
+        List<ClassDeclaration> chain = new ArrayList<>();
+        ClassDeclaration type = declaration(className);
+        while (type != null && !chain.contains(type)) {
+            chain.add(type);
+            type = type.getSuperClass() != null ? declaration(type.getSuperClass()) : null;
+        }
+        for (int i = 0; i < chain.size(); i++) {
+            for (String iface : chain.get(i).getInterfaces()) {
+                ClassDeclaration extended = declaration(iface);
+                if (extended != null && !chain.contains(extended)) {
+                    chain.add(extended);
+                }
+            }
+        }
+        return chain;
+    }
+    
+    private static final class Local {
+        final int slot;
+        final ApexType type;
+        
+        Local(int slot, ApexType type) {
+            this.slot = slot;
+            this.type = type;
+        }
+    }
+    
+    // Every local holds a reference, so each takes exactly one slot.
+    private int define(String name, ApexType type) {
+        int slot = nextLocal++;
+        scopes.peek().put(name, new Local(slot, type));
+        code.useLocals(nextLocal);
+        return slot;
+    }
+    
+    private Local lookup(String name) {
+        for (Map<String, Local> scope : scopes) {
+            Local local = scope.get(name);
+            if (local != null) {
+                return local;
+            }
+        }
+        return null;
+    }
+    
+    private void pushScope() {
+        scopes.push(new HashMap<>());
+        scopeStarts.push(nextLocal);
+    }
+    
+    // Slots of a closed scope are reused by the next one.
+    private void popScope() {
+        scopes.pop();
+        nextLocal = scopeStarts.pop();
+    }
+    
+    private void report(UnsupportedConstruct e) {
+        classFailed = true;
+        diagnostics.add(e.node != null ? Diagnostic.error(DiagnosticCode.UNSUPPORTED, e.node, e.getMessage())
+                                       : Diagnostic.error(DiagnosticCode.UNSUPPORTED, e.getMessage()));
+    }
+    
+    private static final class Invocation {
+        final int opcode;
+        final String owner;
+        final String name;
+        final String descriptor;
+        final ApexType returnType;
+        Expression receiver;
+        // Declared parameter types of an Apex method; null for JDK methods, which are converted by descriptor.
+        List<ApexType> parameters;
+        // System.debug and the System assertions, which are compiled inline.
+        boolean system;
+        
+        Invocation(int opcode, String owner, String name, String descriptor, ApexType returnType) {
+            this.opcode = opcode;
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.returnType = returnType;
+        }
+    }
+    
+    // How a numeric Apex type is computed with: its JVM primitive, box class and opcode offset from the int form.
+    // A Decimal stays a BigDecimal reference and is computed with Decimals, so it has no primitive form.
+    private enum Numeric {
+        INT(ApexType.INTEGER, "java/lang/Integer", "int", "I", 0, 1),
+        LONG(BytecodeGenerator.LONG, "java/lang/Long", "long", "J", 1, 2),
+        DOUBLE(ApexType.of("Double"), "java/lang/Double", "double", "D", 3, 2),
+        DECIMAL(ApexType.DECIMAL, BIG_DECIMAL, null, null, -1, 1);
+        
+        final ApexType type;
+        final String box;
+        final String primitiveName;
+        final String descriptor;
+        final int offset;
+        final int size;
+        
+        Numeric(ApexType type, String box, String primitiveName, String descriptor, int offset, int size) {
+            this.type = type;
+            this.box = box;
+            this.primitiveName = primitiveName;
+            this.descriptor = descriptor;
+            this.offset = offset;
+            this.size = size;
+        }
+        
+        static Numeric of(ApexType type) {
+            switch (type.getName()) {
+                case "Integer": return INT;
+                case "Long": return LONG;
+                case "Double": return DOUBLE;
+                default: return DECIMAL;
+            }
+        }
+        
+        static Numeric widest(Numeric a, Numeric b) {
+            return a.ordinal() >= b.ordinal() ? a : b;
+        }
+    }
+    
+    private static final class UnsupportedConstruct extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        // Only needed while the class is being generated, so it is not part of the serialized form.
+        final transient ASTNode node;
+        
+        UnsupportedConstruct(ASTNode node, String message) {
+            super(message);
+            this.node = node;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,494 @@
+package com.apexcompiler.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one JVM class file: constant pool, fields and methods with their
+ * Code attribute. Files are written at version 49 (Java 5), which every JVM
+ * still loads and which is verified without stack map frames, so the
+ * emitter only has to track stack depth, not types.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_ENUM = 0x4000;
+    
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ALOAD_0 = 0x2a;
+    static final int ASTORE = 0x3a;
+    static final int ASTORE_0 = 0x4b;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DUP_X1 = 0x5a;
+    static final int DUP_X2 = 0x5b;
+    static final int DUP2 = 0x5c;
+    static final int IADD = 0x60;
+    static final int LADD = 0x61;
+    static final int DADD = 0x63;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IREM = 0x70;
+    static final int INEG = 0x74;
+    static final int I2L = 0x85;
+    static final int I2D = 0x87;
+    static final int L2I = 0x88;
+    static final int L2D = 0x8a;
+    static final int D2I = 0x8e;
+    static final int D2L = 0x8f;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+    static final int IFNULL = 0xc6;
+    static final int IFNONNULL = 0xc7;
+    
+    private static final int VERSION = 49;
+    
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private int sourceFileName;
+    
+    ClassFileWriter(int access, String name, String superName, List<String> interfaceNames) {
+        this.access = access;
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        for (String iface : interfaceNames) {
+            interfaces.add(classRef(iface));
+        }
+    }
+    
+    void setSourceFile(String name) {
+        utf8("SourceFile");
+        sourceFileName = utf8(name);
+    }
+    
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+    
+    // Abstract methods have no code; the caller must not emit any into the returned writer.
+    Code method(int access, String name, String descriptor) {
+        return new Code(access, name, descriptor);
+    }
+    
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int iface : interfaces) {
+                out.writeShort(iface);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            if (sourceFileName != 0) {
+                out.writeShort(1);
+                out.writeShort(utf8("SourceFile"));
+                out.writeInt(2);
+                out.writeShort(sourceFileName);
+            } else {
+                out.writeShort(0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    // Constant pool entries are shared: asking twice for the same constant returns the same index.
+    int utf8(String value) {
+        return constant("U" + value, 1, 1, out -> out.writeUTF(value));
+    }
+    
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, 7, out -> out.writeShort(name));
+    }
+    
+    int string(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, 1, 8, out -> out.writeShort(utf8));
+    }
+    
+    int integer(int value) {
+        return constant("I" + value, 1, 3, out -> out.writeInt(value));
+    }
+    
+    int longConstant(long value) {
+        return constant("J" + value, 2, 5, out -> out.writeLong(value));
+    }
+    
+    int doubleConstant(double value) {
+        return constant("D" + Double.doubleToRawLongBits(value), 2, 6, out -> out.writeDouble(value));
+    }
+    
+    int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ' ' + descriptor, 1, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + '.' + name + descriptor, 1, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+    
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    private int constant(String key, int slots, int tag, EntryWriter writer) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int index = poolCount;
+        try {
+            pool.writeByte(tag);
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolCount += slots;
+        if (poolCount > 0xFFFF) {
+            throw new RuntimeException("Too many constants in class file");
+        }
+        poolIndex.put(key, index);
+        return index;
+    }
+    
+    // Number of stack slots a descriptor's value takes.
+    static int size(char descriptor) {
+        return descriptor == 'V' ? 0 : descriptor == 'J' || descriptor == 'D' ? 2 : 1;
+    }
+    
+    /**
+     * A jump target. Its stack depth is learned from the first jump to it, so
+     * code that follows an unconditional jump starts at the right depth.
+     */
+    static final class Label {
+        private int position = -1;
+        private int stack = -1;
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+    
+    /**
+     * Code of one method. Every instruction updates the current and maximum
+     * stack depth, so the Code attribute's max_stack is exact.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private byte[] code = new byte[64];
+        private int length;
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+        private boolean reachable = true;
+        private final List<int[]> lines = new ArrayList<>();
+        
+        private Code(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+        }
+        
+        boolean isReachable() {
+            return reachable;
+        }
+        
+        void useLocals(int count) {
+            maxLocals = Math.max(maxLocals, count);
+        }
+        
+        void line(int line) {
+            if (line > 0 && (lines.isEmpty() || lines.get(lines.size() - 1)[1] != line)) {
+                lines.add(new int[] {length, line});
+            }
+        }
+        
+        void op(int opcode, int stackChange) {
+            u1(opcode);
+            adjust(stackChange);
+            if (opcode == GOTO || opcode == ATHROW || opcode == RETURN || opcode == ARETURN) {
+                reachable = false;
+            }
+        }
+        
+        void load(int slot) {
+            if (slot < 4) {
+                op(ALOAD_0 + slot, 1);
+            } else {
+                op(ALOAD, 1);
+                u1(slot);
+            }
+        }
+        
+        void loadInt(int slot) {
+            op(ILOAD, 1);
+            u1(slot);
+        }
+        
+        void store(int slot) {
+            if (slot < 4) {
+                op(ASTORE_0 + slot, -1);
+            } else {
+                op(ASTORE, -1);
+                u1(slot);
+            }
+        }
+        
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH, 1);
+                u2(value);
+            } else {
+                ldc(integer(value));
+            }
+        }
+        
+        void pushLong(long value) {
+            op(LDC2_W, 2);
+            u2(longConstant(value));
+        }
+        
+        void pushDouble(double value) {
+            op(LDC2_W, 2);
+            u2(doubleConstant(value));
+        }
+        
+        void pushString(String value) {
+            ldc(string(value));
+        }
+        
+        private void ldc(int index) {
+            if (index < 256) {
+                op(LDC, 1);
+                u1(index);
+            } else {
+                op(LDC_W, 1);
+                u2(index);
+            }
+        }
+        
+        void type(int opcode, String internalName) {
+            op(opcode, opcode == NEW ? 1 : 0);
+            u2(classRef(internalName));
+        }
+        
+        void field(int opcode, String owner, String name, String descriptor) {
+            int size = size(descriptor.charAt(0));
+            int change;
+            switch (opcode) {
+                case GETSTATIC: change = size; break;
+                case PUTSTATIC: change = -size; break;
+                case GETFIELD: change = size - 1; break;
+                default: change = -size - 1; break;
+            }
+            op(opcode, change);
+            u2(memberRef(9, owner, name, descriptor));
+        }
+        
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            int arguments = 0;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                char c = descriptor.charAt(i);
+                arguments += size(c);
+                while (descriptor.charAt(i) == '[') i++;
+                i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+            }
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            boolean iface = opcode == INVOKEINTERFACE;
+            op(opcode, size(descriptor.charAt(i + 1)) - arguments - receiver);
+            u2(memberRef(iface ? 11 : 10, owner, name, descriptor));
+            if (iface) {
+                u1(arguments + receiver);
+                u1(0);
+            }
+        }
+        
+        void jump(int opcode, Label target) {
+            int at = length;
+            op(opcode, opcode == GOTO ? 0 : opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE ? -2 : -1);
+            if (target.stack < 0) {
+                target.stack = stack;
+            }
+            if (target.position >= 0) {
+                u2(target.position - at);
+            } else {
+                target.fixups.add(at);
+                u2(0);
+            }
+        }
+        
+        void mark(Label label) {
+            label.position = length;
+            if (!reachable) {
+                stack = Math.max(label.stack, 0);
+                reachable = true;
+            } else if (label.stack < 0) {
+                label.stack = stack;
+            }
+            for (int at : label.fixups) {
+                int offset = length - at;
+                if (offset > Short.MAX_VALUE) {
+                    throw new RuntimeException("Method too large");
+                }
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+            label.fixups.clear();
+        }
+        
+        void end() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(name);
+                out.writeShort(descriptor);
+                if (length == 0) {
+                    out.writeShort(0);
+                } else {
+                    if (length > 0xFFFF) {
+                        throw new RuntimeException("Method too large");
+                    }
+                    int lineTable = lines.isEmpty() ? 0 : 8 + lines.size() * 4;
+                    out.writeShort(1);
+                    out.writeShort(utf8("Code"));
+                    out.writeInt(12 + length + lineTable);
+                    out.writeShort(maxStack);
+                    out.writeShort(maxLocals);
+                    out.writeInt(length);
+                    out.write(code, 0, length);
+                    out.writeShort(0);
+                    if (lines.isEmpty()) {
+                        out.writeShort(0);
+                    } else {
+                        out.writeShort(1);
+                        out.writeShort(utf8("LineNumberTable"));
+                        out.writeInt(2 + lines.size() * 4);
+                        out.writeShort(lines.size());
+                        for (int[] entry : lines) {
+                            out.writeShort(entry[0]);
+                            out.writeShort(entry[1]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+        
+        private void adjust(int change) {
+            stack += change;
+            maxStack = Math.max(maxStack, stack);
+        }
+        
+        private void u1(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+        
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+    }
+}
\ No newline at end of file
@@ -2,19 +2,76 @@ package com.apexcompiler.codegen;
 
 import com.apexcompiler.ast.*;
 import com.apexcompiler.lexer.TokenType;
+import com.apexcompiler.semantic.TypeFacts;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
 
+/**
+ * Generates Java source from an analyzed AST. Apex Integer and Boolean
+ * values may be null, so they are boxed in signatures and fields; only
+ * locals the analyzer proved never null become Java primitives. Decimals
+ * are exact ApexDecimal values, so their operators become method calls.
+ * A String that a loop only appends to is built in a StringBuilder instead
+ * of being copied on every iteration. Each distinct SOQL query becomes a
+ * static plan field of its class, parsed once when the class is loaded, so
+ * running a query only binds its variables.
+ */
 public class JavaCodeGenerator implements ASTVisitor<String> {
+    private final TypeFacts facts;
     private StringBuilder output;
     private int indentLevel = 0;
+    private boolean secondaryType = false;
+    // The StringBuilder standing in for each accumulated String local inside its loop.
+    private final Map<String, String> builders = new HashMap<>();
+    private int builderCount;
+    // The plan field for each query text in the class being generated.
+    private Map<String, String> plans = new LinkedHashMap<>();
+    
+    public JavaCodeGenerator() {
+        this(TypeFacts.NONE);
+    }
+    
+    public JavaCodeGenerator(TypeFacts facts) {
+        this.facts = facts;
+    }
     
     public String generate(ClassDeclaration classDecl) {
         output = new StringBuilder();
+        builderCount = 0;
+        appendHeader();
         classDecl.accept(this);
         return output.toString();
     }
     
+    // A Java file may hold only one public top-level type, so the rest are emitted package-private.
+    public String generate(CompilationUnit unit) {
+        output = new StringBuilder();
+        builderCount = 0;
+        appendHeader();
+        List<ClassDeclaration> types = unit.getTypes();
+        for (int i = 0; i < types.size(); i++) {
+            if (i > 0) {
+                newLine();
+                secondaryType = true;
+            }
+            types.get(i).accept(this);
+        }
+        secondaryType = false;
+        return output.toString();
+    }
+    
+    private void appendHeader() {
+        output.append("// Generated from Apex source\n");
+        output.append("import java.util.*;\n\n");
+    }
+    
     private void indent() {
         for (int i = 0; i < indentLevel; i++) {
             output.append("    ");
@@ -27,10 +84,10 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
     
     private String apexToJavaType(String apexType) {
         switch (apexType) {
-            case "Integer": return "int";
-            case "Decimal": return "double";
+            case "Integer": return "Integer";
+            case "Decimal": return "ApexDecimal";
             case "String": return "String";
-            case "Boolean": return "boolean";
+            case "Boolean": return "Boolean";
             case "void": return "void";
             case "List": return "java.util.List";
             case "Set": return "java.util.Set";
@@ -41,21 +98,27 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
     
     @Override
     public String visitClassDeclaration(ClassDeclaration node) {
-        output.append("// Generated from Apex source\n");
-        output.append("import java.util.*;\n\n");
+        boolean nested = indentLevel > 0;
+        indent();
         
-        if (node.getModifiers().contains("public")) {
+        if (node.getModifiers().contains("public") && !(secondaryType && !nested)) {
             output.append("public ");
         }
+        if (nested && node.getKind() == ClassDeclaration.Kind.CLASS) {
+            output.append("static ");
+        }
+        if (node.getModifiers().contains("abstract")) {
+            output.append("abstract ");
+        }
         
-        output.append("class ").append(node.getName());
+        output.append(node.getKind().name().toLowerCase()).append(" ").append(node.getName());
         
         if (node.getSuperClass() != null) {
             output.append(" extends ").append(node.getSuperClass());
         }
         
         if (!node.getInterfaces().isEmpty()) {
-            output.append(" implements ");
+            output.append(node.isInterface() ? " extends " : " implements ");
             StringJoiner joiner = new StringJoiner(", ");
             for (String iface : node.getInterfaces()) {
                 joiner.add(iface);
@@ -66,13 +129,29 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         output.append(" {\n");
         indentLevel++;
         
+        if (!node.getEnumConstants().isEmpty()) {
+            indent();
+            output.append(String.join(", ", node.getEnumConstants()));
+            newLine();
+        }
+        
+        // The plans go ahead of the fields, so static initializers can already run queries.
+        Map<String, String> outerPlans = plans;
+        plans = new LinkedHashMap<>();
+        int plansAt = output.length();
+        
         for (VariableDeclaration field : node.getFields()) {
             indent();
             field.accept(this);
             newLine();
         }
         
-        if (!node.getFields().isEmpty() && !node.getMethods().isEmpty()) {
+        if (!node.getFields().isEmpty() && (!node.getInnerClasses().isEmpty() || !node.getMethods().isEmpty())) {
+            newLine();
+        }
+        
+        for (ClassDeclaration inner : node.getInnerClasses()) {
+            inner.accept(this);
             newLine();
         }
         
@@ -81,12 +160,48 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
             newLine();
         }
         
+        if (!plans.isEmpty()) {
+            output.insert(plansAt, planFields(node.getFields().isEmpty()));
+        }
+        plans = outerPlans;
+        
         indentLevel--;
+        indent();
         output.append("}\n");
         
         return null;
     }
     
+    private String planFields(boolean separate) {
+        String indentation = "    ".repeat(indentLevel);
+        StringBuilder fields = new StringBuilder();
+        for (Map.Entry<String, String> plan : plans.entrySet()) {
+            fields.append(indentation).append("private static final com.apexcompiler.runtime.SoqlQuery ")
+                  .append(plan.getValue()).append(" = com.apexcompiler.runtime.SoqlQuery.parse(")
+                  .append(javaString(plan.getKey())).append(");\n");
+        }
+        if (separate) {
+            fields.append("\n");
+        }
+        return fields.toString();
+    }
+    
+    private static String javaString(String text) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default: literal.append(c); break;
+            }
+        }
+        return literal.append('"').toString();
+    }
+    
     @Override
     public String visitMethodDeclaration(MethodDeclaration node) {
         indent();
@@ -104,12 +219,11 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         }
         output.append(paramJoiner.toString());
         
-        output.append(") ");
-        
         if (node.getBody() != null) {
+            output.append(") ");
             node.getBody().accept(this);
         } else {
-            output.append(";\n");
+            output.append(");");
         }
         
         return null;
@@ -121,18 +235,62 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
             output.append(modifier).append(" ");
         }
         
-        output.append(node.getType().toJavaType()).append(" ");
-        output.append(node.getName());
+        output.append(facts.isPrimitive(node) ? primitiveType(node.getType().getBaseType()) : node.getType().toJavaType());
+        output.append(" ").append(node.getName());
         
         if (node.getInitializer() != null) {
             output.append(" = ");
-            node.getInitializer().accept(this);
+            value(node.getInitializer());
         }
         
         output.append(";");
         return null;
     }
     
+    private static String primitiveType(String apexType) {
+        switch (apexType) {
+            case "Integer": return "int";
+            default: return "boolean";
+        }
+    }
+    
+    // Integers stored into Decimals are converted first; valueOf has an overload for int and for a nullable Integer.
+    private void value(Expression value) {
+        if (facts.conversion(value) == TypeFacts.Conversion.NONE) {
+            value.accept(this);
+        } else {
+            output.append("ApexDecimal.valueOf(");
+            value.accept(this);
+            output.append(")");
+        }
+    }
+    
+    // An operand of a Decimal operation as an ApexDecimal; null stays null.
+    private void decimal(Expression operand) {
+        if (facts.isDecimal(operand) || isNull(operand)) {
+            operand.accept(this);
+        } else {
+            output.append("ApexDecimal.valueOf(");
+            operand.accept(this);
+            output.append(")");
+        }
+    }
+    
+    private static boolean isNull(Expression expr) {
+        return expr instanceof LiteralExpression && ((LiteralExpression) expr).getValue() == null;
+    }
+    
+    private static String decimalMethod(TokenType operator) {
+        switch (operator) {
+            case PLUS: case PLUS_ASSIGN: return "add";
+            case MINUS: case MINUS_ASSIGN: return "subtract";
+            case MULTIPLY: case MULTIPLY_ASSIGN: return "multiply";
+            case DIVIDE: case DIVIDE_ASSIGN: return "divide";
+            case MODULO: return "remainder";
+            default: return null;
+        }
+    }
+    
     @Override
     public String visitIfStatement(IfStatement node) {
         indent();
@@ -175,17 +333,20 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
     
     @Override
     public String visitWhileStatement(WhileStatement node) {
+        List<String> accumulators = openBuilders(node);
         indent();
         output.append("while (");
         node.getCondition().accept(this);
         output.append(") ");
         node.getBody().accept(this);
         newLine();
+        closeBuilders(accumulators);
         return null;
     }
     
     @Override
     public String visitForStatement(ForStatement node) {
+        List<String> accumulators = openBuilders(node);
         indent();
         output.append("for (");
         
@@ -208,16 +369,41 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         output.append(") ");
         node.getBody().accept(this);
         newLine();
+        closeBuilders(accumulators);
         return null;
     }
     
+    // A null String gets its builder on the first append, so a loop that appends nothing leaves it null.
+    private List<String> openBuilders(Statement loop) {
+        List<String> accumulators = facts.accumulators(loop);
+        for (String name : accumulators) {
+            String builder = name + "$" + ++builderCount;
+            builders.put(name, builder);
+            indent();
+            output.append("StringBuilder ").append(builder).append(" = ").append(name)
+                .append(" != null ? new StringBuilder(").append(name).append(") : null;");
+            newLine();
+        }
+        return accumulators;
+    }
+    
+    private void closeBuilders(List<String> accumulators) {
+        for (String name : accumulators) {
+            String builder = builders.remove(name);
+            indent();
+            output.append(name).append(" = ").append(builder).append(" != null ? ").append(builder)
+                .append(".toString() : null;");
+            newLine();
+        }
+    }
+    
     @Override
     public String visitReturnStatement(ReturnStatement node) {
         indent();
         output.append("return");
         if (node.getValue() != null) {
             output.append(" ");
-            node.getValue().accept(this);
+            value(node.getValue());
         }
         output.append(";");
         newLine();
@@ -239,7 +425,13 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         indentLevel++;
         
         for (Statement stmt : node.getStatements()) {
-            stmt.accept(this);
+            if (stmt instanceof BlockStatement) {
+                indent();
+                stmt.accept(this);
+                newLine();
+            } else {
+                stmt.accept(this);
+            }
         }
         
         indentLevel--;
@@ -250,6 +442,33 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
     
     @Override
     public String visitBinaryExpression(BinaryExpression node) {
+        if (facts.isConcatenation(node)) {
+            output.append("(");
+            List<Expression> parts = concatenated(node);
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0) {
+                    output.append(" + ");
+                }
+                parts.get(i).accept(this);
+            }
+            output.append(")");
+            return null;
+        }
+        if (facts.isDecimal(node) || facts.isDecimal(node.getLeft()) || facts.isDecimal(node.getRight())) {
+            if (visitDecimalOperation(node)) {
+                return null;
+            }
+        }
+        // Boxed Integers and Booleans compare by reference in Java; Objects.equals also keeps null equal to null.
+        if (facts.isBoxedEquality(node)) {
+            output.append(node.getOperator() == TokenType.EQUALS ? "java.util.Objects.equals(" : "!java.util.Objects.equals(");
+            node.getLeft().accept(this);
+            output.append(", ");
+            node.getRight().accept(this);
+            output.append(")");
+            return null;
+        }
+        
         output.append("(");
         node.getLeft().accept(this);
         output.append(" ");
@@ -282,8 +501,71 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         return null;
     }
     
+    // The operands of a chain of String +, left to right. javac compiles the flat chain into one concatenation.
+    private List<Expression> concatenated(Expression expr) {
+        List<Expression> parts = new ArrayList<>();
+        while (expr instanceof BinaryExpression && facts.isConcatenation(expr)) {
+            parts.add(((BinaryExpression) expr).getRight());
+            expr = ((BinaryExpression) expr).getLeft();
+        }
+        parts.add(expr);
+        Collections.reverse(parts);
+        return parts;
+    }
+    
+    // Arithmetic, comparisons and equality on Decimals; false for anything else, such as String concatenation.
+    private boolean visitDecimalOperation(BinaryExpression node) {
+        TokenType operator = node.getOperator();
+        if (operator == TokenType.EQUALS || operator == TokenType.NOT_EQUALS) {
+            output.append(operator == TokenType.EQUALS ? "ApexDecimal.equal(" : "!ApexDecimal.equal(");
+            decimal(node.getLeft());
+            output.append(", ");
+            decimal(node.getRight());
+            output.append(")");
+            return true;
+        }
+        
+        String comparison;
+        switch (operator) {
+            case LESS_THAN: comparison = " < 0)"; break;
+            case LESS_EQUAL: comparison = " <= 0)"; break;
+            case GREATER_THAN: comparison = " > 0)"; break;
+            case GREATER_EQUAL: comparison = " >= 0)"; break;
+            default: comparison = null; break;
+        }
+        String method = comparison != null ? "compareTo" : decimalMethod(operator);
+        if (method == null || !facts.isDecimal(node) && comparison == null) {
+            return false;
+        }
+        
+        // The right operand may stay an Integer: every method also takes a long.
+        if (comparison != null) {
+            output.append("(");
+        }
+        decimal(node.getLeft());
+        output.append(".").append(method).append("(");
+        node.getRight().accept(this);
+        output.append(")");
+        if (comparison != null) {
+            output.append(comparison);
+        }
+        return true;
+    }
+    
     @Override
     public String visitUnaryExpression(UnaryExpression node) {
+        if (facts.isDecimal(node.getOperand())) {
+            if (node.getOperator() == TokenType.MINUS) {
+                node.getOperand().accept(this);
+                output.append(".negate()");
+                return null;
+            }
+            if (node.getOperator() == TokenType.PLUS) {
+                node.getOperand().accept(this);
+                return null;
+            }
+        }
+        
         switch (node.getOperator()) {
             case MINUS: output.append("-"); break;
             case PLUS: output.append("+"); break;
@@ -308,7 +590,7 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
             StringBuilder argBuilder = new StringBuilder();
             StringBuilder originalOutput = output;
             output = argBuilder;
-            arg.accept(this);
+            value(arg);
             output = originalOutput;
             argJoiner.add(argBuilder.toString());
         }
@@ -334,12 +616,25 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
             output.append("\"").append(node.getValue()).append("\"");
         } else if (node.getValue() instanceof Boolean) {
             output.append(node.getValue().toString());
+        } else if (node.getValue() instanceof BigDecimal) {
+            decimalLiteral((BigDecimal) node.getValue());
         } else {
             output.append(node.getValue().toString());
         }
         return null;
     }
     
+    // Decimal literals keep the digits and scale they were written with, so 1.00 stays 1.00.
+    private void decimalLiteral(BigDecimal decimal) {
+        if (decimal.scale() >= 0 && decimal.unscaledValue().bitLength() < 64) {
+            long unscaled = decimal.unscaledValue().longValue();
+            output.append("ApexDecimal.of(").append(unscaled).append(unscaled == (int) unscaled ? "" : "L")
+                .append(", ").append(decimal.scale()).append(")");
+        } else {
+            output.append("ApexDecimal.valueOf(\"").append(decimal.toPlainString()).append("\")");
+        }
+    }
+    
     @Override
     public String visitIdentifierExpression(IdentifierExpression node) {
         output.append(node.getName());
@@ -348,8 +643,37 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
     
     @Override
     public String visitAssignmentExpression(AssignmentExpression node) {
+        String builder = facts.isAppend(node) ? builders.get(((IdentifierExpression) node.getTarget()).getName()) : null;
+        if (builder != null) {
+            // As in Apex, appending to a null String starts from "null".
+            output.append("(").append(builder).append(" != null ? ").append(builder).append(" : (")
+                .append(builder).append(" = new StringBuilder(\"null\")))");
+            List<Expression> parts = concatenated(node.getValue());
+            // s = s + x appends everything after the leading s.
+            for (Expression part : node.getOperator() == TokenType.ASSIGN ? parts.subList(1, parts.size()) : parts) {
+                output.append(".append(");
+                if (isNull(part)) {
+                    output.append("\"null\"");
+                } else {
+                    part.accept(this);
+                }
+                output.append(")");
+            }
+            return null;
+        }
+        
         node.getTarget().accept(this);
         
+        String method = decimalMethod(node.getOperator());
+        if (method != null && facts.isDecimal(node.getTarget())) {
+            output.append(" = ");
+            node.getTarget().accept(this);
+            output.append(".").append(method).append("(");
+            node.getValue().accept(this);
+            output.append(")");
+            return null;
+        }
+        
         switch (node.getOperator()) {
             case ASSIGN: output.append(" = "); break;
             case PLUS_ASSIGN: output.append(" += "); break;
@@ -359,7 +683,7 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
             default: output.append(" = "); break;
         }
         
-        node.getValue().accept(this);
+        value(node.getValue());
         return null;
     }
     
@@ -392,9 +716,16 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
     
     @Override
     public String visitSoqlExpression(SoqlExpression node) {
-        output.append("MockDataService.executeSoql(\"");
-        output.append(node.getQuery().replace("\"", "\\\""));
-        output.append("\")");
+        String plan = plans.computeIfAbsent(node.getQuery(), query -> "soql$" + (plans.size() + 1));
+        output.append(plan).append(".executeWith(");
+        List<Expression> binds = node.getBinds();
+        for (int i = 0; i < binds.size(); i++) {
+            if (i > 0) {
+                output.append(", ");
+            }
+            binds.get(i).accept(this);
+        }
+        output.append(")");
         return null;
     }
     
@@ -403,16 +734,16 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         indent();
         switch (node.getOperation()) {
             case INSERT:
-                output.append("MockDataService.insertRecords(");
+                output.append("com.apexcompiler.runtime.MockDataService.insertRecords(");
                 break;
             case UPDATE:
-                output.append("MockDataService.updateRecords(");
+                output.append("com.apexcompiler.runtime.MockDataService.updateRecords(");
                 break;
             case DELETE:
-                output.append("MockDataService.deleteRecords(");
+                output.append("com.apexcompiler.runtime.MockDataService.deleteRecords(");
                 break;
             case UPSERT:
-                output.append("MockDataService.upsertRecords(");
+                output.append("com.apexcompiler.runtime.MockDataService.upsertRecords(");
                 break;
         }
         node.getTarget().accept(this);
@@ -420,4 +751,9 @@ public class JavaCodeGenerator implements ASTVisitor<String> {
         newLine();
         return null;
     }
+    
+    @Override
+    public String visitErrorStatement(ErrorStatement node) {
+        throw new RuntimeException("Cannot generate code for a statement with syntax errors");
+    }
 }
\ No newline at end of file
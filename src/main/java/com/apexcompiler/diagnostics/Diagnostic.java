@@ -0,0 +1,112 @@
+package com.apexcompiler.diagnostics;
+
+import com.apexcompiler.ast.ASTNode;
+
+import java.util.Locale;
+
+/**
+ * A message about a source file, positioned by character offsets and by the
+ * line and column where it starts. Offsets are -1 and the line 0 when the
+ * position is unknown, e.g. for I/O errors. The file is filled in by the
+ * driver, since the parser and analyzer only see one unit's source.
+ */
+public final class Diagnostic {
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+    
+    private final Severity severity;
+    private final DiagnosticCode code;
+    private final String file;
+    private final int startOffset;
+    private final int endOffset;
+    private final int line;
+    private final int column;
+    private final String message;
+    
+    public Diagnostic(Severity severity, DiagnosticCode code, String file, int startOffset, int endOffset,
+                      int line, int column, String message) {
+        this.severity = severity;
+        this.code = code;
+        this.file = file;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+    
+    public static Diagnostic error(DiagnosticCode code, ASTNode node, String message) {
+        return new Diagnostic(Severity.ERROR, code, null, node.getStartOffset(), node.getEndOffset(),
+                              node.getLine(), node.getColumn(), message);
+    }
+    
+    // An error with no source position.
+    public static Diagnostic error(DiagnosticCode code, String message) {
+        return new Diagnostic(Severity.ERROR, code, null, -1, -1, 0, 0, message);
+    }
+    
+    public Diagnostic withFile(String file) {
+        return new Diagnostic(severity, code, file, startOffset, endOffset, line, column, message);
+    }
+    
+    public Severity getSeverity() { return severity; }
+    public DiagnosticCode getCode() { return code; }
+    public String getFile() { return file; }
+    public int getStartOffset() { return startOffset; }
+    public int getEndOffset() { return endOffset; }
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
+    public String getMessage() { return message; }
+    
+    public boolean isError() {
+        return severity == Severity.ERROR;
+    }
+    
+    // One JSON object on a single line.
+    public String toJson() {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"severity\":\"").append(severity.name().toLowerCase(Locale.ROOT)).append('"');
+        json.append(",\"code\":\"").append(code.name()).append('"');
+        json.append(",\"file\":");
+        if (file != null) {
+            appendString(json, file);
+        } else {
+            json.append("null");
+        }
+        json.append(",\"line\":").append(line);
+        json.append(",\"column\":").append(column);
+        json.append(",\"startOffset\":").append(startOffset);
+        json.append(",\"endOffset\":").append(endOffset);
+        json.append(",\"message\":");
+        appendString(json, message);
+        return json.append('}').toString();
+    }
+    
+    @Override
+    public String toString() {
+        return line > 0 ? message + " at line " + line : message;
+    }
+    
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.apexcompiler.diagnostics;
+
+// Stable identifiers for each kind of diagnostic, so tools can match on them instead of on message text.
+public enum DiagnosticCode {
+    INPUT_ERROR,
+    LEXICAL_ERROR,
+    SYNTAX_ERROR,
+    DUPLICATE_CLASS,
+    DUPLICATE_DEFINITION,
+    UNKNOWN_TYPE,
+    UNDEFINED_VARIABLE,
+    UNKNOWN_METHOD,
+    UNKNOWN_FIELD,
+    WRONG_ARGUMENT_COUNT,
+    TYPE_MISMATCH,
+    NON_BOOLEAN_CONDITION,
+    INVALID_OPERATION,
+    UNSUPPORTED,
+    JAVAC_ERROR
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.apexcompiler.interpreter;
+
+/**
+ * An instance of an interpreted class, or a constant of an interpreted enum.
+ * Instance fields live in a flat array laid out by the class, inherited
+ * fields first.
+ */
+public final class ApexObject {
+    final RuntimeClass type;
+    final Object[] fields;
+    // Enum constants only.
+    private final String name;
+    private final int ordinal;
+    
+    ApexObject(RuntimeClass type) {
+        this.type = type;
+        this.fields = new Object[type.fieldNames.size()];
+        this.name = null;
+        this.ordinal = -1;
+    }
+    
+    ApexObject(RuntimeClass type, String name, int ordinal) {
+        this.type = type;
+        this.fields = new Object[0];
+        this.name = name;
+        this.ordinal = ordinal;
+    }
+    
+    public String getTypeName() {
+        return type.declaration.getName();
+    }
+    
+    // The value of an instance field, which may be declared on a superclass.
+    public Object get(String field) {
+        Integer slot = type.fieldSlots.get(field);
+        if (slot == null) {
+            throw new IllegalArgumentException("Field '" + field + "' not found in class '" + getTypeName() + "'");
+        }
+        return fields[slot];
+    }
+    
+    public boolean isEnumConstant() {
+        return name != null;
+    }
+    
+    String name() {
+        return name;
+    }
+    
+    int ordinal() {
+        return ordinal;
+    }
+    
+    // Enum constants print as their name and objects as Type:[field=value, ...], as in Apex.
+    @Override
+    public String toString() {
+        if (name != null) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(getTypeName()).append(":[");
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(type.fieldNames.get(i)).append('=').append(fields[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,228 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.lexer.TokenType;
+
+import java.math.BigDecimal;
+
+/**
+ * An arithmetic, equality or relational operator. It starts uninitialized,
+ * and on its first execution replaces itself with a node specialized for the
+ * operands it saw: Integer arithmetic and comparisons, Decimal arithmetic,
+ * or String concatenation. When a specialized node meets operands it was not
+ * built for it becomes the general node, which handles any operands with
+ * {@link Values} and never changes again. Every version computes what
+ * Values would, so the results do not depend on which one runs.
+ */
+abstract class BinaryNode extends ExpressionNode {
+    final TokenType operator;
+    ExpressionNode left;
+    ExpressionNode right;
+    
+    BinaryNode(TokenType operator, ExpressionNode left, ExpressionNode right) {
+        this.operator = operator;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+    
+    static BinaryNode create(TokenType operator, ExpressionNode left, ExpressionNode right) {
+        return new Uninitialized(operator, left, right);
+    }
+    
+    @Override
+    final Object execute(Frame frame) {
+        Object l = left.execute(frame);
+        Object r = right.execute(frame);
+        return apply(l, r);
+    }
+    
+    // Both operands are evaluated, once, before any rewriting, so a rewrite never repeats a side effect.
+    abstract Object apply(Object l, Object r);
+    
+    final Object generalize(Object l, Object r) {
+        return replace(new Generic(operator, left, right)).apply(l, r);
+    }
+    
+    @Override
+    final void replaceChild(Node child, Node replacement) {
+        if (child == left) {
+            left = (ExpressionNode) replacement;
+        } else if (child == right) {
+            right = (ExpressionNode) replacement;
+        } else {
+            super.replaceChild(child, replacement);
+        }
+    }
+    
+    static boolean isArithmetic(TokenType operator) {
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    static boolean isRelational(TokenType operator) {
+        switch (operator) {
+            case LESS_THAN:
+            case LESS_EQUAL:
+            case GREATER_THAN:
+            case GREATER_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private static final class Uninitialized extends BinaryNode {
+        Uninitialized(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            return replace(specialize(l, r)).apply(l, r);
+        }
+        
+        private BinaryNode specialize(Object l, Object r) {
+            boolean ints = l instanceof Integer && r instanceof Integer;
+            if (isArithmetic(operator)) {
+                if (ints) {
+                    return new IntArithmetic(operator, left, right);
+                }
+                if (l instanceof BigDecimal && r instanceof BigDecimal) {
+                    return new DecimalArithmetic(operator, left, right);
+                }
+                if (operator == TokenType.PLUS && (l instanceof String || r instanceof String)) {
+                    return new Concat(operator, left, right);
+                }
+            } else if (isRelational(operator)) {
+                if (ints) {
+                    return new IntCompare(operator, left, right);
+                }
+            } else if (ints) {
+                return new IntEquality(operator, left, right);
+            }
+            return new Generic(operator, left, right);
+        }
+    }
+    
+    private static final class IntArithmetic extends BinaryNode {
+        IntArithmetic(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            if (!(l instanceof Integer) || !(r instanceof Integer)) {
+                return generalize(l, r);
+            }
+            int a = (Integer) l;
+            int b = (Integer) r;
+            switch (operator) {
+                case PLUS: return a + b;
+                case MINUS: return a - b;
+                case MULTIPLY: return a * b;
+                case DIVIDE: return a / b;
+                default: return a % b;
+            }
+        }
+    }
+    
+    private static final class DecimalArithmetic extends BinaryNode {
+        DecimalArithmetic(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            if (!(l instanceof BigDecimal) || !(r instanceof BigDecimal)) {
+                return generalize(l, r);
+            }
+            return Values.decimal(operator, (BigDecimal) l, (BigDecimal) r);
+        }
+    }
+    
+    // Only + is built as this node; either operand being a String decides the result, as in Values.
+    private static final class Concat extends BinaryNode {
+        Concat(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            if (!(l instanceof String) && !(r instanceof String)) {
+                return generalize(l, r);
+            }
+            return Values.string(l).concat(Values.string(r));
+        }
+    }
+    
+    private static final class IntCompare extends BinaryNode {
+        IntCompare(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            if (!(l instanceof Integer) || !(r instanceof Integer)) {
+                return generalize(l, r);
+            }
+            return compare((Integer) l, (Integer) r);
+        }
+        
+        @Override
+        boolean executeBoolean(Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (!(l instanceof Integer) || !(r instanceof Integer)) {
+                return (Boolean) generalize(l, r);
+            }
+            return compare((Integer) l, (Integer) r);
+        }
+        
+        private boolean compare(int a, int b) {
+            switch (operator) {
+                case LESS_THAN: return a < b;
+                case LESS_EQUAL: return a <= b;
+                case GREATER_THAN: return a > b;
+                default: return a >= b;
+            }
+        }
+    }
+    
+    private static final class IntEquality extends BinaryNode {
+        IntEquality(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            if (!(l instanceof Integer) || !(r instanceof Integer)) {
+                return generalize(l, r);
+            }
+            return ((Integer) l).intValue() == (Integer) r == (operator == TokenType.EQUALS);
+        }
+    }
+    
+    private static final class Generic extends BinaryNode {
+        Generic(TokenType operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+        }
+        
+        @Override
+        Object apply(Object l, Object r) {
+            if (isArithmetic(operator)) {
+                return Values.arithmetic(operator, l, r);
+            }
+            if (isRelational(operator)) {
+                return Values.relational(operator, l, r);
+            }
+            return Values.equal(l, r) == (operator == TokenType.EQUALS);
+        }
+    }
+}
\ No newline at end of file
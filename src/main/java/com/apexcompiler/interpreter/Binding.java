@@ -0,0 +1,29 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.semantic.ApexType;
+
+/**
+ * What a name in a method body was resolved to: a frame slot, a field slot,
+ * or the target of a call whose receiver is known before it runs.
+ */
+final class Binding {
+    static final int LOCAL = 0;
+    static final int FIELD = 1;
+    static final int STATIC = 2;
+    // A static method, a method called on this, System.debug and the assertions, and an enum's values().
+    static final int STATIC_CALL = 3;
+    static final int SELF_CALL = 4;
+    static final int SYSTEM_CALL = 5;
+    static final int ENUM_VALUES = 6;
+    
+    final int kind;
+    int slot;
+    ApexType type;
+    RuntimeClass owner;
+    ResolvedMethod method;
+    String name;
+    
+    Binding(int kind) {
+        this.kind = kind;
+    }
+}
\ No newline at end of file
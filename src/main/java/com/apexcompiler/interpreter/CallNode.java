@@ -0,0 +1,195 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.ASTNode;
+
+/**
+ * A method call. Static calls and System methods are bound when the node is
+ * built. A call on an object goes through an inline cache: a chain of
+ * dispatch nodes, one per receiver class seen at this site, each holding the
+ * method that class runs, so a site that sees few classes finds its target
+ * with a reference comparison. A site that has seen more than
+ * {@link #CACHE_LIMIT} classes replaces the chain with a node that looks the
+ * method up on every call.
+ */
+abstract class CallNode extends ExpressionNode {
+    static final int CACHE_LIMIT = 4;
+    private static final Object[] NO_VALUES = new Object[0];
+    
+    final Interpreter interpreter;
+    final ASTNode source;
+    final ExpressionNode[] arguments;
+    
+    CallNode(Interpreter interpreter, ASTNode source, ExpressionNode[] arguments) {
+        this.interpreter = interpreter;
+        this.source = source;
+        this.arguments = arguments;
+        for (ExpressionNode argument : arguments) {
+            adopt(argument);
+        }
+    }
+    
+    final Object[] evaluate(Frame frame) {
+        if (arguments.length == 0) {
+            return NO_VALUES;
+        }
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = arguments[i].execute(frame);
+        }
+        return values;
+    }
+    
+    @Override
+    void replaceChild(Node child, Node replacement) {
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == child) {
+                arguments[i] = (ExpressionNode) replacement;
+                return;
+            }
+        }
+        super.replaceChild(child, replacement);
+    }
+    
+    static final class Static extends CallNode {
+        private final ResolvedMethod method;
+        
+        Static(Interpreter interpreter, ASTNode source, ResolvedMethod method, ExpressionNode[] arguments) {
+            super(interpreter, source, arguments);
+            this.method = method;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object[] values = evaluate(frame);
+            if (!method.owner.initialized) {
+                interpreter.initialize(method.owner);
+            }
+            return interpreter.call(method, null, values);
+        }
+    }
+    
+    static final class SystemMethod extends CallNode {
+        private final String name;
+        
+        SystemMethod(Interpreter interpreter, ASTNode source, String name, ExpressionNode[] arguments) {
+            super(interpreter, source, arguments);
+            this.name = name;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return interpreter.systemCall(name, arguments.length, i -> arguments[i].execute(frame));
+        }
+    }
+    
+    // A call on an object, or on this when receiver is null; strings and collections go to the Library.
+    static final class Virtual extends CallNode {
+        private final String name;
+        private ExpressionNode receiver;
+        private DispatchNode dispatch;
+        
+        Virtual(Interpreter interpreter, ASTNode source, ExpressionNode receiver, String name,
+                ExpressionNode[] arguments) {
+            super(interpreter, source, arguments);
+            this.name = name;
+            this.receiver = adopt(receiver);
+            this.dispatch = adopt(new Uninitialized(this, 0));
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object target = receiver != null ? receiver.execute(frame) : frame.self;
+            Object[] values = evaluate(frame);
+            if (target instanceof ApexObject) {
+                return dispatch.execute((ApexObject) target, values);
+            }
+            return interpreter.callMethod(target, name, values, source);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == dispatch) {
+                dispatch = (DispatchNode) replacement;
+            } else if (child == receiver) {
+                receiver = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    abstract static class DispatchNode extends Node {
+        abstract Object execute(ApexObject receiver, Object[] arguments);
+    }
+    
+    // The end of the chain: caches the receiver's class in front of itself, or gives up on caching.
+    private static final class Uninitialized extends DispatchNode {
+        private final Virtual call;
+        private final int depth;
+        
+        Uninitialized(Virtual call, int depth) {
+            this.call = call;
+            this.depth = depth;
+        }
+        
+        @Override
+        Object execute(ApexObject receiver, Object[] arguments) {
+            ResolvedMethod method = receiver.type.findMethod(call.name, arguments.length);
+            // Enum name() and ordinal() and calls that fail are left to the interpreter, uncached.
+            boolean enumMethod = receiver.isEnumConstant() && arguments.length == 0
+                && (call.name.equals("name") || call.name.equals("ordinal"));
+            if (method == null || method.isStatic || enumMethod) {
+                return call.interpreter.callMethod(receiver, call.name, arguments, call.source);
+            }
+            if (depth >= CACHE_LIMIT) {
+                return call.dispatch.replace(new Generic(call)).execute(receiver, arguments);
+            }
+            Cached cached = new Cached(receiver.type, method, new Uninitialized(call, depth + 1), call.interpreter);
+            return replace(cached).execute(receiver, arguments);
+        }
+    }
+    
+    private static final class Cached extends DispatchNode {
+        private final RuntimeClass type;
+        private final ResolvedMethod method;
+        private final Interpreter interpreter;
+        private DispatchNode next;
+        
+        Cached(RuntimeClass type, ResolvedMethod method, DispatchNode next, Interpreter interpreter) {
+            this.type = type;
+            this.method = method;
+            this.next = adopt(next);
+            this.interpreter = interpreter;
+        }
+        
+        @Override
+        Object execute(ApexObject receiver, Object[] arguments) {
+            if (receiver.type == type) {
+                return interpreter.call(method, receiver, arguments);
+            }
+            return next.execute(receiver, arguments);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == next) {
+                next = (DispatchNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    private static final class Generic extends DispatchNode {
+        private final Virtual call;
+        
+        Generic(Virtual call) {
+            this.call = call;
+        }
+        
+        @Override
+        Object execute(ApexObject receiver, Object[] arguments) {
+            return call.interpreter.callMethod(receiver, call.name, arguments, call.source);
+        }
+    }
+}
\ No newline at end of file
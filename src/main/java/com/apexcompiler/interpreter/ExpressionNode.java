@@ -0,0 +1,13 @@
+package com.apexcompiler.interpreter;
+
+/**
+ * A node that produces a value. Conditions call executeBoolean, which nodes
+ * that compute a boolean override to skip boxing it.
+ */
+abstract class ExpressionNode extends Node {
+    abstract Object execute(Frame frame);
+    
+    boolean executeBoolean(Frame frame) {
+        return Values.isTrue(execute(frame));
+    }
+}
\ No newline at end of file
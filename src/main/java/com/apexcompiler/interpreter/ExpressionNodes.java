@@ -0,0 +1,387 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.ASTNode;
+import com.apexcompiler.lexer.TokenType;
+import com.apexcompiler.runtime.SoqlQuery;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * The expression nodes other than operators and calls: literals, reads and
+ * writes of variables and members, the logical operators, SOQL and an
+ * enum's values(). Each behaves exactly like the corresponding visit method
+ * of {@link Interpreter}, including the order in which it evaluates things.
+ */
+final class ExpressionNodes {
+    private ExpressionNodes() {
+    }
+    
+    static final class Literal extends ExpressionNode {
+        private final Object value;
+        
+        Literal(Object value) {
+            this.value = value;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+    
+    static final class ReadLocal extends ExpressionNode {
+        private final int slot;
+        
+        ReadLocal(int slot) {
+            this.slot = slot;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return frame.locals[slot];
+        }
+    }
+    
+    static final class ReadField extends ExpressionNode {
+        private final int slot;
+        
+        ReadField(int slot) {
+            this.slot = slot;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return frame.self.fields[slot];
+        }
+    }
+    
+    static final class ReadStatic extends ExpressionNode {
+        private final Interpreter interpreter;
+        private final RuntimeClass owner;
+        private final int slot;
+        
+        ReadStatic(Interpreter interpreter, RuntimeClass owner, int slot) {
+            this.interpreter = interpreter;
+            this.owner = owner;
+            this.slot = slot;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            if (!owner.initialized) {
+                interpreter.initialize(owner);
+            }
+            return owner.statics[slot];
+        }
+    }
+    
+    // The base of the writes to a local, a field of this or a static; compound assignments arrive as a BinaryNode value.
+    abstract static class Write extends ExpressionNode {
+        final int slot;
+        final int coercion;
+        ExpressionNode value;
+        
+        Write(int slot, int coercion, ExpressionNode value) {
+            this.slot = slot;
+            this.coercion = coercion;
+            this.value = adopt(value);
+        }
+        
+        @Override
+        final void replaceChild(Node child, Node replacement) {
+            if (child == value) {
+                value = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class WriteLocal extends Write {
+        WriteLocal(int slot, int coercion, ExpressionNode value) {
+            super(slot, coercion, value);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return frame.locals[slot] = Values.coerce(value.execute(frame), coercion);
+        }
+    }
+    
+    static final class WriteField extends Write {
+        WriteField(int slot, int coercion, ExpressionNode value) {
+            super(slot, coercion, value);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return frame.self.fields[slot] = Values.coerce(value.execute(frame), coercion);
+        }
+    }
+    
+    static final class WriteStatic extends Write {
+        private final Interpreter interpreter;
+        private final RuntimeClass owner;
+        
+        WriteStatic(Interpreter interpreter, RuntimeClass owner, int slot, int coercion, ExpressionNode value) {
+            super(slot, coercion, value);
+            this.interpreter = interpreter;
+            this.owner = owner;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object result = Values.coerce(value.execute(frame), coercion);
+            if (!owner.initialized) {
+                interpreter.initialize(owner);
+            }
+            return owner.statics[slot] = result;
+        }
+    }
+    
+    /**
+     * object.name, read or assigned. The class of the last object seen and the
+     * slot of the field in it are cached, so a site that always sees one class
+     * looks the field up once; a site that sees several looks it up each time.
+     */
+    abstract static class Member extends ExpressionNode {
+        final ASTNode source;
+        final String name;
+        ExpressionNode object;
+        private RuntimeClass cachedType;
+        private int cachedSlot;
+        private boolean megamorphic;
+        
+        Member(ASTNode source, String name, ExpressionNode object) {
+            this.source = source;
+            this.name = name;
+            this.object = adopt(object);
+        }
+        
+        final int slot(ApexObject instance) {
+            if (instance.type == cachedType) {
+                return cachedSlot;
+            }
+            int slot = Interpreter.fieldSlot(instance, name, source);
+            if (cachedType == null && !megamorphic) {
+                cachedType = instance.type;
+                cachedSlot = slot;
+            } else {
+                cachedType = null;
+                megamorphic = true;
+            }
+            return slot;
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == object) {
+                object = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class ReadMember extends Member {
+        ReadMember(ASTNode source, String name, ExpressionNode object) {
+            super(source, name, object);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object target = object.execute(frame);
+            if (target instanceof ApexObject) {
+                ApexObject instance = (ApexObject) target;
+                return instance.fields[slot(instance)];
+            }
+            if (target instanceof Map) {
+                return ((Map<?, ?>) target).get(name);
+            }
+            throw Interpreter.cannotAccess(target, name, source);
+        }
+    }
+    
+    // operator is the arithmetic operator of a compound assignment, or null for a plain one.
+    static final class WriteMember extends Member {
+        private final TokenType operator;
+        private ExpressionNode value;
+        
+        WriteMember(ASTNode source, String name, ExpressionNode object, TokenType operator, ExpressionNode value) {
+            super(source, name, object);
+            this.operator = operator;
+            this.value = adopt(value);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object target = object.execute(frame);
+            if (target instanceof ApexObject) {
+                ApexObject instance = (ApexObject) target;
+                int slot = slot(instance);
+                Object current = operator != null ? instance.fields[slot] : null;
+                Object result = combine(current, value.execute(frame));
+                return instance.fields[slot] = Values.coerce(result, instance.type.fieldCoercions[slot]);
+            }
+            if (target instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> record = (Map<String, Object>) target;
+                Object result = combine(operator != null ? record.get(name) : null, value.execute(frame));
+                record.put(name, result);
+                return result;
+            }
+            throw Interpreter.cannotAccess(target, name, source);
+        }
+        
+        private Object combine(Object current, Object assigned) {
+            return operator != null ? Values.arithmetic(operator, current, assigned) : assigned;
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == value) {
+                value = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class Not extends ExpressionNode {
+        private ExpressionNode operand;
+        
+        Not(ExpressionNode operand) {
+            this.operand = adopt(operand);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return executeBoolean(frame);
+        }
+        
+        @Override
+        boolean executeBoolean(Frame frame) {
+            return !operand.executeBoolean(frame);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == operand) {
+                operand = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class Negate extends ExpressionNode {
+        private ExpressionNode operand;
+        
+        Negate(ExpressionNode operand) {
+            this.operand = adopt(operand);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object value = operand.execute(frame);
+            return value instanceof Integer ? -((Integer) value) : Values.negate(value);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == operand) {
+                operand = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    // && when and is true, otherwise ||; the right operand only runs when it decides the result.
+    static final class Logical extends ExpressionNode {
+        private final boolean and;
+        private ExpressionNode left;
+        private ExpressionNode right;
+        
+        Logical(boolean and, ExpressionNode left, ExpressionNode right) {
+            this.and = and;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            return executeBoolean(frame);
+        }
+        
+        @Override
+        boolean executeBoolean(Frame frame) {
+            if (left.executeBoolean(frame) != and) {
+                return !and;
+            }
+            return right.executeBoolean(frame);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == left) {
+                left = (ExpressionNode) replacement;
+            } else if (child == right) {
+                right = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    // The query was parsed with the AST; each run only evaluates the bind variables.
+    static final class Soql extends ExpressionNode {
+        private final SoqlQuery query;
+        private final ExpressionNode[] binds;
+        
+        Soql(SoqlQuery query, ExpressionNode[] binds) {
+            this.query = query;
+            this.binds = binds;
+            for (ExpressionNode bind : binds) {
+                adopt(bind);
+            }
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            Object[] values = new Object[binds.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = binds[i].execute(frame);
+            }
+            return query.executeWith(values);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            for (int i = 0; i < binds.length; i++) {
+                if (binds[i] == child) {
+                    binds[i] = (ExpressionNode) replacement;
+                    return;
+                }
+            }
+            super.replaceChild(child, replacement);
+        }
+    }
+    
+    static final class EnumValues extends ExpressionNode {
+        private final Interpreter interpreter;
+        private final RuntimeClass type;
+        
+        EnumValues(Interpreter interpreter, RuntimeClass type) {
+            this.interpreter = interpreter;
+            this.type = type;
+        }
+        
+        @Override
+        Object execute(Frame frame) {
+            interpreter.initialize(type);
+            return new ArrayList<>(type.constants);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.apexcompiler.interpreter;
+
+/**
+ * One call's locals, by slot, and its receiver, null in static code. The
+ * same frame is shared by the tree-walking interpreter and by nodes, so a
+ * hot loop can switch to nodes in the middle of a call.
+ */
+final class Frame {
+    final Object[] locals;
+    final ApexObject self;
+    Object returned;
+    
+    Frame(Object[] locals, ApexObject self) {
+        this.locals = locals;
+        this.self = self;
+    }
+}
\ No newline at end of file
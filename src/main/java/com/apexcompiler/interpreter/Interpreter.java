@@ -0,0 +1,640 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.*;
+import com.apexcompiler.lexer.TokenType;
+import com.apexcompiler.runtime.MockDataService;
+import com.apexcompiler.semantic.ApexType;
+import com.apexcompiler.semantic.ClassIndex;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Runs analyzed Apex straight from its AST, without generating Java or
+ * bytecode. Values are represented as in compiled code: Integer, Long,
+ * Decimal as BigDecimal, String and Boolean, java.util lists, sets and maps,
+ * SObject records as field maps, and instances of declared classes as
+ * {@link ApexObject}s. SOQL and DML go to {@link MockDataService}.
+ *
+ * <p>Nothing is prepared up front: a class is laid out, and its statics set
+ * up, on first use, and a method is resolved by {@link Resolver} on its
+ * first call. After that a call allocates one flat frame array, its locals
+ * are read and written by slot, and no name is looked up while it runs.
+ * Apex errors surface as the exceptions compiled code throws, such as a
+ * NullPointerException or an AssertionError, and where in the Apex source
+ * one was thrown is kept for {@link #getFailureClass} and
+ * {@link #getFailureLine}. An interpreter runs one call at a time and keeps
+ * its statics between calls.
+ *
+ * <p>Code that runs often is moved off the tree walk. A method called more
+ * than the hot threshold is built into a tree of self-specializing nodes by
+ * {@link NodeBuilder}, which runs its later calls, and a loop that iterates
+ * more than the threshold in one execution continues as nodes from its next
+ * test, in the same frame.
+ */
+public class Interpreter implements ASTVisitor<Object> {
+    // Returned by a statement that ran a return, so enclosing statements stop.
+    private static final Object RETURN = new Object();
+    private static final Object[] NO_VALUES = new Object[0];
+    static final int HOT_THRESHOLD = 100;
+    
+    private final ClassIndex index;
+    private final PrintStream out;
+    private final Map<String, RuntimeClass> classes = new HashMap<>();
+    // Filled in by the resolver; every node belongs to one method or initializer, so one map serves all.
+    private final Map<ASTNode, Binding> bindings = new IdentityHashMap<>();
+    private final Map<Statement, StatementNodes.Loop> hotLoops = new IdentityHashMap<>();
+    // Calls and loop iterations after which code runs as nodes; tests lower it to exercise the nodes.
+    int hotThreshold = HOT_THRESHOLD;
+    private Frame frame;
+    // The exception last thrown out of a statement, and the innermost statement and class it was thrown from.
+    private Throwable failure;
+    private int failureLine;
+    private String failureClass;
+    
+    public Interpreter(ClassIndex index) {
+        this(index, System.out);
+    }
+    
+    // System.debug writes to out.
+    public Interpreter(ClassIndex index, PrintStream out) {
+        this.index = index;
+        this.out = out;
+    }
+    
+    public Object invokeStatic(String className, String methodName, Object... arguments) {
+        RuntimeClass type = requireClass(className);
+        ResolvedMethod method = type.findMethod(methodName, arguments.length);
+        if (method == null || !method.isStatic) {
+            throw new RuntimeException("Static method '" + className + "." + methodName + "' with "
+                + arguments.length + " argument(s) not found");
+        }
+        initialize(method.owner);
+        return call(method, null, arguments);
+    }
+    
+    // Runs the field initializers of the class and its superclasses, then the constructor with matching arity.
+    public ApexObject newInstance(String className, Object... arguments) {
+        RuntimeClass type = requireClass(className);
+        ClassDeclaration declaration = type.declaration;
+        if (declaration.isInterface() || declaration.isEnum() || declaration.getModifiers().contains("abstract")) {
+            throw new RuntimeException("Cannot create an instance of '" + className + "'");
+        }
+        initialize(type);
+        ApexObject object = new ApexObject(type);
+        construct(type, object, arguments);
+        return object;
+    }
+    
+    public Object invoke(ApexObject receiver, String methodName, Object... arguments) {
+        return callMethod(receiver, methodName, arguments, null);
+    }
+    
+    // The class whose code threw the exception, or null if it was not thrown while running a statement.
+    public String getFailureClass(Throwable exception) {
+        return exception == failure ? failureClass : null;
+    }
+    
+    // The line of the innermost statement the exception was thrown from, or 0 if it is not known.
+    public int getFailureLine(Throwable exception) {
+        return exception == failure ? failureLine : 0;
+    }
+    
+    // Called as the exception leaves a statement; only the first, innermost statement is kept.
+    void failed(Throwable exception, int line) {
+        if (exception != failure) {
+            failure = exception;
+            failureLine = line;
+            failureClass = null;
+        }
+    }
+    
+    static RuntimeException error(ASTNode node, String message) {
+        return new RuntimeException(node != null ? message + " at line " + node.getLine() : message);
+    }
+    
+    // Classes are laid out on first use. An unknown superclass or interface is left out of the hierarchy.
+    RuntimeClass classFor(String name) {
+        RuntimeClass type = classes.get(name);
+        if (type != null || classes.containsKey(name)) {
+            return type;
+        }
+        // Recorded as missing while its supertypes are set up, which also stops inheritance cycles.
+        classes.put(name, null);
+        ClassIndex.ClassInfo info = index.getClass(name);
+        if (info == null) {
+            return null;
+        }
+        ClassDeclaration declaration = info.getDeclaration();
+        RuntimeClass superClass = declaration.getSuperClass() != null ? classFor(declaration.getSuperClass()) : null;
+        List<RuntimeClass> interfaces = new ArrayList<>();
+        for (String iface : declaration.getInterfaces()) {
+            RuntimeClass resolved = classFor(iface);
+            if (resolved != null) {
+                interfaces.add(resolved);
+            }
+        }
+        type = new RuntimeClass(declaration, superClass, interfaces);
+        classes.put(name, type);
+        return type;
+    }
+    
+    private RuntimeClass requireClass(String name) {
+        RuntimeClass type = classFor(name);
+        if (type == null) {
+            throw new RuntimeException("Class '" + name + "' not found");
+        }
+        return type;
+    }
+    
+    // Superclass first, then enum constants, then static field initializers in declaration order.
+    void initialize(RuntimeClass type) {
+        if (type.initialized) {
+            return;
+        }
+        type.initialized = true;
+        if (type.superClass != null) {
+            initialize(type.superClass);
+        }
+        List<String> names = type.declaration.getEnumConstants();
+        List<ApexObject> constants = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            ApexObject constant = new ApexObject(type, names.get(i), i);
+            type.statics[i] = constant;
+            constants.add(constant);
+        }
+        type.constants = Collections.unmodifiableList(constants);
+        runInitializers(type, null);
+    }
+    
+    private void construct(RuntimeClass type, ApexObject object, Object[] arguments) {
+        if (type.superClass != null) {
+            construct(type.superClass, object, NO_VALUES);
+        }
+        runInitializers(type, object);
+        ResolvedMethod constructor = type.findConstructor(arguments.length);
+        if (constructor != null) {
+            call(constructor, object, arguments);
+        } else if (arguments.length > 0 || type.hasConstructors()) {
+            throw new RuntimeException("Constructor '" + type.getName() + "' with " + arguments.length
+                + " argument(s) not found");
+        }
+    }
+    
+    // Static field initializers when self is null, otherwise the instance field initializers for self.
+    private void runInitializers(RuntimeClass type, ApexObject self) {
+        if (!type.initializersResolved) {
+            Resolver.resolveInitializers(this, bindings, type);
+        }
+        Frame caller = frame;
+        frame = new Frame(NO_VALUES, self);
+        try {
+            for (VariableDeclaration field : type.declaration.getFields()) {
+                if (field.getInitializer() == null || field.getModifiers().contains("static") != (self == null)) {
+                    continue;
+                }
+                Object value = field.getInitializer().accept(this);
+                if (self == null) {
+                    int slot = type.staticSlots.get(field.getName());
+                    type.statics[slot] = Values.coerce(value, type.staticTypes.get(slot));
+                } else {
+                    int slot = type.fieldSlots.get(field.getName());
+                    self.fields[slot] = Values.coerce(value, type.fieldTypes.get(slot));
+                }
+            }
+        } finally {
+            frame = caller;
+        }
+    }
+    
+    Object call(ResolvedMethod method, ApexObject self, Object[] arguments) {
+        if (method.isAbstract()) {
+            throw new RuntimeException("Method '" + method + "' has no body");
+        }
+        if (!method.resolved) {
+            Resolver.resolveMethod(this, bindings, method);
+        }
+        if (method.body == null && ++method.calls > hotThreshold) {
+            method.body = NodeBuilder.build(this, bindings, method);
+        }
+        Object[] locals = new Object[method.frameSize];
+        for (int i = 0; i < arguments.length; i++) {
+            locals[i] = Values.coerce(arguments[i], method.parameterCoercions[i]);
+        }
+        Frame caller = frame;
+        frame = new Frame(locals, self);
+        try {
+            boolean returned = method.body != null ? method.body.execute(frame)
+                : method.declaration.getBody().accept(this) == RETURN;
+            if (!returned) {
+                if (method.returnType != ApexType.VOID) {
+                    throw new IllegalStateException("Method '" + method.declaration.getName()
+                        + "' ended without returning a value");
+                }
+                return null;
+            }
+            return Values.coerce(frame.returned, method.returnCoercion);
+        } catch (RuntimeException | AssertionError e) {
+            if (e == failure && failureClass == null) {
+                failureClass = method.owner.getName();
+            }
+            throw e;
+        } finally {
+            frame = caller;
+        }
+    }
+    
+    // Dispatches on the receiver's run-time class, or to a built-in method for strings and collections.
+    Object callMethod(Object receiver, String name, Object[] arguments, ASTNode node) {
+        if (receiver == null) {
+            throw new NullPointerException(Values.NULL_DEREFERENCE);
+        }
+        if (!(receiver instanceof ApexObject)) {
+            return Library.call(receiver, name, arguments, node);
+        }
+        ApexObject object = (ApexObject) receiver;
+        if (object.isEnumConstant() && arguments.length == 0) {
+            if (name.equals("name")) {
+                return object.name();
+            }
+            if (name.equals("ordinal")) {
+                return object.ordinal();
+            }
+        }
+        ResolvedMethod method = object.type.findMethod(name, arguments.length);
+        if (method == null || method.isStatic) {
+            throw error(node, "Method '" + name + "' with " + arguments.length + " argument(s) not found in class '"
+                + object.getTypeName() + "'");
+        }
+        return call(method, object, arguments);
+    }
+    
+    @Override
+    public Object visitClassDeclaration(ClassDeclaration node) {
+        return null;
+    }
+    
+    @Override
+    public Object visitMethodDeclaration(MethodDeclaration node) {
+        return null;
+    }
+    
+    // Only reached for local variables; fields are set by runInitializers.
+    @Override
+    public Object visitVariableDeclaration(VariableDeclaration node) {
+        Binding binding = bindings.get(node);
+        Expression initializer = node.getInitializer();
+        frame.locals[binding.slot] = initializer != null ? Values.coerce(initializer.accept(this), binding.type) : null;
+        return null;
+    }
+    
+    @Override
+    public Object visitIfStatement(IfStatement node) {
+        if (Values.isTrue(node.getCondition().accept(this))) {
+            return node.getThenBranch().accept(this);
+        }
+        return node.getElseBranch() != null ? node.getElseBranch().accept(this) : null;
+    }
+    
+    @Override
+    public Object visitWhileStatement(WhileStatement node) {
+        int iterations = 0;
+        while (Values.isTrue(node.getCondition().accept(this))) {
+            if (node.getBody().accept(this) == RETURN) {
+                return RETURN;
+            }
+            if (++iterations > hotThreshold) {
+                return continueAsNodes(node);
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public Object visitForStatement(ForStatement node) {
+        if (node.getInitializer() != null) {
+            node.getInitializer().accept(this);
+        }
+        int iterations = 0;
+        while (node.getCondition() == null || Values.isTrue(node.getCondition().accept(this))) {
+            if (node.getBody().accept(this) == RETURN) {
+                return RETURN;
+            }
+            if (node.getIncrement() != null) {
+                node.getIncrement().accept(this);
+            }
+            if (++iterations > hotThreshold) {
+                return continueAsNodes(node);
+            }
+        }
+        return null;
+    }
+    
+    // Runs the rest of a hot loop as nodes, starting with its next test; the loop's nodes are kept for its next run.
+    private Object continueAsNodes(Statement loop) {
+        StatementNodes.Loop nodes = hotLoops.get(loop);
+        if (nodes == null) {
+            nodes = NodeBuilder.buildLoop(this, bindings, loop);
+            hotLoops.put(loop, nodes);
+        }
+        return nodes.execute(frame) ? RETURN : null;
+    }
+    
+    @Override
+    public Object visitReturnStatement(ReturnStatement node) {
+        frame.returned = node.getValue() != null ? node.getValue().accept(this) : null;
+        return RETURN;
+    }
+    
+    @Override
+    public Object visitExpressionStatement(ExpressionStatement node) {
+        node.getExpression().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Object visitBlockStatement(BlockStatement node) {
+        for (Statement stmt : node.getStatements()) {
+            try {
+                if (stmt.accept(this) == RETURN) {
+                    return RETURN;
+                }
+            } catch (RuntimeException | AssertionError e) {
+                failed(e, stmt.getLine());
+                throw e;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public Object visitBinaryExpression(BinaryExpression node) {
+        TokenType operator = node.getOperator();
+        switch (operator) {
+            case LOGICAL_AND:
+                return Values.isTrue(node.getLeft().accept(this)) && Values.isTrue(node.getRight().accept(this));
+            case LOGICAL_OR:
+                return Values.isTrue(node.getLeft().accept(this)) || Values.isTrue(node.getRight().accept(this));
+            default:
+                break;
+        }
+        Object left = node.getLeft().accept(this);
+        Object right = node.getRight().accept(this);
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                return Values.arithmetic(operator, left, right);
+            case EQUALS:
+                return Values.equal(left, right);
+            case NOT_EQUALS:
+                return !Values.equal(left, right);
+            case LESS_THAN:
+            case LESS_EQUAL:
+            case GREATER_THAN:
+            case GREATER_EQUAL:
+                return Values.relational(operator, left, right);
+            default:
+                throw error(node, "Operator " + operator + " is not supported");
+        }
+    }
+    
+    @Override
+    public Object visitUnaryExpression(UnaryExpression node) {
+        Object operand = node.getOperand().accept(this);
+        switch (node.getOperator()) {
+            case LOGICAL_NOT: return !Values.isTrue(operand);
+            case MINUS: return Values.negate(operand);
+            case PLUS: return operand;
+            default: throw error(node, "Operator " + node.getOperator() + " is not supported");
+        }
+    }
+    
+    // The receiver is evaluated before the arguments, and a static method's class is set up after them.
+    @Override
+    public Object visitCallExpression(CallExpression node) {
+        Binding binding = bindings.get(node);
+        if (binding == null) {
+            MemberExpression callee = (MemberExpression) node.getCallee();
+            Object receiver = callee.getObject().accept(this);
+            return callMethod(receiver, callee.getProperty(), evaluate(node.getArguments()), node);
+        }
+        switch (binding.kind) {
+            case Binding.SYSTEM_CALL:
+                List<Expression> arguments = node.getArguments();
+                return systemCall(binding.name, arguments.size(), i -> arguments.get(i).accept(this));
+            case Binding.ENUM_VALUES:
+                initialize(binding.owner);
+                return new ArrayList<>(binding.owner.constants);
+            case Binding.STATIC_CALL:
+                Object[] values = evaluate(node.getArguments());
+                initialize(binding.method.owner);
+                return call(binding.method, null, values);
+            default:
+                return callMethod(frame.self, binding.name, evaluate(node.getArguments()), node);
+        }
+    }
+    
+    private Object[] evaluate(List<Expression> expressions) {
+        if (expressions.isEmpty()) {
+            return NO_VALUES;
+        }
+        Object[] values = new Object[expressions.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = expressions.get(i).accept(this);
+        }
+        return values;
+    }
+    
+    // System.debug prints; the assertions throw an AssertionError, with the optional message, when they fail.
+    Object systemCall(String name, int arity, IntFunction<Object> argument) {
+        if (name.equals("debug")) {
+            out.println(Values.string(argument.apply(0)));
+            return null;
+        }
+        boolean passed;
+        int messageAt;
+        if (name.equals("assert")) {
+            passed = Values.isTrue(argument.apply(0));
+            messageAt = 1;
+        } else {
+            boolean equal = Values.equal(argument.apply(0), argument.apply(1));
+            passed = equal == name.equals("assertEquals");
+            messageAt = 2;
+        }
+        if (!passed) {
+            Object message = arity > messageAt ? argument.apply(messageAt) : "Assertion Failed";
+            throw new AssertionError(String.valueOf(message));
+        }
+        return null;
+    }
+    
+    @Override
+    public Object visitMemberExpression(MemberExpression node) {
+        Binding binding = bindings.get(node);
+        if (binding != null) {
+            return readStatic(binding);
+        }
+        Object object = node.getObject().accept(this);
+        String name = node.getProperty();
+        if (object instanceof ApexObject) {
+            return ((ApexObject) object).fields[fieldSlot((ApexObject) object, name, node)];
+        }
+        if (object instanceof Map) {
+            return ((Map<?, ?>) object).get(name);
+        }
+        throw cannotAccess(object, name, node);
+    }
+    
+    static int fieldSlot(ApexObject object, String name, ASTNode node) {
+        Integer slot = object.type.fieldSlots.get(name);
+        if (slot == null) {
+            throw error(node, "Field '" + name + "' not found in class '" + object.getTypeName() + "'");
+        }
+        return slot;
+    }
+    
+    static RuntimeException cannotAccess(Object object, String name, ASTNode node) {
+        if (object == null) {
+            return new NullPointerException(Values.NULL_DEREFERENCE);
+        }
+        return error(node, "Cannot access '" + name + "' on " + Values.typeName(object));
+    }
+    
+    @Override
+    public Object visitLiteralExpression(LiteralExpression node) {
+        Object value = node.getValue();
+        return value instanceof String ? LiteralExpression.unescape((String) value) : value;
+    }
+    
+    @Override
+    public Object visitIdentifierExpression(IdentifierExpression node) {
+        Binding binding = bindings.get(node);
+        switch (binding.kind) {
+            case Binding.LOCAL: return frame.locals[binding.slot];
+            case Binding.FIELD: return frame.self.fields[binding.slot];
+            default: return readStatic(binding);
+        }
+    }
+    
+    private Object readStatic(Binding binding) {
+        initialize(binding.owner);
+        return binding.owner.statics[binding.slot];
+    }
+    
+    // The receiver of a member is evaluated before the value; compound operators convert back to the target's type.
+    @Override
+    public Object visitAssignmentExpression(AssignmentExpression node) {
+        Expression target = node.getTarget();
+        Binding binding = bindings.get(target);
+        if (binding != null) {
+            Object current = node.getOperator() == TokenType.ASSIGN ? null : read(binding);
+            Object value = Values.coerce(assignedValue(node, current), binding.type);
+            switch (binding.kind) {
+                case Binding.LOCAL:
+                    frame.locals[binding.slot] = value;
+                    break;
+                case Binding.FIELD:
+                    frame.self.fields[binding.slot] = value;
+                    break;
+                default:
+                    initialize(binding.owner);
+                    binding.owner.statics[binding.slot] = value;
+                    break;
+            }
+            return value;
+        }
+        if (!(target instanceof MemberExpression)) {
+            throw error(node, "Expression cannot be assigned");
+        }
+        
+        MemberExpression member = (MemberExpression) target;
+        Object object = member.getObject().accept(this);
+        String name = member.getProperty();
+        boolean compound = node.getOperator() != TokenType.ASSIGN;
+        if (object instanceof ApexObject) {
+            ApexObject instance = (ApexObject) object;
+            int slot = fieldSlot(instance, name, member);
+            Object value = assignedValue(node, compound ? instance.fields[slot] : null);
+            return instance.fields[slot] = Values.coerce(value, instance.type.fieldTypes.get(slot));
+        }
+        if (object instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> record = (Map<String, Object>) object;
+            Object value = assignedValue(node, compound ? record.get(name) : null);
+            record.put(name, value);
+            return value;
+        }
+        throw cannotAccess(object, name, member);
+    }
+    
+    private Object read(Binding binding) {
+        switch (binding.kind) {
+            case Binding.LOCAL: return frame.locals[binding.slot];
+            case Binding.FIELD: return frame.self.fields[binding.slot];
+            default: return readStatic(binding);
+        }
+    }
+    
+    private Object assignedValue(AssignmentExpression node, Object current) {
+        Object value = node.getValue().accept(this);
+        switch (node.getOperator()) {
+            case ASSIGN: return value;
+            case PLUS_ASSIGN: return Values.arithmetic(TokenType.PLUS, current, value);
+            case MINUS_ASSIGN: return Values.arithmetic(TokenType.MINUS, current, value);
+            case MULTIPLY_ASSIGN: return Values.arithmetic(TokenType.MULTIPLY, current, value);
+            case DIVIDE_ASSIGN: return Values.arithmetic(TokenType.DIVIDE, current, value);
+            default: throw error(node, "Operator " + node.getOperator() + " is not supported");
+        }
+    }
+    
+    @Override
+    public Object visitAnnotation(Annotation node) {
+        return null;
+    }
+    
+    @Override
+    public Object visitSoqlExpression(SoqlExpression node) {
+        return node.getParsedQuery().executeWith(evaluate(node.getBinds()));
+    }
+    
+    @Override
+    public Object visitDmlStatement(DmlStatement node) {
+        dml(node, node.getTarget().accept(this));
+        return null;
+    }
+    
+    // A single record is wrapped in a one-element list, since the data service takes lists only.
+    @SuppressWarnings("unchecked")
+    static void dml(DmlStatement node, Object target) {
+        List<Map<String, Object>> records;
+        if (target instanceof List) {
+            records = (List<Map<String, Object>>) target;
+        } else if (target instanceof Map) {
+            records = Collections.singletonList((Map<String, Object>) target);
+        } else if (target == null) {
+            throw new NullPointerException(Values.NULL_DEREFERENCE);
+        } else {
+            throw error(node, "Cannot " + node.getOperation() + " a value of type " + Values.typeName(target));
+        }
+        switch (node.getOperation()) {
+            case INSERT: MockDataService.insertRecords(records); break;
+            case UPDATE: MockDataService.updateRecords(records); break;
+            case DELETE: MockDataService.deleteRecords(records); break;
+            default: MockDataService.upsertRecords(records); break;
+        }
+    }
+    
+    @Override
+    public Object visitErrorStatement(ErrorStatement node) {
+        throw error(node, "Cannot run a statement with syntax errors");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.ASTNode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Built-in String and collection methods, the same ones the bytecode backend
+ * maps onto the JDK. Arguments are converted as compiled code converts them:
+ * indexes to int and String arguments with String.valueOf, so null is "null".
+ */
+final class Library {
+    // Returned for a method the receiver does not have; null is a legitimate result.
+    private static final Object UNSUPPORTED = new Object();
+    
+    private Library() {
+    }
+    
+    static Object call(Object receiver, String name, Object[] arguments, ASTNode node) {
+        Object result;
+        if (receiver instanceof String) {
+            result = string((String) receiver, name, arguments);
+        } else if (receiver instanceof List) {
+            result = list(asList(receiver), name, arguments);
+        } else if (receiver instanceof Set) {
+            result = set(asSet(receiver), name, arguments);
+        } else if (receiver instanceof Map) {
+            result = map(asMap(receiver), name, arguments);
+        } else {
+            result = UNSUPPORTED;
+        }
+        if (result == UNSUPPORTED) {
+            throw Interpreter.error(node, "Method '" + name + "' on " + Values.typeName(receiver) + " is not supported");
+        }
+        return result;
+    }
+    
+    private static Object string(String s, String name, Object[] args) {
+        switch (name + '/' + args.length) {
+            case "length/0": return s.length();
+            case "toUpperCase/0": return s.toUpperCase();
+            case "toLowerCase/0": return s.toLowerCase();
+            case "trim/0": return s.trim();
+            case "contains/1": return s.contains(text(args[0]));
+            case "startsWith/1": return s.startsWith(text(args[0]));
+            case "endsWith/1": return s.endsWith(text(args[0]));
+            case "indexOf/1": return s.indexOf(text(args[0]));
+            case "substring/1": return s.substring(index(args[0]));
+            case "substring/2": return s.substring(index(args[0]), index(args[1]));
+            case "equals/1": return s.equals(args[0]);
+            case "equalsIgnoreCase/1": return s.equalsIgnoreCase(text(args[0]));
+            case "replace/2": return s.replace(text(args[0]), text(args[1]));
+            default: return UNSUPPORTED;
+        }
+    }
+    
+    private static Object list(List<Object> list, String name, Object[] args) {
+        switch (name + '/' + args.length) {
+            case "size/0": return list.size();
+            case "isEmpty/0": return list.isEmpty();
+            case "get/1": return list.get(index(args[0]));
+            case "add/1": list.add(args[0]); return null;
+            case "add/2": list.add(index(args[0]), args[1]); return null;
+            case "set/2": list.set(index(args[0]), args[1]); return null;
+            case "remove/1": return list.remove(index(args[0]));
+            case "contains/1": return list.contains(args[0]);
+            case "indexOf/1": return list.indexOf(args[0]);
+            case "clear/0": list.clear(); return null;
+            default: return UNSUPPORTED;
+        }
+    }
+    
+    private static Object set(Set<Object> set, String name, Object[] args) {
+        switch (name + '/' + args.length) {
+            case "size/0": return set.size();
+            case "isEmpty/0": return set.isEmpty();
+            case "add/1": return set.add(args[0]);
+            case "remove/1": return set.remove(args[0]);
+            case "contains/1": return set.contains(args[0]);
+            case "clear/0": set.clear(); return null;
+            default: return UNSUPPORTED;
+        }
+    }
+    
+    private static Object map(Map<Object, Object> map, String name, Object[] args) {
+        switch (name + '/' + args.length) {
+            case "size/0": return map.size();
+            case "isEmpty/0": return map.isEmpty();
+            case "get/1": return map.get(args[0]);
+            case "put/2": return map.put(args[0], args[1]);
+            case "remove/1": return map.remove(args[0]);
+            case "containsKey/1": return map.containsKey(args[0]);
+            case "keySet/0": return map.keySet();
+            case "clear/0": map.clear(); return null;
+            default: return UNSUPPORTED;
+        }
+    }
+    
+    private static String text(Object value) {
+        return Values.string(value);
+    }
+    
+    private static int index(Object value) {
+        if (value == null) {
+            throw new NullPointerException(Values.NULL_DEREFERENCE);
+        }
+        return ((Number) value).intValue();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) {
+        return (List<Object>) value;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Set<Object> asSet(Object value) {
+        return (Set<Object>) value;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> asMap(Object value) {
+        return (Map<Object, Object>) value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.apexcompiler.interpreter;
+
+/**
+ * A node of the executable tree a hot method is built into. A node that has
+ * seen what kinds of values it handles can replace itself in its parent with
+ * a version specialized for them, and a specialized node whose assumption
+ * stops holding replaces itself with a general one, so each node settles on
+ * the cheapest code that is still correct for the values it meets.
+ */
+abstract class Node {
+    Node parent;
+    
+    final <T extends Node> T adopt(T child) {
+        if (child != null) {
+            child.parent = this;
+        }
+        return child;
+    }
+    
+    // Puts the replacement where this node is in its parent; the next execution of the parent runs it.
+    final <T extends Node> T replace(T replacement) {
+        replacement.parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+    
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no child to replace");
+    }
+}
\ No newline at end of file
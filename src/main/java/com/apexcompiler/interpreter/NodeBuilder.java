@@ -0,0 +1,261 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.*;
+import com.apexcompiler.lexer.TokenType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the node tree of a resolved method body, or of a single loop in it,
+ * from the bindings the {@link Resolver} recorded. Every name is already
+ * bound, so nodes read and write slots directly; operators and calls on
+ * objects start uninitialized and specialize as they run.
+ */
+final class NodeBuilder implements ASTVisitor<Node> {
+    private final Interpreter interpreter;
+    private final Map<ASTNode, Binding> bindings;
+    
+    private NodeBuilder(Interpreter interpreter, Map<ASTNode, Binding> bindings) {
+        this.interpreter = interpreter;
+        this.bindings = bindings;
+    }
+    
+    static StatementNode build(Interpreter interpreter, Map<ASTNode, Binding> bindings, ResolvedMethod method) {
+        return new NodeBuilder(interpreter, bindings).statement(method.declaration.getBody());
+    }
+    
+    // A while loop, or a for loop without its initializer, to continue running a loop that got hot.
+    static StatementNodes.Loop buildLoop(Interpreter interpreter, Map<ASTNode, Binding> bindings, Statement loop) {
+        NodeBuilder builder = new NodeBuilder(interpreter, bindings);
+        if (loop instanceof WhileStatement) {
+            WhileStatement node = (WhileStatement) loop;
+            return new StatementNodes.Loop(builder.expression(node.getCondition()), builder.statement(node.getBody()), null);
+        }
+        return builder.forLoop((ForStatement) loop);
+    }
+    
+    private StatementNode statement(Statement statement) {
+        return (StatementNode) statement.accept(this);
+    }
+    
+    private ExpressionNode expression(Expression expression) {
+        return (ExpressionNode) expression.accept(this);
+    }
+    
+    private ExpressionNode[] expressions(List<Expression> expressions) {
+        ExpressionNode[] nodes = new ExpressionNode[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = expression(expressions.get(i));
+        }
+        return nodes;
+    }
+    
+    @Override
+    public Node visitClassDeclaration(ClassDeclaration node) {
+        throw new IllegalStateException("Class declarations are not executable");
+    }
+    
+    @Override
+    public Node visitMethodDeclaration(MethodDeclaration node) {
+        throw new IllegalStateException("Method declarations are not executable");
+    }
+    
+    // A declaration without an initializer stores null, since its slot may have held a variable of an earlier block.
+    @Override
+    public Node visitVariableDeclaration(VariableDeclaration node) {
+        Binding binding = bindings.get(node);
+        ExpressionNode value = node.getInitializer() != null
+            ? expression(node.getInitializer()) : new ExpressionNodes.Literal(null);
+        return new StatementNodes.Evaluate(
+            new ExpressionNodes.WriteLocal(binding.slot, Values.coercion(binding.type), value));
+    }
+    
+    @Override
+    public Node visitIfStatement(IfStatement node) {
+        return new StatementNodes.If(expression(node.getCondition()), statement(node.getThenBranch()),
+                                     node.getElseBranch() != null ? statement(node.getElseBranch()) : null);
+    }
+    
+    @Override
+    public Node visitWhileStatement(WhileStatement node) {
+        return new StatementNodes.Loop(expression(node.getCondition()), statement(node.getBody()), null);
+    }
+    
+    @Override
+    public Node visitForStatement(ForStatement node) {
+        StatementNodes.Loop loop = forLoop(node);
+        if (node.getInitializer() == null) {
+            return loop;
+        }
+        return new StatementNodes.Block(interpreter, new StatementNode[] {statement(node.getInitializer()), loop},
+                                        new int[] {node.getInitializer().getLine(), node.getLine()});
+    }
+    
+    private StatementNodes.Loop forLoop(ForStatement node) {
+        return new StatementNodes.Loop(node.getCondition() != null ? expression(node.getCondition()) : null,
+                                       statement(node.getBody()),
+                                       node.getIncrement() != null ? expression(node.getIncrement()) : null);
+    }
+    
+    @Override
+    public Node visitReturnStatement(ReturnStatement node) {
+        return new StatementNodes.Return(node.getValue() != null ? expression(node.getValue()) : null);
+    }
+    
+    @Override
+    public Node visitExpressionStatement(ExpressionStatement node) {
+        return new StatementNodes.Evaluate(expression(node.getExpression()));
+    }
+    
+    @Override
+    public Node visitBlockStatement(BlockStatement node) {
+        List<Statement> body = node.getStatements();
+        StatementNode[] statements = new StatementNode[body.size()];
+        int[] lines = new int[body.size()];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = statement(body.get(i));
+            lines[i] = body.get(i).getLine();
+        }
+        return new StatementNodes.Block(interpreter, statements, lines);
+    }
+    
+    @Override
+    public Node visitBinaryExpression(BinaryExpression node) {
+        TokenType operator = node.getOperator();
+        ExpressionNode left = expression(node.getLeft());
+        ExpressionNode right = expression(node.getRight());
+        switch (operator) {
+            case LOGICAL_AND:
+                return new ExpressionNodes.Logical(true, left, right);
+            case LOGICAL_OR:
+                return new ExpressionNodes.Logical(false, left, right);
+            case EQUALS:
+            case NOT_EQUALS:
+                return BinaryNode.create(operator, left, right);
+            default:
+                if (BinaryNode.isArithmetic(operator) || BinaryNode.isRelational(operator)) {
+                    return BinaryNode.create(operator, left, right);
+                }
+                throw Interpreter.error(node, "Operator " + operator + " is not supported");
+        }
+    }
+    
+    @Override
+    public Node visitUnaryExpression(UnaryExpression node) {
+        ExpressionNode operand = expression(node.getOperand());
+        switch (node.getOperator()) {
+            case LOGICAL_NOT: return new ExpressionNodes.Not(operand);
+            case MINUS: return new ExpressionNodes.Negate(operand);
+            case PLUS: return operand;
+            default: throw Interpreter.error(node, "Operator " + node.getOperator() + " is not supported");
+        }
+    }
+    
+    @Override
+    public Node visitCallExpression(CallExpression node) {
+        Binding binding = bindings.get(node);
+        if (binding == null) {
+            MemberExpression callee = (MemberExpression) node.getCallee();
+            ExpressionNode receiver = expression(callee.getObject());
+            return new CallNode.Virtual(interpreter, node, receiver, callee.getProperty(),
+                                        expressions(node.getArguments()));
+        }
+        switch (binding.kind) {
+            case Binding.SYSTEM_CALL:
+                return new CallNode.SystemMethod(interpreter, node, binding.name, expressions(node.getArguments()));
+            case Binding.ENUM_VALUES:
+                return new ExpressionNodes.EnumValues(interpreter, binding.owner);
+            case Binding.STATIC_CALL:
+                return new CallNode.Static(interpreter, node, binding.method, expressions(node.getArguments()));
+            default:
+                return new CallNode.Virtual(interpreter, node, null, binding.name, expressions(node.getArguments()));
+        }
+    }
+    
+    @Override
+    public Node visitMemberExpression(MemberExpression node) {
+        Binding binding = bindings.get(node);
+        if (binding != null) {
+            return read(binding);
+        }
+        return new ExpressionNodes.ReadMember(node, node.getProperty(), expression(node.getObject()));
+    }
+    
+    @Override
+    public Node visitLiteralExpression(LiteralExpression node) {
+        Object value = node.getValue();
+        return new ExpressionNodes.Literal(value instanceof String ? LiteralExpression.unescape((String) value) : value);
+    }
+    
+    @Override
+    public Node visitIdentifierExpression(IdentifierExpression node) {
+        return read(bindings.get(node));
+    }
+    
+    private ExpressionNode read(Binding binding) {
+        switch (binding.kind) {
+            case Binding.LOCAL: return new ExpressionNodes.ReadLocal(binding.slot);
+            case Binding.FIELD: return new ExpressionNodes.ReadField(binding.slot);
+            default: return new ExpressionNodes.ReadStatic(interpreter, binding.owner, binding.slot);
+        }
+    }
+    
+    // x op= v becomes x = x op v, which reads x before evaluating v as the interpreter does.
+    @Override
+    public Node visitAssignmentExpression(AssignmentExpression node) {
+        Expression target = node.getTarget();
+        TokenType operator = arithmeticOperator(node);
+        Binding binding = bindings.get(target);
+        if (binding != null) {
+            ExpressionNode value = expression(node.getValue());
+            if (operator != null) {
+                value = BinaryNode.create(operator, read(binding), value);
+            }
+            int coercion = Values.coercion(binding.type);
+            switch (binding.kind) {
+                case Binding.LOCAL: return new ExpressionNodes.WriteLocal(binding.slot, coercion, value);
+                case Binding.FIELD: return new ExpressionNodes.WriteField(binding.slot, coercion, value);
+                default: return new ExpressionNodes.WriteStatic(interpreter, binding.owner, binding.slot, coercion, value);
+            }
+        }
+        if (!(target instanceof MemberExpression)) {
+            throw Interpreter.error(node, "Expression cannot be assigned");
+        }
+        MemberExpression member = (MemberExpression) target;
+        ExpressionNode object = expression(member.getObject());
+        return new ExpressionNodes.WriteMember(member, member.getProperty(), object, operator,
+                                               expression(node.getValue()));
+    }
+    
+    private static TokenType arithmeticOperator(AssignmentExpression node) {
+        switch (node.getOperator()) {
+            case ASSIGN: return null;
+            case PLUS_ASSIGN: return TokenType.PLUS;
+            case MINUS_ASSIGN: return TokenType.MINUS;
+            case MULTIPLY_ASSIGN: return TokenType.MULTIPLY;
+            case DIVIDE_ASSIGN: return TokenType.DIVIDE;
+            default: throw Interpreter.error(node, "Operator " + node.getOperator() + " is not supported");
+        }
+    }
+    
+    @Override
+    public Node visitAnnotation(Annotation node) {
+        throw new IllegalStateException("Annotations are not executable");
+    }
+    
+    @Override
+    public Node visitSoqlExpression(SoqlExpression node) {
+        return new ExpressionNodes.Soql(node.getParsedQuery(), expressions(node.getBinds()));
+    }
+    
+    @Override
+    public Node visitDmlStatement(DmlStatement node) {
+        return new StatementNodes.Dml(node, expression(node.getTarget()));
+    }
+    
+    @Override
+    public Node visitErrorStatement(ErrorStatement node) {
+        throw Interpreter.error(node, "Cannot run a statement with syntax errors");
+    }
+}
\ No newline at end of file
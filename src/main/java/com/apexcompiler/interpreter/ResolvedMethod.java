@@ -0,0 +1,56 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.MethodDeclaration;
+import com.apexcompiler.semantic.ApexType;
+
+import java.util.List;
+
+/**
+ * A method of an interpreted class. Its body is resolved on the first call:
+ * from then on every local variable, parameters first, has a fixed slot in
+ * the frame array a call allocates. Once the method is hot its body is also
+ * built into a tree of nodes, which runs every later call.
+ */
+final class ResolvedMethod {
+    final RuntimeClass owner;
+    final MethodDeclaration declaration;
+    final boolean isStatic;
+    final ApexType[] parameterTypes;
+    final ApexType returnType;
+    final int[] parameterCoercions;
+    final int returnCoercion;
+    boolean resolved;
+    int frameSize;
+    int calls;
+    StatementNode body;
+    
+    ResolvedMethod(RuntimeClass owner, MethodDeclaration declaration) {
+        this.owner = owner;
+        this.declaration = declaration;
+        this.isStatic = declaration.getModifiers().contains("static");
+        List<MethodDeclaration.Parameter> parameters = declaration.getParameters();
+        this.parameterTypes = new ApexType[parameters.size()];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterTypes[i] = ApexType.of(parameters.get(i).getType());
+        }
+        this.returnType = owner.isConstructor(declaration) ? ApexType.VOID : ApexType.of(declaration.getReturnType());
+        this.parameterCoercions = new int[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterCoercions[i] = Values.coercion(parameterTypes[i]);
+        }
+        this.returnCoercion = Values.coercion(returnType);
+    }
+    
+    int arity() {
+        return parameterTypes.length;
+    }
+    
+    boolean isAbstract() {
+        return declaration.getBody() == null;
+    }
+    
+    @Override
+    public String toString() {
+        return owner.getName() + "." + declaration.getName();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,363 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.*;
+import com.apexcompiler.semantic.ApexType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds every name in a method body, or in a field initializer, before it
+ * first runs. Locals get frame slots, parameters first, and a slot is reused
+ * once its block has ended, so a frame is as small as the deepest nesting of
+ * live variables. Names that are not locals are bound to fields, types or
+ * call targets, and anything that cannot be bound is reported here rather
+ * than when the statement happens to run.
+ */
+final class Resolver implements ASTVisitor<Void> {
+    private final Interpreter interpreter;
+    private final Map<ASTNode, Binding> bindings;
+    private final RuntimeClass currentClass;
+    private final boolean staticContext;
+    private final Deque<Map<String, Binding>> scopes = new ArrayDeque<>();
+    private final Deque<Integer> scopeStarts = new ArrayDeque<>();
+    private int nextSlot;
+    private int frameSize;
+    
+    private Resolver(Interpreter interpreter, Map<ASTNode, Binding> bindings, RuntimeClass currentClass,
+                     boolean staticContext) {
+        this.interpreter = interpreter;
+        this.bindings = bindings;
+        this.currentClass = currentClass;
+        this.staticContext = staticContext;
+        scopes.push(new HashMap<>());
+    }
+    
+    static void resolveMethod(Interpreter interpreter, Map<ASTNode, Binding> bindings, ResolvedMethod method) {
+        Resolver resolver = new Resolver(interpreter, bindings, method.owner, method.isStatic);
+        List<MethodDeclaration.Parameter> parameters = method.declaration.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            resolver.define(parameters.get(i).getName(), method.parameterTypes[i]);
+        }
+        method.declaration.getBody().accept(resolver);
+        method.frameSize = resolver.frameSize;
+        method.resolved = true;
+    }
+    
+    // Field initializers cannot declare locals, so they run with an empty frame.
+    static void resolveInitializers(Interpreter interpreter, Map<ASTNode, Binding> bindings, RuntimeClass type) {
+        for (VariableDeclaration field : type.declaration.getFields()) {
+            if (field.getInitializer() != null) {
+                boolean isStatic = field.getModifiers().contains("static");
+                field.getInitializer().accept(new Resolver(interpreter, bindings, type, isStatic));
+            }
+        }
+        type.initializersResolved = true;
+    }
+    
+    @Override
+    public Void visitClassDeclaration(ClassDeclaration node) {
+        return null;
+    }
+    
+    @Override
+    public Void visitMethodDeclaration(MethodDeclaration node) {
+        return null;
+    }
+    
+    // The initializer is resolved first, so it cannot see the variable it initializes.
+    @Override
+    public Void visitVariableDeclaration(VariableDeclaration node) {
+        if (node.getInitializer() != null) {
+            node.getInitializer().accept(this);
+        }
+        bindings.put(node, define(node.getName(), ApexType.of(node.getType())));
+        return null;
+    }
+    
+    @Override
+    public Void visitIfStatement(IfStatement node) {
+        node.getCondition().accept(this);
+        node.getThenBranch().accept(this);
+        if (node.getElseBranch() != null) {
+            node.getElseBranch().accept(this);
+        }
+        return null;
+    }
+    
+    @Override
+    public Void visitWhileStatement(WhileStatement node) {
+        node.getCondition().accept(this);
+        node.getBody().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Void visitForStatement(ForStatement node) {
+        pushScope();
+        if (node.getInitializer() != null) {
+            node.getInitializer().accept(this);
+        }
+        if (node.getCondition() != null) {
+            node.getCondition().accept(this);
+        }
+        node.getBody().accept(this);
+        if (node.getIncrement() != null) {
+            node.getIncrement().accept(this);
+        }
+        popScope();
+        return null;
+    }
+    
+    @Override
+    public Void visitReturnStatement(ReturnStatement node) {
+        if (node.getValue() != null) {
+            node.getValue().accept(this);
+        }
+        return null;
+    }
+    
+    @Override
+    public Void visitExpressionStatement(ExpressionStatement node) {
+        node.getExpression().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Void visitBlockStatement(BlockStatement node) {
+        pushScope();
+        for (Statement stmt : node.getStatements()) {
+            stmt.accept(this);
+        }
+        popScope();
+        return null;
+    }
+    
+    @Override
+    public Void visitBinaryExpression(BinaryExpression node) {
+        node.getLeft().accept(this);
+        node.getRight().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Void visitUnaryExpression(UnaryExpression node) {
+        node.getOperand().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Void visitCallExpression(CallExpression node) {
+        Expression callee = node.getCallee();
+        int arity = node.getArguments().size();
+        if (callee instanceof IdentifierExpression) {
+            String name = ((IdentifierExpression) callee).getName();
+            ResolvedMethod method = currentClass.findMethod(name, arity);
+            if (method == null) {
+                throw Interpreter.error(node, "Method '" + name + "' with " + arity
+                    + " argument(s) not found in class '" + currentClass.getName() + "'");
+            }
+            if (method.isStatic) {
+                bindings.put(node, staticCall(method));
+            } else if (staticContext) {
+                throw Interpreter.error(node, "Instance method '" + name + "' called from a static method");
+            } else {
+                Binding binding = new Binding(Binding.SELF_CALL);
+                binding.name = name;
+                bindings.put(node, binding);
+            }
+        } else if (callee instanceof MemberExpression) {
+            MemberExpression member = (MemberExpression) callee;
+            String name = member.getProperty();
+            RuntimeClass type = typeNamed(member.getObject());
+            if (type == null && isUnresolved(member.getObject())) {
+                String object = ((IdentifierExpression) member.getObject()).getName();
+                if (!object.equals("System") || !isSystemMethod(name, arity)) {
+                    throw Interpreter.error(node, "Method '" + object + "." + name + "' is not supported");
+                }
+                Binding binding = new Binding(Binding.SYSTEM_CALL);
+                binding.name = name;
+                bindings.put(node, binding);
+            } else if (type != null) {
+                if (type.declaration.isEnum() && name.equals("values") && arity == 0) {
+                    Binding binding = new Binding(Binding.ENUM_VALUES);
+                    binding.owner = type;
+                    bindings.put(node, binding);
+                } else {
+                    ResolvedMethod method = type.findMethod(name, arity);
+                    if (method == null || !method.isStatic) {
+                        throw Interpreter.error(node, "Static method '" + type.getName() + "." + name + "' with "
+                            + arity + " argument(s) not found");
+                    }
+                    bindings.put(node, staticCall(method));
+                }
+            } else {
+                member.getObject().accept(this);
+            }
+        } else {
+            throw Interpreter.error(node, "Only named methods can be called");
+        }
+        for (Expression argument : node.getArguments()) {
+            argument.accept(this);
+        }
+        return null;
+    }
+    
+    private static Binding staticCall(ResolvedMethod method) {
+        Binding binding = new Binding(Binding.STATIC_CALL);
+        binding.method = method;
+        return binding;
+    }
+    
+    static boolean isSystemMethod(String name, int arity) {
+        switch (name) {
+            case "debug": return arity == 1;
+            case "assert": return arity == 1 || arity == 2;
+            case "assertEquals":
+            case "assertNotEquals": return arity == 2 || arity == 3;
+            default: return false;
+        }
+    }
+    
+    // Type.field is bound to the static field here; any other member is looked up on the object at run time.
+    @Override
+    public Void visitMemberExpression(MemberExpression node) {
+        RuntimeClass type = typeNamed(node.getObject());
+        if (type == null) {
+            node.getObject().accept(this);
+            return null;
+        }
+        Binding field = field(type, node.getProperty());
+        if (field == null || field.kind != Binding.STATIC) {
+            throw Interpreter.error(node, "Static field '" + type.getName() + "." + node.getProperty() + "' not found");
+        }
+        bindings.put(node, field);
+        return null;
+    }
+    
+    @Override
+    public Void visitLiteralExpression(LiteralExpression node) {
+        return null;
+    }
+    
+    @Override
+    public Void visitIdentifierExpression(IdentifierExpression node) {
+        String name = node.getName();
+        Binding binding = lookup(name);
+        if (binding == null) {
+            binding = field(currentClass, name);
+        }
+        if (binding == null) {
+            throw Interpreter.error(node, "Undefined variable '" + name + "'");
+        }
+        if (binding.kind == Binding.FIELD && staticContext) {
+            throw Interpreter.error(node, "Instance field '" + name + "' used in a static method");
+        }
+        bindings.put(node, binding);
+        return null;
+    }
+    
+    @Override
+    public Void visitAssignmentExpression(AssignmentExpression node) {
+        node.getTarget().accept(this);
+        node.getValue().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Void visitAnnotation(Annotation node) {
+        return null;
+    }
+    
+    @Override
+    public Void visitSoqlExpression(SoqlExpression node) {
+        for (Expression bind : node.getBinds()) {
+            bind.accept(this);
+        }
+        return null;
+    }
+    
+    @Override
+    public Void visitDmlStatement(DmlStatement node) {
+        node.getTarget().accept(this);
+        return null;
+    }
+    
+    @Override
+    public Void visitErrorStatement(ErrorStatement node) {
+        throw Interpreter.error(node, "Cannot run a statement with syntax errors");
+    }
+    
+    // The class an identifier names, when it is not shadowed by a variable or field.
+    private RuntimeClass typeNamed(Expression expr) {
+        if (!(expr instanceof IdentifierExpression) || !isUnresolved(expr)) {
+            return null;
+        }
+        return interpreter.classFor(((IdentifierExpression) expr).getName());
+    }
+    
+    private boolean isUnresolved(Expression expr) {
+        if (!(expr instanceof IdentifierExpression)) {
+            return false;
+        }
+        String name = ((IdentifierExpression) expr).getName();
+        return lookup(name) == null && field(currentClass, name) == null;
+    }
+    
+    // A field or enum constant declared on the class or a superclass, or null.
+    private Binding field(RuntimeClass type, String name) {
+        for (RuntimeClass declaring : type.hierarchy()) {
+            Integer slot = declaring.staticSlots.get(name);
+            if (slot != null) {
+                Binding binding = new Binding(Binding.STATIC);
+                binding.owner = declaring;
+                binding.slot = slot;
+                binding.type = declaring.staticTypes.get(slot);
+                return binding;
+            }
+            for (VariableDeclaration field : declaring.declaration.getFields()) {
+                if (field.getName().equals(name)) {
+                    Binding binding = new Binding(Binding.FIELD);
+                    binding.owner = declaring;
+                    binding.slot = declaring.fieldSlots.get(name);
+                    binding.type = declaring.fieldTypes.get(binding.slot);
+                    return binding;
+                }
+            }
+        }
+        return null;
+    }
+    
+    private Binding define(String name, ApexType type) {
+        Binding binding = new Binding(Binding.LOCAL);
+        binding.slot = nextSlot++;
+        binding.type = type;
+        frameSize = Math.max(frameSize, nextSlot);
+        scopes.peek().put(name, binding);
+        return binding;
+    }
+    
+    private Binding lookup(String name) {
+        for (Map<String, Binding> scope : scopes) {
+            Binding binding = scope.get(name);
+            if (binding != null) {
+                return binding;
+            }
+        }
+        return null;
+    }
+    
+    private void pushScope() {
+        scopes.push(new HashMap<>());
+        scopeStarts.push(nextSlot);
+    }
+    
+    // Slots of a closed scope are reused by the next one.
+    private void popScope() {
+        scopes.pop();
+        nextSlot = scopeStarts.pop();
+    }
+}
\ No newline at end of file
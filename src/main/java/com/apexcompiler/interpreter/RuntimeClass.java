@@ -0,0 +1,145 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.ast.MethodDeclaration;
+import com.apexcompiler.ast.VariableDeclaration;
+import com.apexcompiler.semantic.ApexType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run-time layout of an interpreted class: slots for its instance fields,
+ * inherited ones first, storage for its static fields and enum constants,
+ * and its methods. Statics are set up by the interpreter on first use.
+ */
+final class RuntimeClass {
+    final ClassDeclaration declaration;
+    final RuntimeClass superClass;
+    final List<RuntimeClass> interfaces;
+    
+    final List<String> fieldNames = new ArrayList<>();
+    final List<ApexType> fieldTypes = new ArrayList<>();
+    final int[] fieldCoercions;
+    // A field declared here hides an inherited one of the same name.
+    final Map<String, Integer> fieldSlots = new HashMap<>();
+    
+    // Enum constants first, in declaration order, then static fields.
+    final Map<String, Integer> staticSlots = new HashMap<>();
+    final List<ApexType> staticTypes = new ArrayList<>();
+    final Object[] statics;
+    List<ApexObject> constants;
+    boolean initialized;
+    boolean initializersResolved;
+    
+    private final List<ResolvedMethod> declared = new ArrayList<>();
+    private final Map<String, ResolvedMethod> methodCache = new HashMap<>();
+    
+    RuntimeClass(ClassDeclaration declaration, RuntimeClass superClass, List<RuntimeClass> interfaces) {
+        this.declaration = declaration;
+        this.superClass = superClass;
+        this.interfaces = interfaces;
+        if (superClass != null) {
+            fieldNames.addAll(superClass.fieldNames);
+            fieldTypes.addAll(superClass.fieldTypes);
+            fieldSlots.putAll(superClass.fieldSlots);
+        }
+        
+        ApexType self = ApexType.of(declaration.getName());
+        for (String constant : declaration.getEnumConstants()) {
+            staticSlots.put(constant, staticTypes.size());
+            staticTypes.add(self);
+        }
+        for (VariableDeclaration field : declaration.getFields()) {
+            ApexType type = ApexType.of(field.getType());
+            if (field.getModifiers().contains("static")) {
+                staticSlots.put(field.getName(), staticTypes.size());
+                staticTypes.add(type);
+            } else {
+                fieldSlots.put(field.getName(), fieldNames.size());
+                fieldNames.add(field.getName());
+                fieldTypes.add(type);
+            }
+        }
+        statics = new Object[staticTypes.size()];
+        fieldCoercions = new int[fieldTypes.size()];
+        for (int i = 0; i < fieldCoercions.length; i++) {
+            fieldCoercions[i] = Values.coercion(fieldTypes.get(i));
+        }
+        
+        for (MethodDeclaration method : declaration.getMethods()) {
+            declared.add(new ResolvedMethod(this, method));
+        }
+    }
+    
+    String getName() {
+        return declaration.getName();
+    }
+    
+    boolean isConstructor(MethodDeclaration method) {
+        return method.getName().equals(declaration.getName());
+    }
+    
+    /**
+     * The method with this name and arity that an instance of this class
+     * runs: declared here, or inherited from a superclass or an interface.
+     * Null when there is none.
+     */
+    ResolvedMethod findMethod(String name, int arity) {
+        String key = name + '/' + arity;
+        ResolvedMethod method = methodCache.get(key);
+        if (method == null && !methodCache.containsKey(key)) {
+            method = lookup(name, arity);
+            methodCache.put(key, method);
+        }
+        return method;
+    }
+    
+    private ResolvedMethod lookup(String name, int arity) {
+        for (RuntimeClass type : hierarchy()) {
+            for (ResolvedMethod method : type.declared) {
+                if (method.declaration.getName().equals(name) && method.arity() == arity
+                        && !type.isConstructor(method.declaration)) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+    
+    ResolvedMethod findConstructor(int arity) {
+        for (ResolvedMethod method : declared) {
+            if (isConstructor(method.declaration) && method.arity() == arity) {
+                return method;
+            }
+        }
+        return null;
+    }
+    
+    boolean hasConstructors() {
+        for (ResolvedMethod method : declared) {
+            if (isConstructor(method.declaration)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // The class, then its superclasses, then every interface any of them implements or extends.
+    List<RuntimeClass> hierarchy() {
+        List<RuntimeClass> chain = new ArrayList<>();
+        for (RuntimeClass type = this; type != null; type = type.superClass) {
+            chain.add(type);
+        }
+        for (int i = 0; i < chain.size(); i++) {
+            for (RuntimeClass iface : chain.get(i).interfaces) {
+                if (!chain.contains(iface)) {
+                    chain.add(iface);
+                }
+            }
+        }
+        return chain;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.apexcompiler.interpreter;
+
+/**
+ * A node that runs a statement. Execution returns true when a return
+ * statement ran, whose value is then in the frame.
+ */
+abstract class StatementNode extends Node {
+    abstract boolean execute(Frame frame);
+}
\ No newline at end of file
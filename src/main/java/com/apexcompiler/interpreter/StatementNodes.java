@@ -0,0 +1,184 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.DmlStatement;
+
+/**
+ * The statement nodes. Conditions are evaluated with executeBoolean, so a
+ * comparison that has specialized to Integer operands never boxes its result.
+ */
+final class StatementNodes {
+    private StatementNodes() {
+    }
+    
+    static final class Block extends StatementNode {
+        private final Interpreter interpreter;
+        private final StatementNode[] statements;
+        // The source line of each statement, for reporting where an exception was thrown.
+        private final int[] lines;
+        
+        Block(Interpreter interpreter, StatementNode[] statements, int[] lines) {
+            this.interpreter = interpreter;
+            this.statements = statements;
+            this.lines = lines;
+            for (StatementNode statement : statements) {
+                adopt(statement);
+            }
+        }
+        
+        @Override
+        boolean execute(Frame frame) {
+            for (int i = 0; i < statements.length; i++) {
+                try {
+                    if (statements[i].execute(frame)) {
+                        return true;
+                    }
+                } catch (RuntimeException | AssertionError e) {
+                    interpreter.failed(e, lines[i]);
+                    throw e;
+                }
+            }
+            return false;
+        }
+    }
+    
+    static final class Evaluate extends StatementNode {
+        private ExpressionNode expression;
+        
+        Evaluate(ExpressionNode expression) {
+            this.expression = adopt(expression);
+        }
+        
+        @Override
+        boolean execute(Frame frame) {
+            expression.execute(frame);
+            return false;
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == expression) {
+                expression = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class If extends StatementNode {
+        private ExpressionNode condition;
+        private final StatementNode thenBranch;
+        private final StatementNode elseBranch;
+        
+        If(ExpressionNode condition, StatementNode thenBranch, StatementNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+        
+        @Override
+        boolean execute(Frame frame) {
+            if (condition.executeBoolean(frame)) {
+                return thenBranch.execute(frame);
+            }
+            return elseBranch != null && elseBranch.execute(frame);
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == condition) {
+                condition = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    /**
+     * A while loop, or a for loop's test, body and increment; the for loop's
+     * initializer runs before it as a separate statement. A loop that got hot
+     * in the tree-walking interpreter continues here from its next test.
+     */
+    static final class Loop extends StatementNode {
+        private ExpressionNode condition;
+        private final StatementNode body;
+        private ExpressionNode increment;
+        
+        Loop(ExpressionNode condition, StatementNode body, ExpressionNode increment) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+            this.increment = adopt(increment);
+        }
+        
+        @Override
+        boolean execute(Frame frame) {
+            while (condition == null || condition.executeBoolean(frame)) {
+                if (body.execute(frame)) {
+                    return true;
+                }
+                if (increment != null) {
+                    increment.execute(frame);
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == condition) {
+                condition = (ExpressionNode) replacement;
+            } else if (child == increment) {
+                increment = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class Return extends StatementNode {
+        private ExpressionNode value;
+        
+        Return(ExpressionNode value) {
+            this.value = adopt(value);
+        }
+        
+        @Override
+        boolean execute(Frame frame) {
+            frame.returned = value != null ? value.execute(frame) : null;
+            return true;
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == value) {
+                value = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+    
+    static final class Dml extends StatementNode {
+        private final DmlStatement source;
+        private ExpressionNode target;
+        
+        Dml(DmlStatement source, ExpressionNode target) {
+            this.source = source;
+            this.target = adopt(target);
+        }
+        
+        @Override
+        boolean execute(Frame frame) {
+            Interpreter.dml(source, target.execute(frame));
+            return false;
+        }
+        
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == target) {
+                target = (ExpressionNode) replacement;
+            } else {
+                super.replaceChild(child, replacement);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,244 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.lexer.TokenType;
+import com.apexcompiler.runtime.Decimals;
+import com.apexcompiler.semantic.ApexType;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Operators on runtime values, with the same results as compiled code:
+ * numbers widen from Integer to Long to Double to Decimal, Decimals are
+ * BigDecimals computed with {@link Decimals}, + concatenates as soon as one
+ * side is a String, and equality compares numbers by value and everything
+ * else with equals.
+ */
+final class Values {
+    static final String NULL_DEREFERENCE = "Attempt to de-reference a null object";
+    
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int DECIMAL = 3;
+    
+    private Values() {
+    }
+    
+    static Object arithmetic(TokenType operator, Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return numeric(operator, (Number) left, (Number) right);
+        }
+        if (operator == TokenType.PLUS && (left instanceof String || right instanceof String
+                || !(left instanceof Number || right instanceof Number))) {
+            return string(left).concat(string(right));
+        }
+        if (left == null || right == null) {
+            throw new NullPointerException(NULL_DEREFERENCE);
+        }
+        throw new RuntimeException("Invalid operands for " + operator + ": " + typeName(left) + ", " + typeName(right));
+    }
+    
+    private static Object numeric(TokenType operator, Number left, Number right) {
+        switch (Math.max(kind(left), kind(right))) {
+            case INT: {
+                int a = left.intValue();
+                int b = right.intValue();
+                switch (operator) {
+                    case PLUS: return a + b;
+                    case MINUS: return a - b;
+                    case MULTIPLY: return a * b;
+                    case DIVIDE: return a / b;
+                    default: return a % b;
+                }
+            }
+            case LONG: {
+                long a = left.longValue();
+                long b = right.longValue();
+                switch (operator) {
+                    case PLUS: return a + b;
+                    case MINUS: return a - b;
+                    case MULTIPLY: return a * b;
+                    case DIVIDE: return a / b;
+                    default: return a % b;
+                }
+            }
+            case DOUBLE: {
+                double a = left.doubleValue();
+                double b = right.doubleValue();
+                switch (operator) {
+                    case PLUS: return a + b;
+                    case MINUS: return a - b;
+                    case MULTIPLY: return a * b;
+                    case DIVIDE: return a / b;
+                    default: return a % b;
+                }
+            }
+            default:
+                return decimal(operator, decimal(left), decimal(right));
+        }
+    }
+    
+    static BigDecimal decimal(TokenType operator, BigDecimal a, BigDecimal b) {
+        switch (operator) {
+            case PLUS: return Decimals.add(a, b);
+            case MINUS: return Decimals.subtract(a, b);
+            case MULTIPLY: return Decimals.multiply(a, b);
+            case DIVIDE: return Decimals.divide(a, b);
+            default: return Decimals.remainder(a, b);
+        }
+    }
+    
+    static Object negate(Object value) {
+        if (value == null) {
+            throw new NullPointerException(NULL_DEREFERENCE);
+        }
+        if (!(value instanceof Number)) {
+            throw new RuntimeException("Cannot negate " + typeName(value));
+        }
+        switch (kind((Number) value)) {
+            case INT: return -((Number) value).intValue();
+            case LONG: return -((Number) value).longValue();
+            case DOUBLE: return -((Number) value).doubleValue();
+            default: return ((BigDecimal) value).negate();
+        }
+    }
+    
+    static boolean equal(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            Number a = (Number) left;
+            Number b = (Number) right;
+            int kind = Math.max(kind(a), kind(b));
+            if (kind == DECIMAL) {
+                return decimal(a).compareTo(decimal(b)) == 0;
+            }
+            if (kind(a) != kind(b)) {
+                return kind == LONG ? a.longValue() == b.longValue() : a.doubleValue() == b.doubleValue();
+            }
+        }
+        return Objects.equals(left, right);
+    }
+    
+    // Every comparison with NaN is false, as it is for Java doubles.
+    static boolean relational(TokenType operator, Object left, Object right) {
+        if (left == null || right == null) {
+            throw new NullPointerException(NULL_DEREFERENCE);
+        }
+        if (left instanceof Number && right instanceof Number) {
+            Number a = (Number) left;
+            Number b = (Number) right;
+            switch (Math.max(kind(a), kind(b))) {
+                case INT: return test(operator, Integer.compare(a.intValue(), b.intValue()));
+                case LONG: return test(operator, Long.compare(a.longValue(), b.longValue()));
+                case DECIMAL: return test(operator, decimal(a).compareTo(decimal(b)));
+                default:
+                    double x = a.doubleValue();
+                    double y = b.doubleValue();
+                    switch (operator) {
+                        case LESS_THAN: return x < y;
+                        case LESS_EQUAL: return x <= y;
+                        case GREATER_THAN: return x > y;
+                        default: return x >= y;
+                    }
+            }
+        }
+        if (left instanceof String && right instanceof String) {
+            return test(operator, ((String) left).compareTo((String) right));
+        }
+        throw new RuntimeException("Cannot compare " + typeName(left) + " with " + typeName(right));
+    }
+    
+    private static boolean test(TokenType operator, int comparison) {
+        switch (operator) {
+            case LESS_THAN: return comparison < 0;
+            case LESS_EQUAL: return comparison <= 0;
+            case GREATER_THAN: return comparison > 0;
+            default: return comparison >= 0;
+        }
+    }
+    
+    static boolean isTrue(Object value) {
+        if (value == null) {
+            throw new NullPointerException(NULL_DEREFERENCE);
+        }
+        if (!(value instanceof Boolean)) {
+            throw new RuntimeException("Expected a Boolean but found " + typeName(value));
+        }
+        return (Boolean) value;
+    }
+    
+    // How a value is converted when it is stored into a variable, field, parameter or result of a declared type.
+    static final int AS_IS = 0;
+    static final int TO_INTEGER = 1;
+    static final int TO_LONG = 2;
+    static final int TO_DOUBLE = 3;
+    static final int TO_STRING = 4;
+    static final int TO_DECIMAL = 5;
+    
+    static int coercion(ApexType type) {
+        switch (type.getName()) {
+            case "Integer": return TO_INTEGER;
+            case "Long": return TO_LONG;
+            case "Decimal": return TO_DECIMAL;
+            case "Double": return TO_DOUBLE;
+            case "String":
+            case "Id": return TO_STRING;
+            default: return AS_IS;
+        }
+    }
+    
+    static Object coerce(Object value, ApexType type) {
+        return coerce(value, coercion(type));
+    }
+    
+    static Object coerce(Object value, int coercion) {
+        if (value == null) {
+            return null;
+        }
+        switch (coercion) {
+            case TO_INTEGER:
+                return value instanceof Number && !(value instanceof Integer) ? ((Number) value).intValue() : value;
+            case TO_LONG:
+                return value instanceof Number && !(value instanceof Long) ? ((Number) value).longValue() : value;
+            case TO_DOUBLE:
+                return value instanceof Number && !(value instanceof Double) ? ((Number) value).doubleValue() : value;
+            case TO_DECIMAL:
+                return value instanceof Number ? decimal((Number) value) : value;
+            case TO_STRING:
+                return value instanceof Number || value instanceof Boolean ? string(value) : value;
+            default:
+                return value;
+        }
+    }
+    
+    static String typeName(Object value) {
+        if (value == null) return "null";
+        if (value instanceof ApexObject) return ((ApexObject) value).getTypeName();
+        if (value instanceof BigDecimal) return "Decimal";
+        if (value instanceof List) return "List";
+        if (value instanceof Set) return "Set";
+        if (value instanceof Map) return "Map";
+        return value.getClass().getSimpleName();
+    }
+    
+    // Values as Apex prints them: a Decimal never in exponent form.
+    static String string(Object value) {
+        return value instanceof BigDecimal ? Decimals.toString((BigDecimal) value) : String.valueOf(value);
+    }
+    
+    static BigDecimal decimal(Number value) {
+        if (value instanceof BigDecimal) return (BigDecimal) value;
+        if (value instanceof Integer || value instanceof Long) return BigDecimal.valueOf(value.longValue());
+        return BigDecimal.valueOf(value.doubleValue());
+    }
+    
+    private static int kind(Number value) {
+        if (value instanceof Integer) return INT;
+        if (value instanceof Long) return LONG;
+        if (value instanceof BigDecimal) return DECIMAL;
+        return DOUBLE;
+    }
+}
\ No newline at end of file
@@ -1,11 +1,29 @@
 package com.apexcompiler.lexer;
 
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+
 import java.util.*;
 
 public class ApexLexer {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    private final NameTable identifiers = new NameTable();
+    private final List<Diagnostic> errors = new ArrayList<>();
+    
+    // Registers describing the most recently scanned token
+    private boolean emitted;
+    private TokenType tokenType;
+    private int valueStart;
+    private int valueEnd;
+    private int tokenLine;
+    private int tokenColumn;
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenName;
+    
     private int start = 0;
+    private int startLine = 1;
+    private int startColumn = 1;
     private int current = 0;
     private int line = 1;
     private int column = 1;
@@ -23,6 +41,7 @@ public class ApexLexer {
         keywords.put("virtual", TokenType.VIRTUAL);
         keywords.put("override", TokenType.OVERRIDE);
         keywords.put("interface", TokenType.INTERFACE);
+        keywords.put("enum", TokenType.ENUM);
         keywords.put("extends", TokenType.EXTENDS);
         keywords.put("implements", TokenType.IMPLEMENTS);
         keywords.put("if", TokenType.IF);
@@ -62,18 +81,81 @@ public class ApexLexer {
         keywords.put("upsert", TokenType.UPSERT);
     }
     
-    public ApexLexer(String source) {
+    // Keyword lookup straight from the source text, without allocating a String per word.
+    private static final NameTable keywordNames = new NameTable();
+    private static final TokenType[] keywordTypes = new TokenType[keywords.size()];
+    
+    static {
+        for (Map.Entry<String, TokenType> entry : keywords.entrySet()) {
+            String word = entry.getKey();
+            keywordTypes[keywordNames.intern(word, 0, word.length())] = entry.getValue();
+        }
+    }
+    
+    public ApexLexer(CharSequence source) {
         this.source = source;
     }
     
     public List<Token> tokenize() {
-        while (!isAtEnd()) {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.getType() != TokenType.EOF);
+        return tokens;
+    }
+    
+    // Scans just far enough to produce the next token. Returns EOF once the input is exhausted.
+    public Token nextToken() {
+        if (!scanNext()) {
+            return new Token(TokenType.EOF, "", line, column, current, current);
+        }
+        return new Token(tokenType, tokenLexeme(), tokenLine, tokenColumn, tokenStart, tokenEnd);
+    }
+    
+    // Appends the next token to a packed buffer without creating a Token or lexeme.
+    public void nextToken(TokenBuffer buffer) {
+        if (scanNext()) {
+            buffer.add(tokenType, valueStart, valueEnd - valueStart, tokenLine, tokenColumn, tokenName,
+                       tokenStart, tokenEnd);
+        } else {
+            buffer.add(TokenType.EOF, current, 0, line, column, -1, current, current);
+        }
+    }
+    
+    // Malformed literals scanned so far, in source order. Each was returned as an ERROR token.
+    public List<Diagnostic> getErrors() {
+        return errors;
+    }
+    
+    CharSequence getSource() {
+        return source;
+    }
+    
+    String identifierName(int id) {
+        return identifiers.name(id);
+    }
+    
+    private boolean scanNext() {
+        emitted = false;
+        while (!emitted && !isAtEnd()) {
             start = current;
+            startLine = line;
+            startColumn = column;
             scanToken();
         }
-        
-        tokens.add(new Token(TokenType.EOF, "", line, column));
-        return tokens;
+        return emitted;
+    }
+    
+    private String tokenLexeme() {
+        if (tokenType.getText() != null) {
+            return tokenType.getText();
+        }
+        if (tokenName >= 0) {
+            return identifiers.name(tokenName);
+        }
+        return source.subSequence(valueStart, valueEnd).toString();
     }
     
     private void scanToken() {
@@ -85,8 +167,9 @@ public class ApexLexer {
             case '\t':
                 break;
             case '\n':
+                // The newline has already been consumed, so the next character is in column 1.
                 line++;
-                column = 0;
+                column = 1;
                 break;
             case '(':
                 addToken(TokenType.LEFT_PAREN);
@@ -101,7 +184,7 @@ public class ApexLexer {
                 addToken(TokenType.RIGHT_BRACE);
                 break;
             case '[':
-                if (isSoqlQuery()) {
+                if (startsSoqlQuery()) {
                     soqlQuery();
                 } else {
                     addToken(TokenType.LEFT_BRACKET);
@@ -242,13 +325,13 @@ public class ApexLexer {
         }
         
         if (isAtEnd()) {
-            throw new RuntimeException("Unterminated string at line " + line);
+            unterminated("Unterminated string");
+            return;
         }
         
         advance();
         
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING_LITERAL, value);
+        addToken(TokenType.STRING_LITERAL, start + 1, current - 1);
     }
     
     private void number() {
@@ -261,17 +344,18 @@ public class ApexLexer {
             while (isDigit(peek())) advance();
         }
         
-        String value = source.substring(start, current);
-        addToken(isDecimal ? TokenType.DECIMAL_LITERAL : TokenType.INTEGER_LITERAL, value);
+        addToken(isDecimal ? TokenType.DECIMAL_LITERAL : TokenType.INTEGER_LITERAL);
     }
     
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
         
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = TokenType.IDENTIFIER;
-        addToken(type);
+        int keyword = keywordNames.find(source, start, current);
+        if (keyword >= 0) {
+            addToken(keywordTypes[keyword]);
+        } else {
+            emit(TokenType.IDENTIFIER, start, current, identifiers.intern(source, start, current));
+        }
     }
     
     private boolean isDigit(char c) {
@@ -313,51 +397,109 @@ public class ApexLexer {
     }
     
     private void addToken(TokenType type) {
-        addToken(type, null);
+        emit(type, start, current, -1);
     }
     
-    private void addToken(TokenType type, String literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, literal != null ? literal : text, line, column - text.length()));
+    // The value range is the lexeme without delimiters, e.g. a string literal without its quotes.
+    private void addToken(TokenType type, int valueStart, int valueEnd) {
+        emit(type, valueStart, valueEnd, -1);
     }
     
-    private boolean isSoqlQuery() {
-        int saved = current;
-        advance(); // consume [
-        
-        while (!isAtEnd() && peek() != ']') {
-            if (peek() == '\n') {
-                line++;
-                column = 0;
+    private void emit(TokenType type, int valueStart, int valueEnd, int name) {
+        this.emitted = true;
+        this.tokenType = type;
+        this.valueStart = valueStart;
+        this.valueEnd = valueEnd;
+        this.tokenLine = startLine;
+        this.tokenColumn = startColumn;
+        this.tokenStart = start;
+        this.tokenEnd = current;
+        this.tokenName = name;
+    }
+    
+    // Decides from the first word after '[' alone, so list indexing never scans ahead.
+    private boolean startsSoqlQuery() {
+        int pos = current;
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) pos++;
+        return startsWithWord(pos, "SELECT") || startsWithWord(pos, "FIND");
+    }
+    
+    private boolean startsWithWord(int pos, String word) {
+        int end = pos + word.length();
+        if (end > source.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toUpperCase(source.charAt(pos + i)) != word.charAt(i)) {
+                return false;
             }
-            advance();
         }
-        
-        boolean isSoql = !isAtEnd();
-        current = saved;
-        return isSoql;
+        return end == source.length() || !isAlphaNumeric(source.charAt(end));
     }
     
+    // The opening '[' has already been consumed. Nested brackets and quoted
+    // strings are skipped so the query ends at its own closing ']'.
     private void soqlQuery() {
-        advance(); // consume [
-        StringBuilder query = new StringBuilder();
+        int queryStart = current;
+        int depth = 0;
         
-        while (peek() != ']' && !isAtEnd()) {
-            if (peek() == '\n') {
+        while (!isAtEnd()) {
+            char c = peek();
+            if (c == ']') {
+                if (depth == 0) break;
+                depth--;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == '\'') {
+                skipQuoted();
+                continue;
+            } else if (c == '\n') {
                 line++;
                 column = 0;
             }
-            query.append(advance());
+            advance();
         }
         
         if (isAtEnd()) {
-            throw new RuntimeException("Unterminated SOQL query at line " + line);
+            unterminated("Unterminated SOQL query");
+            return;
         }
         
+        int queryEnd = current;
         advance(); // consume ]
         
-        String soqlQuery = query.toString().trim();
-        addToken(TokenType.SOQL_LITERAL, soqlQuery);
+        while (queryStart < queryEnd && source.charAt(queryStart) <= ' ') queryStart++;
+        while (queryEnd > queryStart && source.charAt(queryEnd - 1) <= ' ') queryEnd--;
+        addToken(TokenType.SOQL_LITERAL, queryStart, queryEnd);
+    }
+    
+    // A literal left open runs to the end of the file; scanning resumes after its first line instead.
+    private void unterminated(String message) {
+        int end = start;
+        while (end < source.length() && source.charAt(end) != '\n') end++;
+        current = end;
+        line = startLine;
+        column = startColumn + (end - start);
+        errors.add(new Diagnostic(Diagnostic.Severity.ERROR, DiagnosticCode.LEXICAL_ERROR, null, start, end,
+                                  startLine, startColumn, message));
+        addToken(TokenType.ERROR);
+    }
+    
+    private void skipQuoted() {
+        advance(); // opening quote
+        while (peek() != '\'' && !isAtEnd()) {
+            if (peek() == '\n') {
+                line++;
+                column = 0;
+            }
+            if (peek() == '\\') {
+                advance();
+                if (!isAtEnd()) advance();
+            } else {
+                advance();
+            }
+        }
+        if (!isAtEnd()) advance(); // closing quote
     }
     
     private boolean isAtEnd() {
@@ -0,0 +1,48 @@
+package com.apexcompiler.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Character view over ASCII bytes. Each byte is one char, so a character is
+ * decoded only when the lexer reads it.
+ */
+final class AsciiText implements CharSequence {
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    AsciiText(ByteBuffer bytes) {
+        this(bytes, 0, bytes.limit());
+    }
+
+    private AsciiText(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(offset + Objects.checkIndex(index, length));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new AsciiText(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] data = new byte[length];
+        bytes.duplicate().position(offset).get(data);
+        return new String(data, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,98 @@
+package com.apexcompiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing table of names looked up directly from a range of the
+ * source text, so a name that is already known costs no allocation. Each
+ * distinct name is stored once and identified by a dense id.
+ */
+final class NameTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] names = new String[INITIAL_CAPACITY / 2];
+    private int[] hashes = new int[INITIAL_CAPACITY / 2];
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    int find(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            int id = slot - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    int intern(CharSequence source, int start, int end) {
+        int id = find(source, start, end);
+        if (id >= 0) {
+            return id;
+        }
+        return add(source.subSequence(start, end).toString(), hash(source, start, end));
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            grow();
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        insertSlot(id, hash);
+        return id;
+    }
+
+    private void grow() {
+        names = Arrays.copyOf(names, names.length * 2);
+        hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        slots = new int[slots.length * 2];
+        for (int id = 0; id < size; id++) {
+            insertSlot(id, hashes[id]);
+        }
+    }
+
+    private void insertSlot(int id, int hash) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = id + 1;
+    }
+
+    private static int hash(CharSequence source, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        // Spread the low bits; String-style hashes cluster for short names.
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
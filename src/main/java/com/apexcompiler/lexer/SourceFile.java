@@ -0,0 +1,82 @@
+package com.apexcompiler.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source file's raw bytes together with its text. Small files are read
+ * onto the heap as usual. Large files are memory-mapped; when they are pure
+ * ASCII the lexer reads the mapping directly through {@link AsciiText}, so
+ * no decoded copy of the file is ever made.
+ */
+public final class SourceFile {
+    static final int MAP_THRESHOLD = 1 << 20;
+
+    private final ByteBuffer bytes;
+    private final CharSequence text;
+
+    private SourceFile(ByteBuffer bytes, CharSequence text) {
+        this.bytes = bytes;
+        this.text = text;
+    }
+
+    public static SourceFile read(Path path) throws IOException {
+        return read(path, MAP_THRESHOLD);
+    }
+
+    static SourceFile read(Path path, int mapThreshold) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < mapThreshold) {
+                byte[] data = Files.readAllBytes(path);
+                return new SourceFile(ByteBuffer.wrap(data), new String(data, StandardCharsets.UTF_8));
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("Source file too large: " + path);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new SourceFile(mapped, isAscii(mapped) ? new AsciiText(mapped) : decode(mapped));
+        }
+    }
+
+    // Read-only view of the file content, positioned at the start.
+    public ByteBuffer bytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    public CharSequence text() {
+        return text;
+    }
+
+    // Checks eight bytes at a time for a set high bit.
+    static boolean isAscii(ByteBuffer buffer) {
+        int i = 0;
+        int limit = buffer.limit();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Decodes straight from the mapping; malformed input is replaced, as new String(bytes, UTF_8) does.
+    private static CharBuffer decode(ByteBuffer buffer) throws IOException {
+        return StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(buffer.duplicate());
+    }
+}
@@ -5,12 +5,21 @@ public class Token {
     private final String lexeme;
     private final int line;
     private final int column;
+    private final int offset;
+    private final int endOffset;
     
     public Token(TokenType type, String lexeme, int line, int column) {
+        this(type, lexeme, line, column, -1, -1);
+    }
+    
+    // Offsets are the token's character range in the source, delimiters included.
+    public Token(TokenType type, String lexeme, int line, int column, int offset, int endOffset) {
         this.type = type;
         this.lexeme = lexeme;
         this.line = line;
         this.column = column;
+        this.offset = offset;
+        this.endOffset = endOffset;
     }
     
     public TokenType getType() {
@@ -29,6 +38,14 @@ public class Token {
         return column;
     }
     
+    public int getOffset() {
+        return offset;
+    }
+    
+    public int getEndOffset() {
+        return endOffset;
+    }
+    
     @Override
     public String toString() {
         return String.format("Token{type=%s, lexeme='%s', line=%d, column=%d}", 
@@ -0,0 +1,184 @@
+package com.apexcompiler.lexer;
+
+import com.apexcompiler.diagnostics.Diagnostic;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact token sequence stored as parallel int arrays over the original
+ * source, so reading a token's type or position allocates nothing. Lexemes
+ * are only materialized when asked for: fixed-text tokens and identifiers
+ * return shared strings, literals are cut from the source on demand.
+ *
+ * A buffer created over a lexer is filled lazily as indexes are requested.
+ * Indexes are absolute positions in the token sequence; tokens before a
+ * {@link #release(int) released} index are dropped from memory.
+ */
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ApexLexer lexer;
+    private final CharSequence source;
+    // Only set for buffers built from Token objects, which have no backing source.
+    private final String[] lexemes;
+
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int[] names = new int[INITIAL_CAPACITY];
+    // Full token range, delimiters included; starts and lengths above cover only the value.
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+
+    private int base = 0;
+    private int count = 0;
+    private boolean complete = false;
+
+    public TokenBuffer(ApexLexer lexer) {
+        this.lexer = lexer;
+        this.source = lexer.getSource();
+        this.lexemes = null;
+    }
+
+    private TokenBuffer(List<Token> tokens) {
+        this.lexer = null;
+        this.source = null;
+        this.lexemes = new String[Math.max(tokens.size(), 1)];
+        for (Token token : tokens) {
+            lexemes[count] = token.getLexeme();
+            add(token.getType(), 0, 0, token.getLine(), token.getColumn(), -1, token.getOffset(), token.getEndOffset());
+        }
+        if (count == 0 || types[count - 1] != TokenType.EOF.ordinal()) {
+            throw new IllegalArgumentException("Token list must end with EOF");
+        }
+    }
+
+    public static TokenBuffer of(List<Token> tokens) {
+        return new TokenBuffer(tokens);
+    }
+
+    // Errors the lexer has reported for the tokens read so far; none for a buffer built from Token objects.
+    public List<Diagnostic> getErrors() {
+        return lexer != null ? lexer.getErrors() : List.of();
+    }
+
+    public TokenType type(int index) {
+        // Resolve the slot first: filling it may reallocate the arrays.
+        int slot = slot(index);
+        return TYPES[types[slot]];
+    }
+
+    public int line(int index) {
+        int slot = slot(index);
+        return lines[slot];
+    }
+
+    public int column(int index) {
+        int slot = slot(index);
+        return columns[slot];
+    }
+
+    public int offset(int index) {
+        int slot = slot(index);
+        return offsets[slot];
+    }
+
+    public int endOffset(int index) {
+        int slot = slot(index);
+        return ends[slot];
+    }
+
+    public String lexeme(int index) {
+        int slot = slot(index);
+        if (lexemes != null) {
+            return lexemes[slot];
+        }
+        TokenType type = TYPES[types[slot]];
+        if (type.getText() != null) {
+            return type.getText();
+        }
+        if (names[slot] >= 0) {
+            return lexer.identifierName(names[slot]);
+        }
+        return source.subSequence(starts[slot], starts[slot] + lengths[slot]).toString();
+    }
+
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), line(index), column(index), offset(index), endOffset(index));
+    }
+
+    /**
+     * Forgets every token before {@code index}. Reading a released index is an error.
+     */
+    public void release(int index) {
+        int drop = Math.min(index - base, count - 1);
+        if (drop <= 0) {
+            return;
+        }
+        int keep = count - drop;
+        System.arraycopy(types, drop, types, 0, keep);
+        System.arraycopy(starts, drop, starts, 0, keep);
+        System.arraycopy(lengths, drop, lengths, 0, keep);
+        System.arraycopy(lines, drop, lines, 0, keep);
+        System.arraycopy(columns, drop, columns, 0, keep);
+        System.arraycopy(names, drop, names, 0, keep);
+        System.arraycopy(offsets, drop, offsets, 0, keep);
+        System.arraycopy(ends, drop, ends, 0, keep);
+        if (lexemes != null) {
+            System.arraycopy(lexemes, drop, lexemes, 0, keep);
+        }
+        base += drop;
+        count = keep;
+    }
+
+    // Number of tokens currently held in memory.
+    public int retained() {
+        return count;
+    }
+
+    void add(TokenType type, int start, int length, int line, int column, int name, int offset, int end) {
+        if (count == types.length) {
+            grow();
+        }
+        types[count] = type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        columns[count] = column;
+        names[count] = name;
+        offsets[count] = offset;
+        ends[count] = end;
+        count++;
+        if (type == TokenType.EOF) {
+            complete = true;
+        }
+    }
+
+    // Reads past EOF resolve to the EOF token.
+    private int slot(int index) {
+        int offset = index - base;
+        if (offset < 0) {
+            throw new IllegalStateException("Token " + index + " has been released");
+        }
+        while (offset >= count && !complete) {
+            lexer.nextToken(this);
+        }
+        return offset < count ? offset : count - 1;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+        names = Arrays.copyOf(names, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+    }
+}
@@ -2,99 +2,100 @@ package com.apexcompiler.lexer;
 
 public enum TokenType {
     // Keywords
-    CLASS,
-    PUBLIC,
-    PRIVATE,
-    PROTECTED,
-    STATIC,
-    FINAL,
-    ABSTRACT,
-    VIRTUAL,
-    OVERRIDE,
-    INTERFACE,
-    EXTENDS,
-    IMPLEMENTS,
-    IF,
-    ELSE,
-    FOR,
-    WHILE,
-    DO,
-    RETURN,
-    BREAK,
-    CONTINUE,
-    TRY,
-    CATCH,
-    FINALLY,
-    THROW,
-    NEW,
-    THIS,
-    SUPER,
-    NULL,
-    TRUE,
-    FALSE,
-    VOID,
-    INSERT,
-    UPDATE,
-    DELETE,
-    UPSERT,
+    CLASS("class"),
+    PUBLIC("public"),
+    PRIVATE("private"),
+    PROTECTED("protected"),
+    STATIC("static"),
+    FINAL("final"),
+    ABSTRACT("abstract"),
+    VIRTUAL("virtual"),
+    OVERRIDE("override"),
+    INTERFACE("interface"),
+    ENUM("enum"),
+    EXTENDS("extends"),
+    IMPLEMENTS("implements"),
+    IF("if"),
+    ELSE("else"),
+    FOR("for"),
+    WHILE("while"),
+    DO("do"),
+    RETURN("return"),
+    BREAK("break"),
+    CONTINUE("continue"),
+    TRY("try"),
+    CATCH("catch"),
+    FINALLY("finally"),
+    THROW("throw"),
+    NEW("new"),
+    THIS("this"),
+    SUPER("super"),
+    NULL("null"),
+    TRUE("true"),
+    FALSE("false"),
+    VOID("void"),
+    INSERT("insert"),
+    UPDATE("update"),
+    DELETE("delete"),
+    UPSERT("upsert"),
     
     // Primitive types
-    INTEGER,
-    DECIMAL,
-    STRING,
-    BOOLEAN,
-    ID,
-    DATE,
-    DATETIME,
-    TIME,
+    INTEGER("Integer"),
+    DECIMAL("Decimal"),
+    STRING("String"),
+    BOOLEAN("Boolean"),
+    ID("Id"),
+    DATE("Date"),
+    DATETIME("DateTime"),
+    TIME("Time"),
     
     // Salesforce specific types
-    SOBJECT,
-    LIST,
-    SET,
-    MAP,
+    SOBJECT("SObject"),
+    LIST("List"),
+    SET("Set"),
+    MAP("Map"),
     
     // Operators
-    PLUS,           // +
-    MINUS,          // -
-    MULTIPLY,       // *
-    DIVIDE,         // /
-    MODULO,         // %
-    ASSIGN,         // =
-    PLUS_ASSIGN,    // +=
-    MINUS_ASSIGN,   // -=
-    MULTIPLY_ASSIGN, // *=
-    DIVIDE_ASSIGN,  // /=
-    EQUALS,         // ==
-    NOT_EQUALS,     // !=
-    LESS_THAN,      // <
-    LESS_EQUAL,     // <=
-    GREATER_THAN,   // >
-    GREATER_EQUAL,  // >=
-    LOGICAL_AND,    // &&
-    LOGICAL_OR,     // ||
-    LOGICAL_NOT,    // !
-    BITWISE_AND,    // &
-    BITWISE_OR,     // |
-    BITWISE_XOR,    // ^
-    BITWISE_NOT,    // ~
-    LEFT_SHIFT,     // <<
-    RIGHT_SHIFT,    // >>
-    INCREMENT,      // ++
-    DECREMENT,      // --
+    PLUS("+"),
+    MINUS("-"),
+    MULTIPLY("*"),
+    DIVIDE("/"),
+    MODULO("%"),
+    ASSIGN("="),
+    PLUS_ASSIGN("+="),
+    MINUS_ASSIGN("-="),
+    MULTIPLY_ASSIGN("*="),
+    DIVIDE_ASSIGN("/="),
+    EQUALS("=="),
+    NOT_EQUALS("!="),
+    LESS_THAN("<"),
+    LESS_EQUAL("<="),
+    GREATER_THAN(">"),
+    GREATER_EQUAL(">="),
+    LOGICAL_AND("&&"),
+    LOGICAL_OR("||"),
+    LOGICAL_NOT("!"),
+    BITWISE_AND("&"),
+    BITWISE_OR("|"),
+    BITWISE_XOR("^"),
+    BITWISE_NOT("~"),
+    LEFT_SHIFT("<<"),
+    RIGHT_SHIFT(">>"),
+    INCREMENT("++"),
+    DECREMENT("--"),
     
     // Delimiters
-    LEFT_PAREN,     // (
-    RIGHT_PAREN,    // )
-    LEFT_BRACE,     // {
-    RIGHT_BRACE,    // }
-    LEFT_BRACKET,   // [
-    RIGHT_BRACKET,  // ]
-    SEMICOLON,      // ;
-    COMMA,          // ,
-    DOT,            // .
-    QUESTION,       // ?
-    COLON,          // :
+    LEFT_PAREN("("),
+    RIGHT_PAREN(")"),
+    LEFT_BRACE("{"),
+    RIGHT_BRACE("}"),
+    LEFT_BRACKET("["),
+    RIGHT_BRACKET("]"),
+    SEMICOLON(";"),
+    COMMA(","),
+    DOT("."),
+    QUESTION("?"),
+    COLON(":"),
     
     // Literals
     INTEGER_LITERAL,
@@ -107,8 +108,25 @@ public enum TokenType {
     NEWLINE,
     WHITESPACE,
     COMMENT,
-    AT,                 // @
+    AT("@"),
+    // A malformed literal, such as an unterminated string; the lexer has already reported it.
+    ERROR,
     
     // End of file
-    EOF
+    EOF;
+    
+    private final String text;
+    
+    TokenType() {
+        this(null);
+    }
+    
+    TokenType(String text) {
+        this.text = text;
+    }
+    
+    // Fixed source text of keywords, operators and delimiters; null for tokens whose text varies.
+    public String getText() {
+        return text;
+    }
 }
\ No newline at end of file
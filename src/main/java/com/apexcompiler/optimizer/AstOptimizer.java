@@ -0,0 +1,421 @@
+package com.apexcompiler.optimizer;
+
+import com.apexcompiler.ast.*;
+import com.apexcompiler.lexer.TokenType;
+import com.apexcompiler.semantic.TypeFacts;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies an analyzed AST before Java code generation: operations on
+ * literals are folded, branches behind a constant condition are dropped and
+ * literals at the end of a string concatenation chain are joined.
+ *
+ * Integer folding follows Java int semantics, as in the generated code.
+ * Decimal operations are left alone, since each backend has its own exact
+ * Decimal arithmetic; a negated Decimal literal is folded. The
+ * input is never modified, since cached ASTs are compiled again; a node is
+ * copied only when something below it changed, and takes over the analyzer's
+ * facts about the node it replaces.
+ */
+public class AstOptimizer implements ASTVisitor<ASTNode> {
+    private final TypeFacts facts;
+    
+    public AstOptimizer() {
+        this(TypeFacts.NONE);
+    }
+    
+    public AstOptimizer(TypeFacts facts) {
+        this.facts = facts;
+    }
+    
+    public CompilationUnit optimize(CompilationUnit unit) {
+        List<ClassDeclaration> types = optimizeAll(unit.getTypes());
+        return types == unit.getTypes() ? unit : new CompilationUnit(types);
+    }
+    
+    // Returns the same list when no element changed.
+    @SuppressWarnings("unchecked")
+    private <N extends ASTNode> List<N> optimizeAll(List<N> nodes) {
+        List<N> result = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            N node = nodes.get(i);
+            N optimized = (N) node.accept(this);
+            if (optimized != node && result == null) {
+                result = new ArrayList<>(nodes.subList(0, i));
+            }
+            if (result != null) {
+                result.add(optimized);
+            }
+        }
+        return result != null ? result : nodes;
+    }
+    
+    private Expression optimize(Expression expr) {
+        return expr != null ? (Expression) expr.accept(this) : null;
+    }
+    
+    // A statement that folds away entirely becomes null.
+    private Statement optimize(Statement stmt) {
+        return stmt != null ? (Statement) stmt.accept(this) : null;
+    }
+    
+    private <N extends ASTNode> N at(N node, ASTNode original) {
+        node.setPosition(original.getStartOffset(), original.getEndOffset(), original.getLine(), original.getColumn());
+        facts.transfer(original, node);
+        return node;
+    }
+    
+    @Override
+    public ASTNode visitClassDeclaration(ClassDeclaration node) {
+        List<VariableDeclaration> fields = optimizeAll(node.getFields());
+        List<MethodDeclaration> methods = optimizeAll(node.getMethods());
+        List<ClassDeclaration> innerClasses = optimizeAll(node.getInnerClasses());
+        if (fields == node.getFields() && methods == node.getMethods() && innerClasses == node.getInnerClasses()) {
+            return node;
+        }
+        return at(new ClassDeclaration(node.getKind(), node.getName(), node.getSuperClass(), node.getInterfaces(),
+                                       node.getModifiers(), methods, fields, node.getAnnotations(),
+                                       node.getEnumConstants(), innerClasses), node);
+    }
+    
+    @Override
+    public ASTNode visitMethodDeclaration(MethodDeclaration node) {
+        if (node.getBody() == null) {
+            return node;
+        }
+        BlockStatement body = (BlockStatement) node.getBody().accept(this);
+        if (body == node.getBody()) {
+            return node;
+        }
+        return at(new MethodDeclaration(node.getName(), node.getReturnType(), node.getParameters(),
+                                        node.getModifiers(), body, node.getAnnotations()), node);
+    }
+    
+    @Override
+    public ASTNode visitVariableDeclaration(VariableDeclaration node) {
+        Expression initializer = optimize(node.getInitializer());
+        if (initializer == node.getInitializer()) {
+            return node;
+        }
+        return at(new VariableDeclaration(node.getType(), node.getName(), initializer, node.getModifiers()), node);
+    }
+    
+    @Override
+    public ASTNode visitIfStatement(IfStatement node) {
+        Expression condition = optimize(node.getCondition());
+        if (condition instanceof LiteralExpression && ((LiteralExpression) condition).getValue() instanceof Boolean) {
+            return optimize((Boolean) ((LiteralExpression) condition).getValue()
+                ? node.getThenBranch()
+                : node.getElseBranch());
+        }
+        Statement thenBranch = orEmpty(optimize(node.getThenBranch()), node.getThenBranch());
+        Statement elseBranch = node.getElseBranch() != null
+            ? orEmpty(optimize(node.getElseBranch()), node.getElseBranch())
+            : null;
+        if (condition == node.getCondition() && thenBranch == node.getThenBranch() && elseBranch == node.getElseBranch()) {
+            return node;
+        }
+        return at(new IfStatement(condition, thenBranch, elseBranch), node);
+    }
+    
+    @Override
+    public ASTNode visitWhileStatement(WhileStatement node) {
+        Expression condition = optimize(node.getCondition());
+        if (isFalse(condition)) {
+            return null;
+        }
+        Statement body = orEmpty(optimize(node.getBody()), node.getBody());
+        if (condition == node.getCondition() && body == node.getBody()) {
+            return node;
+        }
+        return at(new WhileStatement(condition, body), node);
+    }
+    
+    @Override
+    public ASTNode visitForStatement(ForStatement node) {
+        Statement initializer = optimize(node.getInitializer());
+        Expression condition = optimize(node.getCondition());
+        // A declared loop variable is scoped to the loop, so only a plain initializer can outlive it.
+        if (isFalse(condition) && !(initializer instanceof VariableDeclaration)) {
+            return initializer;
+        }
+        Expression increment = optimize(node.getIncrement());
+        Statement body = orEmpty(optimize(node.getBody()), node.getBody());
+        if (initializer == node.getInitializer() && condition == node.getCondition()
+                && increment == node.getIncrement() && body == node.getBody()) {
+            return node;
+        }
+        return at(new ForStatement(initializer, condition, increment, body), node);
+    }
+    
+    // Where a statement is required, one that folded away is left as an empty block.
+    private Statement orEmpty(Statement optimized, Statement original) {
+        return optimized != null ? optimized : at(new BlockStatement(new ArrayList<>()), original);
+    }
+    
+    @Override
+    public ASTNode visitReturnStatement(ReturnStatement node) {
+        Expression value = optimize(node.getValue());
+        return value == node.getValue() ? node : at(new ReturnStatement(value), node);
+    }
+    
+    @Override
+    public ASTNode visitExpressionStatement(ExpressionStatement node) {
+        Expression expression = optimize(node.getExpression());
+        return expression == node.getExpression() ? node : at(new ExpressionStatement(expression), node);
+    }
+    
+    /**
+     * Blocks left behind by a folded branch are merged into the enclosing
+     * block unless they declare variables. Anything after a return, or after
+     * a kept block that ends in one, is dropped, since javac rejects
+     * unreachable statements that a constant if condition used to hide.
+     */
+    @Override
+    public ASTNode visitBlockStatement(BlockStatement node) {
+        List<Statement> statements = new ArrayList<>();
+        boolean changed = false;
+        for (Statement stmt : node.getStatements()) {
+            Statement optimized = optimize(stmt);
+            changed |= optimized != stmt;
+            if (optimized instanceof BlockStatement && !declaresVariables((BlockStatement) optimized)) {
+                statements.addAll(((BlockStatement) optimized).getStatements());
+                changed = true;
+            } else if (optimized != null) {
+                statements.add(optimized);
+            }
+            if (endsWithReturn(statements)) {
+                changed |= stmt != node.getStatements().get(node.getStatements().size() - 1);
+                break;
+            }
+        }
+        return changed ? at(new BlockStatement(statements), node) : node;
+    }
+    
+    private static boolean declaresVariables(BlockStatement block) {
+        for (Statement stmt : block.getStatements()) {
+            if (stmt instanceof VariableDeclaration) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean endsWithReturn(List<Statement> statements) {
+        if (statements.isEmpty()) {
+            return false;
+        }
+        Statement last = statements.get(statements.size() - 1);
+        return last instanceof ReturnStatement
+            || last instanceof BlockStatement && endsWithReturn(((BlockStatement) last).getStatements());
+    }
+    
+    @Override
+    public ASTNode visitBinaryExpression(BinaryExpression node) {
+        Expression left = optimize(node.getLeft());
+        Expression right = optimize(node.getRight());
+        TokenType operator = node.getOperator();
+        
+        if (left instanceof LiteralExpression && right instanceof LiteralExpression) {
+            LiteralExpression folded = fold((LiteralExpression) left, operator, (LiteralExpression) right);
+            if (folded != null) {
+                return at(folded, node);
+            }
+        }
+        
+        // A constant left side of && or || either decides the result or leaves it to the right side.
+        if (left instanceof LiteralExpression && ((LiteralExpression) left).getValue() instanceof Boolean
+                && (operator == TokenType.LOGICAL_AND || operator == TokenType.LOGICAL_OR)) {
+            boolean value = (Boolean) ((LiteralExpression) left).getValue();
+            return value == (operator == TokenType.LOGICAL_AND) ? right : left;
+        }
+        
+        // (x + 'a') + 'b' is x + 'ab': once a String is on the left, + only appends.
+        if (operator == TokenType.PLUS && right instanceof LiteralExpression && left instanceof BinaryExpression) {
+            BinaryExpression chain = (BinaryExpression) left;
+            if (chain.getOperator() == TokenType.PLUS && isString(chain.getRight())) {
+                LiteralExpression joined = fold((LiteralExpression) chain.getRight(), TokenType.PLUS, (LiteralExpression) right);
+                if (joined != null) {
+                    return at(new BinaryExpression(chain.getLeft(), TokenType.PLUS, at(joined, right)), node);
+                }
+            }
+        }
+        
+        if (left == node.getLeft() && right == node.getRight()) {
+            return node;
+        }
+        return at(new BinaryExpression(left, operator, right), node);
+    }
+    
+    @Override
+    public ASTNode visitUnaryExpression(UnaryExpression node) {
+        Expression operand = optimize(node.getOperand());
+        if (operand instanceof LiteralExpression) {
+            Object value = ((LiteralExpression) operand).getValue();
+            Object folded = null;
+            switch (node.getOperator()) {
+                case MINUS:
+                    if (value instanceof Integer) {
+                        folded = -(Integer) value;
+                    } else if (value instanceof BigDecimal) {
+                        folded = ((BigDecimal) value).negate();
+                    }
+                    break;
+                case PLUS:
+                    if (value instanceof Integer || value instanceof BigDecimal) {
+                        folded = value;
+                    }
+                    break;
+                case LOGICAL_NOT:
+                    if (value instanceof Boolean) {
+                        folded = !(Boolean) value;
+                    }
+                    break;
+                case BITWISE_NOT:
+                    if (value instanceof Integer) {
+                        folded = ~(Integer) value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (folded != null) {
+                return at(literal(folded), node);
+            }
+        }
+        return operand == node.getOperand() ? node : at(new UnaryExpression(node.getOperator(), operand), node);
+    }
+    
+    @Override
+    public ASTNode visitCallExpression(CallExpression node) {
+        Expression callee = optimize(node.getCallee());
+        List<Expression> arguments = optimizeAll(node.getArguments());
+        if (callee == node.getCallee() && arguments == node.getArguments()) {
+            return node;
+        }
+        return at(new CallExpression(callee, arguments), node);
+    }
+    
+    @Override
+    public ASTNode visitMemberExpression(MemberExpression node) {
+        Expression object = optimize(node.getObject());
+        return object == node.getObject() ? node : at(new MemberExpression(object, node.getProperty()), node);
+    }
+    
+    @Override
+    public ASTNode visitLiteralExpression(LiteralExpression node) {
+        return node;
+    }
+    
+    @Override
+    public ASTNode visitIdentifierExpression(IdentifierExpression node) {
+        return node;
+    }
+    
+    @Override
+    public ASTNode visitAssignmentExpression(AssignmentExpression node) {
+        Expression value = optimize(node.getValue());
+        if (value == node.getValue()) {
+            return node;
+        }
+        return at(new AssignmentExpression(node.getTarget(), node.getOperator(), value), node);
+    }
+    
+    @Override
+    public ASTNode visitAnnotation(Annotation node) {
+        return node;
+    }
+    
+    @Override
+    public ASTNode visitSoqlExpression(SoqlExpression node) {
+        return node;
+    }
+    
+    @Override
+    public ASTNode visitDmlStatement(DmlStatement node) {
+        Expression target = optimize(node.getTarget());
+        return target == node.getTarget() ? node : at(new DmlStatement(node.getOperation(), target), node);
+    }
+    
+    @Override
+    public ASTNode visitErrorStatement(ErrorStatement node) {
+        return node;
+    }
+    
+    private static boolean isFalse(Expression expr) {
+        return expr instanceof LiteralExpression && Boolean.FALSE.equals(((LiteralExpression) expr).getValue());
+    }
+    
+    private static boolean isString(Expression expr) {
+        return expr instanceof LiteralExpression && ((LiteralExpression) expr).getValue() instanceof String;
+    }
+    
+    // Returns null for anything that must be left to run time, such as integer division by zero.
+    private static LiteralExpression fold(LiteralExpression left, TokenType operator, LiteralExpression right) {
+        Object a = left.getValue();
+        Object b = right.getValue();
+        if (a == null || b == null || a instanceof BigDecimal || b instanceof BigDecimal) {
+            return null;
+        }
+        // String literals keep their escapes, which stay valid when the raw texts are joined.
+        if (operator == TokenType.PLUS && (a instanceof String || b instanceof String)) {
+            return literal(String.valueOf(a) + b);
+        }
+        if (a instanceof Integer && b instanceof Integer) {
+            return literal(foldInteger((Integer) a, operator, (Integer) b));
+        }
+        if (a instanceof Boolean && b instanceof Boolean) {
+            return literal(foldBoolean((Boolean) a, operator, (Boolean) b));
+        }
+        return null;
+    }
+    
+    private static Object foldInteger(int a, TokenType operator, int b) {
+        switch (operator) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return b != 0 ? a / b : null;
+            case MODULO: return b != 0 ? a % b : null;
+            case EQUALS: return a == b;
+            case NOT_EQUALS: return a != b;
+            case LESS_THAN: return a < b;
+            case LESS_EQUAL: return a <= b;
+            case GREATER_THAN: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case BITWISE_AND: return a & b;
+            case BITWISE_OR: return a | b;
+            case BITWISE_XOR: return a ^ b;
+            case LEFT_SHIFT: return a << b;
+            case RIGHT_SHIFT: return a >> b;
+            default: return null;
+        }
+    }
+    
+    private static Object foldBoolean(boolean a, TokenType operator, boolean b) {
+        switch (operator) {
+            case EQUALS: return a == b;
+            case NOT_EQUALS: return a != b;
+            case LOGICAL_AND: return a && b;
+            case LOGICAL_OR: return a || b;
+            default: return null;
+        }
+    }
+    
+    private static LiteralExpression literal(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Integer) {
+            return new LiteralExpression(value, "Integer");
+        } else if (value instanceof BigDecimal) {
+            return new LiteralExpression(value, "Decimal");
+        } else if (value instanceof Boolean) {
+            return new LiteralExpression(value, "Boolean");
+        } else {
+            return new LiteralExpression(value, "String");
+        }
+    }
+}
\ No newline at end of file
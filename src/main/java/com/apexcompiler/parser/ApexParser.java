@@ -1,37 +1,111 @@
 package com.apexcompiler.parser;
 
+import com.apexcompiler.lexer.ApexLexer;
 import com.apexcompiler.lexer.Token;
+import com.apexcompiler.lexer.TokenBuffer;
 import com.apexcompiler.lexer.TokenType;
 import com.apexcompiler.ast.*;
 import com.apexcompiler.ast.MethodDeclaration.Parameter;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.runtime.SoqlQuery;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 public class ApexParser {
-    private final List<Token> tokens;
+    private static final int MIN_RELEASE = 256;
+    
+    private final TokenBuffer tokens;
+    private final boolean streaming;
+    private int released = 0;
+    private int marks = 0;
     private int current = 0;
+    // Number of '{' consumed and not yet closed, which tells recovery where a construct ends.
+    private int braceDepth = 0;
+    private final List<Diagnostic> errors = new ArrayList<>();
+    private int lastErrorAt = -1;
+    // The token after the last malformed literal, where the error it causes has already been reported by the lexer.
+    private int afterLexicalError = -1;
+    // Start offset, line and column of each construct still being parsed, captured before its tokens are released.
+    private int[] openStarts = new int[48];
+    private int openCount = 0;
     
     public ApexParser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens), false);
+    }
+    
+    // Pulls tokens from the lexer on demand and releases them once parsed.
+    public ApexParser(ApexLexer lexer) {
+        this(new TokenBuffer(lexer), true);
+    }
+    
+    // Parses a caller-owned buffer, which is left intact.
+    public ApexParser(TokenBuffer tokens) {
+        this(tokens, false);
+    }
+    
+    private ApexParser(TokenBuffer tokens, boolean streaming) {
         this.tokens = tokens;
+        this.streaming = streaming;
+    }
+    
+    // Parses every top-level declaration in the file, skipping over any that fail to parse.
+    public CompilationUnit parseCompilationUnit() {
+        List<ClassDeclaration> types = new ArrayList<>();
+        do {
+            int start = current;
+            try {
+                types.add(parseClass());
+            } catch (SyntaxError e) {
+                report(e);
+                synchronizeMember(start, 0, true);
+            }
+        } while (!isAtEnd());
+        return new CompilationUnit(types);
     }
     
+    // Lexical and syntax errors recovered from so far, in source order.
+    public List<Diagnostic> getErrors() {
+        List<Diagnostic> lexical = tokens.getErrors();
+        if (lexical.isEmpty()) {
+            return errors;
+        }
+        List<Diagnostic> all = new ArrayList<>(errors);
+        all.addAll(lexical);
+        all.sort(Comparator.comparingInt(Diagnostic::getStartOffset));
+        return all;
+    }
+    
+    // Parses a single class, interface or enum declaration.
     public ClassDeclaration parseClass() {
+        int mark = begin();
         List<Annotation> annotations = parseAnnotations();
         List<String> modifiers = parseModifiers();
+        return finish(parseTypeDeclaration(modifiers, annotations), mark);
+    }
+    
+    private ClassDeclaration parseTypeDeclaration(List<String> modifiers, List<Annotation> annotations) {
+        if (match(TokenType.INTERFACE)) {
+            return parseInterface(modifiers, annotations);
+        }
+        if (match(TokenType.ENUM)) {
+            return parseEnum(modifiers, annotations);
+        }
         consume(TokenType.CLASS, "Expected 'class'");
-        String className = consume(TokenType.IDENTIFIER, "Expected class name").getLexeme();
+        String className = lexeme(consume(TokenType.IDENTIFIER, "Expected class name"));
         
         String superClass = null;
         if (match(TokenType.EXTENDS)) {
-            superClass = consume(TokenType.IDENTIFIER, "Expected superclass name").getLexeme();
+            superClass = lexeme(consume(TokenType.IDENTIFIER, "Expected superclass name"));
         }
         
         List<String> interfaces = new ArrayList<>();
         if (match(TokenType.IMPLEMENTS)) {
             do {
-                interfaces.add(consume(TokenType.IDENTIFIER, "Expected interface name").getLexeme());
+                interfaces.add(lexeme(consume(TokenType.IDENTIFIER, "Expected interface name")));
             } while (match(TokenType.COMMA));
         }
         
@@ -39,28 +113,95 @@ public class ApexParser {
         
         List<MethodDeclaration> methods = new ArrayList<>();
         List<VariableDeclaration> fields = new ArrayList<>();
+        List<ClassDeclaration> innerClasses = new ArrayList<>();
         
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
-            List<Annotation> memberAnnotations = parseAnnotations();
-            List<String> memberModifiers = parseModifiers();
-            
-            if (isFieldDeclaration()) {
-                fields.add(parseField(memberModifiers));
-            } else {
-                methods.add(parseMethod(memberModifiers, memberAnnotations));
+            int start = current;
+            int depth = braceDepth;
+            try {
+                int mark = begin();
+                List<Annotation> memberAnnotations = parseAnnotations();
+                List<String> memberModifiers = parseModifiers();
+                
+                if (isTypeDeclarationStart()) {
+                    innerClasses.add(finish(parseTypeDeclaration(memberModifiers, memberAnnotations), mark));
+                } else if (isFieldDeclaration()) {
+                    fields.add(finish(parseField(memberModifiers), mark));
+                } else {
+                    methods.add(finish(parseMethod(memberModifiers, memberAnnotations), mark));
+                }
+            } catch (SyntaxError e) {
+                report(e);
+                synchronizeMember(start, depth, false);
             }
         }
         
         consume(TokenType.RIGHT_BRACE, "Expected '}'");
         
-        return new ClassDeclaration(className, superClass, interfaces, modifiers, methods, fields, annotations);
+        return new ClassDeclaration(ClassDeclaration.Kind.CLASS, className, superClass, interfaces, modifiers,
+                                    methods, fields, annotations, List.of(), innerClasses);
+    }
+    
+    private ClassDeclaration parseInterface(List<String> modifiers, List<Annotation> annotations) {
+        String name = lexeme(consume(TokenType.IDENTIFIER, "Expected interface name"));
+        
+        List<String> extended = new ArrayList<>();
+        if (match(TokenType.EXTENDS)) {
+            do {
+                extended.add(lexeme(consume(TokenType.IDENTIFIER, "Expected interface name")));
+            } while (match(TokenType.COMMA));
+        }
+        
+        consume(TokenType.LEFT_BRACE, "Expected '{'");
+        
+        List<MethodDeclaration> methods = new ArrayList<>();
+        while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+            int start = current;
+            int depth = braceDepth;
+            try {
+                int mark = begin();
+                List<Annotation> memberAnnotations = parseAnnotations();
+                List<String> memberModifiers = parseModifiers();
+                methods.add(finish(parseMethod(memberModifiers, memberAnnotations), mark));
+            } catch (SyntaxError e) {
+                report(e);
+                synchronizeMember(start, depth, false);
+            }
+        }
+        
+        consume(TokenType.RIGHT_BRACE, "Expected '}'");
+        
+        return new ClassDeclaration(ClassDeclaration.Kind.INTERFACE, name, null, extended, modifiers,
+                                    methods, List.of(), annotations, List.of(), List.of());
+    }
+    
+    private ClassDeclaration parseEnum(List<String> modifiers, List<Annotation> annotations) {
+        String name = lexeme(consume(TokenType.IDENTIFIER, "Expected enum name"));
+        consume(TokenType.LEFT_BRACE, "Expected '{'");
+        
+        List<String> constants = new ArrayList<>();
+        while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+            constants.add(lexeme(consume(TokenType.IDENTIFIER, "Expected enum constant")));
+            if (!match(TokenType.COMMA)) {
+                break;
+            }
+        }
+        
+        consume(TokenType.RIGHT_BRACE, "Expected '}'");
+        
+        return new ClassDeclaration(ClassDeclaration.Kind.ENUM, name, null, List.of(), modifiers,
+                                    List.of(), List.of(), annotations, constants, List.of());
+    }
+    
+    private boolean isTypeDeclarationStart() {
+        return check(TokenType.CLASS) || check(TokenType.INTERFACE) || check(TokenType.ENUM);
     }
     
     private List<Annotation> parseAnnotations() {
         List<Annotation> annotations = new ArrayList<>();
         while (check(TokenType.AT)) {
             advance(); // consume @
-            String name = consume(TokenType.IDENTIFIER, "Expected annotation name").getLexeme();
+            String name = lexeme(consume(TokenType.IDENTIFIER, "Expected annotation name"));
             List<Annotation.AnnotationValue> values = new ArrayList<>();
             
             if (match(TokenType.LEFT_PAREN)) {
@@ -70,18 +211,18 @@ public class ApexParser {
                         Object paramValue;
                         
                         if (check(TokenType.IDENTIFIER) && check(TokenType.ASSIGN, 1)) {
-                            paramName = advance().getLexeme();
+                            paramName = advanceLexeme();
                             advance(); // consume =
                         }
                         
                         if (check(TokenType.STRING_LITERAL)) {
-                            paramValue = advance().getLexeme();
+                            paramValue = advanceLexeme();
                         } else if (check(TokenType.INTEGER_LITERAL)) {
-                            paramValue = Integer.parseInt(advance().getLexeme());
+                            paramValue = Integer.parseInt(advanceLexeme());
                         } else if (check(TokenType.TRUE) || check(TokenType.FALSE)) {
-                            paramValue = Boolean.parseBoolean(advance().getLexeme());
+                            paramValue = Boolean.parseBoolean(advanceLexeme());
                         } else {
-                            paramValue = advance().getLexeme();
+                            paramValue = advanceLexeme();
                         }
                         
                         values.add(new Annotation.AnnotationValue(paramName, paramValue));
@@ -97,8 +238,8 @@ public class ApexParser {
     
     private List<String> parseModifiers() {
         List<String> modifiers = new ArrayList<>();
-        while (isModifier(peek().getType())) {
-            modifiers.add(advance().getLexeme());
+        while (isModifier(peekType())) {
+            modifiers.add(advanceLexeme());
         }
         return modifiers;
     }
@@ -110,25 +251,25 @@ public class ApexParser {
                type == TokenType.VIRTUAL || type == TokenType.OVERRIDE;
     }
     
-    private boolean isType(Token token) {
-        return token.getType() == TokenType.INTEGER ||
-               token.getType() == TokenType.DECIMAL ||
-               token.getType() == TokenType.STRING ||
-               token.getType() == TokenType.BOOLEAN ||
-               token.getType() == TokenType.VOID ||
-               token.getType() == TokenType.LIST ||
-               token.getType() == TokenType.SET ||
-               token.getType() == TokenType.MAP ||
-               token.getType() == TokenType.ID ||
-               token.getType() == TokenType.DATE ||
-               token.getType() == TokenType.DATETIME ||
-               token.getType() == TokenType.TIME ||
-               token.getType() == TokenType.SOBJECT ||
-               (token.getType() == TokenType.IDENTIFIER && !isKeyword(token));
-    }
-    
-    private boolean isKeyword(Token token) {
-        switch (token.getType()) {
+    private boolean isType(TokenType type) {
+        return type == TokenType.INTEGER ||
+               type == TokenType.DECIMAL ||
+               type == TokenType.STRING ||
+               type == TokenType.BOOLEAN ||
+               type == TokenType.VOID ||
+               type == TokenType.LIST ||
+               type == TokenType.SET ||
+               type == TokenType.MAP ||
+               type == TokenType.ID ||
+               type == TokenType.DATE ||
+               type == TokenType.DATETIME ||
+               type == TokenType.TIME ||
+               type == TokenType.SOBJECT ||
+               (type == TokenType.IDENTIFIER && !isKeyword(type));
+    }
+    
+    private boolean isKeyword(TokenType type) {
+        switch (type) {
             case IF:
             case ELSE:
             case FOR:
@@ -153,7 +294,7 @@ public class ApexParser {
     }
     
     private GenericType parseGenericType() {
-        String baseType = advance().getLexeme();
+        String baseType = advanceLexeme();
         List<GenericType> typeArgs = new ArrayList<>();
         
         if (match(TokenType.LESS_THAN)) {
@@ -168,8 +309,18 @@ public class ApexParser {
     
     private boolean isFieldDeclaration() {
         int savedCurrent = current;
-        
-        if (isType(peek())) {
+        int savedDepth = braceDepth;
+        marks++;
+        try {
+            return scanFieldDeclaration(savedCurrent);
+        } finally {
+            marks--;
+            braceDepth = savedDepth;
+        }
+    }
+    
+    private boolean scanFieldDeclaration(int savedCurrent) {
+        if (isType(peekType())) {
             advance();
             if (check(TokenType.LESS_THAN)) {
                 while (!check(TokenType.GREATER_THAN) && !isAtEnd()) {
@@ -194,7 +345,7 @@ public class ApexParser {
     
     private VariableDeclaration parseField(List<String> modifiers) {
         GenericType type = parseGenericType();
-        String name = consume(TokenType.IDENTIFIER, "Expected field name").getLexeme();
+        String name = lexeme(consume(TokenType.IDENTIFIER, "Expected field name"));
         
         Expression initializer = null;
         if (match(TokenType.ASSIGN)) {
@@ -210,10 +361,10 @@ public class ApexParser {
         String methodName;
         
         if (check(TokenType.IDENTIFIER) && check(TokenType.LEFT_PAREN, 1)) {
-            methodName = advance().getLexeme();
+            methodName = advanceLexeme();
         } else {
-            returnType = advance().getLexeme();
-            methodName = consume(TokenType.IDENTIFIER, "Expected method name").getLexeme();
+            returnType = advanceLexeme();
+            methodName = lexeme(consume(TokenType.IDENTIFIER, "Expected method name"));
         }
         
         consume(TokenType.LEFT_PAREN, "Expected '('");
@@ -221,40 +372,55 @@ public class ApexParser {
         
         if (!check(TokenType.RIGHT_PAREN)) {
             do {
-                String paramType = advance().getLexeme();
-                String paramName = consume(TokenType.IDENTIFIER, "Expected parameter name").getLexeme();
+                String paramType = advanceLexeme();
+                String paramName = lexeme(consume(TokenType.IDENTIFIER, "Expected parameter name"));
                 parameters.add(new Parameter(paramType, paramName));
             } while (match(TokenType.COMMA));
         }
         
         consume(TokenType.RIGHT_PAREN, "Expected ')'");
         
-        BlockStatement body = parseBlockStatement();
+        // Interface and abstract methods end in ';' instead of a body.
+        BlockStatement body = match(TokenType.SEMICOLON) ? null : parseBlockStatement();
         
         return new MethodDeclaration(methodName, returnType, parameters, modifiers, body, annotations);
     }
     
     private BlockStatement parseBlockStatement() {
+        int mark = begin();
         consume(TokenType.LEFT_BRACE, "Expected '{'");
         
         List<Statement> statements = new ArrayList<>();
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
-            statements.add(parseStatement());
+            int start = current;
+            int depth = braceDepth;
+            try {
+                statements.add(parseStatement());
+            } catch (SyntaxError e) {
+                report(e);
+                synchronizeStatement(start, depth);
+                statements.add(new ErrorStatement(e.getMessage()));
+            }
         }
         
         consume(TokenType.RIGHT_BRACE, "Expected '}'");
-        return new BlockStatement(statements);
+        return finish(new BlockStatement(statements), mark);
     }
     
     private Statement parseStatement() {
+        int mark = begin();
+        return finish(parseStatementKind(), mark);
+    }
+    
+    private Statement parseStatementKind() {
         if (match(TokenType.IF)) return parseIfStatement();
         if (match(TokenType.WHILE)) return parseWhileStatement();
         if (match(TokenType.FOR)) return parseForStatement();
         if (match(TokenType.RETURN)) return parseReturnStatement();
-        if (match(TokenType.LEFT_BRACE)) return parseBlockStatement();
+        if (check(TokenType.LEFT_BRACE)) return parseBlockStatement();
         if (match(TokenType.INSERT, TokenType.UPDATE, TokenType.DELETE, TokenType.UPSERT)) return parseDmlStatement();
         
-        if (isType(peek()) && check(TokenType.IDENTIFIER, 1)) {
+        if (isType(peekType()) && check(TokenType.IDENTIFIER, 1)) {
             return parseVariableDeclaration();
         }
         
@@ -262,7 +428,7 @@ public class ApexParser {
     }
     
     private Statement parseDmlStatement() {
-        TokenType operation = previous().getType();
+        TokenType operation = previousType();
         Expression target = parseExpression();
         consume(TokenType.SEMICOLON, "Expected ';'");
         return new DmlStatement(operation, target);
@@ -329,8 +495,8 @@ public class ApexParser {
     }
     
     private Statement parseVariableDeclaration() {
-        String type = advance().getLexeme();
-        String name = consume(TokenType.IDENTIFIER, "Expected variable name").getLexeme();
+        String type = advanceLexeme();
+        String name = lexeme(consume(TokenType.IDENTIFIER, "Expected variable name"));
         
         Expression initializer = null;
         if (match(TokenType.ASSIGN)) {
@@ -347,6 +513,52 @@ public class ApexParser {
         return new ExpressionStatement(expr);
     }
     
+    private Expression binary(Expression left, TokenType operator, Expression right) {
+        return extend(new BinaryExpression(left, operator, right), left);
+    }
+    
+    private Expression unary(TokenType operator, Expression operand) {
+        return new UnaryExpression(operator, operand);
+    }
+    
+    private Expression member(Expression object, String property) {
+        return extend(new MemberExpression(object, property), object);
+    }
+    
+    private Expression assignment(Expression target, TokenType operator, Expression value) {
+        return extend(new AssignmentExpression(target, operator, value), target);
+    }
+    
+    private Expression literal(Object value, String type) {
+        return atPrevious(new LiteralExpression(value, type));
+    }
+    
+    private Expression identifier(String name) {
+        return atPrevious(new IdentifierExpression(name));
+    }
+    
+    // A malformed query is a syntax error on its literal; each bind variable becomes an expression.
+    private Expression soql(String query) {
+        SoqlQuery parsed;
+        try {
+            parsed = SoqlQuery.parse(query);
+        } catch (IllegalArgumentException e) {
+            int previous = current - 1;
+            throw new SyntaxError(e.getMessage(), tokens.line(previous), tokens.column(previous),
+                                  tokens.offset(previous), tokens.endOffset(previous));
+        }
+        List<Expression> binds = new ArrayList<>();
+        for (String name : parsed.getBindNames()) {
+            String[] path = name.split("\\.");
+            Expression bind = identifier(path[0]);
+            for (int i = 1; i < path.length; i++) {
+                bind = member(bind, path[i]);
+            }
+            binds.add(bind);
+        }
+        return atPrevious(new SoqlExpression(query, parsed, binds));
+    }
+    
     private Expression parseExpression() {
         return parseAssignment();
     }
@@ -356,9 +568,9 @@ public class ApexParser {
         
         if (match(TokenType.ASSIGN, TokenType.PLUS_ASSIGN, TokenType.MINUS_ASSIGN,
                  TokenType.MULTIPLY_ASSIGN, TokenType.DIVIDE_ASSIGN)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression value = parseAssignment();
-            return new AssignmentExpression(expr, operator, value);
+            return assignment(expr, operator, value);
         }
         
         return expr;
@@ -368,9 +580,9 @@ public class ApexParser {
         Expression expr = parseLogicalAnd();
         
         while (match(TokenType.LOGICAL_OR)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression right = parseLogicalAnd();
-            expr = new BinaryExpression(expr, operator, right);
+            expr = binary(expr, operator, right);
         }
         
         return expr;
@@ -380,9 +592,9 @@ public class ApexParser {
         Expression expr = parseEquality();
         
         while (match(TokenType.LOGICAL_AND)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression right = parseEquality();
-            expr = new BinaryExpression(expr, operator, right);
+            expr = binary(expr, operator, right);
         }
         
         return expr;
@@ -392,9 +604,9 @@ public class ApexParser {
         Expression expr = parseComparison();
         
         while (match(TokenType.EQUALS, TokenType.NOT_EQUALS)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression right = parseComparison();
-            expr = new BinaryExpression(expr, operator, right);
+            expr = binary(expr, operator, right);
         }
         
         return expr;
@@ -405,9 +617,9 @@ public class ApexParser {
         
         while (match(TokenType.GREATER_THAN, TokenType.GREATER_EQUAL,
                     TokenType.LESS_THAN, TokenType.LESS_EQUAL)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression right = parseTerm();
-            expr = new BinaryExpression(expr, operator, right);
+            expr = binary(expr, operator, right);
         }
         
         return expr;
@@ -417,9 +629,9 @@ public class ApexParser {
         Expression expr = parseFactor();
         
         while (match(TokenType.PLUS, TokenType.MINUS)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression right = parseFactor();
-            expr = new BinaryExpression(expr, operator, right);
+            expr = binary(expr, operator, right);
         }
         
         return expr;
@@ -429,19 +641,21 @@ public class ApexParser {
         Expression expr = parseUnary();
         
         while (match(TokenType.MULTIPLY, TokenType.DIVIDE, TokenType.MODULO)) {
-            TokenType operator = previous().getType();
+            TokenType operator = previousType();
             Expression right = parseUnary();
-            expr = new BinaryExpression(expr, operator, right);
+            expr = binary(expr, operator, right);
         }
         
         return expr;
     }
     
     private Expression parseUnary() {
-        if (match(TokenType.LOGICAL_NOT, TokenType.MINUS, TokenType.PLUS)) {
-            TokenType operator = previous().getType();
+        TokenType operator = peekType();
+        if (operator == TokenType.LOGICAL_NOT || operator == TokenType.MINUS || operator == TokenType.PLUS) {
+            int mark = begin();
+            advance();
             Expression right = parseUnary();
-            return new UnaryExpression(operator, right);
+            return finish(unary(operator, right), mark);
         }
         
         return parseCall();
@@ -454,8 +668,8 @@ public class ApexParser {
             if (match(TokenType.LEFT_PAREN)) {
                 expr = finishCall(expr);
             } else if (match(TokenType.DOT)) {
-                String name = consume(TokenType.IDENTIFIER, "Expected property name").getLexeme();
-                expr = new MemberExpression(expr, name);
+                String name = lexeme(consume(TokenType.IDENTIFIER, "Expected property name"));
+                expr = member(expr, name);
             } else {
                 break;
             }
@@ -474,40 +688,46 @@ public class ApexParser {
         }
         
         consume(TokenType.RIGHT_PAREN, "Expected ')'");
-        return new CallExpression(callee, arguments);
+        return extend(new CallExpression(callee, arguments), callee);
     }
     
     private Expression parsePrimary() {
         if (match(TokenType.TRUE)) {
-            return new LiteralExpression(true, "Boolean");
+            return literal(true, "Boolean");
         }
         
         if (match(TokenType.FALSE)) {
-            return new LiteralExpression(false, "Boolean");
+            return literal(false, "Boolean");
         }
         
         if (match(TokenType.NULL)) {
-            return new LiteralExpression(null, "null");
+            return literal(null, "null");
         }
         
         if (match(TokenType.INTEGER_LITERAL)) {
-            return new LiteralExpression(Integer.parseInt(previous().getLexeme()), "Integer");
+            return literal(Integer.parseInt(lexeme(current - 1)), "Integer");
         }
         
         if (match(TokenType.DECIMAL_LITERAL)) {
-            return new LiteralExpression(Double.parseDouble(previous().getLexeme()), "Decimal");
+            return literal(new BigDecimal(lexeme(current - 1)), "Decimal");
         }
         
         if (match(TokenType.STRING_LITERAL)) {
-            return new LiteralExpression(previous().getLexeme(), "String");
+            return literal(lexeme(current - 1), "String");
         }
         
         if (match(TokenType.SOQL_LITERAL)) {
-            return new SoqlExpression(previous().getLexeme());
+            return soql(lexeme(current - 1));
         }
         
         if (match(TokenType.IDENTIFIER)) {
-            return new IdentifierExpression(previous().getLexeme());
+            return identifier(lexeme(current - 1));
+        }
+        
+        // Stands in as null so the rest of the file is still parsed and analyzed.
+        if (match(TokenType.ERROR)) {
+            afterLexicalError = current;
+            return literal(null, "null");
         }
         
         if (match(TokenType.LEFT_PAREN)) {
@@ -516,7 +736,7 @@ public class ApexParser {
             return expr;
         }
         
-        throw new RuntimeException("Unexpected token: " + peek().getLexeme());
+        throw error("Unexpected token: " + lexeme(current));
     }
     
     private boolean match(TokenType... types) {
@@ -531,38 +751,160 @@ public class ApexParser {
     
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().getType() == type;
+        return peekType() == type;
     }
     
     private boolean check(TokenType type, int offset) {
-        if (current + offset >= tokens.size()) return false;
-        return tokens.get(current + offset).getType() == type;
+        return tokens.type(current + offset) == type;
     }
     
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    // Consumes the current token and returns its index.
+    private int advance() {
+        if (!isAtEnd()) {
+            TokenType type = peekType();
+            if (type == TokenType.LEFT_BRACE) {
+                braceDepth++;
+            } else if (type == TokenType.RIGHT_BRACE && braceDepth > 0) {
+                braceDepth--;
+            }
+            current++;
+            releaseConsumed();
+        }
+        return current - 1;
     }
     
     private boolean isAtEnd() {
-        return peek().getType() == TokenType.EOF;
+        return peekType() == TokenType.EOF;
+    }
+    
+    private TokenType peekType() {
+        return tokens.type(current);
     }
     
-    private Token peek() {
-        return tokens.get(current);
+    private TokenType previousType() {
+        return tokens.type(current - 1);
     }
     
-    private Token peekNext() {
-        if (current + 1 >= tokens.size()) return tokens.get(tokens.size() - 1);
-        return tokens.get(current + 1);
+    private String lexeme(int index) {
+        return tokens.lexeme(index);
     }
     
-    private Token previous() {
-        return tokens.get(current - 1);
+    private String advanceLexeme() {
+        return lexeme(advance());
     }
     
-    private Token consume(TokenType type, String message) {
+    // Drops tokens before previous() unless a lookahead may still rewind to them.
+    private void releaseConsumed() {
+        if (!streaming || marks > 0 || current - 1 - released < MIN_RELEASE) {
+            return;
+        }
+        released = current - 1;
+        tokens.release(released);
+    }
+    
+    private int consume(TokenType type, String message) {
         if (check(type)) return advance();
-        throw new RuntimeException(message + " at line " + peek().getLine());
+        // A malformed literal runs to the end of its line, so its statement ends there too.
+        if (type == TokenType.SEMICOLON && current == afterLexicalError) return current - 1;
+        throw error(message);
+    }
+    
+    private SyntaxError error(String message) {
+        return new SyntaxError(message, tokens.line(current), tokens.column(current),
+                               tokens.offset(current), tokens.endOffset(current));
+    }
+    
+    // Records an error unless one was already reported at this token, which happens while unwinding at EOF,
+    // or the error is on or just after a malformed literal the lexer reported.
+    private void report(SyntaxError error) {
+        if (current != lastErrorAt && current != afterLexicalError && peekType() != TokenType.ERROR) {
+            errors.add(error.toDiagnostic());
+            lastErrorAt = current;
+        }
+    }
+    
+    // Opens a construct at the current token; pass the returned mark to finish() once it is parsed.
+    private int begin() {
+        int i = openCount * 3;
+        if (i == openStarts.length) {
+            openStarts = Arrays.copyOf(openStarts, i * 2);
+        }
+        openStarts[i] = tokens.offset(current);
+        openStarts[i + 1] = tokens.line(current);
+        openStarts[i + 2] = tokens.column(current);
+        return openCount++;
+    }
+    
+    // Spans the node from its begin() mark to the last consumed token; marks left open by errors are dropped too.
+    private <T extends ASTNode> T finish(T node, int mark) {
+        int i = mark * 3;
+        node.setPosition(openStarts[i], tokens.endOffset(current - 1), openStarts[i + 1], openStarts[i + 2]);
+        openCount = mark;
+        return node;
+    }
+    
+    // Spans the node from the start of its first child to the last consumed token.
+    private <T extends ASTNode> T extend(T node, ASTNode first) {
+        node.setPosition(first.getStartOffset(), tokens.endOffset(current - 1), first.getLine(), first.getColumn());
+        return node;
+    }
+    
+    private <T extends ASTNode> T atPrevious(T node) {
+        int previous = current - 1;
+        node.setPosition(tokens.offset(previous), tokens.endOffset(previous), tokens.line(previous),
+                         tokens.column(previous));
+        return node;
+    }
+    
+    /**
+     * Panic-mode recovery inside a block whose body is at the given brace
+     * depth: skips to just past the next ';' or balanced '{...}', or to the
+     * next '}' or statement keyword, at that depth. Always moves past at
+     * least one token unless the block is about to close.
+     */
+    private void synchronizeStatement(int start, int depth) {
+        if (current == start && !check(TokenType.RIGHT_BRACE)) {
+            advance();
+        }
+        while (!isAtEnd() && braceDepth >= depth) {
+            if (braceDepth == depth) {
+                TokenType previous = previousType();
+                if (previous == TokenType.SEMICOLON || previous == TokenType.RIGHT_BRACE || previous == TokenType.ERROR
+                    || check(TokenType.RIGHT_BRACE) || isStatementKeyword(peekType())) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+    
+    /**
+     * Panic-mode recovery between members at the given brace depth: skips to
+     * just past the next ';' or balanced '{...}', or to the next annotation,
+     * modifier or type declaration, at that depth. Inside a class body it
+     * stops at the closing '}'; at the top level a stray '}' is skipped.
+     */
+    private void synchronizeMember(int start, int depth, boolean topLevel) {
+        if (current == start && (topLevel || !check(TokenType.RIGHT_BRACE))) {
+            advance();
+        }
+        while (!isAtEnd() && braceDepth >= depth) {
+            if (braceDepth == depth) {
+                TokenType previous = previousType();
+                TokenType type = peekType();
+                if (previous == TokenType.SEMICOLON || previous == TokenType.RIGHT_BRACE || previous == TokenType.ERROR
+                    || type == TokenType.AT || isModifier(type) || isTypeDeclarationStart()
+                    || (type == TokenType.RIGHT_BRACE && !topLevel)) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+    
+    private boolean isStatementKeyword(TokenType type) {
+        return type == TokenType.IF || type == TokenType.WHILE || type == TokenType.FOR ||
+               type == TokenType.RETURN || type == TokenType.INSERT || type == TokenType.UPDATE ||
+               type == TokenType.DELETE || type == TokenType.UPSERT;
     }
 }
\ No newline at end of file
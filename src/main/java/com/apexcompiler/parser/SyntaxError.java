@@ -0,0 +1,37 @@
+package com.apexcompiler.parser;
+
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+
+/**
+ * A syntax error at a source position. The parser throws it to abandon the
+ * construct being parsed, then records it and resumes at the next statement
+ * or member boundary, so one pass reports every error in a file.
+ */
+public class SyntaxError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    private final String description;
+    private final int line;
+    private final int column;
+    private final int offset;
+    private final int endOffset;
+    
+    public SyntaxError(String description, int line, int column, int offset, int endOffset) {
+        super(description + " at line " + line);
+        this.description = description;
+        this.line = line;
+        this.column = column;
+        this.offset = offset;
+        this.endOffset = endOffset;
+    }
+    
+    public String getDescription() { return description; }
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
+    
+    public Diagnostic toDiagnostic() {
+        return new Diagnostic(Diagnostic.Severity.ERROR, DiagnosticCode.SYNTAX_ERROR, null, offset, endOffset,
+                              line, column, description);
+    }
+}
\ No newline at end of file
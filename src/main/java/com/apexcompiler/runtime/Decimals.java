@@ -0,0 +1,66 @@
+package com.apexcompiler.runtime;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Decimal arithmetic for the interpreter and the bytecode backend, which
+ * hold Decimals as BigDecimal. Results match the ApexDecimal class that
+ * generated Java uses: sums and products are exact, quotients that do not
+ * terminate are rounded to 34 significant digits, scales are never negative,
+ * and equality compares values, so 1.0 equals 1.00.
+ */
+public final class Decimals {
+    private static final MathContext DIVISION = MathContext.DECIMAL128;
+    
+    private Decimals() {
+    }
+    
+    public static BigDecimal valueOf(String value) {
+        return normalize(new BigDecimal(value));
+    }
+    
+    public static BigDecimal add(BigDecimal a, BigDecimal b) {
+        return a.add(b);
+    }
+    
+    public static BigDecimal subtract(BigDecimal a, BigDecimal b) {
+        return a.subtract(b);
+    }
+    
+    public static BigDecimal multiply(BigDecimal a, BigDecimal b) {
+        return a.multiply(b);
+    }
+    
+    public static BigDecimal divide(BigDecimal a, BigDecimal b) {
+        if (b.signum() == 0) {
+            throw new ArithmeticException("Divide by 0");
+        }
+        return normalize(a.divide(b, DIVISION));
+    }
+    
+    public static BigDecimal remainder(BigDecimal a, BigDecimal b) {
+        if (b.signum() == 0) {
+            throw new ArithmeticException("Divide by 0");
+        }
+        return normalize(a.remainder(b));
+    }
+    
+    public static int compare(BigDecimal a, BigDecimal b) {
+        return a.compareTo(b);
+    }
+    
+    // Null is equal only to null.
+    public static boolean equal(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+    
+    // Plain digits, never an exponent; null prints as "null".
+    public static String toString(BigDecimal value) {
+        return value != null ? value.toPlainString() : "null";
+    }
+    
+    private static BigDecimal normalize(BigDecimal value) {
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.apexcompiler.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Data service that compiled code calls for SOQL and DML. Records live in an
+ * in-memory columnar store with one {@link Table} per object, and queries run
+ * through {@link SoqlQuery}. Jars from the bytecode backend bundle these
+ * classes, and generated Java is compiled together with their sources.
+ * Tests seed data with {@link #insertRecords(String, List)} and start over
+ * with {@link #reset()}.
+ */
+public final class MockDataService {
+    private static final Map<String, Table> tables = new HashMap<>();
+    private static long lastId;
+    
+    static {
+        reset();
+    }
+    
+    private MockDataService() {
+    }
+    
+    /** A queried record: its fields, and the object it belongs to, which DML needs. */
+    public static final class Record extends LinkedHashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+        
+        private final String objectType;
+        
+        public Record(String objectType) {
+            this.objectType = objectType;
+        }
+        
+        public String getObjectType() {
+            return objectType;
+        }
+    }
+    
+    // Back to the two sample accounts.
+    public static synchronized void reset() {
+        tables.clear();
+        lastId = 2;
+        Map<String, Object> account1 = new HashMap<>();
+        account1.put("Id", "001000000000001");
+        account1.put("Name", "Test Account 1");
+        Map<String, Object> account2 = new HashMap<>();
+        account2.put("Id", "001000000000002");
+        account2.put("Name", "Test Account 2");
+        insertRecords("Account", List.of(account1, account2));
+    }
+    
+    public static List<Map<String, Object>> executeSoql(String query) {
+        return executeSoql(query, Map.of());
+    }
+    
+    public static List<Map<String, Object>> executeSoql(String query, Map<String, Object> binds) {
+        return SoqlQuery.parse(query).execute(binds);
+    }
+    
+    static synchronized List<Map<String, Object>> execute(SoqlQuery query, Map<String, Object> binds) {
+        Table table = tables.get(key(query.getObjectType()));
+        return table != null ? query.run(table, binds) : new ArrayList<>();
+    }
+    
+    // Stores the records under the given object, giving each one without an Id a new one.
+    public static synchronized void insertRecords(String objectType, List<Map<String, Object>> records) {
+        Table table = tables.computeIfAbsent(key(objectType), key -> new Table(objectType));
+        for (Map<String, Object> record : records) {
+            record.putIfAbsent("Id", generateId());
+            table.insert(record);
+        }
+    }
+    
+    // Records that did not come from a query have no object and only get an Id.
+    public static synchronized void insertRecords(List<Map<String, Object>> records) {
+        System.out.println("Inserting " + records.size() + " records");
+        for (Map<String, Object> record : records) {
+            record.putIfAbsent("Id", generateId());
+            Table table = table(record);
+            if (table != null) {
+                table.insert(record);
+            }
+        }
+    }
+    
+    public static synchronized void updateRecords(List<Map<String, Object>> records) {
+        System.out.println("Updating " + records.size() + " records");
+        for (Map<String, Object> record : records) {
+            Table table = table(record);
+            if (table != null) {
+                table.update(String.valueOf(record.get("Id")), record);
+            }
+        }
+    }
+    
+    public static synchronized void upsertRecords(List<Map<String, Object>> records) {
+        System.out.println("Upserting " + records.size() + " records");
+        for (Map<String, Object> record : records) {
+            Table table = table(record);
+            Object id = record.get("Id");
+            if (table != null && id != null && table.contains(String.valueOf(id))) {
+                table.update(String.valueOf(id), record);
+            } else {
+                record.putIfAbsent("Id", generateId());
+                if (table != null) {
+                    table.insert(record);
+                }
+            }
+        }
+    }
+    
+    // Takes records or their Ids.
+    public static synchronized void deleteRecords(List<?> records) {
+        System.out.println("Deleting " + records.size() + " records");
+        for (Object record : records) {
+            Object id = record instanceof Map ? ((Map<?, ?>) record).get("Id") : record;
+            if (id != null) {
+                for (Table table : tables.values()) {
+                    if (table.delete(String.valueOf(id))) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static Table table(Map<String, Object> record) {
+        if (!(record instanceof Record)) {
+            return null;
+        }
+        String objectType = ((Record) record).getObjectType();
+        return tables.computeIfAbsent(key(objectType), key -> new Table(objectType));
+    }
+    
+    private static String key(String objectType) {
+        return objectType.toLowerCase(Locale.ROOT);
+    }
+    
+    private static String generateId() {
+        return String.format("%015d", ++lastId);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,666 @@
+package com.apexcompiler.runtime;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed SOQL query: {@code SELECT fields FROM object [WHERE condition]
+ * [ORDER BY field [ASC|DESC] [NULLS FIRST|LAST], ...] [LIMIT n] [OFFSET n]}.
+ * A condition combines =, !=, <>, <, <=, >, >=, LIKE, IN and NOT IN with
+ * AND, OR, NOT and parentheses. A value is a literal or a :bind variable.
+ * Like SOQL, keywords, field names and string comparisons ignore case.
+ *
+ * The query is parsed once and can then run any number of times. A run
+ * reads only the columns the query mentions. It tests the WHERE condition
+ * directly against those columns, and an unordered query stops scanning as
+ * soon as it reaches its LIMIT. Records are built only for the rows returned.
+ * Compiled code parses each query once, when its class is set up, and runs
+ * the same instance with the current bind values each time it executes.
+ */
+public final class SoqlQuery {
+    private final String text;
+    private final String objectType;
+    private final List<String> fields;
+    private final Condition where;
+    private final List<Ordering> orderBy;
+    private final Operand limit;
+    private final Operand offset;
+    private final List<String> bindNames;
+    
+    private SoqlQuery(String text, String objectType, List<String> fields, Condition where,
+                      List<Ordering> orderBy, Operand limit, Operand offset, List<String> bindNames) {
+        this.text = text;
+        this.objectType = objectType;
+        this.fields = fields;
+        this.where = where;
+        this.orderBy = orderBy;
+        this.limit = limit;
+        this.offset = offset;
+        this.bindNames = bindNames;
+    }
+    
+    public static SoqlQuery parse(String text) {
+        return new Parser(text).query();
+    }
+    
+    public String getObjectType() {
+        return objectType;
+    }
+    
+    // The selected fields, with Id first when the query does not select it, since records always carry their Id.
+    public List<String> getFields() {
+        return fields;
+    }
+    
+    // Each bind variable once, in the order it first appears, as written after the colon.
+    public List<String> getBindNames() {
+        return bindNames;
+    }
+    
+    // Bind variables are looked up by their name as written after the colon.
+    public List<Map<String, Object>> execute(Map<String, Object> binds) {
+        return MockDataService.execute(this, binds);
+    }
+    
+    // Takes one value for each of getBindNames(), in that order.
+    public List<Map<String, Object>> executeWith(Object... values) {
+        if (values.length != bindNames.size()) {
+            throw new IllegalArgumentException("Expected " + bindNames.size() + " bind values, got " + values.length);
+        }
+        Map<String, Object> binds = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            binds.put(bindNames.get(i), values[i]);
+        }
+        return execute(binds);
+    }
+    
+    @Override
+    public String toString() {
+        return text;
+    }
+    
+    List<Map<String, Object>> run(Table table, Map<String, Object> binds) {
+        IntPredicate matches = where != null ? where.compile(table, binds) : row -> true;
+        int skip = offset != null ? count(offset, binds) : 0;
+        int wanted = limit != null ? (int) Math.min((long) skip + count(limit, binds), Integer.MAX_VALUE) : Integer.MAX_VALUE;
+        int[] rows = orderBy.isEmpty() ? scan(table, matches, wanted) : top(table, matches, wanted);
+        
+        Table.Column[] columns = new Table.Column[fields.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = table.column(fields.get(i));
+        }
+        List<Map<String, Object>> records = new ArrayList<>(Math.max(rows.length - skip, 0));
+        for (int i = skip; i < rows.length; i++) {
+            MockDataService.Record record = new MockDataService.Record(table.getObjectType());
+            for (int f = 0; f < columns.length; f++) {
+                Table.Column column = columns[f];
+                record.put(column != null ? column.name : fields.get(f), column != null ? column.get(rows[i]) : null);
+            }
+            records.add(record);
+        }
+        return records;
+    }
+    
+    // Matching rows in insertion order, stopping once there are as many as wanted.
+    private static int[] scan(Table table, IntPredicate matches, int wanted) {
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < table.rowCount() && count < wanted; row++) {
+            if (!table.isDeleted(row) && matches.test(row)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+    
+    // The first wanted matching rows in ORDER BY order; a LIMIT only keeps that many in a heap.
+    private int[] top(Table table, IntPredicate matches, int wanted) {
+        Comparator<Integer> order = comparator(table);
+        PriorityQueue<Integer> kept = new PriorityQueue<>(order.reversed());
+        for (int row = 0; row < table.rowCount(); row++) {
+            if (!table.isDeleted(row) && matches.test(row)) {
+                kept.add(row);
+                if (kept.size() > wanted) {
+                    kept.poll();
+                }
+            }
+        }
+        List<Integer> sorted = new ArrayList<>(kept);
+        sorted.sort(order);
+        return sorted.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    // Ties keep insertion order.
+    private Comparator<Integer> comparator(Table table) {
+        Comparator<Integer> order = null;
+        for (Ordering ordering : orderBy) {
+            Table.Column column = table.column(ordering.field);
+            Comparator<Integer> next = (a, b) -> ordering.compare(value(column, a), value(column, b));
+            order = order == null ? next : order.thenComparing(next);
+        }
+        return order.thenComparingInt(row -> row);
+    }
+    
+    private static int count(Operand operand, Map<String, Object> binds) {
+        Object value = operand.resolve(binds);
+        if (!(value instanceof Number) || ((Number) value).longValue() < 0) {
+            throw new IllegalArgumentException("LIMIT and OFFSET need a non-negative number, got " + value);
+        }
+        return (int) Math.min(((Number) value).longValue(), Integer.MAX_VALUE);
+    }
+    
+    private static Object value(Table.Column column, int row) {
+        return column != null ? column.get(row) : null;
+    }
+    
+    static boolean equal(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return compare(a, b) == 0;
+    }
+    
+    // Numbers compare by value whatever their type, and strings ignore case.
+    static int compare(Object a, Object b) {
+        if (a instanceof String && b instanceof String) {
+            return ((String) a).compareToIgnoreCase((String) b);
+        }
+        if (a instanceof Number && b instanceof Number) {
+            if (isWhole(a) && isWhole(b)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            if ((isWhole(a) || isFloating(a)) && (isWhole(b) || isFloating(b))) {
+                return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            }
+            return decimal((Number) a).compareTo(decimal((Number) b));
+        }
+        if (a instanceof Boolean && b instanceof Boolean) {
+            return Boolean.compare((Boolean) a, (Boolean) b);
+        }
+        return String.valueOf(a).compareToIgnoreCase(String.valueOf(b));
+    }
+    
+    private static boolean isWhole(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+    
+    private static boolean isFloating(Object value) {
+        return value instanceof Double || value instanceof Float;
+    }
+    
+    private static BigDecimal decimal(Number value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (isWhole(value)) {
+            return BigDecimal.valueOf(value.longValue());
+        }
+        if (isFloating(value)) {
+            return BigDecimal.valueOf(value.doubleValue());
+        }
+        return new BigDecimal(value.toString());
+    }
+    
+    private static final class Ordering {
+        final String field;
+        final boolean descending;
+        final boolean nullsLast;
+        
+        Ordering(String field, boolean descending, boolean nullsLast) {
+            this.field = field;
+            this.descending = descending;
+            this.nullsLast = nullsLast;
+        }
+        
+        int compare(Object a, Object b) {
+            if (a == null || b == null) {
+                return a == b ? 0 : (a == null) == nullsLast ? 1 : -1;
+            }
+            int result = SoqlQuery.compare(a, b);
+            return descending ? -result : result;
+        }
+    }
+    
+    // A literal or a bind variable.
+    private static final class Operand {
+        final Object literal;
+        final String bind;
+        
+        Operand(Object literal, String bind) {
+            this.literal = literal;
+            this.bind = bind;
+        }
+        
+        Object resolve(Map<String, Object> binds) {
+            if (bind == null) {
+                return literal;
+            }
+            if (!binds.containsKey(bind)) {
+                throw new IllegalArgumentException("Variable does not exist: " + bind);
+            }
+            return binds.get(bind);
+        }
+    }
+    
+    // Compiled against one table and one set of bind values for each run.
+    private abstract static class Condition {
+        abstract IntPredicate compile(Table table, Map<String, Object> binds);
+    }
+    
+    private static final class Logical extends Condition {
+        final Condition left;
+        final Condition right;
+        final boolean and;
+        
+        Logical(Condition left, Condition right, boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+        
+        @Override
+        IntPredicate compile(Table table, Map<String, Object> binds) {
+            IntPredicate l = left.compile(table, binds);
+            IntPredicate r = right.compile(table, binds);
+            return and ? l.and(r) : l.or(r);
+        }
+    }
+    
+    private static final class Not extends Condition {
+        final Condition operand;
+        
+        Not(Condition operand) {
+            this.operand = operand;
+        }
+        
+        @Override
+        IntPredicate compile(Table table, Map<String, Object> binds) {
+            return operand.compile(table, binds).negate();
+        }
+    }
+    
+    private static final class Comparison extends Condition {
+        final String field;
+        final String operator;
+        final Operand value;
+        
+        Comparison(String field, String operator, Operand value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+        
+        @Override
+        IntPredicate compile(Table table, Map<String, Object> binds) {
+            Table.Column column = table.column(field);
+            Object expected = value.resolve(binds);
+            switch (operator) {
+                case "=":
+                    return row -> equal(value(column, row), expected);
+                case "!=":
+                    return row -> !equal(value(column, row), expected);
+                case "LIKE":
+                    Pattern pattern = like(String.valueOf(expected));
+                    return row -> {
+                        Object actual = value(column, row);
+                        return actual != null && pattern.matcher(actual.toString()).matches();
+                    };
+                default:
+                    return row -> {
+                        Object actual = value(column, row);
+                        return actual != null && expected != null && holds(compare(actual, expected));
+                    };
+            }
+        }
+        
+        private boolean holds(int comparison) {
+            switch (operator) {
+                case "<": return comparison < 0;
+                case "<=": return comparison <= 0;
+                case ">": return comparison > 0;
+                default: return comparison >= 0;
+            }
+        }
+        
+        // % matches any run of characters and _ any one character; a backslash escapes the next one.
+        private static Pattern like(String pattern) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '%') {
+                    regex.append(".*");
+                } else if (c == '_') {
+                    regex.append('.');
+                } else {
+                    if (c == '\\' && i + 1 < pattern.length()) {
+                        c = pattern.charAt(++i);
+                    }
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+        }
+    }
+    
+    private static final class In extends Condition {
+        final String field;
+        final List<Operand> values;
+        final boolean negated;
+        
+        In(String field, List<Operand> values, boolean negated) {
+            this.field = field;
+            this.values = values;
+            this.negated = negated;
+        }
+        
+        @Override
+        IntPredicate compile(Table table, Map<String, Object> binds) {
+            Table.Column column = table.column(field);
+            List<Object> candidates = new ArrayList<>();
+            for (Operand operand : values) {
+                Object value = operand.resolve(binds);
+                if (value instanceof Collection) {
+                    candidates.addAll((Collection<?>) value);
+                } else {
+                    candidates.add(value);
+                }
+            }
+            
+            IntPredicate contains;
+            if (candidates.stream().allMatch(candidate -> candidate instanceof String)) {
+                // Strings are the usual case, such as Ids, and are looked up in a set.
+                Set<String> keys = new HashSet<>();
+                for (Object candidate : candidates) {
+                    keys.add(((String) candidate).toLowerCase(Locale.ROOT));
+                }
+                contains = row -> {
+                    Object actual = value(column, row);
+                    return actual instanceof String && keys.contains(((String) actual).toLowerCase(Locale.ROOT));
+                };
+            } else {
+                contains = row -> {
+                    Object actual = value(column, row);
+                    for (Object candidate : candidates) {
+                        if (equal(actual, candidate)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            }
+            return negated ? contains.negate() : contains;
+        }
+    }
+    
+    private static final class Parser {
+        private static final String[] OPERATORS = {"!=", "<>", "<=", ">=", "=", "<", ">"};
+        
+        private final String text;
+        private final Set<String> bindNames = new LinkedHashSet<>();
+        private int pos;
+        
+        Parser(String text) {
+            this.text = text;
+        }
+        
+        SoqlQuery query() {
+            keyword("SELECT");
+            List<String> fields = new ArrayList<>();
+            do {
+                fields.add(field());
+            } while (accept(","));
+            if (fields.stream().noneMatch(field -> field.equalsIgnoreCase("Id"))) {
+                fields.add(0, "Id");
+            }
+            keyword("FROM");
+            String objectType = name("an object name");
+            
+            Condition where = acceptKeyword("WHERE") ? or() : null;
+            List<Ordering> orderBy = new ArrayList<>();
+            if (acceptKeyword("ORDER")) {
+                keyword("BY");
+                do {
+                    orderBy.add(ordering());
+                } while (accept(","));
+            }
+            Operand limit = acceptKeyword("LIMIT") ? value() : null;
+            Operand offset = acceptKeyword("OFFSET") ? value() : null;
+            
+            skipSpace();
+            if (pos < text.length()) {
+                throw error("unexpected '" + text.substring(pos) + "'");
+            }
+            return new SoqlQuery(text, objectType, List.copyOf(fields), where, List.copyOf(orderBy), limit, offset,
+                                 List.copyOf(bindNames));
+        }
+        
+        private String field() {
+            String field = fieldName();
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == '(') {
+                throw error("functions and aggregates such as " + field + "() are not supported");
+            }
+            return field;
+        }
+        
+        private Ordering ordering() {
+            String field = fieldName();
+            boolean descending = acceptKeyword("DESC");
+            if (!descending) {
+                acceptKeyword("ASC");
+            }
+            boolean nullsLast = false;
+            if (acceptKeyword("NULLS")) {
+                nullsLast = acceptKeyword("LAST");
+                if (!nullsLast) {
+                    keyword("FIRST");
+                }
+            }
+            return new Ordering(field, descending, nullsLast);
+        }
+        
+        private Condition or() {
+            Condition condition = and();
+            while (acceptKeyword("OR")) {
+                condition = new Logical(condition, and(), false);
+            }
+            return condition;
+        }
+        
+        private Condition and() {
+            Condition condition = not();
+            while (acceptKeyword("AND")) {
+                condition = new Logical(condition, not(), true);
+            }
+            return condition;
+        }
+        
+        private Condition not() {
+            return acceptKeyword("NOT") ? new Not(not()) : comparison();
+        }
+        
+        private Condition comparison() {
+            if (accept("(")) {
+                Condition condition = or();
+                expect(")");
+                return condition;
+            }
+            String field = fieldName();
+            if (acceptKeyword("NOT")) {
+                keyword("IN");
+                return in(field, true);
+            }
+            if (acceptKeyword("IN")) {
+                return in(field, false);
+            }
+            if (acceptKeyword("LIKE")) {
+                return new Comparison(field, "LIKE", value());
+            }
+            for (String operator : OPERATORS) {
+                if (accept(operator)) {
+                    return new Comparison(field, operator.equals("<>") ? "!=" : operator, value());
+                }
+            }
+            throw error("expected an operator after " + field);
+        }
+        
+        private Condition in(String field, boolean negated) {
+            List<Operand> values = new ArrayList<>();
+            if (accept("(")) {
+                do {
+                    values.add(value());
+                } while (accept(","));
+                expect(")");
+            } else {
+                values.add(value());
+            }
+            return new In(field, values, negated);
+        }
+        
+        private Operand value() {
+            skipSpace();
+            char c = pos < text.length() ? text.charAt(pos) : '\0';
+            if (c == '\'') {
+                return new Operand(string(), null);
+            }
+            if (c == ':') {
+                pos++;
+                skipSpace();
+                String bind = name("a bind variable");
+                bindNames.add(bind);
+                return new Operand(null, bind);
+            }
+            if (Character.isDigit(c) || c == '-' || c == '+') {
+                int start = pos++;
+                while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                    pos++;
+                }
+                String number = text.substring(start, pos);
+                try {
+                    return new Operand(number.contains(".") ? new BigDecimal(number) : (Object) Long.parseLong(number), null);
+                } catch (NumberFormatException e) {
+                    throw error("invalid number " + number);
+                }
+            }
+            String word = word();
+            if (word.equalsIgnoreCase("TRUE") || word.equalsIgnoreCase("FALSE")) {
+                pos += word.length();
+                return new Operand(Boolean.valueOf(word.toLowerCase(Locale.ROOT)), null);
+            }
+            if (word.equalsIgnoreCase("NULL")) {
+                pos += word.length();
+                return new Operand(null, null);
+            }
+            throw error("expected a value");
+        }
+        
+        private String string() {
+            StringBuilder value = new StringBuilder();
+            pos++;
+            while (pos < text.length() && text.charAt(pos) != '\'') {
+                char c = text.charAt(pos++);
+                if (c == '\\' && pos < text.length()) {
+                    char escaped = text.charAt(pos++);
+                    switch (escaped) {
+                        case 'n': value.append('\n'); break;
+                        case 't': value.append('\t'); break;
+                        case 'r': value.append('\r'); break;
+                        // LIKE patterns keep their escapes for % and _.
+                        case '%': case '_': value.append('\\').append(escaped); break;
+                        default: value.append(escaped); break;
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            expect("'");
+            return value.toString();
+        }
+        
+        // Relationship fields such as Owner.Name would need a join, which the store does not do.
+        private String fieldName() {
+            String field = name("a field name");
+            int dot = field.indexOf('.');
+            if (dot >= 0) {
+                pos -= field.length() - dot;
+                throw error("relationship fields such as " + field + " are not supported");
+            }
+            return field;
+        }
+        
+        private String name(String what) {
+            String word = word();
+            if (word.isEmpty() || Character.isDigit(word.charAt(0))) {
+                throw error("expected " + what);
+            }
+            pos += word.length();
+            return word;
+        }
+        
+        // The identifier at the current position, not consumed; dotted paths are kept whole.
+        private String word() {
+            skipSpace();
+            int end = pos;
+            while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_'
+                                           || text.charAt(end) == '.')) {
+                end++;
+            }
+            return text.substring(pos, end);
+        }
+        
+        private boolean acceptKeyword(String keyword) {
+            if (word().equalsIgnoreCase(keyword)) {
+                pos += keyword.length();
+                return true;
+            }
+            return false;
+        }
+        
+        private void keyword(String keyword) {
+            if (!acceptKeyword(keyword)) {
+                throw error("expected " + keyword);
+            }
+        }
+        
+        private boolean accept(String symbol) {
+            skipSpace();
+            if (text.startsWith(symbol, pos)) {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+        
+        private void expect(String symbol) {
+            if (!accept(symbol)) {
+                throw error("expected '" + symbol + "'");
+            }
+        }
+        
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid SOQL at position " + pos + ": " + message + " in: " + text);
+        }
+    }
+}
\ No newline at end of file
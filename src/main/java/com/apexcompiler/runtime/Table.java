@@ -0,0 +1,106 @@
+package com.apexcompiler.runtime;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The records of one object, stored column by column: each field is an
+ * array of values indexed by row, so a query reads only the fields it
+ * mentions. Field names are case-insensitive, as in SOQL. Deleted rows are
+ * marked rather than removed, which keeps row numbers stable.
+ */
+final class Table {
+    private final String objectType;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final Map<String, Integer> rowsById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int rowCount;
+    
+    Table(String objectType) {
+        this.objectType = objectType;
+    }
+    
+    String getObjectType() {
+        return objectType;
+    }
+    
+    int rowCount() {
+        return rowCount;
+    }
+    
+    boolean isDeleted(int row) {
+        return deleted.get(row);
+    }
+    
+    // Null when no record has the field.
+    Column column(String field) {
+        return columns.get(field.toLowerCase(Locale.ROOT));
+    }
+    
+    boolean contains(String id) {
+        return rowsById.containsKey(id);
+    }
+    
+    // The record needs an Id that no live row has; as in Apex, inserting a record twice is an error.
+    void insert(Map<String, Object> record) {
+        String id = String.valueOf(record.get("Id"));
+        if (rowsById.containsKey(id)) {
+            throw new IllegalArgumentException("Cannot insert " + objectType + " " + id + ": a record with that Id already exists");
+        }
+        int row = rowCount++;
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            columnFor(field.getKey()).set(row, field.getValue());
+        }
+        rowsById.put(id, row);
+    }
+    
+    boolean update(String id, Map<String, Object> values) {
+        Integer row = rowsById.get(id);
+        if (row == null) {
+            return false;
+        }
+        for (Map.Entry<String, Object> field : values.entrySet()) {
+            columnFor(field.getKey()).set(row, field.getValue());
+        }
+        return true;
+    }
+    
+    boolean delete(String id) {
+        Integer row = rowsById.remove(id);
+        if (row == null) {
+            return false;
+        }
+        deleted.set(row);
+        return true;
+    }
+    
+    private Column columnFor(String field) {
+        return columns.computeIfAbsent(field.toLowerCase(Locale.ROOT), key -> new Column(field));
+    }
+    
+    static final class Column {
+        // The field name as it was first written.
+        final String name;
+        private Object[] values = new Object[16];
+        
+        Column(String name) {
+            this.name = name;
+        }
+        
+        // Rows written before the column existed read as null.
+        Object get(int row) {
+            return row < values.length ? values[row] : null;
+        }
+        
+        void set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            }
+            values[row] = value;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.ast.GenericType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical description of an Apex type. Instances are interned: a bare name
+ * maps to exactly one instance, and each generic instantiation of it is kept
+ * on that instance, so two types are equal only if they are the same object.
+ * Traits such as "numeric" are precomputed into a bitset.
+ */
+public final class ApexType {
+    public enum Kind {
+        PRIMITIVE,
+        COLLECTION,
+        SOBJECT,
+        CLASS,
+        OBJECT,
+        NULL,
+        VOID
+    }
+    
+    private static final int NUMERIC = 1;
+    private static final int REFERENCE = 1 << 1;
+    
+    private static final Map<String, ApexType> NAMED = new ConcurrentHashMap<>();
+    
+    private static final Set<String> PRIMITIVES = Set.of(
+        "Integer", "Long", "Decimal", "Double", "String", "Boolean", "Id", "Date", "DateTime", "Time", "Blob");
+    private static final Set<String> COLLECTIONS = Set.of("List", "Set", "Map");
+    private static final Set<String> STANDARD_SOBJECTS = Set.of(
+        "SObject", "Account", "Contact", "Lead", "Opportunity", "Case", "User", "Profile");
+    
+    public static final ApexType INTEGER = of("Integer");
+    public static final ApexType DECIMAL = of("Decimal");
+    public static final ApexType STRING = of("String");
+    public static final ApexType BOOLEAN = of("Boolean");
+    public static final ApexType OBJECT = of("Object");
+    public static final ApexType SOBJECT = of("SObject");
+    public static final ApexType NULL = of("null");
+    public static final ApexType VOID = of("void");
+    
+    private final String name;
+    private final List<ApexType> typeArguments;
+    private final ApexType erasure;
+    private final Kind kind;
+    private final int traits;
+    private final Map<List<ApexType>, ApexType> instantiations;
+    
+    private ApexType(String name, List<ApexType> typeArguments, ApexType erasure) {
+        this.name = name;
+        this.typeArguments = typeArguments;
+        this.erasure = erasure != null ? erasure : this;
+        this.kind = kindOf(name);
+        this.traits = traitsOf(name, kind);
+        this.instantiations = erasure == null ? new ConcurrentHashMap<>() : null;
+    }
+    
+    public static ApexType of(String name) {
+        ApexType type = NAMED.get(name);
+        return type != null ? type : NAMED.computeIfAbsent(name, n -> new ApexType(n, List.of(), null));
+    }
+    
+    public static ApexType of(String name, List<ApexType> typeArguments) {
+        ApexType base = of(name);
+        if (typeArguments.isEmpty()) {
+            return base;
+        }
+        ApexType type = base.instantiations.get(typeArguments);
+        if (type != null) {
+            return type;
+        }
+        List<ApexType> arguments = List.copyOf(typeArguments);
+        return base.instantiations.computeIfAbsent(arguments, args -> new ApexType(name, args, base));
+    }
+    
+    public static ApexType of(GenericType type) {
+        if (!type.isGeneric()) {
+            return of(type.getBaseType());
+        }
+        List<ApexType> arguments = new ArrayList<>(type.getTypeArguments().size());
+        for (GenericType argument : type.getTypeArguments()) {
+            arguments.add(of(argument));
+        }
+        return of(type.getBaseType(), arguments);
+    }
+    
+    // The SObject type a SOQL query names, which ignores case; null when it names none.
+    public static ApexType sObject(String name) {
+        for (String standard : STANDARD_SOBJECTS) {
+            if (standard.equalsIgnoreCase(name)) {
+                return of(standard);
+            }
+        }
+        return name.endsWith("__c") ? of(name) : null;
+    }
+    
+    public static ApexType listOf(ApexType element) {
+        return of("List", List.of(element));
+    }
+    
+    public String getName() { return name; }
+    public List<ApexType> getTypeArguments() { return typeArguments; }
+    public Kind getKind() { return kind; }
+    
+    // The type without its type arguments, e.g. List for List<Account>.
+    public ApexType getErasure() { return erasure; }
+    
+    public boolean isGeneric() {
+        return !typeArguments.isEmpty();
+    }
+    
+    public boolean isNumeric() {
+        return (traits & NUMERIC) != 0;
+    }
+    
+    public boolean isReference() {
+        return (traits & REFERENCE) != 0;
+    }
+    
+    public boolean isAssignableFrom(ApexType source) {
+        if (this == source || this == STRING) {
+            return true;
+        }
+        if (this == DECIMAL && source == INTEGER) {
+            return true;
+        }
+        if (source == NULL) {
+            return this != VOID;
+        }
+        if (this == OBJECT) {
+            return source != VOID;
+        }
+        if (this == SOBJECT) {
+            return source.kind == Kind.SOBJECT;
+        }
+        if (erasure != source.erasure || typeArguments.size() != source.typeArguments.size()) {
+            return false;
+        }
+        // Collections of a concrete SObject widen to collections of SObject or Object.
+        for (int i = 0; i < typeArguments.size(); i++) {
+            ApexType target = typeArguments.get(i);
+            ApexType argument = source.typeArguments.get(i);
+            if (target != argument && !((target == SOBJECT || target == OBJECT) && target.isAssignableFrom(argument))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        if (typeArguments.isEmpty()) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name);
+        sb.append("<");
+        for (int i = 0; i < typeArguments.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(typeArguments.get(i));
+        }
+        sb.append(">");
+        return sb.toString();
+    }
+    
+    private static Kind kindOf(String name) {
+        if (PRIMITIVES.contains(name)) return Kind.PRIMITIVE;
+        if (COLLECTIONS.contains(name)) return Kind.COLLECTION;
+        if (STANDARD_SOBJECTS.contains(name) || name.endsWith("__c")) return Kind.SOBJECT;
+        switch (name) {
+            case "Object": return Kind.OBJECT;
+            case "null": return Kind.NULL;
+            case "void": return Kind.VOID;
+            default: return Kind.CLASS;
+        }
+    }
+    
+    private static int traitsOf(String name, Kind kind) {
+        int traits = 0;
+        if (name.equals("Integer") || name.equals("Long") || name.equals("Decimal") || name.equals("Double")) {
+            traits |= NUMERIC;
+        }
+        if (kind != Kind.PRIMITIVE && kind != Kind.VOID) {
+            traits |= REFERENCE;
+        }
+        return traits;
+    }
+}
@@ -0,0 +1,71 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.semantic.SymbolTable.Symbol;
+import com.apexcompiler.semantic.SymbolTable.SymbolKind;
+
+import java.util.Arrays;
+
+/**
+ * Immutable table of the builtin Apex types, shared by every analyzer. Names
+ * are placed with a perfect hash found once at class initialization, so a
+ * lookup is one multiply, one array read and one string comparison.
+ */
+final class BuiltinSymbols {
+    static final String[] NAMES = {
+        // Primitive types
+        "Integer", "Decimal", "String", "Boolean", "Date", "DateTime", "Time", "Id", "Blob", "Object",
+        // Collection types
+        "List", "Set", "Map",
+        // SObject and standard objects
+        "SObject", "Account", "Contact", "Lead", "Opportunity", "Case", "User", "Profile",
+        // System classes
+        "System", "Database", "Test", "Schema", "Trigger", "Limits", "Math", "Json", "Http",
+        "HttpRequest", "HttpResponse",
+        // Exception types
+        "Exception", "DmlException", "QueryException", "NullPointerException", "ListException",
+        "StringException",
+        // Apex-specific types
+        "PageReference", "ApexPages", "Messaging", "SelectOption"
+    };
+    
+    private static final int BITS = 8;
+    private static final Symbol[] TABLE = new Symbol[1 << BITS];
+    static final int SEED = findSeed();
+    
+    static {
+        for (String name : NAMES) {
+            TABLE[index(name, SEED)] = new Symbol(name, ApexType.of(name), SymbolKind.CLASS);
+        }
+    }
+    
+    private BuiltinSymbols() {
+    }
+    
+    static Symbol lookup(String name) {
+        Symbol symbol = TABLE[index(name, SEED)];
+        return symbol != null && symbol.getName().equals(name) ? symbol : null;
+    }
+    
+    static int index(String name, int seed) {
+        return (name.hashCode() * seed) >>> (32 - BITS);
+    }
+    
+    static int findSeed() {
+        boolean[] used = new boolean[1 << BITS];
+        for (int seed = 0x9E3779B1; ; seed += 2) {
+            Arrays.fill(used, false);
+            boolean collision = false;
+            for (String name : NAMES) {
+                int index = index(name, seed);
+                if (used[index]) {
+                    collision = true;
+                    break;
+                }
+                used[index] = true;
+            }
+            if (!collision) {
+                return seed;
+            }
+        }
+    }
+}
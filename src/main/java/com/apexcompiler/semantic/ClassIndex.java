@@ -0,0 +1,275 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.ast.MethodDeclaration;
+import com.apexcompiler.ast.VariableDeclaration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only index of every class in a project: hierarchy, field types and
+ * method signatures, with nested types indexed under their simple names. It
+ * is built once, with each class summarized in parallel, before any class is
+ * analyzed, and is then shared by all analyzers without locking. When two classes share a name the first one
+ * wins, in input order.
+ */
+public final class ClassIndex {
+    public static final ClassIndex EMPTY = new ClassIndex(Map.of(), Map.of());
+    
+    private final Map<String, ClassInfo> classes;
+    // How many classes declare each name, so adding or removing a clashing class changes the signature hash.
+    private final Map<String, Integer> declarationCounts;
+    
+    private ClassIndex(Map<String, ClassInfo> classes, Map<String, Integer> declarationCounts) {
+        this.classes = classes;
+        this.declarationCounts = declarationCounts;
+    }
+    
+    public static ClassIndex build(List<ClassDeclaration> declarations) {
+        return build(declarations, ForkJoinPool.commonPool());
+    }
+    
+    public static ClassIndex build(List<ClassDeclaration> declarations, ForkJoinPool pool) {
+        List<ClassInfo> infos = pool.submit(() -> declarations.parallelStream()
+            .map(ClassInfo::new)
+            .collect(Collectors.toList())).join();
+        
+        Map<String, ClassInfo> classes = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (ClassInfo info : infos) {
+            classes.putIfAbsent(info.getName(), info);
+            counts.merge(info.getName(), 1, Integer::sum);
+        }
+        return new ClassIndex(Collections.unmodifiableMap(classes), Collections.unmodifiableMap(counts));
+    }
+    
+    public ClassInfo getClass(String name) {
+        return classes.get(name);
+    }
+    
+    public boolean contains(String name) {
+        return classes.containsKey(name);
+    }
+    
+    public int size() {
+        return classes.size();
+    }
+    
+    /**
+     * Digest of the signatures code using the given names can depend on: the
+     * indexed classes among them, and every class reachable from those
+     * through supertypes, field types and method signatures. It changes when
+     * one of these classes is added, removed or changes shape, and not when
+     * any other class does. Names that are not classes are ignored, so a
+     * class added under one of them changes the digest too.
+     */
+    public String signatureHash(Collection<String> names) {
+        Set<String> reached = new TreeSet<>();
+        List<String> pending = new ArrayList<>(names);
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            ClassInfo info = classes.get(name);
+            if (info != null && reached.add(name)) {
+                pending.addAll(info.referencedTypes);
+            }
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+        for (String name : reached) {
+            digest.update((declarationCounts.get(name) + " " + classes.get(name).signature).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+    
+    /**
+     * Type of a field declared on the class or inherited from a superclass,
+     * or null when none of the indexed classes in its hierarchy declares it.
+     */
+    public ApexType findField(String className, String field) {
+        for (ClassInfo info : hierarchy(className)) {
+            ApexType type = info.fields.get(field);
+            if (type != null) {
+                return type;
+            }
+        }
+        return null;
+    }
+    
+    // Every method with this name visible on the class, nearest declaration first.
+    public List<MethodSignature> findMethods(String className, String method) {
+        List<MethodSignature> found = new ArrayList<>();
+        for (ClassInfo info : hierarchy(className)) {
+            found.addAll(info.methods.getOrDefault(method, List.of()));
+        }
+        return found;
+    }
+    
+    /**
+     * Whether every class in the hierarchy is indexed, which is when a
+     * missing member can be reported rather than assumed to be inherited
+     * from somewhere the compiler cannot see.
+     */
+    public boolean isHierarchyKnown(String className) {
+        Set<String> seen = new HashSet<>();
+        List<String> pending = new ArrayList<>(List.of(className));
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            if (!seen.add(name)) {
+                continue;
+            }
+            ClassInfo info = classes.get(name);
+            if (info == null) {
+                return false;
+            }
+            if (info.superClass != null) {
+                pending.add(info.superClass);
+            }
+            pending.addAll(info.interfaces);
+        }
+        return true;
+    }
+    
+    // The class, then its superclasses, then every interface any of them implements or extends.
+    private List<ClassInfo> hierarchy(String className) {
+        List<ClassInfo> chain = new ArrayList<>();
+        ClassInfo info = classes.get(className);
+        // Guard against inheritance cycles, which are reported elsewhere.
+        while (info != null && !chain.contains(info)) {
+            chain.add(info);
+            info = info.superClass != null ? classes.get(info.superClass) : null;
+        }
+        for (int i = 0; i < chain.size(); i++) {
+            for (String iface : chain.get(i).interfaces) {
+                ClassInfo extended = classes.get(iface);
+                if (extended != null && !chain.contains(extended)) {
+                    chain.add(extended);
+                }
+            }
+        }
+        return chain;
+    }
+    
+    public static final class ClassInfo {
+        private final ClassDeclaration declaration;
+        private final String name;
+        private final String superClass;
+        private final List<String> interfaces;
+        private final Map<String, ApexType> fields = new LinkedHashMap<>();
+        private final Map<String, List<MethodSignature>> methods = new LinkedHashMap<>();
+        private final String signature;
+        // Every type named in the signature, type arguments included.
+        private final Set<String> referencedTypes = new HashSet<>();
+        
+        ClassInfo(ClassDeclaration declaration) {
+            this.declaration = declaration;
+            this.name = declaration.getName();
+            this.superClass = declaration.getSuperClass();
+            this.interfaces = List.copyOf(declaration.getInterfaces());
+            
+            StringBuilder signature = new StringBuilder(declaration.getKind().name().toLowerCase())
+                .append(' ').append(name);
+            if (superClass != null) {
+                signature.append(" extends ").append(superClass);
+                referencedTypes.add(superClass);
+            }
+            for (String iface : interfaces) {
+                signature.append(" implements ").append(iface);
+                referencedTypes.add(iface);
+            }
+            // Enum constants behave as static fields of the enum type.
+            ApexType self = ApexType.of(name);
+            for (String constant : declaration.getEnumConstants()) {
+                fields.putIfAbsent(constant, self);
+                signature.append('\n').append(constant);
+            }
+            for (VariableDeclaration field : declaration.getFields()) {
+                ApexType type = ApexType.of(field.getType());
+                fields.putIfAbsent(field.getName(), type);
+                reference(type);
+                signature.append('\n').append(field.getModifiers()).append(' ').append(type).append(' ')
+                    .append(field.getName());
+            }
+            for (MethodDeclaration method : declaration.getMethods()) {
+                MethodSignature sig = new MethodSignature(method);
+                methods.computeIfAbsent(sig.getName(), n -> new ArrayList<>()).add(sig);
+                reference(sig.getReturnType());
+                sig.getParameterTypes().forEach(this::reference);
+                signature.append('\n').append(method.getModifiers()).append(' ').append(sig);
+            }
+            if (declaration.isEnum()) {
+                addBuiltin(new MethodSignature("values", ApexType.listOf(self), List.of()));
+                addBuiltin(new MethodSignature("name", ApexType.STRING, List.of()));
+                addBuiltin(new MethodSignature("ordinal", ApexType.INTEGER, List.of()));
+            }
+            this.signature = signature.toString();
+        }
+        
+        private void reference(ApexType type) {
+            referencedTypes.add(type.getName());
+            type.getTypeArguments().forEach(this::reference);
+        }
+        
+        private void addBuiltin(MethodSignature sig) {
+            methods.computeIfAbsent(sig.getName(), n -> new ArrayList<>()).add(sig);
+        }
+        
+        public ClassDeclaration getDeclaration() { return declaration; }
+        public String getName() { return name; }
+        public String getSuperClass() { return superClass; }
+        public List<String> getInterfaces() { return interfaces; }
+    }
+    
+    public static final class MethodSignature {
+        private final String name;
+        private final ApexType returnType;
+        private final List<ApexType> parameterTypes;
+        
+        MethodSignature(MethodDeclaration method) {
+            this.name = method.getName();
+            this.returnType = ApexType.of(method.getReturnType());
+            List<ApexType> parameterTypes = new ArrayList<>(method.getParameters().size());
+            for (MethodDeclaration.Parameter parameter : method.getParameters()) {
+                parameterTypes.add(ApexType.of(parameter.getType()));
+            }
+            this.parameterTypes = List.copyOf(parameterTypes);
+        }
+        
+        MethodSignature(String name, ApexType returnType, List<ApexType> parameterTypes) {
+            this.name = name;
+            this.returnType = returnType;
+            this.parameterTypes = parameterTypes;
+        }
+        
+        public String getName() { return name; }
+        public ApexType getReturnType() { return returnType; }
+        public List<ApexType> getParameterTypes() { return parameterTypes; }
+        
+        @Override
+        public String toString() {
+            return returnType + " " + name + parameterTypes.toString().replace('[', '(').replace(']', ')');
+        }
+    }
+}
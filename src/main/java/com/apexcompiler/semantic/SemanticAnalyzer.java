@@ -1,110 +1,113 @@
 package com.apexcompiler.semantic;
 
 import com.apexcompiler.ast.*;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+import com.apexcompiler.lexer.TokenType;
 import com.apexcompiler.semantic.SymbolTable.Symbol;
 import com.apexcompiler.semantic.SymbolTable.SymbolKind;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class SemanticAnalyzer implements ASTVisitor<String> {
-    private SymbolTable currentScope;
-    private final List<String> errors = new ArrayList<>();
+public class SemanticAnalyzer implements ASTVisitor<ApexType> {
+    private final SymbolTable symbols = new SymbolTable();
+    private final List<Diagnostic> errors = new ArrayList<>();
+    private final ClassIndex index;
     private String currentClass;
     private String currentMethod;
+    private ApexType currentReturnType;
+    private TypeFacts facts = new TypeFacts();
+    // Locals of the current method that may become Java primitives, and the reads that refer to them.
+    private final Map<Symbol, Local> primitiveCandidates = new IdentityHashMap<>();
+    private final Map<IdentifierExpression, Local> localReads = new IdentityHashMap<>();
+    // Integer values stored into Decimals.
+    private final Set<Expression> widenings = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Equalities between two Integers or two Booleans; boxed operands have to be compared by value.
+    private final List<BinaryExpression> equalities = new ArrayList<>();
+    // String locals and parameters of the current method declared outside any loop, and the outermost loop being analyzed.
+    private final Set<Symbol> stringLocals = Collections.newSetFromMap(new IdentityHashMap<>());
+    private LoopScan loopScan;
     
     public SemanticAnalyzer() {
-        this.currentScope = new SymbolTable(null);
-        initializeBuiltinTypes();
-    }
-    
-    private void initializeBuiltinTypes() {
-        // Primitive types
-        currentScope.define(new Symbol("Integer", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Decimal", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("String", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Boolean", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Date", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("DateTime", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Time", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Id", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Blob", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Object", "Type", SymbolKind.CLASS));
-        
-        // Collection types
-        currentScope.define(new Symbol("List", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Set", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Map", "Type", SymbolKind.CLASS));
-        
-        // SObject and standard objects
-        currentScope.define(new Symbol("SObject", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Account", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Contact", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Lead", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Opportunity", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Case", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("User", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Profile", "Type", SymbolKind.CLASS));
-        
-        // System classes
-        currentScope.define(new Symbol("System", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Database", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Test", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Schema", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Trigger", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Limits", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Math", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Json", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Http", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("HttpRequest", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("HttpResponse", "Type", SymbolKind.CLASS));
-        
-        // Exception types
-        currentScope.define(new Symbol("Exception", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("DmlException", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("QueryException", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("NullPointerException", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("ListException", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("StringException", "Type", SymbolKind.CLASS));
-        
-        // Apex-specific types
-        currentScope.define(new Symbol("PageReference", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("ApexPages", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("Messaging", "Type", SymbolKind.CLASS));
-        currentScope.define(new Symbol("SelectOption", "Type", SymbolKind.CLASS));
-    }
-    
-    public List<String> analyze(ClassDeclaration classDecl) {
+        this(ClassIndex.EMPTY);
+    }
+    
+    // Resolves other classes, inherited members and calls through a project-wide index.
+    public SemanticAnalyzer(ClassIndex index) {
+        this.index = index;
+    }
+    
+    public List<Diagnostic> analyze(ClassDeclaration classDecl) {
         errors.clear();
+        facts = new TypeFacts();
         classDecl.accept(this);
+        resolveFacts();
+        return errors;
+    }
+    
+    public List<Diagnostic> analyze(CompilationUnit unit) {
+        errors.clear();
+        facts = new TypeFacts();
+        for (ClassDeclaration type : unit.getTypes()) {
+            type.accept(this);
+        }
+        resolveFacts();
         return errors;
     }
     
+    // Nullness facts from the last analysis, for code generation.
+    public TypeFacts getFacts() {
+        return facts;
+    }
+    
     @Override
-    public String visitClassDeclaration(ClassDeclaration node) {
+    public ApexType visitClassDeclaration(ClassDeclaration node) {
+        String outerClass = currentClass;
         currentClass = node.getName();
         
-        if (currentScope.isDefined(node.getName())) {
-            errors.add("Class '" + node.getName() + "' is already defined");
+        ClassIndex.ClassInfo indexed = index.getClass(node.getName());
+        if (symbols.isDefined(node.getName()) || (indexed != null && indexed.getDeclaration() != node)) {
+            error(DiagnosticCode.DUPLICATE_CLASS, node, "Class '" + node.getName() + "' is already defined");
         } else {
-            currentScope.define(new Symbol(node.getName(), "Class", SymbolKind.CLASS));
+            symbols.define(new Symbol(node.getName(), ApexType.of(node.getName()), SymbolKind.CLASS));
         }
         
-        SymbolTable classScope = new SymbolTable(currentScope);
-        currentScope = classScope;
+        symbols.pushScope();
         
         if (node.getSuperClass() != null) {
-            if (currentScope.lookup(node.getSuperClass()) == null) {
-                errors.add("Superclass '" + node.getSuperClass() + "' not found");
+            if (!isKnownType(node.getSuperClass())) {
+                error(DiagnosticCode.UNKNOWN_TYPE, node, "Superclass '" + node.getSuperClass() + "' not found");
             }
         }
         
         for (String interfaceName : node.getInterfaces()) {
-            if (currentScope.lookup(interfaceName) == null) {
-                errors.add("Interface '" + interfaceName + "' not found");
+            if (!isKnownType(interfaceName)) {
+                error(DiagnosticCode.UNKNOWN_TYPE, node, "Interface '" + interfaceName + "' not found");
             }
         }
         
+        ApexType self = ApexType.of(node.getName());
+        for (String constant : node.getEnumConstants()) {
+            if (symbols.isDefined(constant)) {
+                error(DiagnosticCode.DUPLICATE_DEFINITION, node,
+                      "Enum constant '" + constant + "' is already defined");
+            } else {
+                symbols.define(new Symbol(constant, self, SymbolKind.VARIABLE));
+            }
+        }
+        
+        // Nested types are visible to the members of the enclosing class.
+        for (ClassDeclaration inner : node.getInnerClasses()) {
+            inner.accept(this);
+            currentClass = node.getName();
+        }
+        
         for (VariableDeclaration field : node.getFields()) {
             field.accept(this);
         }
@@ -113,72 +116,96 @@ public class SemanticAnalyzer implements ASTVisitor<String> {
             method.accept(this);
         }
         
-        currentScope = currentScope.getParent();
-        currentClass = null;
+        symbols.popScope();
+        currentClass = outerClass;
         return null;
     }
     
     @Override
-    public String visitMethodDeclaration(MethodDeclaration node) {
+    public ApexType visitMethodDeclaration(MethodDeclaration node) {
         currentMethod = node.getName();
+        currentReturnType = ApexType.of(node.getReturnType());
         
-        if (currentScope.isDefined(node.getName())) {
-            errors.add("Method '" + node.getName() + "' is already defined in class '" + currentClass + "'");
+        if (symbols.isDefined(node.getName())) {
+            error(DiagnosticCode.DUPLICATE_DEFINITION, node,
+                  "Method '" + node.getName() + "' is already defined in class '" + currentClass + "'");
         } else {
-            currentScope.define(new Symbol(node.getName(), node.getReturnType(), SymbolKind.METHOD));
+            symbols.define(new Symbol(node.getName(), ApexType.of(node.getReturnType()), SymbolKind.METHOD));
         }
         
-        SymbolTable methodScope = new SymbolTable(currentScope);
-        currentScope = methodScope;
+        symbols.pushScope();
         
         for (MethodDeclaration.Parameter param : node.getParameters()) {
-            if (currentScope.isDefined(param.getName())) {
-                errors.add("Parameter '" + param.getName() + "' is already defined");
+            if (symbols.isDefined(param.getName())) {
+                error(DiagnosticCode.DUPLICATE_DEFINITION, node,
+                      "Parameter '" + param.getName() + "' is already defined");
             } else {
-                currentScope.define(new Symbol(param.getName(), param.getType(), SymbolKind.PARAMETER));
+                Symbol symbol = new Symbol(param.getName(), ApexType.of(param.getType()), SymbolKind.PARAMETER);
+                symbols.define(symbol);
+                if (symbol.getType() == ApexType.STRING) {
+                    stringLocals.add(symbol);
+                }
             }
             
-            if (currentScope.lookup(param.getType()) == null) {
-                errors.add("Parameter type '" + param.getType() + "' not found");
+            if (!isKnownType(param.getType())) {
+                error(DiagnosticCode.UNKNOWN_TYPE, node, "Parameter type '" + param.getType() + "' not found");
             }
         }
         
         if (node.getBody() != null) {
             node.getBody().accept(this);
         }
+        resolveFacts();
         
-        currentScope = currentScope.getParent();
+        symbols.popScope();
         currentMethod = null;
-        return node.getReturnType();
+        currentReturnType = null;
+        return ApexType.of(node.getReturnType());
     }
     
     @Override
-    public String visitVariableDeclaration(VariableDeclaration node) {
-        if (currentScope.isDefined(node.getName())) {
-            errors.add("Variable '" + node.getName() + "' is already defined");
+    public ApexType visitVariableDeclaration(VariableDeclaration node) {
+        ApexType type = ApexType.of(node.getType());
+        Local local = null;
+        if (symbols.isDefined(node.getName())) {
+            error(DiagnosticCode.DUPLICATE_DEFINITION, node,
+                  "Variable '" + node.getName() + "' is already defined");
         } else {
-            currentScope.define(new Symbol(node.getName(), node.getType().toString(), SymbolKind.VARIABLE));
+            Symbol symbol = new Symbol(node.getName(), type, SymbolKind.VARIABLE);
+            symbols.define(symbol);
+            if (currentMethod != null && (type == ApexType.INTEGER || type == ApexType.BOOLEAN)) {
+                local = new Local(node);
+                primitiveCandidates.put(symbol, local);
+            } else if (currentMethod != null && type == ApexType.STRING && loopScan == null) {
+                stringLocals.add(symbol);
+            }
         }
         
-        if (currentScope.lookup(node.getType().getBaseType()) == null) {
-            errors.add("Type '" + node.getType().getBaseType() + "' not found");
+        if (!isKnownType(node.getType().getBaseType())) {
+            error(DiagnosticCode.UNKNOWN_TYPE, node, "Type '" + node.getType().getBaseType() + "' not found");
         }
         
         if (node.getInitializer() != null) {
-            String initType = node.getInitializer().accept(this);
-            if (initType != null && !isAssignableFrom(node.getType().toString(), initType)) {
-                errors.add("Cannot assign " + initType + " to " + node.getType());
+            ApexType initType = node.getInitializer().accept(this);
+            if (initType != null && !type.isAssignableFrom(initType)) {
+                error(DiagnosticCode.TYPE_MISMATCH, node.getInitializer(),
+                      "Cannot assign " + initType + " to " + type);
             }
+            stored(node.getInitializer(), initType, type, local);
+        } else if (local != null) {
+            // An uninitialized local starts out null.
+            local.primitive = false;
         }
         
-        return node.getType().toString();
+        return type;
     }
     
     @Override
-    public String visitIfStatement(IfStatement node) {
-        String conditionType = node.getCondition().accept(this);
-        if (conditionType != null && !conditionType.equals("Boolean")) {
-            errors.add("If condition must be Boolean, got " + conditionType);
+    public ApexType visitIfStatement(IfStatement node) {
+        ApexType conditionType = node.getCondition().accept(this);
+        if (conditionType != null && conditionType != ApexType.BOOLEAN) {
+            error(DiagnosticCode.NON_BOOLEAN_CONDITION, node.getCondition(),
+                  "If condition must be Boolean, got " + conditionType);
         }
         
         node.getThenBranch().accept(this);
@@ -190,29 +217,33 @@ public class SemanticAnalyzer implements ASTVisitor<String> {
     }
     
     @Override
-    public String visitWhileStatement(WhileStatement node) {
-        String conditionType = node.getCondition().accept(this);
-        if (conditionType != null && !conditionType.equals("Boolean")) {
-            errors.add("While condition must be Boolean, got " + conditionType);
+    public ApexType visitWhileStatement(WhileStatement node) {
+        boolean outermost = enterLoop(node);
+        ApexType conditionType = node.getCondition().accept(this);
+        if (conditionType != null && conditionType != ApexType.BOOLEAN) {
+            error(DiagnosticCode.NON_BOOLEAN_CONDITION, node.getCondition(),
+                  "While condition must be Boolean, got " + conditionType);
         }
         
         node.getBody().accept(this);
+        exitLoop(outermost);
         return null;
     }
     
     @Override
-    public String visitForStatement(ForStatement node) {
-        SymbolTable forScope = new SymbolTable(currentScope);
-        currentScope = forScope;
+    public ApexType visitForStatement(ForStatement node) {
+        boolean outermost = enterLoop(node);
+        symbols.pushScope();
         
         if (node.getInitializer() != null) {
             node.getInitializer().accept(this);
         }
         
         if (node.getCondition() != null) {
-            String conditionType = node.getCondition().accept(this);
-            if (conditionType != null && !conditionType.equals("Boolean")) {
-                errors.add("For condition must be Boolean, got " + conditionType);
+            ApexType conditionType = node.getCondition().accept(this);
+            if (conditionType != null && conditionType != ApexType.BOOLEAN) {
+                error(DiagnosticCode.NON_BOOLEAN_CONDITION, node.getCondition(),
+                      "For condition must be Boolean, got " + conditionType);
             }
         }
         
@@ -222,62 +253,133 @@ public class SemanticAnalyzer implements ASTVisitor<String> {
         
         node.getBody().accept(this);
         
-        currentScope = currentScope.getParent();
+        symbols.popScope();
+        exitLoop(outermost);
         return null;
     }
     
     @Override
-    public String visitReturnStatement(ReturnStatement node) {
+    public ApexType visitReturnStatement(ReturnStatement node) {
         if (node.getValue() != null) {
-            String returnType = node.getValue().accept(this);
-            return returnType;
+            ApexType type = node.getValue().accept(this);
+            stored(node.getValue(), type, currentReturnType, null);
+            return type;
         }
-        return "void";
+        return ApexType.VOID;
     }
     
     @Override
-    public String visitExpressionStatement(ExpressionStatement node) {
+    public ApexType visitExpressionStatement(ExpressionStatement node) {
+        if (loopScan != null && node.getExpression() instanceof AssignmentExpression) {
+            appended((AssignmentExpression) node.getExpression());
+        }
         node.getExpression().accept(this);
         return null;
     }
     
+    private boolean enterLoop(Statement loop) {
+        if (loopScan != null || currentMethod == null) {
+            return false;
+        }
+        loopScan = new LoopScan(loop);
+        return true;
+    }
+    
+    // A String local that the loop reads or assigns only by appending to it can be built in a StringBuilder.
+    private void exitLoop(boolean outermost) {
+        if (!outermost) {
+            return;
+        }
+        List<String> accumulators = new ArrayList<>();
+        for (Map.Entry<Symbol, List<AssignmentExpression>> appends : loopScan.appends.entrySet()) {
+            if (!loopScan.used.contains(appends.getKey())) {
+                accumulators.add(appends.getKey().getName());
+                for (AssignmentExpression append : appends.getValue()) {
+                    facts.addAppend(append);
+                }
+            }
+        }
+        if (!accumulators.isEmpty()) {
+            facts.addAccumulators(loopScan.loop, accumulators);
+        }
+        loopScan = null;
+    }
+    
+    // Records s += x or s = s + x as an append, so that its reads of s do not count as uses.
+    private void appended(AssignmentExpression node) {
+        if (!(node.getTarget() instanceof IdentifierExpression)) {
+            return;
+        }
+        IdentifierExpression target = (IdentifierExpression) node.getTarget();
+        Symbol symbol = symbols.lookup(target.getName());
+        if (symbol == null || !stringLocals.contains(symbol)) {
+            return;
+        }
+        if (node.getOperator() == TokenType.ASSIGN) {
+            Expression first = node.getValue();
+            while (first instanceof BinaryExpression && ((BinaryExpression) first).getOperator() == TokenType.PLUS) {
+                first = ((BinaryExpression) first).getLeft();
+            }
+            if (first == node.getValue() || !(first instanceof IdentifierExpression)
+                    || !((IdentifierExpression) first).getName().equals(target.getName())) {
+                return;
+            }
+            loopScan.appendReads.add((IdentifierExpression) first);
+        } else if (node.getOperator() != TokenType.PLUS_ASSIGN) {
+            return;
+        }
+        loopScan.appendReads.add(target);
+        loopScan.appends.computeIfAbsent(symbol, key -> new ArrayList<>()).add(node);
+    }
+    
     @Override
-    public String visitBlockStatement(BlockStatement node) {
-        SymbolTable blockScope = new SymbolTable(currentScope);
-        currentScope = blockScope;
+    public ApexType visitBlockStatement(BlockStatement node) {
+        symbols.pushScope();
         
         for (Statement stmt : node.getStatements()) {
             stmt.accept(this);
         }
         
-        currentScope = currentScope.getParent();
+        symbols.popScope();
         return null;
     }
     
     @Override
-    public String visitBinaryExpression(BinaryExpression node) {
-        String leftType = node.getLeft().accept(this);
-        String rightType = node.getRight().accept(this);
+    public ApexType visitBinaryExpression(BinaryExpression node) {
+        ApexType leftType = node.getLeft().accept(this);
+        ApexType rightType = node.getRight().accept(this);
         
         if (leftType == null || rightType == null) {
             return null;
         }
+        decimal(node.getLeft(), leftType);
+        decimal(node.getRight(), rightType);
+        
+        // A primitive compared with null, or with a null Integer, would not compile or would throw.
+        if (node.getOperator() == TokenType.EQUALS || node.getOperator() == TokenType.NOT_EQUALS) {
+            mustBeNonNull(node.getLeft(), node.getRight());
+            mustBeNonNull(node.getRight(), node.getLeft());
+            if (leftType == rightType && (leftType == ApexType.BOOLEAN || leftType.isNumeric() && leftType != ApexType.DECIMAL)) {
+                equalities.add(node);
+            }
+        }
         
         switch (node.getOperator()) {
             case PLUS:
-                if (leftType.equals("String") || rightType.equals("String")) {
-                    return "String";
+                if (leftType == ApexType.STRING || rightType == ApexType.STRING) {
+                    facts.addConcatenation(node);
+                    return ApexType.STRING;
                 }
-                if (isNumericType(leftType) && isNumericType(rightType)) {
-                    return getNumericResultType(leftType, rightType);
+                if (leftType.isNumeric() && rightType.isNumeric()) {
+                    return decimal(node, getNumericResultType(leftType, rightType));
                 }
                 break;
             case MINUS:
             case MULTIPLY:
             case DIVIDE:
             case MODULO:
-                if (isNumericType(leftType) && isNumericType(rightType)) {
-                    return getNumericResultType(leftType, rightType);
+                if (leftType.isNumeric() && rightType.isNumeric()) {
+                    return decimal(node, getNumericResultType(leftType, rightType));
                 }
                 break;
             case EQUALS:
@@ -286,131 +388,330 @@ public class SemanticAnalyzer implements ASTVisitor<String> {
             case LESS_EQUAL:
             case GREATER_THAN:
             case GREATER_EQUAL:
-                return "Boolean";
+                return ApexType.BOOLEAN;
             case LOGICAL_AND:
             case LOGICAL_OR:
-                if (leftType.equals("Boolean") && rightType.equals("Boolean")) {
-                    return "Boolean";
+                if (leftType == ApexType.BOOLEAN && rightType == ApexType.BOOLEAN) {
+                    return ApexType.BOOLEAN;
                 }
                 break;
         }
         
-        errors.add("Invalid binary operation: " + leftType + " " + node.getOperator() + " " + rightType);
+        error(DiagnosticCode.INVALID_OPERATION, node,
+              "Invalid binary operation: " + leftType + " " + node.getOperator() + " " + rightType);
         return null;
     }
     
     @Override
-    public String visitUnaryExpression(UnaryExpression node) {
-        String operandType = node.getOperand().accept(this);
+    public ApexType visitUnaryExpression(UnaryExpression node) {
+        ApexType operandType = node.getOperand().accept(this);
         
         if (operandType == null) {
             return null;
         }
+        decimal(node.getOperand(), operandType);
         
         switch (node.getOperator()) {
             case MINUS:
             case PLUS:
-                if (isNumericType(operandType)) {
-                    return operandType;
+                if (operandType.isNumeric()) {
+                    return decimal(node, operandType);
                 }
                 break;
             case LOGICAL_NOT:
-                if (operandType.equals("Boolean")) {
-                    return "Boolean";
+                if (operandType == ApexType.BOOLEAN) {
+                    return ApexType.BOOLEAN;
                 }
                 break;
         }
         
-        errors.add("Invalid unary operation: " + node.getOperator() + " " + operandType);
+        error(DiagnosticCode.INVALID_OPERATION, node,
+              "Invalid unary operation: " + node.getOperator() + " " + operandType);
         return null;
     }
     
     @Override
-    public String visitCallExpression(CallExpression node) {
-        String calleeType = node.getCallee().accept(this);
+    public ApexType visitCallExpression(CallExpression node) {
+        Expression callee = node.getCallee();
+        String ownerClass = null;
+        String methodName = null;
+        
+        if (callee instanceof IdentifierExpression && index.contains(currentClass)) {
+            ownerClass = currentClass;
+            methodName = ((IdentifierExpression) callee).getName();
+        } else if (callee instanceof MemberExpression) {
+            MemberExpression member = (MemberExpression) callee;
+            ApexType objectType = member.getObject().accept(this);
+            keepBoxed(member.getObject());
+            if (objectType != null && index.contains(objectType.getName())) {
+                ownerClass = objectType.getName();
+                methodName = member.getProperty();
+            }
+        }
         
+        List<ApexType> argTypes = new ArrayList<>(node.getArguments().size());
         for (Expression arg : node.getArguments()) {
-            arg.accept(this);
+            argTypes.add(arg.accept(this));
         }
         
-        return "Object";
+        if (methodName == null) {
+            if (!(callee instanceof MemberExpression)) {
+                callee.accept(this);
+            }
+            return ApexType.OBJECT;
+        }
+        
+        List<ClassIndex.MethodSignature> candidates = index.findMethods(ownerClass, methodName);
+        for (ClassIndex.MethodSignature candidate : candidates) {
+            if (candidate.getParameterTypes().size() == node.getArguments().size()) {
+                for (int i = 0; i < argTypes.size(); i++) {
+                    stored(node.getArguments().get(i), argTypes.get(i), candidate.getParameterTypes().get(i), null);
+                }
+                return candidate.getReturnType();
+            }
+        }
+        
+        if (!candidates.isEmpty()) {
+            error(DiagnosticCode.WRONG_ARGUMENT_COUNT, node, "Method '" + methodName + "' in class '" + ownerClass
+                + "' does not take " + node.getArguments().size() + " argument(s)");
+            return null;
+        }
+        if (ownerClass.equals(currentClass)) {
+            // Not a method of this class; fall back to resolving the name as before.
+            callee.accept(this);
+            return ApexType.OBJECT;
+        }
+        if (index.isHierarchyKnown(ownerClass)) {
+            error(DiagnosticCode.UNKNOWN_METHOD, node,
+                  "Method '" + methodName + "' not found in class '" + ownerClass + "'");
+            return null;
+        }
+        return ApexType.OBJECT;
     }
     
     @Override
-    public String visitMemberExpression(MemberExpression node) {
-        String objectType = node.getObject().accept(this);
-        return "Object";
+    public ApexType visitMemberExpression(MemberExpression node) {
+        ApexType objectType = node.getObject().accept(this);
+        keepBoxed(node.getObject());
+        if (objectType == null || !index.contains(objectType.getName())) {
+            return ApexType.OBJECT;
+        }
+        
+        ApexType fieldType = index.findField(objectType.getName(), node.getProperty());
+        if (fieldType != null) {
+            return fieldType;
+        }
+        if (index.isHierarchyKnown(objectType.getName())) {
+            error(DiagnosticCode.UNKNOWN_FIELD, node,
+                  "Field '" + node.getProperty() + "' not found in class '" + objectType.getName() + "'");
+            return null;
+        }
+        return ApexType.OBJECT;
     }
     
     @Override
-    public String visitLiteralExpression(LiteralExpression node) {
-        return node.getType();
+    public ApexType visitLiteralExpression(LiteralExpression node) {
+        return ApexType.of(node.getType());
     }
     
     @Override
-    public String visitIdentifierExpression(IdentifierExpression node) {
-        Symbol symbol = currentScope.lookup(node.getName());
-        if (symbol == null) {
-            errors.add("Undefined variable '" + node.getName() + "'");
-            return null;
+    public ApexType visitIdentifierExpression(IdentifierExpression node) {
+        Symbol symbol = symbols.lookup(node.getName());
+        if (symbol != null) {
+            Local local = primitiveCandidates.get(symbol);
+            if (local != null) {
+                localReads.put(node, local);
+            }
+            if (loopScan != null && stringLocals.contains(symbol) && !loopScan.appendReads.contains(node)) {
+                loopScan.used.add(symbol);
+            }
+            return symbol.getType();
         }
-        return symbol.getType();
+        
+        ApexType inherited = currentClass != null ? index.findField(currentClass, node.getName()) : null;
+        if (inherited != null) {
+            return inherited;
+        }
+        if (index.contains(node.getName())) {
+            return ApexType.of(node.getName());
+        }
+        
+        error(DiagnosticCode.UNDEFINED_VARIABLE, node, "Undefined variable '" + node.getName() + "'");
+        return null;
     }
     
     @Override
-    public String visitAssignmentExpression(AssignmentExpression node) {
-        String targetType = node.getTarget().accept(this);
-        String valueType = node.getValue().accept(this);
+    public ApexType visitAssignmentExpression(AssignmentExpression node) {
+        ApexType targetType = node.getTarget().accept(this);
+        ApexType valueType = node.getValue().accept(this);
         
         if (targetType != null && valueType != null) {
-            if (!isAssignableFrom(targetType, valueType)) {
-                errors.add("Cannot assign " + valueType + " to " + targetType);
+            if (!targetType.isAssignableFrom(valueType)) {
+                error(DiagnosticCode.TYPE_MISMATCH, node, "Cannot assign " + valueType + " to " + targetType);
             }
         }
+        // A compound assignment stores the result of an operation, which is never null.
+        if (node.getOperator() == TokenType.ASSIGN) {
+            stored(node.getValue(), valueType, targetType, localReads.get(node.getTarget()));
+        } else if (targetType != null) {
+            decimal(node.getTarget(), targetType);
+        }
         
         return targetType;
     }
     
-    private boolean isNumericType(String type) {
-        return type.equals("Integer") || type.equals("Decimal");
+    // Records a value stored into a local, field, parameter or return value of the given type.
+    private void stored(Expression value, ApexType valueType, ApexType targetType, Local local) {
+        if (local != null) {
+            local.values.add(value);
+        }
+        if (targetType == ApexType.DECIMAL && valueType == ApexType.INTEGER) {
+            widenings.add(value);
+        }
     }
     
-    private String getNumericResultType(String left, String right) {
-        if (left.equals("Decimal") || right.equals("Decimal")) {
-            return "Decimal";
+    // Decimal operators become ApexDecimal method calls, so code generation needs to know their operands.
+    private ApexType decimal(Expression expr, ApexType type) {
+        if (type == ApexType.DECIMAL) {
+            facts.addDecimal(expr);
         }
-        return "Integer";
+        return type;
     }
     
-    private boolean isAssignableFrom(String target, String source) {
-        if (target.equals(source)) {
-            return true;
+    private void mustBeNonNull(Expression expr, Expression other) {
+        Local local = localReads.get(expr);
+        if (local != null) {
+            local.values.add(other);
         }
-        
-        if (target.equals("Decimal") && source.equals("Integer")) {
-            return true;
+    }
+    
+    // Java primitives have no methods or fields.
+    private void keepBoxed(Expression object) {
+        Local local = localReads.get(object);
+        if (local != null) {
+            local.primitive = false;
         }
-        
-        if (target.equals("String")) {
+    }
+    
+    /**
+     * Settles which candidate locals can be primitives: a local stays one
+     * while everything stored into it or compared with it is non-null, which
+     * may depend on other locals, so this repeats until nothing changes.
+     * Widenings and equalities are then classified by whether their operands
+     * can be null.
+     */
+    private void resolveFacts() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Local local : primitiveCandidates.values()) {
+                if (local.primitive && !local.values.stream().allMatch(this::isNonNull)) {
+                    local.primitive = false;
+                    changed = true;
+                }
+            }
+        }
+        for (Local local : primitiveCandidates.values()) {
+            if (local.primitive) {
+                facts.addPrimitive(local.declaration);
+            }
+        }
+        for (Expression widening : widenings) {
+            facts.addConversion(widening, isNonNull(widening)
+                ? TypeFacts.Conversion.TO_DECIMAL
+                : TypeFacts.Conversion.TO_DECIMAL_OR_NULL);
+        }
+        for (BinaryExpression equality : equalities) {
+            if (!isNonNull(equality.getLeft()) || !isNonNull(equality.getRight())) {
+                facts.addBoxedEquality(equality);
+            }
+        }
+        primitiveCandidates.clear();
+        localReads.clear();
+        widenings.clear();
+        equalities.clear();
+        stringLocals.clear();
+    }
+    
+    // Every operator yields a Java primitive, a String or an ApexDecimal; a null operand throws before that.
+    private boolean isNonNull(Expression expr) {
+        if (expr instanceof LiteralExpression) {
+            return ((LiteralExpression) expr).getValue() != null;
+        }
+        if (expr instanceof BinaryExpression || expr instanceof UnaryExpression) {
             return true;
         }
-        
-        return false;
+        Local local = localReads.get(expr);
+        return local != null && local.primitive;
+    }
+    
+    private static final class Local {
+        final VariableDeclaration declaration;
+        // Values stored into the local or compared with it.
+        final List<Expression> values = new ArrayList<>();
+        boolean primitive = true;
+        
+        Local(VariableDeclaration declaration) {
+            this.declaration = declaration;
+        }
+    }
+    
+    private static final class LoopScan {
+        final Statement loop;
+        // Appends to each String local, in order, and the locals the loop uses in any other way.
+        final Map<Symbol, List<AssignmentExpression>> appends = new LinkedHashMap<>();
+        final Set<Symbol> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<IdentifierExpression> appendReads = Collections.newSetFromMap(new IdentityHashMap<>());
+        
+        LoopScan(Statement loop) {
+            this.loop = loop;
+        }
+    }
+    
+    private void error(DiagnosticCode code, ASTNode node, String message) {
+        errors.add(Diagnostic.error(code, node, message));
+    }
+    
+    private boolean isKnownType(String name) {
+        return symbols.lookup(name) != null || index.contains(name);
+    }
+    
+    private ApexType getNumericResultType(ApexType left, ApexType right) {
+        if (left == ApexType.DECIMAL || right == ApexType.DECIMAL) {
+            return ApexType.DECIMAL;
+        }
+        return ApexType.INTEGER;
     }
     
     @Override
-    public String visitAnnotation(Annotation node) {
+    public ApexType visitAnnotation(Annotation node) {
         return null;
     }
     
+    // The parser has already checked the query's syntax; bind variables are checked like any other read.
     @Override
-    public String visitSoqlExpression(SoqlExpression node) {
-        return "List<SObject>";
+    public ApexType visitSoqlExpression(SoqlExpression node) {
+        for (Expression bind : node.getBinds()) {
+            bind.accept(this);
+        }
+        String objectType = node.getParsedQuery().getObjectType();
+        ApexType type = ApexType.sObject(objectType);
+        if (type == null) {
+            error(DiagnosticCode.UNKNOWN_TYPE, node, "sObject type '" + objectType + "' is not supported");
+            return ApexType.listOf(ApexType.SOBJECT);
+        }
+        return ApexType.listOf(type);
     }
     
     @Override
-    public String visitDmlStatement(DmlStatement node) {
+    public ApexType visitDmlStatement(DmlStatement node) {
         node.getTarget().accept(this);
         return null;
     }
-}
\ No newline at end of file
+    
+    // Already reported by the parser.
+    @Override
+    public ApexType visitErrorStatement(ErrorStatement node) {
+        return null;
+    }
+}
@@ -1,55 +1,138 @@
 package com.apexcompiler.semantic;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Scoped symbol table kept as one flat stack. Every definition takes the next
+ * slot, and a name index points at the innermost slot for each name, so a
+ * lookup costs the same at any nesting depth. Entering a scope records the
+ * stack pointer; leaving it drops the scope's slots and restores any names
+ * they shadowed. Builtin types are resolved from {@link BuiltinSymbols}.
+ */
 public class SymbolTable {
-    private final Map<String, Symbol> symbols = new HashMap<>();
-    private final SymbolTable parent;
+    private static final int INITIAL_CAPACITY = 32;
     
-    public SymbolTable(SymbolTable parent) {
-        this.parent = parent;
+    private Symbol[] slots = new Symbol[INITIAL_CAPACITY];
+    // Slot of the same-named symbol each slot shadows, or -1.
+    private int[] shadowed = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    
+    private int[] scopeStarts = new int[8];
+    private int depth = 0;
+    
+    // Open-addressing index from name to its innermost slot; -1 once the name goes out of scope.
+    private String[] keys = new String[INITIAL_CAPACITY * 2];
+    private int[] innermost = new int[INITIAL_CAPACITY * 2];
+    private int keyCount = 0;
+    
+    public void pushScope() {
+        if (depth == scopeStarts.length) {
+            scopeStarts = Arrays.copyOf(scopeStarts, depth * 2);
+        }
+        scopeStarts[depth++] = size;
     }
     
-    public void define(Symbol symbol) {
-        symbols.put(symbol.getName(), symbol);
+    public void popScope() {
+        int start = scopeStarts[--depth];
+        for (int slot = size - 1; slot >= start; slot--) {
+            innermost[find(slots[slot].getName())] = shadowed[slot];
+            slots[slot] = null;
+        }
+        size = start;
     }
     
-    public Symbol lookup(String name) {
-        Symbol symbol = symbols.get(name);
-        if (symbol != null) {
-            return symbol;
+    // Returns the slot assigned to the symbol.
+    public int define(Symbol symbol) {
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+            shadowed = Arrays.copyOf(shadowed, size * 2);
         }
-        
-        if (parent != null) {
-            return parent.lookup(name);
+        int key = find(symbol.getName());
+        if (keys[key] == null) {
+            keys[key] = symbol.getName();
+            innermost[key] = -1;
+            keyCount++;
         }
-        
-        return null;
+        int slot = size++;
+        symbol.slot = slot;
+        slots[slot] = symbol;
+        shadowed[slot] = innermost[key];
+        innermost[key] = slot;
+        if (keyCount * 2 > keys.length) {
+            rehash();
+        }
+        return slot;
+    }
+    
+    public Symbol lookup(String name) {
+        int slot = innermost(name);
+        return slot >= 0 ? slots[slot] : BuiltinSymbols.lookup(name);
     }
     
+    // Whether the name is defined in the current scope itself. Builtins count as the outermost scope.
     public boolean isDefined(String name) {
-        return symbols.containsKey(name);
+        int slot = innermost(name);
+        if (slot >= 0) {
+            return depth == 0 || slot >= scopeStarts[depth - 1];
+        }
+        return depth == 0 && BuiltinSymbols.lookup(name) != null;
+    }
+    
+    public Symbol getSymbol(int slot) {
+        return slots[slot];
     }
     
-    public SymbolTable getParent() {
-        return parent;
+    public int getDepth() {
+        return depth;
+    }
+    
+    private int innermost(String name) {
+        int key = find(name);
+        return keys[key] != null ? innermost[key] : -1;
+    }
+    
+    private int find(String name) {
+        int mask = keys.length - 1;
+        int h = name.hashCode();
+        for (int i = (h ^ (h >>> 16)) & mask; ; i = (i + 1) & mask) {
+            String key = keys[i];
+            if (key == null || key.equals(name)) {
+                return i;
+            }
+        }
+    }
+    
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldInnermost = innermost;
+        keys = new String[oldKeys.length * 2];
+        innermost = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int key = find(oldKeys[i]);
+                keys[key] = oldKeys[i];
+                innermost[key] = oldInnermost[i];
+            }
+        }
     }
     
     public static class Symbol {
         private final String name;
-        private final String type;
+        private final ApexType type;
         private final SymbolKind kind;
+        private int slot = -1;
         
-        public Symbol(String name, String type, SymbolKind kind) {
+        public Symbol(String name, ApexType type, SymbolKind kind) {
             this.name = name;
             this.type = type;
             this.kind = kind;
         }
         
         public String getName() { return name; }
-        public String getType() { return type; }
+        public ApexType getType() { return type; }
         public SymbolKind getKind() { return kind; }
+        // Slot assigned by the table that defined this symbol; -1 for builtins.
+        public int getSlot() { return slot; }
     }
     
     public enum SymbolKind {
@@ -58,4 +141,4 @@ public class SymbolTable {
         CLASS,
         PARAMETER
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.ast.ASTNode;
+import com.apexcompiler.ast.Expression;
+import com.apexcompiler.ast.Statement;
+import com.apexcompiler.ast.VariableDeclaration;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the analyzer proved about one compilation unit, for code generation
+ * to act on: nullness, Decimal and String operations, equalities between
+ * boxed values, and Strings built up
+ * in loops. Facts are keyed by node identity; a pass that
+ * copies nodes carries them over with {@link #transfer}.
+ */
+public final class TypeFacts {
+    public static final TypeFacts NONE = new TypeFacts();
+    
+    /** How a value has to be converted before it is stored in its target. */
+    public enum Conversion {
+        NONE,
+        // An Integer that is never null, stored into a Decimal.
+        TO_DECIMAL,
+        // An Integer that may be null, stored into a Decimal.
+        TO_DECIMAL_OR_NULL
+    }
+    
+    private final Set<ASTNode> primitiveLocals = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<ASTNode, Conversion> conversions = new IdentityHashMap<>();
+    private final Set<ASTNode> decimals = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<ASTNode> concatenations = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<ASTNode> boxedEqualities = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<ASTNode, List<String>> accumulators = new IdentityHashMap<>();
+    private final Set<ASTNode> appends = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    // Integer and Boolean locals that are initialized and never assigned null.
+    public boolean isPrimitive(VariableDeclaration local) {
+        return primitiveLocals.contains(local);
+    }
+    
+    public Conversion conversion(Expression value) {
+        return conversions.getOrDefault(value, Conversion.NONE);
+    }
+    
+    // Decimal operands and results of operators and compound assignments.
+    public boolean isDecimal(Expression expr) {
+        return decimals.contains(expr);
+    }
+    
+    // A + that joins Strings.
+    public boolean isConcatenation(Expression expr) {
+        return concatenations.contains(expr);
+    }
+    
+    // An == or != on Integer or Boolean operands where one may be null, so Java would compare references.
+    public boolean isBoxedEquality(Expression expr) {
+        return boxedEqualities.contains(expr);
+    }
+    
+    // String locals that the loop only appends to, so they can be built in a StringBuilder around it.
+    public List<String> accumulators(Statement loop) {
+        return accumulators.getOrDefault(loop, List.of());
+    }
+    
+    // An s += x or s = s + x statement on one of the accumulators of an enclosing loop.
+    public boolean isAppend(Expression assignment) {
+        return appends.contains(assignment);
+    }
+    
+    public void transfer(ASTNode from, ASTNode to) {
+        if (primitiveLocals.contains(from)) {
+            primitiveLocals.add(to);
+        }
+        Conversion conversion = conversions.get(from);
+        if (conversion != null) {
+            conversions.put(to, conversion);
+        }
+        if (decimals.contains(from)) {
+            decimals.add(to);
+        }
+        if (concatenations.contains(from)) {
+            concatenations.add(to);
+        }
+        if (boxedEqualities.contains(from)) {
+            boxedEqualities.add(to);
+        }
+        List<String> names = accumulators.get(from);
+        if (names != null) {
+            accumulators.put(to, names);
+        }
+        if (appends.contains(from)) {
+            appends.add(to);
+        }
+    }
+    
+    void addPrimitive(VariableDeclaration local) {
+        primitiveLocals.add(local);
+    }
+    
+    void addConversion(Expression value, Conversion conversion) {
+        conversions.put(value, conversion);
+    }
+    
+    void addDecimal(Expression expr) {
+        decimals.add(expr);
+    }
+    
+    void addConcatenation(Expression expr) {
+        concatenations.add(expr);
+    }
+    
+    void addBoxedEquality(Expression expr) {
+        boxedEqualities.add(expr);
+    }
+    
+    void addAccumulators(Statement loop, List<String> names) {
+        accumulators.put(loop, names);
+    }
+    
+    void addAppend(Expression assignment) {
+        appends.add(assignment);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,266 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Apex Decimal for generated Java. The value is exact: an unscaled long and a
+ * scale while it fits in the long, and a BigDecimal only after an operation
+ * overflows it, so ordinary currency arithmetic does not touch BigDecimal.
+ * Scales follow BigDecimal, so 1.50 + 1 is 2.50.
+ */
+public final class ApexDecimal extends Number implements Comparable<ApexDecimal> {
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+        10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+    // Quotients that do not terminate are rounded to 34 significant digits.
+    private static final MathContext DIVISION = MathContext.DECIMAL128;
+    private static final ApexDecimal[] SMALL = new ApexDecimal[256];
+    
+    static {
+        for (int i = 0; i < SMALL.length; i++) {
+            SMALL[i] = new ApexDecimal(i - 128, 0);
+        }
+    }
+    
+    private final long unscaled;
+    private final int scale;
+    // Set only when the unscaled value does not fit in a long.
+    private final BigDecimal big;
+    
+    private ApexDecimal(long unscaled, int scale) {
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.big = null;
+    }
+    
+    private ApexDecimal(BigDecimal big) {
+        this.unscaled = 0;
+        this.scale = big.scale();
+        this.big = big;
+    }
+    
+    public static ApexDecimal of(long unscaled, int scale) {
+        if (scale == 0 && unscaled >= -128 && unscaled < 128) {
+            return SMALL[(int) unscaled + 128];
+        }
+        return new ApexDecimal(unscaled, scale);
+    }
+    
+    public static ApexDecimal valueOf(long value) {
+        return of(value, 0);
+    }
+    
+    // Apex widens a null Integer to a null Decimal.
+    public static ApexDecimal valueOf(Integer value) {
+        return value != null ? valueOf(value.longValue()) : null;
+    }
+    
+    public static ApexDecimal valueOf(String value) {
+        return valueOf(new BigDecimal(value));
+    }
+    
+    public static ApexDecimal valueOf(BigDecimal value) {
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        }
+        if (value.unscaledValue().bitLength() < 64) {
+            return of(value.unscaledValue().longValue(), value.scale());
+        }
+        return new ApexDecimal(value);
+    }
+    
+    // Apex == compares values, so 1.0 == 1.00; null is equal only to null.
+    public static boolean equal(ApexDecimal a, ApexDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+    
+    public ApexDecimal add(ApexDecimal other) {
+        if (big == null && other.big == null) {
+            ApexDecimal sum = sum(unscaled, scale, other.unscaled, other.scale);
+            if (sum != null) {
+                return sum;
+            }
+        }
+        return valueOf(toBigDecimal().add(other.toBigDecimal()));
+    }
+    
+    public ApexDecimal add(long value) {
+        if (big == null) {
+            ApexDecimal sum = sum(unscaled, scale, value, 0);
+            if (sum != null) {
+                return sum;
+            }
+        }
+        return add(valueOf(value));
+    }
+    
+    public ApexDecimal subtract(ApexDecimal other) {
+        if (big == null && other.big == null && other.unscaled != Long.MIN_VALUE) {
+            ApexDecimal sum = sum(unscaled, scale, -other.unscaled, other.scale);
+            if (sum != null) {
+                return sum;
+            }
+        }
+        return valueOf(toBigDecimal().subtract(other.toBigDecimal()));
+    }
+    
+    public ApexDecimal subtract(long value) {
+        if (big == null && value != Long.MIN_VALUE) {
+            ApexDecimal sum = sum(unscaled, scale, -value, 0);
+            if (sum != null) {
+                return sum;
+            }
+        }
+        return subtract(valueOf(value));
+    }
+    
+    public ApexDecimal multiply(ApexDecimal other) {
+        if (big == null && other.big == null && fitsProduct(unscaled, other.unscaled)) {
+            return of(unscaled * other.unscaled, scale + other.scale);
+        }
+        return valueOf(toBigDecimal().multiply(other.toBigDecimal()));
+    }
+    
+    public ApexDecimal multiply(long value) {
+        if (big == null && fitsProduct(unscaled, value)) {
+            return of(unscaled * value, scale);
+        }
+        return multiply(valueOf(value));
+    }
+    
+    public ApexDecimal divide(ApexDecimal other) {
+        if (other.signum() == 0) {
+            throw new ArithmeticException("Divide by 0");
+        }
+        // An exact quotient by a whole number keeps the dividend's scale, as BigDecimal does.
+        if (big == null && other.big == null && other.scale == 0 && unscaled % other.unscaled == 0
+                && !(unscaled == Long.MIN_VALUE && other.unscaled == -1)) {
+            return of(unscaled / other.unscaled, scale);
+        }
+        return valueOf(toBigDecimal().divide(other.toBigDecimal(), DIVISION));
+    }
+    
+    public ApexDecimal divide(long value) {
+        return divide(valueOf(value));
+    }
+    
+    public ApexDecimal remainder(ApexDecimal other) {
+        if (other.signum() == 0) {
+            throw new ArithmeticException("Divide by 0");
+        }
+        if (big == null && other.big == null && scale == other.scale) {
+            return of(unscaled % other.unscaled, scale);
+        }
+        return valueOf(toBigDecimal().remainder(other.toBigDecimal()));
+    }
+    
+    public ApexDecimal remainder(long value) {
+        return remainder(valueOf(value));
+    }
+    
+    public ApexDecimal negate() {
+        if (big == null && unscaled != Long.MIN_VALUE) {
+            return of(-unscaled, scale);
+        }
+        return valueOf(toBigDecimal().negate());
+    }
+    
+    @Override
+    public int compareTo(ApexDecimal other) {
+        if (big == null && other.big == null) {
+            if (scale == other.scale) {
+                return Long.compare(unscaled, other.unscaled);
+            }
+            if (scale < other.scale && canRescale(unscaled, other.scale - scale)) {
+                return Long.compare(unscaled * POWERS_OF_TEN[other.scale - scale], other.unscaled);
+            }
+            if (scale > other.scale && canRescale(other.unscaled, scale - other.scale)) {
+                return Long.compare(unscaled, other.unscaled * POWERS_OF_TEN[scale - other.scale]);
+            }
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+    
+    public int compareTo(long value) {
+        if (big == null && scale == 0) {
+            return Long.compare(unscaled, value);
+        }
+        return compareTo(valueOf(value));
+    }
+    
+    public int signum() {
+        return big != null ? big.signum() : Long.signum(unscaled);
+    }
+    
+    public int scale() {
+        return scale;
+    }
+    
+    public BigDecimal toBigDecimal() {
+        return big != null ? big : BigDecimal.valueOf(unscaled, scale);
+    }
+    
+    @Override
+    public double doubleValue() {
+        return toBigDecimal().doubleValue();
+    }
+    
+    @Override
+    public float floatValue() {
+        return toBigDecimal().floatValue();
+    }
+    
+    @Override
+    public int intValue() {
+        return toBigDecimal().intValue();
+    }
+    
+    @Override
+    public long longValue() {
+        return toBigDecimal().longValue();
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ApexDecimal && compareTo((ApexDecimal) other) == 0;
+    }
+    
+    @Override
+    public int hashCode() {
+        return toBigDecimal().stripTrailingZeros().hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+    
+    // The exact sum when it fits in a long, null otherwise.
+    private static ApexDecimal sum(long a, int aScale, long b, int bScale) {
+        if (aScale < bScale) {
+            if (!canRescale(a, bScale - aScale)) {
+                return null;
+            }
+            a *= POWERS_OF_TEN[bScale - aScale];
+        } else if (aScale > bScale) {
+            if (!canRescale(b, aScale - bScale)) {
+                return null;
+            }
+            b *= POWERS_OF_TEN[aScale - bScale];
+        }
+        long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            return null;
+        }
+        return of(sum, Math.max(aScale, bScale));
+    }
+    
+    private static boolean canRescale(long value, int digits) {
+        return digits < POWERS_OF_TEN.length && fitsProduct(value, POWERS_OF_TEN[digits]);
+    }
+    
+    private static boolean fitsProduct(long a, long b) {
+        return Math.multiplyHigh(a, b) == (a * b) >> 63;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.diagnostics.DiagnosticCode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchCompilerTest {
+    
+    @TempDir
+    Path temp;
+    
+    private Path write(String name, String source) throws IOException {
+        return Files.writeString(temp.resolve(name), source);
+    }
+    
+    private static List<CompilationResult> compile(Path outputDir, List<Path> inputs, int threads) {
+        BatchCompiler compiler = new BatchCompiler(outputDir, false, false, new PrintStream(new ByteArrayOutputStream()));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return compiler.compile(inputs, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static Map<String, String> contents(Path directory) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                files.put(directory.relativize(file).toString(), Files.readString(file));
+            }
+        }
+        return files;
+    }
+    
+    @Test
+    public void testCallsAcrossFilesResolveThroughTheClassIndex() throws IOException {
+        Path geometry = write("Geometry.apex", "public class Geometry {\n"
+            + "    public static Integer twice(Integer value) {\n"
+            + "        return value * 2;\n"
+            + "    }\n"
+            + "}");
+        Path client = write("Client.apex", "public class Client {\n"
+            + "    public Integer run() {\n"
+            + "        return Geometry.twice(21);\n"
+            + "    }\n"
+            + "    public Integer broken() {\n"
+            + "        return Geometry.thrice(1);\n"
+            + "    }\n"
+            + "}");
+        
+        List<CompilationResult> results = compile(temp.resolve("out"), List.of(client, geometry), 4);
+        
+        assertTrue(results.get(1).isSuccess());
+        // Only the method Geometry lacks is reported; the call to twice resolved against the other file.
+        assertEquals(1, results.get(0).getDiagnostics().size());
+        assertEquals(6, results.get(0).getDiagnostics().get(0).getLine());
+        assertEquals("Method 'thrice' not found in class 'Geometry'", results.get(0).getDiagnostics().get(0).getMessage());
+    }
+    
+    @Test
+    public void testOneFileFailingDoesNotStopTheOthers() throws IOException {
+        Path first = write("First.apex", "public class First {\n    public Integer one() { return 1; }\n}");
+        Path broken = write("Broken.apex", "public class Broken {\n    public Integer one() { return 1 }\n}");
+        Path last = write("Last.apex", "public class Last {\n    public Integer two() { return 2; }\n}");
+        Path output = temp.resolve("out");
+        
+        List<CompilationResult> results = compile(output, List.of(first, broken, last), 4);
+        
+        assertEquals(List.of(first, broken, last),
+                     results.stream().map(CompilationResult::getInputFile).collect(Collectors.toList()));
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(DiagnosticCode.SYNTAX_ERROR, results.get(1).getDiagnostics().get(0).getCode());
+        assertTrue(results.get(2).isSuccess());
+        assertEquals(List.of("First.java", "Last.java"), List.copyOf(contents(output).keySet()));
+    }
+    
+    @Test
+    public void testInputsWithTheSameNameDoNotShareAnOutputFile() throws IOException {
+        Files.createDirectories(temp.resolve("a"));
+        Files.createDirectories(temp.resolve("b"));
+        Path first = write("a/Shapes.apex", "public class Circles {\n    public Integer one() { return 1; }\n}");
+        Path second = write("b/Shapes.apex", "public class Squares {\n    public Integer two() { return 2; }\n}");
+        Path output = temp.resolve("out");
+        
+        List<CompilationResult> results = compile(output, List.of(first, second), 4);
+        
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(List.of("Another file also generates Shapes.java"),
+                     results.get(1).getDiagnostics().stream().map(Object::toString).collect(Collectors.toList()));
+        assertEquals(List.of("Shapes.java"), List.copyOf(contents(output).keySet()));
+        assertTrue(contents(output).get("Shapes.java").contains("class Circles"));
+    }
+    
+    @Test
+    public void testLexicalErrorsDoNotHideLaterErrors() throws IOException {
+        Path broken = write("Broken.apex", "public class Broken {\n"
+            + "    public String run() {\n"
+            + "        String s = 'abc;\n"
+            + "        return s + missing;\n"
+            + "    }\n"
+            + "}");
+        
+        List<CompilationResult> results = compile(temp.resolve("out"), List.of(broken), 1);
+        
+        assertEquals(List.of("Unterminated string at line 3", "Undefined variable 'missing' at line 4"),
+                     results.get(0).getDiagnostics().stream().map(Object::toString).collect(Collectors.toList()));
+        assertEquals("{\"severity\":\"error\",\"code\":\"LEXICAL_ERROR\",\"file\":\"" + broken + "\",\"line\":3,"
+            + "\"column\":20,\"startOffset\":67,\"endOffset\":72,\"message\":\"Unterminated string\"}",
+            results.get(0).getDiagnostics().get(0).toJson());
+    }
+    
+    @Test
+    public void testSignatureChangesOnlyRebuildFilesThatCanReachThem() throws IOException {
+        Path client = write("Client.apex", "public class Client {\n"
+            + "    public Integer run() {\n"
+            + "        return Geometry.origin().x;\n"
+            + "    }\n"
+            + "}");
+        write("Geometry.apex", "public class Geometry {\n"
+            + "    public static Point origin() { return null; }\n"
+            + "}");
+        Path point = write("Point.apex", "public class Point {\n    public Integer x;\n}");
+        Path other = write("Other.apex", "public class Other {\n    public Integer one() { return 1; }\n}");
+        List<Path> inputs = List.of(client, temp.resolve("Geometry.apex"), point, other);
+        BuildCache cache = new BuildCache(temp.resolve("cache"), "test");
+        
+        assertTrue(cachedLabels(inputs, cache).isEmpty());
+        assertEquals(List.of("Client.apex", "Geometry.apex", "Other.apex", "Point.apex"), cachedLabels(inputs, cache));
+        
+        // Client never names Other, so a new method there leaves its entry valid.
+        write("Other.apex", "public class Other {\n    public Integer one() { return 1; }\n"
+            + "    public Integer two() { return 2; }\n}");
+        assertEquals(List.of("Client.apex", "Geometry.apex", "Point.apex"), cachedLabels(inputs, cache));
+        
+        // Client reaches Point only through Geometry.origin's return type, and still rebuilds.
+        write("Point.apex", "public class Point {\n    public Integer y;\n}");
+        assertEquals(List.of("Other.apex"), cachedLabels(inputs, cache));
+    }
+    
+    // Compiles the inputs through the build cache and lists the files it reused, sorted.
+    private List<String> cachedLabels(List<Path> inputs, BuildCache cache) {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        BatchCompiler compiler = new BatchCompiler(temp.resolve("out"), true, false, new PrintStream(log), null, cache);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            compiler.compile(inputs, pool);
+        } finally {
+            pool.shutdown();
+        }
+        return log.toString().lines()
+            .filter(line -> line.endsWith("] Unchanged, reusing cached output"))
+            .map(line -> line.substring(1, line.indexOf(']')))
+            .sorted()
+            .collect(Collectors.toList());
+    }
+    
+    @Test
+    public void testOutputDoesNotDependOnThreadScheduling() throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            String next = "Step" + ((i + 1) % 24);
+            inputs.add(write("Step" + i + ".apex", "public class Step" + i + " {\n"
+                + "    public static Integer value(Integer n) {\n"
+                + "        if (n <= 0) {\n"
+                + "            return " + i + ";\n"
+                + "        }\n"
+                + "        return " + next + ".value(n - 1) + " + i + ";\n"
+                + "    }\n"
+                // Every third file calls a method that does not exist, so errors are compared too.
+                + (i % 3 == 0 ? "    public static Integer missing() { return " + next + ".nothing(); }\n" : "")
+                + "}"));
+        }
+        
+        List<CompilationResult> sequential = compile(temp.resolve("sequential"), inputs, 1);
+        Map<String, String> expected = contents(temp.resolve("sequential"));
+        assertEquals(16, expected.size());
+        assertEquals(8, sequential.stream().filter(result -> !result.isSuccess()).count());
+        for (int run = 0; run < 5; run++) {
+            Path output = temp.resolve("parallel" + run);
+            List<CompilationResult> parallel = compile(output, inputs, 8);
+            assertEquals(expected, contents(output));
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(sequential.get(i).getInputFile(), parallel.get(i).getInputFile());
+                assertEquals(sequential.get(i).getDiagnostics().toString(), parallel.get(i).getDiagnostics().toString());
+            }
+        }
+    }
+}
\ No newline at end of file
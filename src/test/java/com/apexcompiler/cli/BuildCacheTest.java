@@ -0,0 +1,59 @@
+package com.apexcompiler.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public class BuildCacheTest {
+    
+    @TempDir
+    Path directory;
+    
+    private static ByteBuffer source(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testHitForTheSameSourceAndBuild() throws Exception {
+        BuildCache cache = new BuildCache(directory, "1.0.0+abc");
+        String key = cache.key(source("public class A { }"), "A()");
+        assertFalse(cache.contains(key));
+        assertNull(cache.load(key));
+        cache.store(key, "public class A { }");
+        
+        BuildCache reopened = new BuildCache(directory, "1.0.0+abc");
+        String again = reopened.key(source("public class A { }"), "A()");
+        assertEquals(key, again);
+        assertTrue(reopened.contains(again));
+        assertEquals("public class A { }", reopened.load(again));
+    }
+    
+    @Test
+    public void testMissWhenTheSourceOrItsDependenciesChange() throws Exception {
+        BuildCache cache = new BuildCache(directory, "1.0.0+abc");
+        cache.store(cache.key(source("public class A { }"), "A()"), "public class A { }");
+        
+        assertFalse(cache.contains(cache.key(source("public class A { Integer x; }"), "A()")));
+        assertFalse(cache.contains(cache.key(source("public class A { }"), "A();B()")));
+    }
+    
+    @Test
+    public void testMissWhenTheCompilerBuildChanges() throws Exception {
+        BuildCache cache = new BuildCache(directory, "1.0.0+abc");
+        cache.store(cache.key(source("public class A { }"), "A()"), "public class A { }");
+        
+        BuildCache rebuilt = new BuildCache(directory, "1.0.0+abd");
+        assertFalse(rebuilt.contains(rebuilt.key(source("public class A { }"), "A()")));
+    }
+    
+    @Test
+    public void testCompilerBuildCoversTheCompilerCode() {
+        String build = BuildCache.compilerBuild(ApexCompiler.VERSION);
+        assertTrue(build.matches("\\Q" + ApexCompiler.VERSION + "\\E\\+[0-9a-f]{64}"), build);
+        assertEquals(build, BuildCache.compilerBuild(ApexCompiler.VERSION));
+    }
+}
\ No newline at end of file
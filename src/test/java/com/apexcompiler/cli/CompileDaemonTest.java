@@ -0,0 +1,136 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.ast.CompilationUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+public class CompileDaemonTest {
+    
+    @TempDir
+    Path temp;
+    
+    private int port;
+    private Path tokenFile;
+    private Thread daemon;
+    
+    @BeforeEach
+    public void startDaemon() throws Exception {
+        try (ServerSocket free = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = free.getLocalPort();
+        }
+        tokenFile = temp.resolve("daemon.token");
+        CompileDaemon compileDaemon = new CompileDaemon(port, 2, tokenFile);
+        daemon = new Thread(() -> {
+            try {
+                compileDaemon.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        daemon.start();
+        // The token is written once the daemon is listening.
+        for (int i = 0; i < 500 && !Files.exists(tokenFile); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.exists(tokenFile));
+    }
+    
+    @AfterEach
+    public void stopDaemon() throws Exception {
+        if (daemon.isAlive()) {
+            new DaemonClient(port, tokenFile).stop(new PrintStream(new ByteArrayOutputStream()),
+                                                   new PrintStream(new ByteArrayOutputStream()));
+            daemon.join(5000);
+        }
+    }
+    
+    @Test
+    public void testCompilesThroughTheDaemonAndStops() throws Exception {
+        if (Files.getFileStore(tokenFile).supportsFileAttributeView("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)));
+        }
+        Path source = Files.writeString(temp.resolve("Greeter.apex"),
+            "public class Greeter {\n    public String greet() { return 'hi'; }\n}");
+        Path output = temp.resolve("out");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        
+        int exitCode = new DaemonClient(port, tokenFile).compile(new String[] {source.toString()}, output.toString(),
+            null, false, false, false, new PrintStream(out, true), new PrintStream(err, true));
+        
+        assertEquals(0, exitCode, err.toString());
+        assertTrue(out.toString().contains("Compilation successful"));
+        assertTrue(Files.readString(output.resolve("Greeter.java")).contains("public class Greeter"));
+        
+        assertEquals(0, new DaemonClient(port, tokenFile).stop(new PrintStream(out), new PrintStream(err)));
+        daemon.join(5000);
+        assertFalse(daemon.isAlive());
+        assertFalse(Files.exists(tokenFile));
+    }
+    
+    @Test
+    public void testRejectsOtherProtocolVersionsAndWrongTokens() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream request = new DataOutputStream(socket.getOutputStream());
+             DataInputStream response = new DataInputStream(socket.getInputStream())) {
+            request.writeInt(CompileDaemon.PROTOCOL_VERSION + 1);
+            request.flush();
+            assertEquals(1, response.readInt());
+            assertEquals("", readBlock(response));
+            assertTrue(readBlock(response).startsWith("Daemon protocol version mismatch"));
+        }
+        
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream request = new DataOutputStream(socket.getOutputStream());
+             DataInputStream response = new DataInputStream(socket.getInputStream())) {
+            request.writeInt(CompileDaemon.PROTOCOL_VERSION);
+            request.writeUTF("not-the-token");
+            request.writeInt(CompileDaemon.COMMAND_STOP);
+            request.flush();
+            assertEquals(1, response.readInt());
+            assertEquals("", readBlock(response));
+            assertTrue(readBlock(response).startsWith("Daemon authentication failed"));
+        }
+        // Neither request stopped the daemon.
+        assertTrue(daemon.isAlive());
+    }
+    
+    @Test
+    public void testAstCacheDropsLeastRecentlyUsedFiles() {
+        AstCache cache = new AstCache(2);
+        ByteBuffer source = ByteBuffer.wrap("class A { }".getBytes(StandardCharsets.UTF_8));
+        CompilationUnit ast = new CompilationUnit(List.of());
+        cache.put(Path.of("A.apex"), source, ast);
+        cache.put(Path.of("B.apex"), source, ast);
+        assertSame(ast, cache.get(Path.of("A.apex"), source));
+        cache.put(Path.of("C.apex"), source, ast);
+        
+        assertEquals(2, cache.size());
+        assertSame(ast, cache.get(Path.of("A.apex"), source));
+        assertNull(cache.get(Path.of("B.apex"), source));
+    }
+    
+    private static String readBlock(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.apexcompiler.cli;
+
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.codegen.JavaCodeGenerator;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.parser.ApexParser;
+import com.apexcompiler.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+public class InMemoryJavaCompilerTest {
+    
+    @Test
+    public void testCompilesOneBatchInMemory() {
+        InMemoryJavaCompiler.Output output = new InMemoryJavaCompiler().compile(Map.of(
+            "Shape.java", "public class Shape { public static class Point { } Circle circle() { return new Circle(); } }",
+            "Circle.java", "public class Circle extends Shape { }"));
+        
+        assertTrue(output.getErrors().isEmpty());
+        assertEquals(List.of("Circle", "Shape", "Shape$Point"), List.copyOf(output.getClasses().keySet()));
+        byte[] circle = output.getClasses().get("Circle");
+        assertArrayEquals(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}, java.util.Arrays.copyOf(circle, 4));
+    }
+    
+    @Test
+    public void testErrorsAreKeyedBySourceAndNothingIsOutput() {
+        InMemoryJavaCompiler.Output output = new InMemoryJavaCompiler().compile(Map.of(
+            "Good.java", "public class Good { }",
+            "Bad.java", "public class Bad {\n    double d() { return null; }\n}"));
+        
+        assertTrue(output.getClasses().isEmpty());
+        assertEquals(List.of("Bad.java"), List.copyOf(output.getErrors().keySet()));
+        assertTrue(output.getErrors().get("Bad.java").get(0).startsWith("Bad.java:2: incompatible types"));
+    }
+    
+    @Test
+    public void testGeneratedDecimalArithmeticIsExact() throws Exception {
+        CompilationUnit unit = new ApexParser(new ApexLexer("public class Pricing {\n"
+            + "    public static Decimal total(Integer count, Decimal price) {\n"
+            + "        Decimal sum = 0;\n"
+            + "        for (Integer i = 0; i < count; i = i + 1) {\n"
+            + "            sum += price * 1.10 - -0.05;\n"
+            + "        }\n"
+            + "        return sum / 4;\n"
+            + "    }\n"
+            + "    public static Boolean tenths() {\n"
+            + "        return 0.1 + 0.2 == 0.3 && 1.5 > 1;\n"
+            + "    }\n"
+            + "}")).parseCompilationUnit();
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        assertTrue(analyzer.analyze(unit).isEmpty());
+        InMemoryJavaCompiler.Output output = new InMemoryJavaCompiler().compile(Map.of(
+            "Pricing.java", new JavaCodeGenerator(analyzer.getFacts()).generate(unit),
+            "ApexDecimal.java", resource("ApexDecimal.java")));
+        assertEquals(Map.of(), output.getErrors());
+        
+        ClassLoader loader = load(output);
+        Class<?> pricing = loader.loadClass("Pricing");
+        Class<?> decimal = loader.loadClass("ApexDecimal");
+        Object price = decimal.getMethod("valueOf", String.class).invoke(null, "19.99");
+        assertEquals("55.0975", pricing.getMethod("total", Integer.class, decimal).invoke(null, 10, price).toString());
+        assertEquals(true, pricing.getMethod("tenths").invoke(null));
+        
+        // Past the range of a long the value carries on exactly as a BigDecimal.
+        Object max = decimal.getMethod("valueOf", long.class).invoke(null, Long.MAX_VALUE);
+        Object sum = decimal.getMethod("add", long.class).invoke(max, 1L);
+        assertEquals("9223372036854775808", sum.toString());
+        assertEquals("9223372036854775807", decimal.getMethod("subtract", long.class).invoke(sum, 1L).toString());
+    }
+    
+    @Test
+    public void testGeneratedEqualityComparesBoxedValues() throws Exception {
+        CompilationUnit unit = new ApexParser(new ApexLexer("public class Same {\n"
+            + "    public static Boolean same(Integer a, Integer b) { return a == b; }\n"
+            + "    public static Boolean differ(Integer a, Integer b) { return a != b; }\n"
+            + "    public static Boolean flags(Boolean a, Boolean b) { return a == b; }\n"
+            + "    public static Boolean counted(Integer n) {\n"
+            + "        Integer i = 0;\n"
+            + "        while (i != n) {\n"
+            + "            i = i + 1;\n"
+            + "        }\n"
+            + "        return i == 1000;\n"
+            + "    }\n"
+            + "}")).parseCompilationUnit();
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        assertTrue(analyzer.analyze(unit).isEmpty());
+        InMemoryJavaCompiler.Output output = new InMemoryJavaCompiler().compile(Map.of(
+            "Same.java", new JavaCodeGenerator(analyzer.getFacts()).generate(unit)));
+        assertEquals(Map.of(), output.getErrors());
+        
+        Class<?> same = load(output).loadClass("Same");
+        Method equal = same.getMethod("same", Integer.class, Integer.class);
+        Method differ = same.getMethod("differ", Integer.class, Integer.class);
+        // Outside the -128..127 cache two boxes of the same value are different objects.
+        assertEquals(true, equal.invoke(null, Integer.valueOf(1000), Integer.valueOf(1000)));
+        assertEquals(false, differ.invoke(null, Integer.valueOf(1000), Integer.valueOf(1000)));
+        assertEquals(false, equal.invoke(null, 1000, null));
+        assertEquals(true, equal.invoke(null, null, null));
+        assertEquals(true, differ.invoke(null, null, -1000));
+        assertEquals(true, same.getMethod("flags", Boolean.class, Boolean.class).invoke(null, null, null));
+        assertEquals(false, same.getMethod("flags", Boolean.class, Boolean.class).invoke(null, true, null));
+        assertEquals(true, same.getMethod("counted", Integer.class).invoke(null, Integer.valueOf(1000)));
+    }
+    
+    @Test
+    public void testGeneratedLoopAppendsKeepNullStrings() throws Exception {
+        CompilationUnit unit = new ApexParser(new ApexLexer("public class Join {\n"
+            + "    public static String repeat(String s, Integer n, String part) {\n"
+            + "        for (Integer i = 0; i < n; i = i + 1) {\n"
+            + "            s += part;\n"
+            + "        }\n"
+            + "        return s;\n"
+            + "    }\n"
+            + "}")).parseCompilationUnit();
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        assertTrue(analyzer.analyze(unit).isEmpty());
+        String java = new JavaCodeGenerator(analyzer.getFacts()).generate(unit);
+        assertTrue(java.contains("StringBuilder"), java);
+        InMemoryJavaCompiler.Output output = new InMemoryJavaCompiler().compile(Map.of("Join.java", java));
+        assertEquals(Map.of(), output.getErrors());
+        
+        Method repeat = load(output).loadClass("Join").getMethod("repeat", String.class, Integer.class, String.class);
+        assertNull(repeat.invoke(null, null, 0, "x"));
+        assertEquals("nullxx", repeat.invoke(null, null, 2, "x"));
+        assertEquals("null", repeat.invoke(null, null, 1, ""));
+        assertEquals("", repeat.invoke(null, "", 0, "x"));
+        assertEquals("abb", repeat.invoke(null, "a", 2, "b"));
+    }
+    
+    private static ClassLoader load(InMemoryJavaCompiler.Output output) {
+        return new ClassLoader(InMemoryJavaCompilerTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = output.getClasses().get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+    }
+    
+    private static String resource(String name) throws IOException {
+        try (InputStream in = InMemoryJavaCompilerTest.class.getClassLoader().getResourceAsStream(name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
\ No newline at end of file
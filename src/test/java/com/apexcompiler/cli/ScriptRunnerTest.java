@@ -0,0 +1,71 @@
+package com.apexcompiler.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ScriptRunnerTest {
+    
+    @TempDir
+    Path temp;
+    
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final ScriptRunner runner = new ScriptRunner(new PrintStream(out, true), new PrintStream(err, true));
+    
+    private Path calc() throws IOException {
+        return Files.writeString(temp.resolve("Calc.apex"), "public class Calc {\n"
+            + "    public static Integer ratio(Integer a, Integer b) {\n"
+            + "        Integer scaled = a * 10;\n"
+            + "        return scaled / b;\n"
+            + "    }\n"
+            + "    public static Integer half() {\n"
+            + "        return ratio(1, 2);\n"
+            + "    }\n"
+            + "    public static Integer broken() {\n"
+            + "        return ratio(1, 0);\n"
+            + "    }\n"
+            + "    @isTest\n"
+            + "    static void testHalf() {\n"
+            + "        System.assertEquals(6, half(), 'half');\n"
+            + "    }\n"
+            + "    @isTest\n"
+            + "    static void testBroken() {\n"
+            + "        broken();\n"
+            + "    }\n"
+            + "}");
+    }
+    
+    @Test
+    public void testRunPrintsTheResult() throws IOException {
+        assertEquals(0, runner.run(List.of(calc()), "Calc.half"));
+        assertEquals("5", out.toString().trim());
+    }
+    
+    @Test
+    public void testRunReportsRuntimeErrorsWithTheirLocation() throws IOException {
+        Path calc = calc();
+        
+        assertEquals(1, runner.run(List.of(calc), "Calc.broken"));
+        assertEquals("Runtime error: ArithmeticException: / by zero (" + calc + ", line 4)", err.toString().trim());
+    }
+    
+    @Test
+    public void testFailedTestsReportTheirLocation() throws IOException {
+        Path calc = calc();
+        
+        assertEquals(1, runner.runTests(List.of(calc)));
+        assertEquals(List.of("FAIL Calc.testHalf: half (" + calc + ", line 14)",
+                             "FAIL Calc.testBroken: ArithmeticException: / by zero (" + calc + ", line 4)",
+                             "2 test(s) run, 0 passed, 2 failed"),
+                     out.toString().lines().collect(Collectors.toList()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+package com.apexcompiler.codegen;
+
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+import com.apexcompiler.interpreter.Interpreter;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.parser.ApexParser;
+import com.apexcompiler.runtime.MockDataService;
+import com.apexcompiler.semantic.ClassIndex;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class BytecodeGeneratorTest {
+    
+    private static final String SOURCE = "public class Counter {\n"
+        + "    private Integer total = 0;\n"
+        + "    public static Integer created = 0;\n"
+        + "    public enum Mode { UP, DOWN }\n"
+        + "    public interface Step { Integer size(); }\n"
+        + "    public class Two implements Step {\n"
+        + "        public Integer size() { return 2; }\n"
+        + "    }\n"
+        + "    public Counter() {\n"
+        + "        created += 1;\n"
+        + "    }\n"
+        + "    public Integer run(Mode mode, Step step, Integer times) {\n"
+        + "        for (Integer i = 0; i < times; i = i + 1) {\n"
+        + "            if (mode == Mode.DOWN) {\n"
+        + "                total -= step.size();\n"
+        + "            } else {\n"
+        + "                total = total + step.size();\n"
+        + "            }\n"
+        + "        }\n"
+        + "        return total;\n"
+        + "    }\n"
+        + "    public Decimal half(Integer value) {\n"
+        + "        if (value == null) {\n"
+        + "            return null;\n"
+        + "        }\n"
+        + "        Decimal d = value;\n"
+        + "        return d / 2;\n"
+        + "    }\n"
+        + "    public String label(String name) {\n"
+        + "        return name.toUpperCase() + ': ' + total + ' ' + (total > 0 && name.length() > 2);\n"
+        + "    }\n"
+        + "}";
+    
+    private static Map<String, byte[]> compile(String source, BytecodeGenerator[] generator) {
+        CompilationUnit unit = new ApexParser(new ApexLexer(source)).parseCompilationUnit();
+        generator[0] = new BytecodeGenerator(ClassIndex.build(unit.getAllDeclarations()),
+                                             BytecodeGenerator.binaryNames(List.of(unit)));
+        return generator[0].generate(unit, "Test.apex");
+    }
+    
+    private ClassLoader loader(Map<String, byte[]> classes) {
+        return new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+    }
+    
+    @Test
+    public void testGeneratedClassesRun() throws Exception {
+        BytecodeGenerator[] generator = new BytecodeGenerator[1];
+        Map<String, byte[]> classes = compile(SOURCE, generator);
+        assertEquals(List.of(), generator[0].getDiagnostics());
+        assertEquals(List.of("Counter$Mode", "Counter$Step", "Counter$Two", "Counter"), List.copyOf(classes.keySet()));
+        
+        ClassLoader loader = loader(classes);
+        Class<?> counter = loader.loadClass("Counter");
+        Class<?> mode = loader.loadClass("Counter$Mode");
+        Class<?> step = loader.loadClass("Counter$Step");
+        Object instance = counter.getConstructor().newInstance();
+        Object two = loader.loadClass("Counter$Two").getConstructor().newInstance();
+        Object down = mode.getField("DOWN").get(null);
+        Object up = mode.getField("UP").get(null);
+        
+        assertEquals(1, counter.getField("created").get(null));
+        assertEquals(6, counter.getMethod("run", mode, step, Integer.class).invoke(instance, up, two, 3));
+        assertEquals(2, counter.getMethod("run", mode, step, Integer.class).invoke(instance, down, two, 2));
+        assertEquals(new BigDecimal("3.5"), counter.getMethod("half", Integer.class).invoke(instance, 7));
+        assertNull(counter.getMethod("half", Integer.class).invoke(instance, (Object) null));
+        assertEquals("APEX: 2 true", counter.getMethod("label", String.class).invoke(instance, "apex"));
+        assertEquals("DOWN", ((Enum<?>) down).name());
+    }
+    
+    @Test
+    public void testQueriesRunFromPlansParsedOnce() throws Exception {
+        BytecodeGenerator[] generator = new BytecodeGenerator[1];
+        Map<String, byte[]> classes = compile("public class Finder {\n"
+            + "    public static List<Account> seeded = [SELECT Id FROM Account WHERE Name LIKE 'Test%'];\n"
+            + "    public static Integer matching(String pattern, Integer n) {\n"
+            + "        return [SELECT Id, Name FROM Account WHERE Name LIKE :pattern ORDER BY Name DESC LIMIT :n].size();\n"
+            + "    }\n"
+            + "    public static Integer again(String pattern, Integer n) {\n"
+            + "        return [SELECT Id, Name FROM Account WHERE Name LIKE :pattern ORDER BY Name DESC LIMIT :n].size();\n"
+            + "    }\n"
+            + "    public static Integer all() {\n"
+            + "        return [SELECT Id FROM Account].size();\n"
+            + "    }\n"
+            + "}", generator);
+        assertEquals(List.of(), generator[0].getDiagnostics());
+        
+        MockDataService.reset();
+        Class<?> finder = loader(classes).loadClass("Finder");
+        // The static initializer's query runs once and is not kept; the two methods share one plan.
+        List<Field> plans = Arrays.stream(finder.getDeclaredFields())
+            .filter(field -> field.getName().startsWith("soql$")).collect(Collectors.toList());
+        assertEquals(2, plans.size());
+        assertTrue(Modifier.isStatic(plans.get(0).getModifiers()) && Modifier.isFinal(plans.get(0).getModifiers()));
+        
+        assertEquals(2, ((List<?>) finder.getField("seeded").get(null)).size());
+        for (int n = 0; n <= 3; n++) {
+            assertEquals(Math.min(n, 2), finder.getMethod("matching", String.class, Integer.class).invoke(null, "test%", n));
+        }
+        assertEquals(0, finder.getMethod("again", String.class, Integer.class).invoke(null, "Other%", 5));
+        assertEquals(2, finder.getMethod("all").invoke(null));
+    }
+    
+    @Test
+    public void testDecimalsAreExactAsInGeneratedJava() throws Exception {
+        BytecodeGenerator[] generator = new BytecodeGenerator[1];
+        Map<String, byte[]> classes = compile("public class Money {\n"
+            + "    public static Boolean exact() { return 0.1 + 0.2 == 0.3 && 1.0 == 1.00; }\n"
+            + "    public static String scaled() { return '' + (1.00 + 1) + ' ' + (1.5 * 1.5) + ' ' + (10.0 / 4); }\n"
+            + "    public static Decimal third() { return 1.0 / 3; }\n"
+            + "    public static Boolean less(Decimal a, Integer b) { return a < b && -a != a; }\n"
+            + "}", generator);
+        assertEquals(List.of(), generator[0].getDiagnostics());
+        
+        Class<?> money = loader(classes).loadClass("Money");
+        assertEquals(true, money.getMethod("exact").invoke(null));
+        assertEquals("2.00 2.25 2.5", money.getMethod("scaled").invoke(null));
+        assertEquals(new BigDecimal("0.3333333333333333333333333333333333"), money.getMethod("third").invoke(null));
+        assertEquals(true, money.getMethod("less", BigDecimal.class, Integer.class).invoke(null, new BigDecimal("1.5"), 2));
+    }
+    
+    @Test
+    public void testNullStringsConcatenateAsInTheInterpreter() throws Exception {
+        String source = "public class C {\n"
+            + "    public static String f(String s) { return s + 'x'; }\n"
+            + "    public static String g(String s) { return 'x' + s + null; }\n"
+            + "    public static String h(String s) {\n"
+            + "        s += 'y';\n"
+            + "        return s;\n"
+            + "    }\n"
+            + "}";
+        BytecodeGenerator[] generator = new BytecodeGenerator[1];
+        Map<String, byte[]> classes = compile(source, generator);
+        assertEquals(List.of(), generator[0].getDiagnostics());
+        CompilationUnit unit = new ApexParser(new ApexLexer(source)).parseCompilationUnit();
+        Interpreter interpreter = new Interpreter(ClassIndex.build(unit.getAllDeclarations()));
+        
+        Class<?> c = loader(classes).loadClass("C");
+        for (String name : List.of("f", "g", "h")) {
+            for (String value : Arrays.asList(null, "a")) {
+                assertEquals(interpreter.invokeStatic("C", name, value), c.getMethod(name, String.class).invoke(null, value), name);
+            }
+        }
+        assertEquals("nullx", c.getMethod("f", String.class).invoke(null, (Object) null));
+        assertEquals("xnullnull", c.getMethod("g", String.class).invoke(null, (Object) null));
+        assertEquals("nully", c.getMethod("h", String.class).invoke(null, (Object) null));
+    }
+    
+    @Test
+    public void testUnsupportedConstructIsReported() {
+        BytecodeGenerator[] generator = new BytecodeGenerator[1];
+        Map<String, byte[]> classes = compile("public class T {\n"
+            + "    public Integer ok() { return 1; }\n"
+            + "    public Integer max() { return Math.max(1, 2); }\n"
+            + "}\n"
+            + "public class U { }", generator);
+        
+        List<Diagnostic> diagnostics = generator[0].getDiagnostics();
+        assertEquals(1, diagnostics.size());
+        assertEquals(DiagnosticCode.UNSUPPORTED, diagnostics.get(0).getCode());
+        assertEquals("Method 'Math.max' is not supported", diagnostics.get(0).getMessage());
+        assertEquals(3, diagnostics.get(0).getLine());
+        assertEquals(List.of("U"), List.copyOf(classes.keySet()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+package com.apexcompiler.interpreter;
+
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.parser.ApexParser;
+import com.apexcompiler.semantic.ClassIndex;
+import com.apexcompiler.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+
+public class InterpreterTest {
+    
+    private static final String SOURCE = "public class Counter {\n"
+        + "    private Integer total = 0;\n"
+        + "    public static Integer created = 0;\n"
+        + "    public enum Mode { UP, DOWN }\n"
+        + "    public interface Step { Integer size(); }\n"
+        + "    public class Two implements Step {\n"
+        + "        public Integer size() { return 2; }\n"
+        + "    }\n"
+        + "    public class Half implements Step {\n"
+        + "        public Decimal size() { return 0.5; }\n"
+        + "    }\n"
+        + "    public Counter() {\n"
+        + "        created += 1;\n"
+        + "    }\n"
+        + "    public Integer run(Mode mode, Step step, Integer times) {\n"
+        + "        for (Integer i = 0; i < times; i = i + 1) {\n"
+        + "            if (mode == Mode.DOWN) {\n"
+        + "                total -= step.size();\n"
+        + "            } else {\n"
+        + "                total = total + step.size();\n"
+        + "            }\n"
+        + "        }\n"
+        + "        return total;\n"
+        + "    }\n"
+        + "    public static Decimal half(Integer value) {\n"
+        + "        Decimal d = value;\n"
+        + "        System.debug('half of ' + value);\n"
+        + "        return d / 2;\n"
+        + "    }\n"
+        + "    public static String label(String name) {\n"
+        + "        return name.toUpperCase() + ' ' + Mode.values().size() + ' ' + Mode.DOWN.ordinal();\n"
+        + "    }\n"
+        + "    public static Mode down() {\n"
+        + "        return Mode.DOWN;\n"
+        + "    }\n"
+        + "    public static void check(Integer value) {\n"
+        + "        System.assertEquals(3, value, 'expected ' + 3);\n"
+        + "    }\n"
+        + "}";
+    
+    private static ClassIndex analyze(String source) {
+        ApexParser parser = new ApexParser(new ApexLexer(source));
+        CompilationUnit unit = parser.parseCompilationUnit();
+        assertTrue(parser.getErrors().isEmpty());
+        ClassIndex index = ClassIndex.build(unit.getAllDeclarations());
+        assertTrue(new SemanticAnalyzer(index).analyze(unit).isEmpty());
+        return index;
+    }
+    
+    @Test
+    public void testRunsStaticAndInstanceMethods() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(analyze(SOURCE), new PrintStream(buffer, true));
+        
+        assertEquals(new BigDecimal("3.5"), interpreter.invokeStatic("Counter", "half", 7));
+        assertEquals("half of 7", buffer.toString().trim());
+        assertEquals("ABC 2 1", interpreter.invokeStatic("Counter", "label", "abc"));
+        
+        ApexObject counter = interpreter.newInstance("Counter");
+        ApexObject two = interpreter.newInstance("Two");
+        assertEquals(6, interpreter.invoke(counter, "run", null, two, 3));
+        assertEquals(6, counter.get("total"));
+        assertEquals("Counter:[total=0]", interpreter.newInstance("Counter").toString());
+    }
+    
+    @Test
+    public void testApexErrorsSurfaceAsJavaExceptions() {
+        Interpreter interpreter = new Interpreter(analyze(SOURCE), new PrintStream(new ByteArrayOutputStream()));
+        
+        AssertionError failed = assertThrows(AssertionError.class, () -> interpreter.invokeStatic("Counter", "check", 4));
+        assertEquals("expected 3", failed.getMessage());
+        interpreter.invokeStatic("Counter", "check", 3);
+        NullPointerException npe = assertThrows(NullPointerException.class,
+            () -> interpreter.invokeStatic("Counter", "label", (Object) null));
+        assertEquals(Values.NULL_DEREFERENCE, npe.getMessage());
+        assertThrows(RuntimeException.class, () -> interpreter.newInstance("Step"));
+    }
+    
+    @Test
+    public void testFailuresRecordTheStatementThatThrew() {
+        Interpreter interpreter = new Interpreter(analyze(SOURCE), new PrintStream(new ByteArrayOutputStream()));
+        
+        AssertionError failed = assertThrows(AssertionError.class, () -> interpreter.invokeStatic("Counter", "check", 4));
+        assertEquals("Counter", interpreter.getFailureClass(failed));
+        assertEquals(37, interpreter.getFailureLine(failed));
+        NullPointerException npe = assertThrows(NullPointerException.class,
+            () -> interpreter.invokeStatic("Counter", "label", (Object) null));
+        assertEquals(31, interpreter.getFailureLine(npe));
+        assertNull(interpreter.getFailureClass(failed));
+        
+        // The same line once the method runs as nodes.
+        interpreter.hotThreshold = 1;
+        ApexObject counter = interpreter.newInstance("Counter");
+        ApexObject two = interpreter.newInstance("Two");
+        interpreter.invoke(counter, "run", null, two, 1);
+        interpreter.invoke(counter, "run", null, two, 1);
+        npe = assertThrows(NullPointerException.class, () -> interpreter.invoke(counter, "run", null, null, 1));
+        assertEquals("Counter", interpreter.getFailureClass(npe));
+        assertEquals(20, interpreter.getFailureLine(npe));
+    }
+    
+    @Test
+    public void testHotCodeRespecializesAsOperandsChange() {
+        Interpreter interpreter = new Interpreter(analyze(SOURCE), new PrintStream(new ByteArrayOutputStream()));
+        interpreter.hotThreshold = 1;
+        
+        ApexObject counter = interpreter.newInstance("Counter");
+        ApexObject two = interpreter.newInstance("Two");
+        ApexObject half = interpreter.newInstance("Half");
+        Object down = interpreter.invokeStatic("Counter", "down");
+        assertEquals(200, interpreter.invoke(counter, "run", null, two, 100));
+        assertEquals(190, interpreter.invoke(counter, "run", down, two, 5));
+        // Decimal steps are truncated when stored back into the Integer field, as in compiled code.
+        assertEquals(190, interpreter.invoke(counter, "run", null, half, 6));
+        assertEquals(189, interpreter.invoke(counter, "run", down, half, 1));
+        assertEquals(191, interpreter.invoke(counter, "run", null, two, 1));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new BigDecimal("3.5"), interpreter.invokeStatic("Counter", "half", 7));
+            assertEquals("ABC 2 1", interpreter.invokeStatic("Counter", "label", "abc"));
+        }
+        assertThrows(NullPointerException.class, () -> interpreter.invoke(counter, "run", null, null, 1));
+    }
+    
+    @Test
+    public void testDecimalsAreExactAsInGeneratedJava() {
+        Interpreter interpreter = new Interpreter(analyze("public class Money {\n"
+            + "    public static Boolean exact() { return 0.1 + 0.2 == 0.3 && 1.0 == 1.00; }\n"
+            + "    public static String scaled() { return '' + (1.00 + 1) + ' ' + (1.5 * 1.5) + ' ' + (10.0 / 4); }\n"
+            + "    public static Decimal third() { return 1.0 / 3; }\n"
+            + "}"), new PrintStream(new ByteArrayOutputStream()));
+        
+        assertEquals(true, interpreter.invokeStatic("Money", "exact"));
+        assertEquals("2.00 2.25 2.5", interpreter.invokeStatic("Money", "scaled"));
+        assertEquals(new BigDecimal("0.3333333333333333333333333333333333"), interpreter.invokeStatic("Money", "third"));
+    }
+}
\ No newline at end of file
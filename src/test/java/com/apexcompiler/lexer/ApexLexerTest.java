@@ -1,8 +1,14 @@
 package com.apexcompiler.lexer;
 
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 public class ApexLexerTest {
@@ -74,4 +80,131 @@ public class ApexLexerTest {
         assertEquals(TokenType.IDENTIFIER, tokens.get(1).getType());
         assertEquals("Test", tokens.get(1).getLexeme());
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testNextTokenPullsOnDemand() {
+        ApexLexer lexer = new ApexLexer("Integer x = 1;");
+        
+        assertEquals(TokenType.INTEGER, lexer.nextToken().getType());
+        assertEquals(TokenType.IDENTIFIER, lexer.nextToken().getType());
+        assertEquals(TokenType.ASSIGN, lexer.nextToken().getType());
+        assertEquals(TokenType.INTEGER_LITERAL, lexer.nextToken().getType());
+        assertEquals(TokenType.SEMICOLON, lexer.nextToken().getType());
+        assertEquals(TokenType.EOF, lexer.nextToken().getType());
+        assertEquals(TokenType.EOF, lexer.nextToken().getType());
+    }
+    
+    @Test
+    public void testLexemesAreShared() {
+        String source = "foo(bar); foo(bar);";
+        ApexLexer lexer = new ApexLexer(source);
+        List<Token> tokens = lexer.tokenize();
+        
+        assertSame(tokens.get(0).getLexeme(), tokens.get(5).getLexeme());
+        assertSame(tokens.get(2).getLexeme(), tokens.get(7).getLexeme());
+        assertSame(TokenType.LEFT_PAREN.getText(), tokens.get(1).getLexeme());
+        assertSame(TokenType.SEMICOLON.getText(), tokens.get(4).getLexeme());
+        assertEquals("foo", tokens.get(0).getLexeme());
+        assertEquals(1, tokens.get(0).getColumn());
+        assertEquals(11, tokens.get(5).getColumn());
+    }
+    
+    @Test
+    public void testTokenBufferMatchesTokens() {
+        String source = "String s = 'hi'; Integer n = 42; foo.bar(n);";
+        List<Token> tokens = new ApexLexer(source).tokenize();
+        TokenBuffer buffer = new TokenBuffer(new ApexLexer(source));
+        
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.get(i), buffer.token(i));
+        }
+        assertEquals(TokenType.EOF, buffer.type(tokens.size() + 3));
+    }
+    
+    @Test
+    public void testTokenBufferRelease() {
+        TokenBuffer buffer = new TokenBuffer(new ApexLexer("a b c d e"));
+        
+        assertEquals("c", buffer.lexeme(2));
+        buffer.release(2);
+        assertEquals(1, buffer.retained());
+        assertEquals("c", buffer.lexeme(2));
+        assertEquals("e", buffer.lexeme(4));
+        assertThrows(IllegalStateException.class, () -> buffer.type(1));
+    }
+    
+    @Test
+    public void testSoqlQuery() {
+        String source = "[ SELECT Id FROM Account\n WHERE Name = 'a]b' AND Id IN :ids[0] ] x";
+        ApexLexer lexer = new ApexLexer(source);
+        List<Token> tokens = lexer.tokenize();
+        
+        assertEquals(TokenType.SOQL_LITERAL, tokens.get(0).getType());
+        assertEquals("SELECT Id FROM Account\n WHERE Name = 'a]b' AND Id IN :ids[0]", tokens.get(0).getLexeme());
+        assertEquals(1, tokens.get(0).getLine());
+        assertEquals(TokenType.IDENTIFIER, tokens.get(1).getType());
+        assertEquals(2, tokens.get(1).getLine());
+    }
+    
+    @Test
+    public void testListIndexIsNotSoql() {
+        String source = "items[0] = items[\n1];\nselected[i]";
+        ApexLexer lexer = new ApexLexer(source);
+        List<Token> tokens = lexer.tokenize();
+        
+        assertEquals(TokenType.LEFT_BRACKET, tokens.get(1).getType());
+        assertEquals(TokenType.INTEGER_LITERAL, tokens.get(2).getType());
+        assertEquals(TokenType.RIGHT_BRACKET, tokens.get(3).getType());
+        assertEquals(TokenType.LEFT_BRACKET, tokens.get(6).getType());
+        assertEquals(2, tokens.get(7).getLine());
+        assertEquals(TokenType.IDENTIFIER, tokens.get(10).getType());
+        assertEquals("selected", tokens.get(10).getLexeme());
+        assertEquals(3, tokens.get(10).getLine());
+        assertEquals(TokenType.LEFT_BRACKET, tokens.get(11).getType());
+    }
+    
+    @Test
+    public void testUnterminatedLiteralsAreReportedAndEndAtTheirLine() {
+        ApexLexer lexer = new ApexLexer("String s = 'abc;\nInteger y = [SELECT Id\nreturn y;");
+        List<Token> tokens = lexer.tokenize();
+        
+        assertEquals(TokenType.ERROR, tokens.get(3).getType());
+        assertEquals("'abc;", tokens.get(3).getLexeme());
+        assertEquals(TokenType.INTEGER, tokens.get(4).getType());
+        assertEquals(2, tokens.get(4).getLine());
+        assertEquals(1, tokens.get(4).getColumn());
+        assertEquals(TokenType.ERROR, tokens.get(7).getType());
+        assertEquals(TokenType.RETURN, tokens.get(8).getType());
+        assertEquals(3, tokens.get(8).getLine());
+        
+        assertEquals(2, lexer.getErrors().size());
+        Diagnostic string = lexer.getErrors().get(0);
+        assertEquals(DiagnosticCode.LEXICAL_ERROR, string.getCode());
+        assertEquals("Unterminated string", string.getMessage());
+        assertEquals(1, string.getLine());
+        assertEquals(12, string.getColumn());
+        assertEquals(11, string.getStartOffset());
+        assertEquals(16, string.getEndOffset());
+        Diagnostic query = lexer.getErrors().get(1);
+        assertEquals("Unterminated SOQL query", query.getMessage());
+        assertEquals(2, query.getLine());
+        assertEquals(13, query.getColumn());
+        assertEquals(29, query.getStartOffset());
+    }
+    
+    @Test
+    public void testMappedSourceMatchesString(@TempDir Path dir) throws IOException {
+        String ascii = "public class A { String s = 'x'; }";
+        String utf8 = "public class B { String s = 'caf\u00e9'; Integer n = 1; }";
+        Path asciiFile = Files.writeString(dir.resolve("A.apex"), ascii);
+        Path utf8File = Files.writeString(dir.resolve("B.apex"), utf8);
+        
+        SourceFile mappedAscii = SourceFile.read(asciiFile, 0);
+        SourceFile mappedUtf8 = SourceFile.read(utf8File, 0);
+        
+        assertTrue(mappedAscii.text() instanceof AsciiText);
+        assertEquals(new ApexLexer(ascii).tokenize(), new ApexLexer(mappedAscii.text()).tokenize());
+        assertEquals(new ApexLexer(utf8).tokenize(), new ApexLexer(mappedUtf8.text()).tokenize());
+        assertEquals(utf8, SourceFile.read(utf8File).text().toString());
+    }
+}
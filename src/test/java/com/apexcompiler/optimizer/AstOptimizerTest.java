@@ -0,0 +1,86 @@
+package com.apexcompiler.optimizer;
+
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.codegen.JavaCodeGenerator;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.parser.ApexParser;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AstOptimizerTest {
+    
+    private static final String SOURCE = "public class Flags {\n"
+        + "    public static final Integer DAY = 60 * 60 * 24;\n"
+        + "    public static Integer run(Integer x) {\n"
+        + "        Integer a = 7 / 2 + -(3) - 1 / 0;\n"
+        + "        Decimal d = 1 + 2.5 * 2;\n"
+        + "        if (false) {\n"
+        + "            a = 0;\n"
+        + "        }\n"
+        + "        if (!true || x > 0) {\n"
+        + "            a = a + 1;\n"
+        + "        }\n"
+        + "        while (1 > 2) {\n"
+        + "            a = 0;\n"
+        + "        }\n"
+        + "        if (1 == 1) {\n"
+        + "            return a;\n"
+        + "        }\n"
+        + "        return -1;\n"
+        + "    }\n"
+        + "    public static String label(Integer n) {\n"
+        + "        return 'n=' + n + ', ' + 'max=' + 3 + ' ' + true;\n"
+        + "    }\n"
+        + "}";
+    
+    private static String generate(CompilationUnit unit) {
+        return new JavaCodeGenerator().generate(unit);
+    }
+    
+    @Test
+    public void testFoldsConstantsAndDropsDeadBranches() {
+        CompilationUnit unit = new ApexParser(new ApexLexer(SOURCE)).parseCompilationUnit();
+        String java = generate(new AstOptimizer().optimize(unit));
+        
+        assertTrue(java.contains("DAY = 86400;"), java);
+        assertTrue(java.contains("a = (0 - (1 / 0));"), java);
+        // Decimals are exact at run time and are never folded as doubles.
+        assertTrue(java.contains("(ApexDecimal.of(25, 1) * 2)"), java);
+        assertTrue(java.contains("if ((x > 0))"), java);
+        assertTrue(java.contains("return ((\"n=\" + n) + \", max=3 true\");"), java);
+        assertFalse(java.contains("a = 0;"), java);
+        assertFalse(java.contains("while"), java);
+        assertFalse(java.contains("return -1;"), java);
+    }
+    
+    @Test
+    public void testDropsStatementsAfterAFoldedBranchThatKeepsItsVariables() {
+        CompilationUnit unit = new ApexParser(new ApexLexer("public class Early {\n"
+            + "    public static Integer run() {\n"
+            + "        if (true) {\n"
+            + "            Integer x = 1;\n"
+            + "            return x;\n"
+            + "        }\n"
+            + "        return 2;\n"
+            + "    }\n"
+            + "}")).parseCompilationUnit();
+        String java = generate(new AstOptimizer().optimize(unit));
+        
+        // The branch stays a block for its variable, and javac would reject the return after it as unreachable.
+        assertTrue(java.contains("return x;"), java);
+        assertFalse(java.contains("if"), java);
+        assertFalse(java.contains("return 2;"), java);
+    }
+    
+    @Test
+    public void testInputIsNotModified() {
+        CompilationUnit unit = new ApexParser(new ApexLexer(SOURCE)).parseCompilationUnit();
+        String before = generate(unit);
+        CompilationUnit optimized = new AstOptimizer().optimize(unit);
+        
+        assertNotSame(unit, optimized);
+        assertEquals(before, generate(unit));
+        CompilationUnit plain = new ApexParser(new ApexLexer("public class P { public Integer x; }")).parseCompilationUnit();
+        assertSame(plain, new AstOptimizer().optimize(plain));
+    }
+}
\ No newline at end of file
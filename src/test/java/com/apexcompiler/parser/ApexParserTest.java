@@ -0,0 +1,101 @@
+package com.apexcompiler.parser;
+
+import com.apexcompiler.ast.*;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.lexer.ApexLexer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ApexParserTest {
+    
+    @Test
+    public void testRecoversAndReportsEveryError() {
+        ApexParser parser = new ApexParser(new ApexLexer("public class T {\n"
+            + "    public Integer count;\n"
+            + "    public void broken( {\n"
+            + "    }\n"
+            + "    public void run() {\n"
+            + "        Integer x = ;\n"
+            + "        x = 1\n"
+            + "        return;\n"
+            + "    }\n"
+            + "    public Integer after() { return count; }\n"
+            + "}\n"
+            + "}\n"
+            + "public class U { }"));
+        CompilationUnit unit = parser.parseCompilationUnit();
+        
+        List<String> errors = parser.getErrors().stream().map(Diagnostic::toString).collect(Collectors.toList());
+        assertEquals(List.of("Expected parameter name at line 4",
+                             "Unexpected token: ; at line 6",
+                             "Expected ';' at line 8",
+                             "Expected 'class' at line 12"), errors);
+        
+        assertEquals(List.of("T", "U"), unit.getTypes().stream().map(ClassDeclaration::getName).collect(Collectors.toList()));
+        ClassDeclaration t = unit.getTypes().get(0);
+        assertEquals(List.of("run", "after"), t.getMethods().stream().map(MethodDeclaration::getName).collect(Collectors.toList()));
+        List<Statement> body = t.getMethods().get(0).getBody().getStatements();
+        assertEquals(3, body.size());
+        assertTrue(body.get(0) instanceof ErrorStatement);
+        assertTrue(body.get(1) instanceof ErrorStatement);
+        assertTrue(body.get(2) instanceof ReturnStatement);
+    }
+    
+    @Test
+    public void testUnterminatedClassReportsOnce() {
+        ApexParser parser = new ApexParser(new ApexLexer("public class T {\n    public void run() {\n        return;\n"));
+        parser.parseCompilationUnit();
+        
+        assertEquals(1, parser.getErrors().size());
+        assertEquals(4, parser.getErrors().get(0).getLine());
+    }
+    
+    @Test
+    public void testParsingContinuesAfterAnUnterminatedString() {
+        ApexParser parser = new ApexParser(new ApexLexer("public class T {\n"
+            + "    public String run() {\n"
+            + "        String s = 'abc;\n"
+            + "        Integer y = 5;\n"
+            + "        return s + y;\n"
+            + "    }\n"
+            + "}"));
+        CompilationUnit unit = parser.parseCompilationUnit();
+        
+        // The statement ends with the line its literal is on, so nothing after it is reported or skipped.
+        assertEquals(List.of("Unterminated string at line 3"),
+                     parser.getErrors().stream().map(Diagnostic::toString).collect(Collectors.toList()));
+        List<Statement> body = unit.getTypes().get(0).getMethods().get(0).getBody().getStatements();
+        assertEquals(3, body.size());
+        assertEquals("s", ((VariableDeclaration) body.get(0)).getName());
+        assertEquals("y", ((VariableDeclaration) body.get(1)).getName());
+        assertTrue(body.get(2) instanceof ReturnStatement);
+    }
+    
+    @Test
+    public void testSoqlIsParsedWithItsBindVariables() {
+        ApexParser parser = new ApexParser(new ApexLexer("public class T {\n"
+            + "    public void run(String name, Account acc) {\n"
+            + "        Object found = [SELECT Name FROM Account WHERE Name = :name OR Id = :acc.Id OR Name LIKE :name];\n"
+            + "        Object counted = [SELECT COUNT() FROM Account];\n"
+            + "    }\n"
+            + "}"));
+        CompilationUnit unit = parser.parseCompilationUnit();
+        
+        assertEquals(1, parser.getErrors().size());
+        assertEquals(4, parser.getErrors().get(0).getLine());
+        assertTrue(parser.getErrors().get(0).getMessage().startsWith("Invalid SOQL"));
+        
+        Statement first = unit.getTypes().get(0).getMethods().get(0).getBody().getStatements().get(0);
+        SoqlExpression query = (SoqlExpression) ((VariableDeclaration) first).getInitializer();
+        assertEquals("Account", query.getParsedQuery().getObjectType());
+        assertEquals(List.of("Id", "Name"), query.getParsedQuery().getFields());
+        assertEquals(List.of("name", "acc.Id"), query.getParsedQuery().getBindNames());
+        assertEquals("name", ((IdentifierExpression) query.getBinds().get(0)).getName());
+        MemberExpression field = (MemberExpression) query.getBinds().get(1);
+        assertEquals("acc", ((IdentifierExpression) field.getObject()).getName());
+        assertEquals("Id", field.getProperty());
+    }
+}
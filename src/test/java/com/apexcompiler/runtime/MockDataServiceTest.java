@@ -0,0 +1,152 @@
+package com.apexcompiler.runtime;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MockDataServiceTest {
+    
+    @BeforeEach
+    void seed() {
+        MockDataService.reset();
+        List<Map<String, Object>> contacts = new ArrayList<>();
+        contacts.add(contact("Ada", "Lovelace", 36, "London"));
+        contacts.add(contact("Alan", "Turing", 41, "London"));
+        contacts.add(contact("Grace", "Hopper", 85, null));
+        contacts.add(contact("Edsger", "Dijkstra", 72, "Nuenen"));
+        MockDataService.insertRecords("Contact", contacts);
+    }
+    
+    private static Map<String, Object> contact(String first, String last, Integer age, String city) {
+        Map<String, Object> contact = new HashMap<>();
+        contact.put("FirstName", first);
+        contact.put("LastName", last);
+        contact.put("Age", age);
+        contact.put("City", city);
+        return contact;
+    }
+    
+    private static List<Object> column(List<Map<String, Object>> records, String field) {
+        List<Object> values = new ArrayList<>();
+        for (Map<String, Object> record : records) {
+            values.add(record.get(field));
+        }
+        return values;
+    }
+    
+    @Test
+    public void testSeededAccounts() {
+        List<Map<String, Object>> accounts = MockDataService.executeSoql("SELECT Id, Name FROM Account LIMIT 10");
+        assertEquals(List.of("Test Account 1", "Test Account 2"), column(accounts, "Name"));
+        assertEquals("001000000000001", accounts.get(0).get("Id"));
+        assertTrue(MockDataService.executeSoql("select name from ACCOUNT where name != null").size() == 2);
+        assertTrue(MockDataService.executeSoql("SELECT Id FROM Opportunity").isEmpty());
+    }
+    
+    @Test
+    public void testWhereOrderByLimitAndOffset() {
+        assertEquals(List.of("Turing", "Lovelace"), column(MockDataService.executeSoql(
+            "SELECT LastName FROM Contact WHERE City = 'london' ORDER BY Age DESC"), "LastName"));
+        assertEquals(List.of("Hopper", "Dijkstra"), column(MockDataService.executeSoql(
+            "SELECT LastName FROM Contact WHERE Age > 40 AND NOT (LastName LIKE 'T%') ORDER BY Age DESC"), "LastName"));
+        assertEquals(List.of("Grace", "Ada", "Alan"), column(MockDataService.executeSoql(
+            "SELECT FirstName FROM Contact WHERE City IN ('London', null, 'Paris') OR Age >= 70 "
+                + "ORDER BY City NULLS FIRST, Age LIMIT 3"), "FirstName"));
+        assertEquals(List.of("Alan", "Edsger"), column(MockDataService.executeSoql(
+            "SELECT FirstName FROM Contact ORDER BY FirstName LIMIT 2 OFFSET 1"), "FirstName"));
+        assertEquals(List.of("Grace", "Edsger"), column(MockDataService.executeSoql(
+            "SELECT FirstName FROM Contact WHERE LastName NOT IN ('Turing', 'Lovelace')"), "FirstName"));
+    }
+    
+    @Test
+    public void testProjectionKeepsIdAndSelectedFields() {
+        Map<String, Object> record = MockDataService.executeSoql("SELECT firstname, Nickname FROM Contact LIMIT 1").get(0);
+        assertEquals(List.of("Id", "FirstName", "Nickname"), new ArrayList<>(record.keySet()));
+        assertEquals("Ada", record.get("FirstName"));
+        assertNull(record.get("Nickname"));
+        assertEquals("Contact", ((MockDataService.Record) record).getObjectType());
+    }
+    
+    @Test
+    public void testBindVariables() {
+        SoqlQuery query = SoqlQuery.parse("SELECT LastName FROM Contact WHERE Age < :maxAge AND City IN :cities LIMIT :n");
+        Map<String, Object> binds = new HashMap<>();
+        binds.put("maxAge", new BigDecimal("41.5"));
+        binds.put("cities", List.of("London", "Nuenen"));
+        binds.put("n", 5);
+        assertEquals(List.of("Lovelace", "Turing"), column(query.execute(binds), "LastName"));
+        binds.put("maxAge", 100L);
+        assertEquals(List.of("Lovelace", "Turing", "Dijkstra"), column(query.execute(binds), "LastName"));
+        
+        IllegalArgumentException missing = assertThrows(IllegalArgumentException.class, () -> query.execute(Map.of()));
+        assertTrue(missing.getMessage().contains("maxAge"));
+    }
+    
+    @Test
+    public void testDmlChangesWhatQueriesReturn() {
+        List<Map<String, Object>> records = MockDataService.executeSoql("SELECT Id, Age FROM Contact WHERE FirstName = 'Grace'");
+        records.get(0).put("Age", 86);
+        MockDataService.updateRecords(records);
+        assertEquals(List.of(86), column(MockDataService.executeSoql("SELECT Age FROM Contact WHERE LastName = 'Hopper'"), "Age"));
+        
+        MockDataService.deleteRecords(records);
+        assertEquals(3, MockDataService.executeSoql("SELECT Id FROM Contact").size());
+        
+        MockDataService.Record added = new MockDataService.Record("Contact");
+        added.put("FirstName", "Barbara");
+        MockDataService.upsertRecords(List.of(added));
+        assertNotNull(added.get("Id"));
+        assertEquals(List.of("Barbara"), column(MockDataService.executeSoql("SELECT FirstName FROM Contact WHERE Age = null"), "FirstName"));
+    }
+    
+    @Test
+    public void testLargeTableStopsAtLimitAndKeepsTopRows() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("Amount", (i * 7919) % 100000);
+            row.put("Stage", i % 2 == 0 ? "Open" : "Closed");
+            rows.add(row);
+        }
+        MockDataService.insertRecords("Opportunity", rows);
+        
+        assertEquals(List.of(99999, 99998, 99997), column(MockDataService.executeSoql(
+            "SELECT Amount FROM Opportunity ORDER BY Amount DESC LIMIT 3"), "Amount"));
+        assertEquals(10, MockDataService.executeSoql("SELECT Id FROM Opportunity WHERE Stage = 'Open' LIMIT 10").size());
+        assertEquals(50000, MockDataService.executeSoql("SELECT Id FROM Opportunity WHERE Stage = 'Closed'").size());
+    }
+    
+    @Test
+    public void testInvalidQueries() {
+        assertThrows(IllegalArgumentException.class, () -> SoqlQuery.parse("SELECT FROM Account"));
+        assertThrows(IllegalArgumentException.class, () -> SoqlQuery.parse("SELECT COUNT() FROM Account"));
+        assertThrows(IllegalArgumentException.class, () -> SoqlQuery.parse("SELECT Id FROM Account WHERE"));
+        assertThrows(IllegalArgumentException.class, () -> SoqlQuery.parse("FIND 'x' IN ALL FIELDS"));
+        IllegalArgumentException relationship = assertThrows(IllegalArgumentException.class,
+            () -> SoqlQuery.parse("SELECT Id, Owner.Name FROM Account"));
+        assertTrue(relationship.getMessage().startsWith(
+            "Invalid SOQL at position 16: relationship fields such as Owner.Name are not supported"));
+        assertThrows(IllegalArgumentException.class, () -> SoqlQuery.parse("SELECT Id FROM Account WHERE Owner.Name = 'x'"));
+        assertThrows(IllegalArgumentException.class, () -> SoqlQuery.parse("SELECT Id FROM Account ORDER BY Owner.Name"));
+    }
+    
+    @Test
+    public void testInsertingAnExistingIdIsRejected() {
+        List<Map<String, Object>> grace = MockDataService.executeSoql("SELECT Id, FirstName FROM Contact WHERE FirstName = 'Grace'");
+        assertThrows(IllegalArgumentException.class, () -> MockDataService.insertRecords("Contact", grace));
+        
+        MockDataService.Record added = new MockDataService.Record("Contact");
+        added.put("FirstName", "Barbara");
+        MockDataService.insertRecords(List.of(added));
+        assertThrows(IllegalArgumentException.class, () -> MockDataService.insertRecords(List.of(added)));
+        
+        assertEquals(1, MockDataService.executeSoql("SELECT Id FROM Contact WHERE FirstName = 'Grace'").size());
+        assertEquals(1, MockDataService.executeSoql("SELECT Id FROM Contact WHERE FirstName = 'Barbara'").size());
+        assertEquals(5, MockDataService.executeSoql("SELECT Id FROM Contact").size());
+    }
+}
\ No newline at end of file
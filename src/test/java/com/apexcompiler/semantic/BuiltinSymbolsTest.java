@@ -0,0 +1,45 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.semantic.SymbolTable.Symbol;
+import com.apexcompiler.semantic.SymbolTable.SymbolKind;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class BuiltinSymbolsTest {
+    
+    @Test
+    public void testEveryBuiltinHasItsOwnSlotAndResolves() {
+        assertEquals(BuiltinSymbols.SEED, BuiltinSymbols.findSeed());
+        Set<Integer> indexes = new HashSet<>();
+        for (String name : BuiltinSymbols.NAMES) {
+            assertTrue(indexes.add(BuiltinSymbols.index(name, BuiltinSymbols.SEED)), name);
+            Symbol symbol = BuiltinSymbols.lookup(name);
+            assertNotNull(symbol, name);
+            assertEquals(name, symbol.getName());
+            assertEquals(name, symbol.getType().getName());
+            assertEquals(SymbolKind.CLASS, symbol.getKind());
+            assertEquals(-1, symbol.getSlot());
+            assertSame(symbol, BuiltinSymbols.lookup(name));
+        }
+    }
+    
+    @Test
+    public void testOtherNamesAreMissingEvenWhenTheyShareASlot() {
+        assertNull(BuiltinSymbols.lookup("Widget"));
+        assertNull(BuiltinSymbols.lookup("integer"));
+        assertNull(BuiltinSymbols.lookup(""));
+        
+        // A name landing on a builtin's slot must still fail the name comparison.
+        int target = BuiltinSymbols.index("Integer", BuiltinSymbols.SEED);
+        String clash = null;
+        for (int i = 0; clash == null; i++) {
+            if (BuiltinSymbols.index("Widget" + i, BuiltinSymbols.SEED) == target) {
+                clash = "Widget" + i;
+            }
+        }
+        assertNull(BuiltinSymbols.lookup(clash));
+    }
+}
\ No newline at end of file
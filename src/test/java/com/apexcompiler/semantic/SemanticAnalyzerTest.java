@@ -0,0 +1,232 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.ast.BlockStatement;
+import com.apexcompiler.ast.ClassDeclaration;
+import com.apexcompiler.ast.CompilationUnit;
+import com.apexcompiler.ast.Expression;
+import com.apexcompiler.ast.ExpressionStatement;
+import com.apexcompiler.ast.ForStatement;
+import com.apexcompiler.ast.IfStatement;
+import com.apexcompiler.ast.ReturnStatement;
+import com.apexcompiler.ast.Statement;
+import com.apexcompiler.ast.VariableDeclaration;
+import com.apexcompiler.diagnostics.Diagnostic;
+import com.apexcompiler.diagnostics.DiagnosticCode;
+import com.apexcompiler.lexer.ApexLexer;
+import com.apexcompiler.parser.ApexParser;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+public class SemanticAnalyzerTest {
+    
+    private List<String> analyze(String source) {
+        return messages(new SemanticAnalyzer().analyze(parse(source)));
+    }
+    
+    private static List<String> messages(List<Diagnostic> diagnostics) {
+        return diagnostics.stream().map(Diagnostic::getMessage).collect(Collectors.toList());
+    }
+    
+    @Test
+    public void testTypesAreInterned() {
+        assertSame(ApexType.of("Account"), ApexType.of("Account"));
+        assertSame(ApexType.listOf(ApexType.of("Account")),
+                   ApexType.of("List", List.of(ApexType.of("Account"))));
+        assertEquals("Map<Id, Account>", ApexType.of("Map", List.of(ApexType.of("Id"), ApexType.of("Account"))).toString());
+        assertTrue(ApexType.INTEGER.isNumeric());
+        assertFalse(ApexType.STRING.isNumeric());
+    }
+    
+    @Test
+    public void testSoqlResultIsTypedByObject() {
+        List<String> errors = analyze("public class T {\n"
+            + "    public List<Account> accounts = [SELECT Id FROM Account];\n"
+            + "    public List<SObject> records = [select Id from Lead];\n"
+            + "    public List<Contact> contacts = [SELECT Id FROM Account];\n"
+            + "}");
+        
+        assertEquals(List.of("Cannot assign List<Account> to List<Contact>"), errors);
+    }
+    
+    @Test
+    public void testSoqlObjectAndBindVariablesAreChecked() {
+        List<String> errors = analyze("public class T {\n"
+            + "    public Object find(String name) {\n"
+            + "        return [select Id from account where Name = :name AND Industry = :industry];\n"
+            + "    }\n"
+            + "    public Object widgets() {\n"
+            + "        return [SELECT Id FROM Widget];\n"
+            + "    }\n"
+            + "}");
+        
+        assertEquals(List.of("Undefined variable 'industry'", "sObject type 'Widget' is not supported"), errors);
+    }
+    
+    @Test
+    public void testAssignability() {
+        List<String> errors = analyze("public class T {\n"
+            + "    public Account a = null;\n"
+            + "    public Object o = 5;\n"
+            + "    public Decimal d = 1 + 2;\n"
+            + "    public Integer i = 1.5;\n"
+            + "}");
+        
+        assertEquals(List.of("Cannot assign Decimal to Integer"), errors);
+    }
+    
+    @Test
+    public void testDiagnosticsCarrySourcePositions() {
+        String source = "public class T {\n"
+            + "    public void run() {\n"
+            + "        Integer x = total + 1;\n"
+            + "    }\n"
+            + "}";
+        List<Diagnostic> diagnostics = new SemanticAnalyzer().analyze(parse(source));
+        
+        assertEquals(1, diagnostics.size());
+        Diagnostic diagnostic = diagnostics.get(0);
+        assertEquals(DiagnosticCode.UNDEFINED_VARIABLE, diagnostic.getCode());
+        assertEquals(3, diagnostic.getLine());
+        assertEquals(21, diagnostic.getColumn());
+        assertEquals("total", source.substring(diagnostic.getStartOffset(), diagnostic.getEndOffset()));
+        assertEquals("{\"severity\":\"error\",\"code\":\"UNDEFINED_VARIABLE\",\"file\":\"T.apex\",\"line\":3,"
+            + "\"column\":21,\"startOffset\":61,\"endOffset\":66,\"message\":\"Undefined variable 'total'\"}",
+            diagnostic.withFile("T.apex").toJson());
+        // Severity names are not lowercased by the default locale, which turns WARNING into warnıng in Turkish.
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            Diagnostic warning = new Diagnostic(Diagnostic.Severity.WARNING, DiagnosticCode.UNSUPPORTED, null, -1, -1, 0, 0, "w");
+            assertTrue(warning.toJson().startsWith("{\"severity\":\"warning\""), warning.toJson());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+    
+    @Test
+    public void testResolvesAcrossClassesThroughIndex() {
+        ClassDeclaration base = parse("public class Base {\n"
+            + "    public Integer count;\n"
+            + "    public Integer total(Integer a) { return a; }\n"
+            + "}");
+        ClassDeclaration child = parse("public class Child extends Base {\n"
+            + "    public Base other;\n"
+            + "    public void run() {\n"
+            + "        Integer x = total(count);\n"
+            + "        String s = other.total(1, 2);\n"
+            + "        Integer y = other.missing;\n"
+            + "    }\n"
+            + "}");
+        ClassIndex index = ClassIndex.build(List.of(base, child));
+        
+        assertTrue(messages(new SemanticAnalyzer().analyze(child)).contains("Superclass 'Base' not found"));
+        assertEquals(List.of("Method 'total' in class 'Base' does not take 2 argument(s)",
+                             "Field 'missing' not found in class 'Base'"),
+                     messages(new SemanticAnalyzer(index).analyze(child)));
+    }
+    
+    @Test
+    public void testCompilationUnitWithNestedTypes() {
+        CompilationUnit unit = new ApexParser(new ApexLexer("public class Outer implements Named {\n"
+            + "    public enum Level { LOW, HIGH, }\n"
+            + "    public class Inner { public Level level; }\n"
+            + "    public String name() { return 'outer'; }\n"
+            + "    public Level top() { return Level.HIGH; }\n"
+            + "    public Level bottom() { return Level.MIDDLE; }\n"
+            + "}\n"
+            + "public interface Named extends Object2 {\n"
+            + "    String name();\n"
+            + "}")).parseCompilationUnit();
+        
+        assertEquals(2, unit.getTypes().size());
+        assertTrue(unit.getTypes().get(1).isInterface());
+        assertNull(unit.getTypes().get(1).getMethods().get(0).getBody());
+        ClassDeclaration level = unit.getTypes().get(0).getInnerClasses().get(0);
+        assertEquals(List.of("LOW", "HIGH"), level.getEnumConstants());
+        assertEquals(List.of("Outer", "Level", "Inner", "Named"),
+                     unit.getAllDeclarations().stream().map(ClassDeclaration::getName).collect(Collectors.toList()));
+        
+        ClassIndex index = ClassIndex.build(unit.getAllDeclarations());
+        assertEquals(List.of("Field 'MIDDLE' not found in class 'Level'", "Interface 'Object2' not found"),
+                     messages(new SemanticAnalyzer(index).analyze(unit)));
+    }
+    
+    @Test
+    public void testNonNullLocalsAreMarkedPrimitive() {
+        ClassDeclaration decl = parse("public class Loop {\n"
+            + "    public Integer count;\n"
+            + "    public Decimal run(Integer n) {\n"
+            + "        Integer total = 0;\n"
+            + "        Integer step = total;\n"
+            + "        Integer fromParam = n;\n"
+            + "        Integer compared = 1;\n"
+            + "        Integer unset;\n"
+            + "        Decimal sum = count;\n"
+            + "        for (Integer i = 0; i < n; i = i + step) {\n"
+            + "            total += i;\n"
+            + "        }\n"
+            + "        if (compared == null) {\n"
+            + "            return total;\n"
+            + "        }\n"
+            + "        return sum;\n"
+            + "    }\n"
+            + "}");
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        assertEquals(List.of(), messages(analyzer.analyze(decl)));
+        TypeFacts facts = analyzer.getFacts();
+        
+        List<Statement> body = decl.getMethods().get(0).getBody().getStatements();
+        List<String> primitive = body.stream()
+            .map(stmt -> stmt instanceof ForStatement ? ((ForStatement) stmt).getInitializer() : stmt)
+            .filter(stmt -> stmt instanceof VariableDeclaration && facts.isPrimitive((VariableDeclaration) stmt))
+            .map(stmt -> ((VariableDeclaration) stmt).getName())
+            .collect(Collectors.toList());
+        assertEquals(List.of("total", "step", "i"), primitive);
+        
+        Expression sum = ((VariableDeclaration) body.get(5)).getInitializer();
+        BlockStatement nullBranch = (BlockStatement) ((IfStatement) body.get(7)).getThenBranch();
+        Expression widenedTotal = ((ReturnStatement) nullBranch.getStatements().get(0)).getValue();
+        assertEquals(TypeFacts.Conversion.TO_DECIMAL_OR_NULL, facts.conversion(sum));
+        assertEquals(TypeFacts.Conversion.TO_DECIMAL, facts.conversion(widenedTotal));
+    }
+    
+    @Test
+    public void testStringsOnlyAppendedInALoopAreAccumulators() {
+        ClassDeclaration decl = parse("public class Log {\n"
+            + "    public String run(Integer n, String sep) {\n"
+            + "        String log = '';\n"
+            + "        String last = '';\n"
+            + "        String counts = '';\n"
+            + "        for (Integer i = 0; i < n; i = i + 1) {\n"
+            + "            log += 'line ' + i;\n"
+            + "            sep = sep + i + ';';\n"
+            + "            last = 'item ' + i;\n"
+            + "            counts = counts + log.length();\n"
+            + "            while (i < 0) {\n"
+            + "                log += sep;\n"
+            + "            }\n"
+            + "        }\n"
+            + "        return log + last + counts;\n"
+            + "    }\n"
+            + "}");
+        SemanticAnalyzer analyzer = new SemanticAnalyzer();
+        assertEquals(List.of(), messages(analyzer.analyze(decl)));
+        TypeFacts facts = analyzer.getFacts();
+        
+        ForStatement loop = (ForStatement) decl.getMethods().get(0).getBody().getStatements().get(3);
+        // sep is read by the nested append to log, and log by counts, so only counts qualifies.
+        assertEquals(List.of("counts"), facts.accumulators(loop));
+        List<Statement> body = ((BlockStatement) loop.getBody()).getStatements();
+        assertTrue(facts.isAppend(((ExpressionStatement) body.get(3)).getExpression()));
+        assertFalse(facts.isAppend(((ExpressionStatement) body.get(0)).getExpression()));
+        assertTrue(facts.isConcatenation(((ReturnStatement) decl.getMethods().get(0).getBody().getStatements().get(4)).getValue()));
+    }
+    
+    private ClassDeclaration parse(String source) {
+        return new ApexParser(new ApexLexer(source)).parseClass();
+    }
+}
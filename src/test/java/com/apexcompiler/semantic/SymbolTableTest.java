@@ -0,0 +1,85 @@
+package com.apexcompiler.semantic;
+
+import com.apexcompiler.semantic.SymbolTable.Symbol;
+import com.apexcompiler.semantic.SymbolTable.SymbolKind;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolTableTest {
+    
+    private static Symbol variable(String name, String type) {
+        return new Symbol(name, ApexType.of(type), SymbolKind.VARIABLE);
+    }
+    
+    @Test
+    public void testInnerDefinitionsShadowUntilTheirScopeIsPopped() {
+        SymbolTable table = new SymbolTable();
+        table.pushScope();
+        Symbol outer = variable("x", "Integer");
+        assertEquals(0, table.define(outer));
+        
+        table.pushScope();
+        assertSame(outer, table.lookup("x"));
+        assertFalse(table.isDefined("x"));
+        Symbol inner = variable("x", "String");
+        Symbol other = variable("y", "Boolean");
+        assertEquals(1, table.define(inner));
+        assertEquals(2, table.define(other));
+        assertSame(inner, table.lookup("x"));
+        assertTrue(table.isDefined("x"));
+        assertSame(other, table.getSymbol(2));
+        assertEquals(2, table.getDepth());
+        
+        table.popScope();
+        assertSame(outer, table.lookup("x"));
+        assertTrue(table.isDefined("x"));
+        assertNull(table.lookup("y"));
+        
+        // Slots freed by the popped scope are reused by the next definition.
+        table.pushScope();
+        assertEquals(1, table.define(variable("z", "Integer")));
+        table.popScope();
+        
+        table.popScope();
+        assertNull(table.lookup("x"));
+        assertEquals(0, table.getDepth());
+    }
+    
+    @Test
+    public void testLocalsShadowBuiltinTypes() {
+        SymbolTable table = new SymbolTable();
+        assertSame(BuiltinSymbols.lookup("Account"), table.lookup("Account"));
+        assertTrue(table.isDefined("Account"));
+        
+        table.pushScope();
+        assertFalse(table.isDefined("Account"));
+        Symbol local = variable("Account", "String");
+        table.define(local);
+        assertSame(local, table.lookup("Account"));
+        
+        table.popScope();
+        assertSame(BuiltinSymbols.lookup("Account"), table.lookup("Account"));
+    }
+    
+    @Test
+    public void testDeepNestingSurvivesGrowthAndRehashing() {
+        SymbolTable table = new SymbolTable();
+        for (int depth = 0; depth < 20; depth++) {
+            table.pushScope();
+            for (int i = 0; i < 10; i++) {
+                table.define(variable("v" + i, "Integer"));
+                table.define(variable("d" + depth + "_" + i, "Integer"));
+            }
+        }
+        
+        for (int depth = 19; depth >= 0; depth--) {
+            Symbol v = table.lookup("v3");
+            assertSame(table.getSymbol(v.getSlot()), v);
+            assertEquals(depth * 20 + 6, v.getSlot());
+            assertNotNull(table.lookup("d" + depth + "_9"));
+            table.popScope();
+            assertNull(table.lookup("d" + depth + "_9"));
+        }
+        assertNull(table.lookup("v3"));
+    }
+}
\ No newline at end of file